@@ -29,9 +29,14 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ServiceLoader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
@@ -50,7 +55,9 @@ import picocli.CommandLine.IVersionProvider;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 import picocli.CommandLine.ParseResult;
+import qupath.lib.classifiers.pixel.PixelClassificationTileCache;
 import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.gui.BuildInfo;
 import qupath.lib.gui.ExtensionClassLoader;
 import qupath.lib.gui.QuPathApp;
@@ -66,8 +73,11 @@ import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerProvider;
 import qupath.lib.images.servers.ImageServers;
+import qupath.lib.metrics.Metrics;
+import qupath.lib.plugins.AbstractPluginRunner;
 import qupath.lib.projects.Project;
 import qupath.lib.projects.ProjectIO;
+import qupath.lib.projects.ProjectImageEntry;
 
 /**
  * Main QuPath launcher.
@@ -279,6 +289,18 @@ class ScriptCommand implements Runnable {
 			+ "extract the third series within the file.", paramLabel = "server-arguments")
 	private String[] serverArgs;
 
+	@Option(names = {"-n", "--parallel"}, description = {"Number of project images to process concurrently (default = 1).",
+			"All images share the same tile cache and processing threads, but each has its own image data - and an error with one image does not stop the others."},
+			paramLabel = "images")
+	private int nParallel = 1;
+	
+	@Option(names = {"-t", "--threads"}, description = "Total number of threads to use for processing, shared between all images (default = number of processors).", paramLabel = "threads")
+	private int nThreads = -1;
+	
+	@Option(names = {"-m", "--metrics"}, description = {"Record performance metrics (e.g. tile cache hits, tile read times, plugin task times) while running the script.",
+			"These are written as JSON to the specified file, or logged if the file is '-'."}, paramLabel = "metrics-file")
+	private String metricsPath;
+
 	@Option(names = {"-h", "--help"}, usageHelp = true, description = "Show this help message and exit.")
 	private boolean usageHelpRequested;
 		
@@ -297,32 +319,25 @@ class ScriptCommand implements Runnable {
 			// Ensure we have a tile cache set
 			createTileCache();
 			
+			// Set the thread budget for processing, which is shared across images
+			if (nThreads > 0)
+				AbstractPluginRunner.setNumThreadsRequested(nThreads);
+			
+			if (metricsPath != null)
+				Metrics.setEnabled(true);
+			
 			ImageData<BufferedImage> imageData;
 			
 			if (projectPath != null && !projectPath.equals("")) {
 				String path = QuPath.getEncodedPath(projectPath);
 				Project<BufferedImage> project = ProjectIO.loadProject(new File(path), BufferedImage.class);
+				var entries = new ArrayList<ProjectImageEntry<BufferedImage>>();
 				for (var entry: project.getImageList()) {
 					if (imagePath != null && !imagePath.equals("") && !imagePath.equals(entry.getImageName()))
 						continue;
-					logger.info("Running script for {}", entry.getImageName());
-					imageData = entry.readImageData();
-					try {
-						Object result = runScript(project, imageData);
-						if (result != null)
-							logger.info("Script result: {}", result);
-						if (save)
-							entry.saveImageData(imageData);
-					} catch (Exception e) {
-						logger.error("Error running script for image: " + entry.getImageName(), e);
-						// Throw an exception if we have a single image
-						// Otherwise, try to recover and continue processing images
-						if (imagePath != null && imagePath.equals(entry.getImageName()))
-							throw new RuntimeException(e);
-					} finally {
-						imageData.getServer().close();						
-					}
+					entries.add(entry);
 				}
+				runProject(project, entries);
 			} else if (imagePath != null && !imagePath.equals("")) {
 				String path = QuPath.getEncodedPath(imagePath);
 				URI uri = GeneralTools.toURI(path);
@@ -341,9 +356,143 @@ class ScriptCommand implements Runnable {
 		} catch (Exception e) {
 			logger.error(e.getLocalizedMessage(), e);
 			throw new RuntimeException(e);
+		} finally {
+			if (metricsPath != null)
+				writeMetrics();
 		}
 	}
 	
+	/**
+	 * Write metrics recorded while running the script, if requested.
+	 */
+	private void writeMetrics() {
+		if (metricsPath.equals("-")) {
+			logger.info("Metrics:\n{}", Metrics.toJson());
+			return;
+		}
+		try {
+			Metrics.writeJson(Paths.get(metricsPath));
+			logger.info("Metrics written to {}", metricsPath);
+		} catch (IOException e) {
+			logger.error("Unable to write metrics: " + e.getLocalizedMessage(), e);
+		}
+	}
+	
+	/**
+	 * Run the script for project entries, optionally processing several images concurrently.
+	 * @param project
+	 * @param entries
+	 * @throws InterruptedException
+	 */
+	private void runProject(Project<BufferedImage> project, List<ProjectImageEntry<BufferedImage>> entries) throws InterruptedException {
+		var progress = new BatchProgress(entries.size());
+		Throwable firstError = null;
+		int n = Math.min(nParallel, entries.size());
+		if (n <= 1) {
+			for (var entry : entries)
+				runEntry(project, entry, progress);
+		} else {
+			logger.info("Processing {} images, with {} images in parallel", entries.size(), n);
+			var pool = Executors.newFixedThreadPool(n, ThreadTools.createThreadFactory("script-batch-", false));
+			try {
+				var futures = new ArrayList<Future<?>>();
+				for (var entry : entries)
+					futures.add(pool.submit(() -> runEntry(project, entry, progress)));
+				for (var future : futures) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						// Errors are logged by each task - but (as when running sequentially) any that are thrown 
+						// should cause the command to fail, after waiting for the others to complete
+						logger.debug(e.getLocalizedMessage(), e);
+						if (firstError == null)
+							firstError = e.getCause();
+					}
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+		progress.logSummary();
+		if (firstError instanceof RuntimeException)
+			throw (RuntimeException)firstError;
+		else if (firstError instanceof Error)
+			throw (Error)firstError;
+		else if (firstError != null)
+			throw new RuntimeException(firstError);
+	}
+	
+	/**
+	 * Run the script for a single project entry, reading (and optionally saving) its own image data.
+	 * @param project
+	 * @param entry
+	 * @param progress
+	 */
+	private void runEntry(Project<BufferedImage> project, ProjectImageEntry<BufferedImage> entry, BatchProgress progress) {
+		String name = entry.getImageName();
+		logger.info("Running script for {}", name);
+		long startTime = System.currentTimeMillis();
+		ImageData<BufferedImage> imageData = null;
+		boolean success = false;
+		try {
+			imageData = entry.readImageData();
+			Object result = runScript(project, imageData);
+			if (result != null)
+				logger.info("Script result for {}: {}", name, result);
+			if (save)
+				entry.saveImageData(imageData);
+			success = true;
+		} catch (Exception e) {
+			logger.error("Error running script for image: " + name, e);
+			// Throw an exception if we have a single image
+			// Otherwise, try to recover and continue processing images
+			if (imagePath != null && imagePath.equals(name))
+				throw new RuntimeException(e);
+		} finally {
+			if (imageData != null) {
+				try {
+					imageData.getServer().close();
+				} catch (Exception e) {
+					logger.warn("Unable to close server for {}: {}", name, e.getLocalizedMessage());
+				}
+			}
+			progress.imageCompleted(name, success, System.currentTimeMillis() - startTime);
+		}
+	}
+	
+	
+	/**
+	 * Helper class to report progress and throughput when processing project images.
+	 */
+	static class BatchProgress {
+		
+		private final int nImages;
+		private final long startTime = System.currentTimeMillis();
+		private final AtomicInteger nCompleted = new AtomicInteger();
+		private final AtomicInteger nFailed = new AtomicInteger();
+		
+		BatchProgress(int nImages) {
+			this.nImages = nImages;
+		}
+		
+		void imageCompleted(String name, boolean success, long millis) {
+			int completed = nCompleted.incrementAndGet();
+			if (!success)
+				nFailed.incrementAndGet();
+			double elapsedMinutes = (System.currentTimeMillis() - startTime) / 60000.0;
+			logger.info(String.format("%s %s in %.2f seconds (%d/%d images, %.2f images/minute)",
+					success ? "Completed" : "Failed", name, millis/1000.0, completed, nImages, completed / Math.max(elapsedMinutes, 1e-6)));
+		}
+		
+		void logSummary() {
+			if (nImages <= 1)
+				return;
+			double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+			logger.info(String.format("Processed %d images in %.1f seconds (%d failed)", nCompleted.get(), seconds, nFailed.get()));
+		}
+		
+	}
+	
 	/**
 	 * Parse String arguments. If surrounded by square brackets, this is treated as a comma-separated list.
 	 * Otherwise, an array is returned containing a copy of the supplied args.
@@ -385,8 +534,10 @@ class ScriptCommand implements Runnable {
 		long tileCacheSize = Math.round(maxAvailable * (percentage / 100.0));
 		logger.info(String.format("Setting tile cache size to %.2f MB (%.1f%% max memory)", tileCacheSize/(1024.*1024.), percentage));
 		
-		var imageRegionStore = ImageRegionStoreFactory.createImageRegionStore(tileCacheSize);
+		long classifierCacheSize = PixelClassificationTileCache.getDefaultMaxBytes(tileCacheSize);
+		var imageRegionStore = ImageRegionStoreFactory.createImageRegionStore(tileCacheSize - classifierCacheSize);
 		ImageServerProvider.setCache(imageRegionStore.getCache(), BufferedImage.class);
+		PixelClassificationTileCache.setDefaultCache(new PixelClassificationTileCache(classifierCacheSize));
 	}
 	
 	
@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Helper methods to create reproducible synthetic data for benchmarks.
+ */
+class BenchmarkData {
+
+	/**
+	 * Create a polygon ROI resembling a nucleus, with a radius of approximately 5 pixels.
+	 * @param rand
+	 * @param cx
+	 * @param cy
+	 * @return
+	 */
+	static ROI createNucleusROI(Random rand, double cx, double cy) {
+		int n = 16 + rand.nextInt(16);
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			double theta = 2 * Math.PI * i / n;
+			double r = 4 + rand.nextDouble() * 2;
+			x[i] = (float)(cx + Math.cos(theta) * r);
+			y[i] = (float)(cy + Math.sin(theta) * r);
+		}
+		return ROIs.createPolygonROI(x, y, ImagePlane.getDefaultPlane());
+	}
+
+	/**
+	 * Create detections with nucleus-like ROIs randomly distributed across a square region.
+	 * @param seed random seed, so that the same objects can be created repeatedly
+	 * @param n number of detections
+	 * @param size width and height of the region containing the detections
+	 * @return
+	 */
+	static List<PathObject> createDetections(long seed, int n, double size) {
+		var rand = new Random(seed);
+		var list = new ArrayList<PathObject>(n);
+		for (int i = 0; i < n; i++) {
+			var roi = createNucleusROI(rand, rand.nextDouble() * size, rand.nextDouble() * size);
+			var detection = PathObjects.createDetectionObject(roi);
+			list.add(detection);
+		}
+		return list;
+	}
+
+}
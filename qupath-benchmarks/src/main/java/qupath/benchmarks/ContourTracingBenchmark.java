@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import qupath.lib.analysis.images.ContourTracing;
+import qupath.lib.analysis.images.SimpleImage;
+import qupath.lib.analysis.images.SimpleImages;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Benchmarks for converting labeled images to objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContourTracingBenchmark {
+
+	@Param({"1024", "2048"})
+	private int size;
+
+	private SimpleImage labels;
+	private RegionRequest request;
+
+	/**
+	 * Create a labeled image containing non-overlapping disks, resembling a nucleus segmentation.
+	 */
+	@Setup
+	public void setup() {
+		var rand = new Random(100L);
+		var image = SimpleImages.createFloatImage(size, size);
+		int spacing = 16;
+		int label = 0;
+		for (int y = spacing/2; y < size - spacing/2; y += spacing) {
+			for (int x = spacing/2; x < size - spacing/2; x += spacing) {
+				label++;
+				double r = 3 + rand.nextDouble() * 4;
+				for (int yy = (int)(y - r); yy <= y + r; yy++) {
+					for (int xx = (int)(x - r); xx <= x + r; xx++) {
+						if ((xx - x) * (xx - x) + (yy - y) * (yy - y) <= r * r)
+							image.setValue(xx, yy, label);
+					}
+				}
+			}
+		}
+		labels = image;
+		request = RegionRequest.createInstance("labels", 1.0, 0, 0, size, size);
+	}
+
+	@Benchmark
+	public List<PathObject> createObjects() {
+		return ContourTracing.createObjects(labels, request, 1, -1, (roi, n) -> PathObjects.createDetectionObject(roi));
+	}
+
+}
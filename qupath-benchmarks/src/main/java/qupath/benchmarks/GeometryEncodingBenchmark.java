@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+
+import qupath.lib.io.GeometryCodec;
+import qupath.lib.io.GsonTools;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Benchmarks comparing {@link GeometryCodec} with GeoJSON for encoding and decoding nucleus ROIs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeometryEncodingBenchmark {
+
+	private static final int N_ROIS = 10_000;
+
+	private Gson gson;
+	private List<ROI> rois;
+	private List<byte[]> encoded;
+	private List<String> json;
+
+	@Setup
+	public void setup() {
+		gson = GsonTools.getInstance();
+		rois = new ArrayList<>();
+		encoded = new ArrayList<>();
+		json = new ArrayList<>();
+		for (var detection : BenchmarkData.createDetections(100L, N_ROIS, 20_000)) {
+			var roi = detection.getROI();
+			rois.add(roi);
+			encoded.add(GeometryCodec.encode(roi));
+			json.add(gson.toJson(roi, ROI.class));
+		}
+	}
+
+	@Benchmark
+	public void encodeCodec(Blackhole bh) {
+		for (var roi : rois)
+			bh.consume(GeometryCodec.encode(roi));
+	}
+
+	@Benchmark
+	public void decodeCodec(Blackhole bh) throws IOException {
+		for (var bytes : encoded)
+			bh.consume(GeometryCodec.decodeROI(bytes));
+	}
+
+	@Benchmark
+	public void encodeGeoJSON(Blackhole bh) {
+		for (var roi : rois)
+			bh.consume(gson.toJson(roi, ROI.class));
+	}
+
+	@Benchmark
+	public void decodeGeoJSON(Blackhole bh) {
+		for (var s : json)
+			bh.consume(gson.fromJson(s, ROI.class));
+	}
+
+}
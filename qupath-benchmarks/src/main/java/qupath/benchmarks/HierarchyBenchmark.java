@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import qupath.lib.objects.PathDetectionObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.ROIs;
+
+/**
+ * Benchmarks for adding objects to a {@link PathObjectHierarchy} and querying them by region.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HierarchyBenchmark {
+
+	private static final double IMAGE_SIZE = 20_000;
+	private static final int ANNOTATION_GRID = 4;
+
+	@Param({"10000", "100000"})
+	private int nObjects;
+
+	private List<PathObject> annotations;
+	private List<PathObject> detections;
+	private PathObjectHierarchy hierarchy;
+	private List<ImageRegion> regions;
+
+	private PathObjectHierarchy insertHierarchy;
+	private List<PathObject> insertDetections;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		annotations = createAnnotations();
+		detections = BenchmarkData.createDetections(100L, nObjects, IMAGE_SIZE);
+		hierarchy = new PathObjectHierarchy();
+		hierarchy.insertPathObjects(annotations);
+		hierarchy.insertPathObjects(detections);
+
+		var rand = new Random(200L);
+		regions = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			int size = 256 + rand.nextInt(2048);
+			regions.add(ImageRegion.createInstance(
+					rand.nextInt((int)IMAGE_SIZE - size), rand.nextInt((int)IMAGE_SIZE - size), size, size, 0, 0));
+		}
+	}
+
+	/**
+	 * Each insertion needs new objects and a new hierarchy, since objects can only have one parent.
+	 */
+	@Setup(Level.Invocation)
+	public void setupInsert() {
+		insertHierarchy = new PathObjectHierarchy();
+		insertHierarchy.insertPathObjects(createAnnotations());
+		insertDetections = new ArrayList<>(detections.size());
+		for (var detection : detections)
+			insertDetections.add(PathObjects.createDetectionObject(detection.getROI()));
+	}
+
+	private static List<PathObject> createAnnotations() {
+		var list = new ArrayList<PathObject>();
+		double size = IMAGE_SIZE / ANNOTATION_GRID;
+		for (int y = 0; y < ANNOTATION_GRID; y++) {
+			for (int x = 0; x < ANNOTATION_GRID; x++) {
+				var roi = ROIs.createEllipseROI(x * size, y * size, size, size, ImagePlane.getDefaultPlane());
+				list.add(PathObjects.createAnnotationObject(roi));
+			}
+		}
+		return list;
+	}
+
+	@Benchmark
+	public boolean insertPathObjects() {
+		return insertHierarchy.insertPathObjects(insertDetections);
+	}
+
+	@Benchmark
+	public void getObjectsForRegion(Blackhole bh) {
+		var list = new ArrayList<PathObject>();
+		for (var region : regions) {
+			list.clear();
+			hierarchy.getObjectsForRegion(PathDetectionObject.class, region, list);
+			bh.consume(list.size());
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import qupath.opencv.ops.ImageOp;
+import qupath.opencv.ops.ImageOps;
+import qupath.opencv.tools.OpenCVTools;
+
+/**
+ * Benchmarks for chains of {@link ImageOp}s, as commonly used to compute features for pixel classification.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageOpsBenchmark {
+
+	@Param({"smooth", "normalize", "rank"})
+	private String chain;
+
+	@Param({"512", "1024"})
+	private int size;
+
+	private Mat input;
+	private ImageOp op;
+
+	@Setup
+	public void setup() {
+		input = new Mat(size, size, opencv_core.CV_32FC3, Scalar.all(100.0));
+		OpenCVTools.addNoise(input, 0, 30);
+		switch (chain) {
+		case "smooth":
+			op = ImageOps.Core.sequential(
+					ImageOps.Filters.gaussianBlur(2.0),
+					ImageOps.Core.multiply(0.5),
+					ImageOps.Core.log());
+			break;
+		case "normalize":
+			op = ImageOps.Core.sequential(
+					ImageOps.Normalize.percentile(1, 99),
+					ImageOps.Channels.sum(),
+					ImageOps.Threshold.threshold(1.5));
+			break;
+		case "rank":
+			op = ImageOps.Core.sequential(
+					ImageOps.Filters.median(2),
+					ImageOps.Filters.sum(2));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown chain " + chain);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		input.close();
+	}
+
+	/**
+	 * Ops may modify their input, so each invocation is applied to a copy.
+	 * @return
+	 */
+	@Benchmark
+	public double apply() {
+		var mat = input.clone();
+		var output = op.apply(mat);
+		double result = output.rows();
+		output.close();
+		mat.close();
+		return result;
+	}
+
+}
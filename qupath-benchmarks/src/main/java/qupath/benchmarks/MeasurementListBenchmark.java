@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import qupath.lib.measurements.MeasurementList;
+import qupath.lib.measurements.MeasurementList.MeasurementListType;
+import qupath.lib.measurements.MeasurementListFactory;
+
+/**
+ * Benchmarks for adding and retrieving measurements by name.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementListBenchmark {
+
+	@Param({"DOUBLE", "FLOAT", "GENERAL"})
+	private MeasurementListType type;
+
+	@Param({"50"})
+	private int nMeasurements;
+
+	private String[] names;
+	private MeasurementList list;
+
+	@Setup
+	public void setup() {
+		names = new String[nMeasurements];
+		for (int i = 0; i < nMeasurements; i++)
+			names[i] = "Measurement " + i;
+		list = createList();
+	}
+
+	private MeasurementList createList() {
+		var list = MeasurementListFactory.createMeasurementList(nMeasurements, type);
+		for (int i = 0; i < names.length; i++)
+			list.putMeasurement(names[i], i);
+		list.close();
+		return list;
+	}
+
+	@Benchmark
+	public MeasurementList put() {
+		return createList();
+	}
+
+	@Benchmark
+	public MeasurementList update() {
+		for (int i = 0; i < names.length; i++)
+			list.putMeasurement(names[i], i * 2);
+		return list;
+	}
+
+	@Benchmark
+	public double get() {
+		double sum = 0;
+		for (var name : names)
+			sum += list.getMeasurementValue(name);
+		return sum;
+	}
+
+}
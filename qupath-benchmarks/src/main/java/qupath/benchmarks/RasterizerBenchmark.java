@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.roi.ScanlineRasterizer;
+
+/**
+ * Benchmarks comparing {@link ScanlineRasterizer} with Java2D for painting labeled image tiles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RasterizerBenchmark {
+
+	private static final int TILE_SIZE = 1024;
+
+	private List<PathObject> detections;
+	private ScanlineRasterizer rasterizer;
+	private BufferedImage img;
+
+	@Setup
+	public void setup() {
+		detections = BenchmarkData.createDetections(100L, 5000, TILE_SIZE);
+		rasterizer = new ScanlineRasterizer(TILE_SIZE, TILE_SIZE);
+		img = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+	}
+
+	@Benchmark
+	public byte[] paintScanline() {
+		var pixels = new byte[TILE_SIZE * TILE_SIZE];
+		int label = 1;
+		for (var detection : detections)
+			rasterizer.paint(detection.getROI(), 1, pixels, (label++ % 255) + 1);
+		return pixels;
+	}
+
+	@Benchmark
+	public byte[] paintJava2D() {
+		var g2d = img.createGraphics();
+		g2d.setBackground(Color.BLACK);
+		g2d.clearRect(0, 0, TILE_SIZE, TILE_SIZE);
+		int label = 1;
+		for (var detection : detections) {
+			int value = (label++ % 255) + 1;
+			g2d.setColor(new Color(value, value, value));
+			g2d.fill(detection.getROI().getShape());
+		}
+		g2d.dispose();
+		return ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+	}
+
+}
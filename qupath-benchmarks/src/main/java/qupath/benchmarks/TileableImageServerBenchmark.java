@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import qupath.lib.images.servers.AbstractTileableImageServer;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Benchmarks for requesting regions from an {@link AbstractTileableImageServer}, which requires tiles to be
+ * requested and stitched together.
+ * <p>
+ * A synthetic server is used, which generates tiles quickly on demand. No tile cache is set, so that each
+ * request needs to read all its tiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TileableImageServerBenchmark {
+
+	@Param({"1.0", "4.0"})
+	private double downsample;
+
+	@Param({"2048"})
+	private int outputSize;
+
+	private SyntheticImageServer server;
+	private RegionRequest request;
+
+	@Setup
+	public void setup() {
+		server = new SyntheticImageServer(50_000, 40_000, 256);
+		int size = (int)Math.round(outputSize * downsample);
+		// Use an offset that doesn't align with tile boundaries
+		request = RegionRequest.createInstance(server.getPath(), downsample, 1000, 2000, size, size);
+	}
+
+	@Benchmark
+	public BufferedImage readBufferedImage() throws IOException {
+		return server.readBufferedImage(request);
+	}
+
+
+	/**
+	 * RGB image server that generates a simple pattern for each tile.
+	 */
+	static class SyntheticImageServer extends AbstractTileableImageServer {
+
+		private final ImageServerMetadata metadata;
+
+		SyntheticImageServer(int width, int height, int tileSize) {
+			metadata = new ImageServerMetadata.Builder()
+					.width(width)
+					.height(height)
+					.name("Synthetic")
+					.preferredTileSize(tileSize, tileSize)
+					.levelsFromDownsamples(1.0, 4.0, 16.0, 64.0)
+					.rgb(true)
+					.pixelType(PixelType.UINT8)
+					.channels(ImageChannel.getDefaultRGBChannels())
+					.build();
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public String getServerType() {
+			return "Synthetic benchmark server";
+		}
+
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return metadata;
+		}
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			int w = tileRequest.getTileWidth();
+			int h = tileRequest.getTileHeight();
+			var img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+			int x0 = tileRequest.getTileX();
+			int y0 = tileRequest.getTileY();
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					int v = ((x0 + x) ^ (y0 + y)) & 0xFF;
+					pixels[y * w + x] = (v << 16) | ((255 - v) << 8) | 128;
+				}
+			}
+			return img;
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return null;
+		}
+
+		@Override
+		protected String createID() {
+			return "synthetic-" + metadata.getWidth() + "x" + metadata.getHeight();
+		}
+
+	}
+
+}
@@ -0,0 +1,228 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.objects.hierarchy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the spatial index used by {@link PathObjectTileCache} under concurrent reads and writes.
+ * <p>
+ * {@link ShardedSpatialIndex} is compared with a single {@link Quadtree} guarded by one read-write lock, 
+ * which is how the tile cache previously stored objects.
+ * Readers query random regions while writers remove and reinsert random items, so the number of items stays constant.
+ * <p>
+ * This is in the same package as {@link ShardedSpatialIndex} because the index is not public.
+ * The number of readers and writers can be changed with the JMH option {@code -tg}, e.g. {@code -tg 6,2}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+	private static final double IMAGE_SIZE = 20_000;
+	private static final double ITEM_SIZE = 20;
+	
+	/**
+	 * Maximum number of writers; each writer updates a distinct subset of items.
+	 */
+	private static final int MAX_WRITERS = 16;
+
+	@Param({"sharded", "lockedQuadtree"})
+	private String index;
+
+	@Param({"100000", "1000000"})
+	private int nObjects;
+
+	private SpatialIndex spatialIndex;
+	private List<Envelope> envelopes;
+	private List<Object> items;
+	private List<Envelope> regions;
+	
+	private final AtomicInteger writerCount = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		switch (index) {
+		case "sharded":
+			spatialIndex = new ShardedSpatialIndex(PathObjectTileCache.DEFAULT_TILE_SIZE);
+			break;
+		case "lockedQuadtree":
+			spatialIndex = new LockedQuadtree();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown index " + index);
+		}
+		
+		var rand = new Random(100L);
+		envelopes = new ArrayList<>(nObjects);
+		items = new ArrayList<>(nObjects);
+		for (int i = 0; i < nObjects; i++) {
+			double x = rand.nextDouble() * (IMAGE_SIZE - ITEM_SIZE);
+			double y = rand.nextDouble() * (IMAGE_SIZE - ITEM_SIZE);
+			var envelope = new Envelope(x, x + ITEM_SIZE, y, y + ITEM_SIZE);
+			var item = Integer.valueOf(i);
+			envelopes.add(envelope);
+			items.add(item);
+			spatialIndex.insert(envelope, item);
+		}
+		
+		regions = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			double size = 256 + rand.nextInt(2048);
+			double x = rand.nextDouble() * (IMAGE_SIZE - size);
+			double y = rand.nextDouble() * (IMAGE_SIZE - size);
+			regions.add(new Envelope(x, x + size, y, y + size));
+		}
+	}
+	
+	/**
+	 * Per-thread state for readers.
+	 */
+	@State(Scope.Thread)
+	public static class ReaderState {
+		
+		private final Random rand = new Random(Thread.currentThread().getId());
+		
+	}
+	
+	/**
+	 * Per-thread state for writers.
+	 * Each writer only updates items with the same index modulo {@link #MAX_WRITERS}, 
+	 * so that two writers never remove and reinsert the same item at the same time.
+	 */
+	@State(Scope.Thread)
+	public static class WriterState {
+		
+		private final Random rand = new Random(Thread.currentThread().getId());
+		private int offset;
+		
+		@Setup(Level.Trial)
+		public void setup(SpatialIndexBenchmark benchmark) {
+			offset = benchmark.writerCount.getAndIncrement();
+			if (offset >= MAX_WRITERS)
+				throw new IllegalStateException("At most " + MAX_WRITERS + " writers are supported");
+		}
+		
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public void query(ReaderState state, Blackhole bh) {
+		var region = regions.get(state.rand.nextInt(regions.size()));
+		spatialIndex.query(region, item -> bh.consume(item));
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public boolean update(WriterState state) {
+		int n = (items.size() - state.offset - 1) / MAX_WRITERS + 1;
+		int i = state.rand.nextInt(n) * MAX_WRITERS + state.offset;
+		var envelope = envelopes.get(i);
+		var item = items.get(i);
+		boolean removed = spatialIndex.remove(envelope, item);
+		spatialIndex.insert(envelope, item);
+		return removed;
+	}
+	
+	
+	/**
+	 * A {@link Quadtree} guarded by a single read-write lock.
+	 */
+	static class LockedQuadtree implements SpatialIndex {
+		
+		private final Quadtree quadtree = new Quadtree();
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+		@Override
+		public void insert(Envelope itemEnv, Object item) {
+			lock.writeLock().lock();
+			try {
+				quadtree.insert(itemEnv, item);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public List query(Envelope searchEnv) {
+			lock.readLock().lock();
+			try {
+				return quadtree.query(searchEnv);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public void query(Envelope searchEnv, ItemVisitor visitor) {
+			lock.readLock().lock();
+			try {
+				quadtree.query(searchEnv, visitor);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public boolean remove(Envelope itemEnv, Object item) {
+			lock.writeLock().lock();
+			try {
+				return quadtree.remove(itemEnv, item);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+	}
+
+}
@@ -24,11 +24,14 @@
 package qupath.lib.plugins.objects;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -192,6 +195,8 @@ public class SmoothFeaturesPlugin<T> extends AbstractInteractivePlugin<T> {
 	/**
 	 * Using the centroids of the ROIs within PathObjects, 'smooth' measurements by summing up the corresponding measurements of
 	 * nearby objects, weighted by centroid distance.
+	 * <p>
+	 * Objects are binned into a grid to find neighbours, and processed in parallel.
 	 * 
 	 * @param pathObjects
 	 * @param measurements
@@ -294,101 +299,160 @@ public class SmoothFeaturesPlugin<T> extends AbstractInteractivePlugin<T> {
 //			countsName = prefix + "Nearby detection counts";
 		}
 		
-		// Loop through objects, computing predominant class based on distance weighting
-		for (int i = 0; i < nObjects; i++) {
-			// Extract the current class index
-			PathObject pathObject = pathObjects.get(i);
-			PathClass pathClass = pathClasses[i];
-			MeasurementList measurementList = pathObject.getMeasurementList();
-			float[] mValues = measurementValues[i];
-			float[] mWeighted = measurementsWeighted[i];
-			float[] mDenominator = measurementDenominators[i];
-			
-			// Compute centroid distances
-			double xi = xCentroids[i];
-			double yi = yCentroids[i];
-			for (int j = i+1; j < nObjects; j++) {
-				
-				double xj = xCentroids[j];
-				double yj = yCentroids[j];
-				//				counter++;
-				// Break early if we are already too far away
-				if (Math.abs(xj - xi) > maxDist) {
-					break;
-				}
-
-				double distSq = (xj - xi)*(xj - xi) + (yj - yi)*(yj - yi);
-//				// Check if we are close enough to have an influence
-				if (distSq > maxDistSq || Double.isNaN(distSq))
-					continue;
-				
-				// Check if the class is ok, if check needed
-				if (withinClass && pathClass != pathClasses[j])
-					continue;
+		// Bin centroids into a grid, so that only nearby objects need to be checked.
+		// Each object gathers the contributions of its neighbours independently, so objects can be processed in parallel - 
+		// and, because neighbours are visited in sorted order, the sums are identical to those from a sequential pairwise loop.
+		var grid = new CentroidGrid(xCentroids, yCentroids, maxDist + 1);
+		grid.getCells().parallelStream().forEach(cell -> {
+			for (int i : cell) {
+				PathObject pathObject = pathObjects.get(i);
+				PathClass pathClass = pathClasses[i];
+				MeasurementList measurementList = pathObject.getMeasurementList();
+				float[] mValues = measurementValues[i];
+				float[] mWeighted = measurementsWeighted[i];
+				float[] mDenominator = measurementDenominators[i];
 				
-				// Update the counts, if close enough
-				if (distSq < fwhmPixels2) {
-					nearbyDetectionCounts[i]++;
-					nearbyDetectionCounts[j]++;
-				}
-
-				// Update the class weights for both objects currently being tested
-				// Compute weight based on centroid distances
-//				double weight = Math.exp(-distSq/sigma2);
-				double weight = distanceWeights[(int)(Math.sqrt(distSq) + .5)];// * pathObjects.get(j).getClassProbability();
-				float [] temp = measurementValues[j];
-				float [] tempWeighted = measurementsWeighted[j];
-				float [] tempDenominator = measurementDenominators[j];
-				for (int ind = 0; ind < measurements.size(); ind++) {
-					float tempVal = temp[ind];
-					if (Float.isNaN(tempVal))
+				// Compute centroid distances
+				double xi = xCentroids[i];
+				double yi = yCentroids[i];
+				for (int j : grid.getCandidates(xi, yi)) {
+					if (j == i)
+						continue;
+					
+					double xj = xCentroids[j];
+					double yj = yCentroids[j];
+					double distSq = (xj - xi)*(xj - xi) + (yj - yi)*(yj - yi);
+					// Check if we are close enough to have an influence
+					if (distSq > maxDistSq || Double.isNaN(distSq))
 						continue;
-					mWeighted[ind] += tempVal * weight;
-					mDenominator[ind] += weight;
 					
-					float tempVal2 = mValues[ind];
-					if (Float.isNaN(tempVal2))
+					// Check if the class is ok, if check needed
+					if (withinClass && pathClass != pathClasses[j])
 						continue;
-					tempWeighted[ind] += tempVal2 * weight;
-					tempDenominator[ind] += weight;
+					
+					// Update the counts, if close enough
+					if (distSq < fwhmPixels2)
+						nearbyDetectionCounts[i]++;
+					
+					// Compute weight based on centroid distances
+					double weight = distanceWeights[(int)(Math.sqrt(distSq) + .5)];
+					float[] temp = measurementValues[j];
+					for (int ind = 0; ind < measurements.size(); ind++) {
+						float tempVal = temp[ind];
+						if (Float.isNaN(tempVal))
+							continue;
+						// Values from objects earlier in the sort order are only used if this object's value is valid
+						// (this matches the behavior when pairs were updated together)
+						if (j < i && Float.isNaN(mValues[ind]))
+							continue;
+						mWeighted[ind] += tempVal * weight;
+						mDenominator[ind] += weight;
+					}
 				}
-			}
-			
-			// Store the measurements
-			int ind = 0;
-			float maxDenominator = Float.NEGATIVE_INFINITY;
-			for (String name : measurements) {
-//				if (name.contains(" - Smoothed (FWHM ") || name.startsWith("Smoothed denominator (local density, ") || name.startsWith("Nearby detection counts"))
-//					continue;
-				float denominator = mDenominator[ind];
-				if (denominator > maxDenominator)
-					maxDenominator = denominator;
 				
-				String nameToAdd = prefix + name + postfix;
-				measurementList.putMeasurement(nameToAdd, mWeighted[ind] / denominator);
-				
-//				measurementsAdded.add(nameToAdd);
-//				measurementList.putMeasurement(name + " - weighted sum", mWeighted[ind]); // TODO: Support optionally providing weighted sums
-				
-//				measurementList.addMeasurement(name + " - smoothed", mWeighted[ind] / mDenominator[ind]);
-				ind++;
-			}
-			if (pathObject instanceof PathDetectionObject && denomName != null) {
-				measurementList.putMeasurement(denomName, maxDenominator);
-//				measurementsAdded.add(denomName);
-			}
-			if (pathObject instanceof PathDetectionObject && countsName != null) {
-				measurementList.putMeasurement(countsName, nearbyDetectionCounts[i]);
-//				measurementsAdded.add(countsName);
+				// Store the measurements
+				int ind = 0;
+				float maxDenominator = Float.NEGATIVE_INFINITY;
+				for (String name : measurements) {
+					float denominator = mDenominator[ind];
+					if (denominator > maxDenominator)
+						maxDenominator = denominator;
+					
+					String nameToAdd = prefix + name + postfix;
+					measurementList.putMeasurement(nameToAdd, mWeighted[ind] / denominator);
+					ind++;
+				}
+				if (pathObject instanceof PathDetectionObject && denomName != null) {
+					measurementList.putMeasurement(denomName, maxDenominator);
+				}
+				if (pathObject instanceof PathDetectionObject && countsName != null) {
+					measurementList.putMeasurement(countsName, nearbyDetectionCounts[i]);
+				}
+				measurementList.close();
 			}
-			measurementList.close();
-		}
+		});
 		
 		System.currentTimeMillis();
 		
 //		return measurementsAdded;
 	}
 
+	/**
+	 * Uniform grid for finding centroids that are close to one another.
+	 */
+	private static class CentroidGrid {
+		
+		private final double cellSize;
+		// Object indices for each cell, in ascending order
+		private final Map<Long, int[]> cells = new HashMap<>();
+		
+		CentroidGrid(float[] xCentroids, float[] yCentroids, double cellSize) {
+			this.cellSize = cellSize;
+			int n = xCentroids.length;
+			long[] keys = new long[n];
+			Map<Long, int[]> counts = new HashMap<>();
+			for (int i = 0; i < n; i++) {
+				keys[i] = getKey(xCentroids[i], yCentroids[i]);
+				counts.computeIfAbsent(keys[i], k -> new int[1])[0]++;
+			}
+			for (var entry : counts.entrySet()) {
+				cells.put(entry.getKey(), new int[entry.getValue()[0]]);
+				entry.getValue()[0] = 0;
+			}
+			for (int i = 0; i < n; i++) {
+				int[] count = counts.get(keys[i]);
+				cells.get(keys[i])[count[0]++] = i;
+			}
+		}
+		
+		private long getKey(double x, double y) {
+			return getKey((int)Math.floor(x / cellSize), (int)Math.floor(y / cellSize));
+		}
+		
+		private static long getKey(int cellX, int cellY) {
+			return ((long)cellX << 32) | (cellY & 0xFFFFFFFFL);
+		}
+		
+		Collection<int[]> getCells() {
+			return cells.values();
+		}
+		
+		/**
+		 * Get the indices of all objects in the cell containing the specified point, and the cells surrounding it.
+		 * Any object within cellSize of the point will be included.
+		 * @param x
+		 * @param y
+		 * @return object indices, in ascending order
+		 */
+		int[] getCandidates(double x, double y) {
+			if (Double.isNaN(x) || Double.isNaN(y))
+				return new int[0];
+			int cellX = (int)Math.floor(x / cellSize);
+			int cellY = (int)Math.floor(y / cellSize);
+			int[][] neighbors = new int[9][];
+			int n = 0;
+			int k = 0;
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					int[] cell = cells.get(getKey(cellX + dx, cellY + dy));
+					if (cell != null) {
+						neighbors[k++] = cell;
+						n += cell.length;
+					}
+				}
+			}
+			int[] candidates = new int[n];
+			n = 0;
+			for (int c = 0; c < k; c++) {
+				System.arraycopy(neighbors[c], 0, candidates, n, neighbors[c].length);
+				n += neighbors[c].length;
+			}
+			Arrays.sort(candidates);
+			return candidates;
+		}
+		
+	}
+	
 	@Override
 	public ParameterList getDefaultParameterList(final ImageData<T> imageData) {
 		ImageServer<? extends T> server = imageData.getServer();
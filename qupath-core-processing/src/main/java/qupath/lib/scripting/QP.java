@@ -182,12 +182,12 @@ public class QP {
 	/**
 	 * Store ImageData accessible to the script thread
 	 */
-	private static Map<Thread, ImageData<BufferedImage>> batchImageData = new WeakHashMap<>();
+	private static Map<Thread, ImageData<BufferedImage>> batchImageData = Collections.synchronizedMap(new WeakHashMap<>());
 
 	/**
 	 * Store Project accessible to the script thread
 	 */
-	private static Map<Thread, Project<BufferedImage>> batchProject = new WeakHashMap<>();
+	private static Map<Thread, Project<BufferedImage>> batchProject = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	/**
 	 * Placeholder for the path to the current project.
@@ -28,6 +28,12 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bytedeco.javacpp.indexer.FloatIndexer;
 import org.bytedeco.javacpp.indexer.IntIndexer;
@@ -41,13 +47,16 @@ import com.google.common.collect.Lists;
 import qupath.lib.classifiers.object.AbstractObjectClassifier;
 import qupath.lib.classifiers.object.ObjectClassifier;
 import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.ImageData;
+import qupath.lib.metrics.Metrics;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectFilter;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.classes.PathClassFactory;
 import qupath.lib.objects.classes.PathClassTools;
 import qupath.lib.objects.classes.Reclassifier;
+import qupath.lib.plugins.AbstractPluginRunner;
 import qupath.opencv.ml.objects.features.FeatureExtractor;
 import qupath.opencv.ml.OpenCVClassifiers.OpenCVStatModel;
 
@@ -62,6 +71,19 @@ public class OpenCVMLClassifier<T> extends AbstractObjectClassifier<T> {
 	
 	private final static Logger logger = LoggerFactory.getLogger(OpenCVMLClassifier.class);
 	
+	/**
+	 * Minimum number of objects per chunk when classifying in parallel, to limit overhead.
+	 */
+	private static final int MIN_PARALLEL_CHUNK_SIZE = 1024;
+	
+	private static volatile int numThreads = 0;
+	
+	/**
+	 * Pool shared by all classifiers for parallel classification.
+	 * Threads are created as needed and released when idle; each call limits its own parallelism.
+	 */
+	private static final ExecutorService pool = Executors.newCachedThreadPool(ThreadTools.createThreadFactory("object-classifier-", true));
+	
 	/**
 	 * Extract features from objects
 	 */
@@ -146,122 +168,269 @@ public class OpenCVMLClassifier<T> extends AbstractObjectClassifier<T> {
 			return 0;
 		}
 		
-		int counter = 0;
-		
-		List<Reclassifier> reclassifiers = new ArrayList<>();
+		int nThreads = getNumThreads();
 
 		// Try not to have more than ~10 million entries per list
 		int subListSize = (int)Math.max(1, Math.min(pathObjects.size(), (1024 * 1024 * 10 / featureExtractor.nFeatures())));
+		// If we're working in parallel, make sure there are enough chunks to keep the threads busy
+		if (nThreads > 1)
+			subListSize = Math.min(subListSize, Math.max(MIN_PARALLEL_CHUNK_SIZE, (int)Math.ceil(pathObjects.size() / (nThreads * 4.0))));
 		
-		Mat samples = new Mat();
+		List<List<PathObject>> chunks = Lists.partition(new ArrayList<PathObject>(pathObjects), subListSize);
 		
-		Mat results = new Mat();
-		Mat probabilities = requestProbabilityEstimate ? new Mat() : null;
-
 		// Work through the objects in chunks
 		long startTime = System.currentTimeMillis();
+		List<List<Reclassifier>> chunkResults;
+		if (nThreads > 1 && chunks.size() > 1)
+			chunkResults = classifyChunksParallel(featureExtractor, classifier, pathClasses, imageData, chunks, resetExistingClass, requestProbabilityEstimate, Math.min(nThreads, chunks.size()));
+		else
+			chunkResults = classifyChunks(featureExtractor, classifier, pathClasses, imageData, chunks, resetExistingClass, requestProbabilityEstimate);
+		if (chunkResults == null) {
+			logger.warn("Classification interrupted - will not be applied");
+			return 0;
+		}
+		
+		long predictTime = System.currentTimeMillis() - startTime;
+		if (Metrics.isEnabled()) {
+			Metrics.counter("classifier.object.objects").increment(pathObjects.size());
+			Metrics.timer("classifier.object.predict").record(TimeUnit.MILLISECONDS.toNanos(predictTime));
+		}
+		logger.info("Prediction time: {} ms for {} objects ({} ns per object)",
+				predictTime, pathObjects.size(),
+				GeneralTools.formatNumber((double)predictTime/pathObjects.size() * 1000.0, 2));
+
+		// Apply classifications now, in the original order of the objects
+		for (var reclassifiers : chunkResults)
+			reclassifiers.stream().forEach(p -> p.apply());
+		return pathObjects.size();
+	}
+	
+	/**
+	 * Classify chunks of objects sequentially, on the calling thread.
+	 * @return a list of reclassifiers for each chunk, or null if the thread was interrupted
+	 */
+	private static <T> List<List<Reclassifier>> classifyChunks(
+			FeatureExtractor<T> featureExtractor,
+			OpenCVStatModel classifier,
+			List<PathClass> pathClasses,
+			ImageData<T> imageData,
+			List<List<PathObject>> chunks,
+			boolean resetExistingClass,
+			boolean requestProbabilityEstimate) {
+		
+		int nObjects = chunks.stream().mapToInt(List::size).sum();
+		long startTime = System.currentTimeMillis();
 		long lastTime = startTime;
 		int nComplete = 0;
-		for (var tempObjectList : Lists.partition(new ArrayList<>(pathObjects), subListSize)) {
-
-			if (Thread.interrupted()) {
-				logger.warn("Classification interrupted - will not be applied");
-				return 0;
+		List<List<Reclassifier>> results = new ArrayList<>();
+		try (var buffers = new ChunkBuffers(requestProbabilityEstimate)) {
+			for (var chunk : chunks) {
+				if (Thread.interrupted())
+					return null;
+				
+				results.add(classifyChunk(featureExtractor, classifier, pathClasses, imageData, chunk, resetExistingClass, buffers));
+				
+				// Possibly log time taken
+				nComplete += chunk.size();
+				long intermediateTime = System.currentTimeMillis();
+				if (intermediateTime - lastTime > 1000L) {
+					logger.debug("Classified {}/{} objects in {} ms ({} ms per object, {}% complete)", nComplete, nObjects, 
+							(intermediateTime - startTime),
+							GeneralTools.formatNumber((intermediateTime - startTime)/(double)nComplete, 2),
+							GeneralTools.formatNumber(nComplete * 100.0 / nObjects, 1));
+					lastTime = intermediateTime;
+				}
 			}
-			
-			samples.create(tempObjectList.size(), featureExtractor.nFeatures(), opencv_core.CV_32FC1);
-			FloatBuffer buffer = samples.createBuffer();
-			featureExtractor.extractFeatures(imageData, tempObjectList, buffer);
-			
-			// Possibly log time taken
-			nComplete += tempObjectList.size();
-			long intermediateTime = System.currentTimeMillis();
-			if (intermediateTime - lastTime > 1000L) {
-				logger.debug("Calculated features for {}/{} objects in {} ms ({} ms per object, {}% complete)", nComplete, pathObjects.size(), 
-						(intermediateTime - startTime),
-						GeneralTools.formatNumber((intermediateTime - startTime)/(double)nComplete, 2),
-						GeneralTools.formatNumber(nComplete * 100.0 / pathObjects.size(), 1));
-				lastTime = startTime;
+		}
+		return results;
+	}
+	
+	/**
+	 * Classify chunks of objects in parallel.
+	 * Each worker extracts features and applies the prediction for one chunk at a time, using its own buffers, 
+	 * so that feature extraction for some chunks overlaps with prediction for others.
+	 * @return a list of reclassifiers for each chunk (in the same order as the chunks), or null if the thread was interrupted
+	 */
+	private static <T> List<List<Reclassifier>> classifyChunksParallel(
+			FeatureExtractor<T> featureExtractor,
+			OpenCVStatModel classifier,
+			List<PathClass> pathClasses,
+			ImageData<T> imageData,
+			List<List<PathObject>> chunks,
+			boolean resetExistingClass,
+			boolean requestProbabilityEstimate,
+			int nThreads) {
+		
+		logger.debug("Classifying {} chunks with {} threads", chunks.size(), nThreads);
+		int nChunks = chunks.size();
+		List<List<Reclassifier>> results = new ArrayList<>(Collections.nCopies(nChunks, null));
+		var nextChunk = new AtomicInteger();
+		// Submit one worker per thread, each taking chunks until none remain
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < nThreads; t++) {
+			futures.add(pool.submit(() -> {
+				try (var buffers = new ChunkBuffers(requestProbabilityEstimate)) {
+					int i;
+					while (!Thread.currentThread().isInterrupted() && (i = nextChunk.getAndIncrement()) < nChunks) {
+						results.set(i, classifyChunk(featureExtractor, classifier, pathClasses, imageData, chunks.get(i), resetExistingClass, buffers));
+					}
+				}
+			}));
+		}
+		try {
+			for (var future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					// Propagate errors (e.g. from feature extraction) as if classifying sequentially
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException)e.getCause();
+					throw new RuntimeException(e.getCause());
+				}
 			}
-			
-			boolean doMulticlass = classifier.supportsMulticlass();
-			double threshold = 0.5;
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			// Stop any remaining workers (e.g. after an error); each releases its own buffers
+			for (var future : futures)
+				future.cancel(true);
+		}
+	}
+	
+	/**
+	 * Classify a single chunk of objects.
+	 * @return a list of reclassifiers for the objects in the chunk (which may be empty if prediction failed)
+	 */
+	private static <T> List<Reclassifier> classifyChunk(
+			FeatureExtractor<T> featureExtractor,
+			OpenCVStatModel classifier,
+			List<PathClass> pathClasses,
+			ImageData<T> imageData,
+			List<PathObject> tempObjectList,
+			boolean resetExistingClass,
+			ChunkBuffers buffers) {
+		
+		var samples = buffers.samples;
+		var results = buffers.results;
+		var probabilities = buffers.probabilities;
+		
+		samples.create(tempObjectList.size(), featureExtractor.nFeatures(), opencv_core.CV_32FC1);
+		FloatBuffer buffer = samples.createBuffer();
+		featureExtractor.extractFeatures(imageData, tempObjectList, buffer);
+		
+		boolean doMulticlass = classifier.supportsMulticlass();
+		double threshold = 0.5;
 
-			try {
-				classifier.predict(samples, results, probabilities);
+		List<Reclassifier> reclassifiers = new ArrayList<>(tempObjectList.size());
+		try {
+			classifier.predict(samples, results, probabilities);
 
-				IntIndexer idxResults = results.createIndexer();
-				FloatIndexer idxProbabilities = null;
-				if (probabilities != null && !probabilities.empty())
-					idxProbabilities = probabilities.createIndexer();
+			IntIndexer idxResults = results.createIndexer();
+			FloatIndexer idxProbabilities = null;
+			if (probabilities != null && !probabilities.empty())
+				idxProbabilities = probabilities.createIndexer();
 
-				if (doMulticlass && idxProbabilities != null) {
-					// Use probabilities if we require multiclass outputs
-					long row = 0;
-					int nCols = (int)idxProbabilities.size(2); // Previously .cols()
-					List<String> classifications = new ArrayList<>();
-					for (var pathObject : tempObjectList) {
-						classifications.clear();
-						for (int col = 0; col < nCols; col++) {
-							double prob = idxProbabilities.get(row, col);
-							if (prob >= threshold) {
-								var pathClass = col >= pathClasses.size() ? null : pathClasses.get(col);
-								if (pathClass != null)
-									classifications.add(pathClass.getName());
-							}
+			if (doMulticlass && idxProbabilities != null) {
+				// Use probabilities if we require multiclass outputs
+				long row = 0;
+				int nCols = (int)idxProbabilities.size(2); // Previously .cols()
+				List<String> classifications = new ArrayList<>();
+				for (var pathObject : tempObjectList) {
+					classifications.clear();
+					for (int col = 0; col < nCols; col++) {
+						double prob = idxProbabilities.get(row, col);
+						if (prob >= threshold) {
+							var pathClass = col >= pathClasses.size() ? null : pathClasses.get(col);
+							if (pathClass != null)
+								classifications.add(pathClass.getName());
 						}
-						var pathClass = PathClassFactory.getPathClass(classifications);
-						if (PathClassTools.isIgnoredClass(pathClass)) {
-							pathClass = null;
-						}
-						if (!resetExistingClass) {
-							pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
-						}
-						reclassifiers.add(new Reclassifier(pathObject, pathClass, false));
-						row++;
 					}
-				} else {
-					// Use results (indexed values) if we do not require multiclass outputs
-					long row = 0;
-					for (var pathObject : tempObjectList) {
-						int prediction = idxResults.get(row);
-						var pathClass = pathClasses.get(prediction);
-						double probability = idxProbabilities == null ? Double.NaN : idxProbabilities.get(row, prediction);
-						if (PathClassTools.isIgnoredClass(pathClass)) {
-							pathClass = null;
-							probability = Double.NaN;
-						} 
-						if (!resetExistingClass) {
-							pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
-							probability = Double.NaN;
-						}
-						reclassifiers.add(new Reclassifier(pathObject, pathClass, true, probability));							
-						row++;
+					var pathClass = PathClassFactory.getPathClass(classifications);
+					if (PathClassTools.isIgnoredClass(pathClass)) {
+						pathClass = null;
 					}
+					if (!resetExistingClass) {
+						pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
+					}
+					reclassifiers.add(new Reclassifier(pathObject, pathClass, false));
+					row++;
+				}
+			} else {
+				// Use results (indexed values) if we do not require multiclass outputs
+				long row = 0;
+				for (var pathObject : tempObjectList) {
+					int prediction = idxResults.get(row);
+					var pathClass = pathClasses.get(prediction);
+					double probability = idxProbabilities == null ? Double.NaN : idxProbabilities.get(row, prediction);
+					if (PathClassTools.isIgnoredClass(pathClass)) {
+						pathClass = null;
+						probability = Double.NaN;
+					} 
+					if (!resetExistingClass) {
+						pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
+						probability = Double.NaN;
+					}
+					reclassifiers.add(new Reclassifier(pathObject, pathClass, true, probability));							
+					row++;
 				}
-				idxResults.release();
-				if (idxProbabilities != null)
-					idxProbabilities.release();
-			} catch (Exception e) {
-				logger.warn("Error with samples: {}", samples);
-				logger.error(e.getLocalizedMessage(), e);
 			}
-			counter += tempObjectList.size();
+			idxResults.release();
+			if (idxProbabilities != null)
+				idxProbabilities.release();
+		} catch (Exception e) {
+			logger.warn("Error with samples: {}", samples);
+			logger.error(e.getLocalizedMessage(), e);
+		}
+		return reclassifiers;
+	}
+	
+	/**
+	 * Mats used to classify a chunk, which may be reused for subsequent chunks on the same thread.
+	 */
+	private static class ChunkBuffers implements AutoCloseable {
+		
+		private final Mat samples = new Mat();
+		private final Mat results = new Mat();
+		private final Mat probabilities;
+		
+		ChunkBuffers(boolean requestProbabilityEstimate) {
+			probabilities = requestProbabilityEstimate ? new Mat() : null;
 		}
-		long predictTime = System.currentTimeMillis() - startTime;
-		logger.info("Prediction time: {} ms for {} objects ({} ns per object)",
-				predictTime, pathObjects.size(),
-				GeneralTools.formatNumber((double)predictTime/pathObjects.size() * 1000.0, 2));
-
-		samples.close();
-		results.close();
-		if (probabilities != null)
-			probabilities.close();
-
-		// Apply classifications now
-		reclassifiers.stream().forEach(p -> p.apply());
 
-		return counter;
+		@Override
+		public void close() {
+			samples.close();
+			results.close();
+			if (probabilities != null)
+				probabilities.close();
+		}
+		
+	}
+	
+	/**
+	 * Set the number of threads used when classifying objects.
+	 * Objects are classified in chunks; with more than one thread, features are extracted and predictions 
+	 * made for several chunks in parallel. The classifications are identical to those of sequential classification.
+	 * 
+	 * @param nThreads the number of threads; if &le; 0, the number requested for plugins will be used 
+	 *                 (see {@link AbstractPluginRunner#getNumThreadsRequested()})
+	 * @since 0.3
+	 */
+	public static void setNumThreads(int nThreads) {
+		numThreads = nThreads;
+	}
+	
+	/**
+	 * Get the number of threads that will be used when classifying objects.
+	 * @return
+	 * @see #setNumThreads(int)
+	 * @since 0.3
+	 */
+	public static int getNumThreads() {
+		int n = numThreads;
+		return n > 0 ? n : Math.max(1, AbstractPluginRunner.getNumThreadsRequested());
 	}
 	
 	@Override
@@ -188,7 +188,7 @@ public class Preprocessing {
 		private Mat eigenvalues = new Mat();
 
 		@JsonAdapter(OpenCVTypeAdapters.OpenCVTypeAdaptorFactory.class)
-		private transient Mat eigenvaluesSqrt;
+		private transient volatile Mat eigenvaluesSqrt;
 
 		private boolean normalize = true;
 
@@ -227,15 +227,7 @@ public class Preprocessing {
 		}
 
 		void doNormalize(Mat result) {
-			if (eigenvaluesSqrt == null) {
-				eigenvaluesSqrt = new Mat();
-				eigenvalues.copyTo(eigenvaluesSqrt);
-				opencv_core.add(eigenvaluesSqrt, Scalar.all(DEFAULT_EPSILON));
-				opencv_core.sqrt(eigenvaluesSqrt, eigenvaluesSqrt);
-				eigenvaluesSqrt.put(eigenvaluesSqrt.t());
-				//				eigenvaluesSqrt.convertTo(eigenvaluesSqrt, opencv_core.CV_64FC1);
-				//				eigenvaluesSqrt.put(opencv_core.divide(1.0, eigenvaluesSqrt));
-			}
+			var eigenvaluesSqrt = getEigenvaluesSqrt();
 			//			var indexer = result.createIndexer();
 			//			var before = indexer.getDouble(0L);
 
@@ -252,6 +244,22 @@ public class Preprocessing {
 			}
 		}
 
+		/**
+		 * Get the square root of the eigenvalues, computing these if necessary.
+		 * This is synchronized so that projection may be applied from multiple threads.
+		 */
+		private synchronized Mat getEigenvaluesSqrt() {
+			if (eigenvaluesSqrt == null) {
+				var mat = new Mat();
+				eigenvalues.copyTo(mat);
+				opencv_core.add(mat, Scalar.all(DEFAULT_EPSILON));
+				opencv_core.sqrt(mat, mat);
+				mat.put(mat.t());
+				eigenvaluesSqrt = mat;
+			}
+			return eigenvaluesSqrt;
+		}
+
 		@Override
 		public void close() throws Exception {
 			mean.close();
@@ -45,6 +45,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.awt.common.BufferedImageTools;
+import qupath.lib.classifiers.pixel.PixelClassificationImageServer;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerMetadata;
@@ -223,11 +224,17 @@ public class PixelClassificationMeasurementManager {
         
 
         // Try to get all cached tiles - if this fails, return quickly (can't calculate measurement)
+        // Where possible, use tiles from the shared classification cache directly (rather than copies)
         Map<TileRequest, BufferedImage> localCache = new HashMap<>();
         for (TileRequest request : requests) {
         	BufferedImage tile = null;
 			try {
-				tile = cachedOnly ? classifierServer.getCachedTile(request) : classifierServer.readBufferedImage(request.getRegionRequest());
+				if (cachedOnly)
+					tile = classifierServer.getCachedTile(request);
+				else if (classifierServer instanceof PixelClassificationImageServer)
+					tile = ((PixelClassificationImageServer)classifierServer).getClassifiedTile(request);
+				else
+					tile = classifierServer.readBufferedImage(request.getRegionRequest());
 			} catch (IOException e) {
 				logger.error("Error requesting tile " + request, e);
 			}
@@ -36,6 +36,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -844,7 +845,7 @@ public class ImageOps {
 
 		
 		@OpType("filter2d")
-		static class FilterOp extends PaddedOp {
+		static class FilterOp extends PaddedOp implements LocalOp {
 			
 			private Mat kernel;
 			
@@ -941,7 +942,7 @@ public class ImageOps {
 		
 		
 		@OpType("gaussian")
-		static class GaussianFilterOp extends PaddedOp {
+		static class GaussianFilterOp extends PaddedOp implements LocalOp {
 			
 			private double sigmaX, sigmaY;
 			
@@ -967,7 +968,7 @@ public class ImageOps {
 			
 		}
 		
-		static abstract class MorphOp extends PaddedOp {
+		static abstract class MorphOp extends PaddedOp implements LocalOp {
 			
 			private int radius;
 			private transient Mat kernel;
@@ -1009,7 +1010,7 @@ public class ImageOps {
 		
 		
 		@OpType("sum")
-		static class SumFilterOp extends PaddedOp {
+		static class SumFilterOp extends PaddedOp implements LocalOp {
 			
 			private int radius;
 			
@@ -1031,7 +1032,7 @@ public class ImageOps {
 		}
 		
 		@OpType("mean")
-		static class MeanFilterOp extends PaddedOp {
+		static class MeanFilterOp extends PaddedOp implements LocalOp {
 			
 			private int radius;
 			
@@ -1054,7 +1055,7 @@ public class ImageOps {
 		
 		
 		@OpType("variance")
-		static class VarianceFilterOp extends PaddedOp {
+		static class VarianceFilterOp extends PaddedOp implements LocalOp {
 			
 			private int radius;
 			
@@ -1077,7 +1078,7 @@ public class ImageOps {
 		
 		
 		@OpType("stddev")
-		static class StdDevFilterOp extends PaddedOp {
+		static class StdDevFilterOp extends PaddedOp implements LocalOp {
 			
 			private int radius;
 			
@@ -1100,7 +1101,7 @@ public class ImageOps {
 		
 	
 		@OpType("median")
-		static class MedianFilterOp extends PaddedOp {
+		static class MedianFilterOp extends PaddedOp implements LocalOp {
 			
 			private int radius;
 			
@@ -1186,7 +1187,7 @@ public class ImageOps {
 		}
 		
 		@OpType("fast-maxima")
-		static class FastMaximaOp extends PaddedOp {
+		static class FastMaximaOp extends PaddedOp implements LocalOp {
 			
 			private int radius;
 			private transient Mat kernel;
@@ -1218,7 +1219,7 @@ public class ImageOps {
 		}
 		
 		@OpType("fast-minima")
-		static class FastMinimaOp extends PaddedOp {
+		static class FastMinimaOp extends PaddedOp implements LocalOp {
 			
 			private int radius;
 			private transient Mat kernel;
@@ -1751,6 +1752,9 @@ public class ImageOps {
 		
 		/**
 		 * Apply a collection of ops sequentially, chaining the output of one op as the input for the next.
+		 * <p>
+		 * When the op is applied, consecutive element-wise ops (e.g. add, multiply, log) are fused so that they require 
+		 * only a single pass over the pixels, and padding is removed between neighborhood filters without copying.
 		 * @param ops
 		 * @return an op that represents the result of chaining the other ops together
 		 */
@@ -2220,6 +2224,209 @@ public class ImageOps {
 		}
 		
 		
+		/**
+		 * Fused form of a run of consecutive element-wise ops, applied in a single pass over the pixels 
+		 * without creating intermediate {@link Mat}s.
+		 * <p>
+		 * This is created when a {@link SequentialMultiOp} is compiled, and is never serialized.
+		 * Integer images are handled by applying the original ops, so that rounding and clipping are unchanged.
+		 */
+		static class FusedElementwiseOp implements ImageOp {
+			
+			private final List<ImageOp> ops;
+			private final List<ElementwiseStage> stages;
+			
+			FusedElementwiseOp(Collection<? extends ImageOp> ops) {
+				this.ops = List.copyOf(ops);
+				var stages = new ArrayList<ElementwiseStage>();
+				for (var op : ops) {
+					var stage = createStage(op);
+					int last = stages.size() - 1;
+					if (last >= 0 && stages.get(last).canCombine(stage))
+						stages.set(last, stages.get(last).combine(stage));
+					else
+						stages.add(stage);
+				}
+				this.stages = List.copyOf(stages);
+			}
+			
+			static boolean canFuse(ImageOp op) {
+				return op instanceof MultiplyOp || op instanceof DivideOp ||
+						op instanceof AddOp || op instanceof SubtractOp ||
+						op instanceof SqrtOp || op instanceof LogOp ||
+						op instanceof ExponentialOp || op instanceof PowerOp;
+			}
+			
+			private static ElementwiseStage createStage(ImageOp op) {
+				if (op instanceof MultiplyOp)
+					return ElementwiseStage.affine(((MultiplyOp)op).values, null);
+				if (op instanceof DivideOp)
+					return ElementwiseStage.affine(Arrays.stream(((DivideOp)op).values).map(v -> 1.0/v).toArray(), null);
+				if (op instanceof AddOp)
+					return ElementwiseStage.affine(null, ((AddOp)op).values);
+				if (op instanceof SubtractOp)
+					return ElementwiseStage.affine(null, Arrays.stream(((SubtractOp)op).values).map(v -> -v).toArray());
+				if (op instanceof SqrtOp)
+					return ElementwiseStage.unary(Math::sqrt);
+				// Use FastMath for consistency with the unfused ops
+				if (op instanceof LogOp)
+					return ElementwiseStage.unary(FastMath::log);
+				if (op instanceof ExponentialOp)
+					return ElementwiseStage.unary(Math::exp);
+				if (op instanceof PowerOp) {
+					double power = ((PowerOp)op).power;
+					return ElementwiseStage.unary(d -> FastMath.pow(d, power));
+				}
+				throw new IllegalArgumentException("Unable to fuse op " + op);
+			}
+			
+			@Override
+			public Mat apply(Mat input) {
+				int depth = input.depth();
+				if (depth != opencv_core.CV_32F && depth != opencv_core.CV_64F) {
+					for (var op : ops)
+						input = op.apply(input);
+					return input;
+				}
+				int nChannels = input.channels();
+				for (var stage : stages)
+					stage.checkChannels(nChannels);
+				
+				// A single scale and offset can be applied in place by OpenCV
+				if (stages.size() == 1 && stages.get(0).isUniformAffine()) {
+					var stage = stages.get(0);
+					input.convertTo(input, input.type(), stage.scale[0], stage.offset[0]);
+					return input;
+				}
+				
+				// Otherwise, apply all stages to one row at a time
+				int rows = input.rows();
+				int n = input.cols() * nChannels;
+				var values = new double[n];
+				if (depth == opencv_core.CV_32F) {
+					var row = new float[n];
+					FloatIndexer idx = input.createIndexer();
+					for (long r = 0; r < rows; r++) {
+						idx.get(r, row);
+						for (int i = 0; i < n; i++)
+							values[i] = row[i];
+						for (var stage : stages)
+							stage.apply(values, nChannels);
+						for (int i = 0; i < n; i++)
+							row[i] = (float)values[i];
+						idx.put(r, row);
+					}
+					idx.release();
+				} else {
+					DoubleIndexer idx = input.createIndexer();
+					for (long r = 0; r < rows; r++) {
+						idx.get(r, values);
+						for (var stage : stages)
+							stage.apply(values, nChannels);
+						idx.put(r, values);
+					}
+					idx.release();
+				}
+				return input;
+			}
+			
+		}
+		
+		/**
+		 * A single step within a {@link FusedElementwiseOp}.
+		 * This is either an affine transform (with a scale and offset per channel, or shared by all channels), 
+		 * or a function applied to every value.
+		 */
+		private static class ElementwiseStage {
+			
+			private final double[] scale;
+			private final double[] offset;
+			private final DoubleUnaryOperator fun;
+			
+			private ElementwiseStage(double[] scale, double[] offset, DoubleUnaryOperator fun) {
+				this.scale = scale;
+				this.offset = offset;
+				this.fun = fun;
+			}
+			
+			static ElementwiseStage affine(double[] scale, double[] offset) {
+				if (scale == null) {
+					scale = new double[offset.length];
+					Arrays.fill(scale, 1.0);
+				}
+				if (offset == null)
+					offset = new double[scale.length];
+				return new ElementwiseStage(scale, offset, null);
+			}
+			
+			static ElementwiseStage unary(DoubleUnaryOperator fun) {
+				return new ElementwiseStage(null, null, fun);
+			}
+			
+			boolean isAffine() {
+				return fun == null;
+			}
+			
+			boolean isUniformAffine() {
+				return isAffine() && scale.length == 1;
+			}
+			
+			boolean canCombine(ElementwiseStage next) {
+				if (!isAffine() || !next.isAffine())
+					return false;
+				int n = scale.length;
+				int nNext = next.scale.length;
+				if (n == 0 || nNext == 0)
+					return false;
+				return n == nNext || n == 1 || nNext == 1;
+			}
+			
+			/**
+			 * Combine with the following affine stage, i.e. {@code (x * s1 + o1) * s2 + o2}.
+			 * @param next
+			 * @return
+			 */
+			ElementwiseStage combine(ElementwiseStage next) {
+				int n = Math.max(scale.length, next.scale.length);
+				var scale2 = new double[n];
+				var offset2 = new double[n];
+				for (int c = 0; c < n; c++) {
+					double s1 = scale[Math.min(c, scale.length-1)];
+					double o1 = offset[Math.min(c, offset.length-1)];
+					double s2 = next.scale[Math.min(c, next.scale.length-1)];
+					double o2 = next.offset[Math.min(c, next.offset.length-1)];
+					scale2[c] = s1 * s2;
+					offset2[c] = o1 * s2 + o2;
+				}
+				return new ElementwiseStage(scale2, offset2, null);
+			}
+			
+			void checkChannels(int nChannels) {
+				if (isAffine() && scale.length != 1 && scale.length != nChannels)
+					throw new IllegalArgumentException("Element-wise op requires " + scale.length + " channels, but Mat has " + nChannels);
+			}
+			
+			void apply(double[] values, int nChannels) {
+				int n = values.length;
+				if (fun != null) {
+					for (int i = 0; i < n; i++)
+						values[i] = fun.applyAsDouble(values[i]);
+				} else if (scale.length == 1) {
+					double s = scale[0];
+					double o = offset[0];
+					for (int i = 0; i < n; i++)
+						values[i] = values[i] * s + o;
+				} else {
+					for (int i = 0; i < n; i++) {
+						int c = i % nChannels;
+						values[i] = values[i] * scale[c] + offset[c];
+					}
+				}
+			}
+			
+		}
+		
+		
 		@OpType("sequential")
 		static class SequentialMultiOp extends PaddedOp {
 			
@@ -2227,6 +2434,8 @@ public class ImageOps {
 			
 			private List<ImageOp> ops;
 			
+			private transient List<ImageOp> compiledOps;
+			
 			SequentialMultiOp(Collection<? extends ImageOp> ops) {
 				this.ops = new ArrayList<>(ops);
 			}
@@ -2241,11 +2450,67 @@ public class ImageOps {
 
 			@Override
 			public Mat apply(Mat input) {
-				for (var t : ops)
-					input = t.apply(input);
+				var compiled = getCompiledOps();
+				int n = compiled.size();
+				for (int i = 0; i < n; i++) {
+					var t = compiled.get(i);
+					if (i < n - 1 && canStripPaddingView(t, compiled.get(i+1))) {
+						// The next op will remove its own padding later, so we can avoid copying pixels here
+						input = stripPaddingView(((PaddedOp)t).transformPadded(input), t.getPadding());
+					} else
+						input = t.apply(input);
+				}
 				return input;
 			}
 			
+			private static boolean canStripPaddingView(ImageOp op, ImageOp nextOp) {
+				return op instanceof LocalOp && op instanceof PaddedOp &&
+						nextOp instanceof LocalOp && !nextOp.getPadding().isEmpty();
+			}
+			
+			private List<ImageOp> getCompiledOps() {
+				if (compiledOps == null)
+					compiledOps = compile(ops);
+				return compiledOps;
+			}
+			
+			/**
+			 * Create an equivalent list of ops that can be applied more efficiently, by flattening 
+			 * nested sequential ops and fusing runs of element-wise ops.
+			 * @param ops
+			 * @return
+			 */
+			static List<ImageOp> compile(Collection<? extends ImageOp> ops) {
+				var flattened = new ArrayList<ImageOp>();
+				flatten(ops, flattened);
+				var compiled = new ArrayList<ImageOp>();
+				var run = new ArrayList<ImageOp>();
+				for (var op : flattened) {
+					if (FusedElementwiseOp.canFuse(op)) {
+						run.add(op);
+						continue;
+					}
+					if (!run.isEmpty()) {
+						compiled.add(new FusedElementwiseOp(run));
+						run.clear();
+					}
+					compiled.add(op);
+				}
+				if (!run.isEmpty())
+					compiled.add(new FusedElementwiseOp(run));
+				logger.trace("Compiled {} ops to {} ops", flattened.size(), compiled.size());
+				return List.copyOf(compiled);
+			}
+			
+			private static void flatten(Collection<? extends ImageOp> ops, List<ImageOp> output) {
+				for (var op : ops) {
+					if (op instanceof SequentialMultiOp)
+						flatten(((SequentialMultiOp)op).ops, output);
+					else if (!(op instanceof IdentityOp))
+						output.add(op);
+				}
+			}
+			
 			/**
 			 * Should not be called!
 			 */
@@ -2829,6 +3094,15 @@ public class ImageOps {
 		
 	}
 	
+	/**
+	 * Marker interface for padded ops where each output pixel depends only upon input pixels within the padding,
+	 * and which can be applied to a {@link Mat} that is a view of a larger image.
+	 * <p>
+	 * This means that the padding of the preceding op does not need to be removed by copying pixels,
+	 * because the {@link LocalOp} will remove its own padding afterwards.
+	 */
+	interface LocalOp extends ImageOp {}
+	
 	
 	static Mat stripPadding(Mat mat, Padding padding) {
 		if (padding.isEmpty())
@@ -2840,6 +3114,21 @@ public class ImageOps {
 				mat.cols()-padding.getXSum(), mat.rows()-padding.getYSum())).clone();
 	}
 	
+	/**
+	 * Remove padding by returning a view of the central region, without copying the pixels.
+	 * The result is generally not continuous.
+	 * @param mat
+	 * @param padding
+	 * @return
+	 */
+	static Mat stripPaddingView(Mat mat, Padding padding) {
+		if (padding.isEmpty())
+			return mat;
+		return mat.apply(new Rect(
+				padding.getX1(), padding.getY1(),
+				mat.cols()-padding.getXSum(), mat.rows()-padding.getYSum()));
+	}
+	
 	
 	
 	static Padding getDefaultGaussianPadding(double sigmaX, double sigmaY) {
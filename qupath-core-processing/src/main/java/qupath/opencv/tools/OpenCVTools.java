@@ -27,6 +27,8 @@ import java.awt.image.BandedSampleModel;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
@@ -785,44 +787,87 @@ public class OpenCVTools {
 	 * @return
 	 */
 	private static Mat imageToMatRGBorBGR(final BufferedImage img, final boolean doBGR, final boolean includeAlpha) {
-		// We can request the RGB values directly
 		int width = img.getWidth();
 		int height = img.getHeight();
-		int[] data = img.getRGB(0, 0, width, height, null, 0, img.getWidth());
 		
-		Mat mat;
-		if (includeAlpha)
-			mat = new Mat(height, width, opencv_core.CV_8UC4);
-		else
-			mat = new Mat(height, width, opencv_core.CV_8UC3);
-
-		UByteIndexer indexer = mat.createIndexer();
-		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				int val = data[y*width + x];
-				int r = ColorTools.red(val);
-				int g = ColorTools.green(val);
-				int b = ColorTools.blue(val);
-				if (doBGR) {
-					indexer.put(y, x, 0, b);
-					indexer.put(y, x, 1, g);
-					indexer.put(y, x, 2, r);
-				} else {
-					indexer.put(y, x, 0, r);
-					indexer.put(y, x, 1, g);
-					indexer.put(y, x, 2, b);
-				}
-				if (includeAlpha) {
-					int a = ColorTools.alpha(val);
-					indexer.put(y, x, 3, a);
-				}
+		// Packed BGR bytes can be copied directly
+		if (!includeAlpha) {
+			byte[] bytes = getPackedBGRBytes(img);
+			if (bytes != null) {
+				Mat mat = new Mat(height, width, opencv_core.CV_8UC3);
+				mat.data().put(bytes, 0, width * height * 3);
+				if (!doBGR)
+					opencv_imgproc.cvtColor(mat, mat, opencv_imgproc.COLOR_BGR2RGB);
+				return mat;
 			}
 		}
-		indexer.release();
+		
+		// Use packed int pixels directly if we can, or else request the RGB values
+		int[] data = getPackedIntPixels(img);
+		if (data == null)
+			data = img.getRGB(0, 0, width, height, null, 0, width);
+		// TYPE_INT_RGB doesn't store alpha, but getRGB would report it as opaque
+		int alphaMask = img.getType() == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+		
+		int nChannels = includeAlpha ? 4 : 3;
+		Mat mat = new Mat(height, width, opencv_core.CV_8UC(nChannels));
+		
+		// Fill a byte array & copy it in one go, which is much faster than using an indexer for each pixel
+		int n = width * height;
+		byte[] bytes = new byte[n * nChannels];
+		int ind0 = doBGR ? 2 : 0;
+		int ind2 = doBGR ? 0 : 2;
+		for (int i = 0, j = 0; i < n; i++, j += nChannels) {
+			int val = data[i] | alphaMask;
+			bytes[j + ind0] = (byte)ColorTools.red(val);
+			bytes[j + 1] = (byte)ColorTools.green(val);
+			bytes[j + ind2] = (byte)ColorTools.blue(val);
+			if (includeAlpha)
+				bytes[j + 3] = (byte)ColorTools.alpha(val);
+		}
+		mat.data().put(bytes, 0, bytes.length);
 		
 		return mat;
 	}
 	
+	/**
+	 * Get the pixel array of a {@code TYPE_3BYTE_BGR} image, if it stores exactly width x height x 3 bytes 
+	 * with no padding or offset (i.e. it is not a sub-image).
+	 * @param img
+	 * @return the bytes, or null if they cannot be used directly
+	 */
+	private static byte[] getPackedBGRBytes(BufferedImage img) {
+		if (img.getType() != BufferedImage.TYPE_3BYTE_BGR)
+			return null;
+		var raster = img.getRaster();
+		if (!isUntranslatedRaster(raster) || !(raster.getDataBuffer() instanceof DataBufferByte))
+			return null;
+		byte[] bytes = ((DataBufferByte)raster.getDataBuffer()).getData();
+		return bytes.length == img.getWidth() * img.getHeight() * 3 ? bytes : null;
+	}
+	
+	/**
+	 * Get the pixel array of a {@code TYPE_INT_RGB} or {@code TYPE_INT_ARGB} image, if it stores exactly 
+	 * width x height values with no padding or offset (i.e. it is not a sub-image).
+	 * @param img
+	 * @return the pixels, or null if they cannot be used directly
+	 */
+	private static int[] getPackedIntPixels(BufferedImage img) {
+		int type = img.getType();
+		if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB)
+			return null;
+		var raster = img.getRaster();
+		if (!isUntranslatedRaster(raster) || !(raster.getDataBuffer() instanceof DataBufferInt))
+			return null;
+		int[] pixels = ((DataBufferInt)raster.getDataBuffer()).getData();
+		return pixels.length == img.getWidth() * img.getHeight() ? pixels : null;
+	}
+	
+	private static boolean isUntranslatedRaster(WritableRaster raster) {
+		return raster.getParent() == null && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0 
+				&& raster.getDataBuffer().getNumBanks() == 1 && raster.getDataBuffer().getOffset() == 0;
+	}
+	
 	/**
 	 * Create a labelled image from a binary image using findContours and drawContours.
 	 * @param matBinary
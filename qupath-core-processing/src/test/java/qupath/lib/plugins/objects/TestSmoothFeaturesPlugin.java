@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.plugins.objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestSmoothFeaturesPlugin {
+	
+	private static final List<String> MEASUREMENTS = Arrays.asList("First", "Second");
+	
+	@Test
+	public void testSmoothMeasurements() {
+		for (boolean withinClass : new boolean[] {false, true}) {
+			for (boolean useLegacyNames : new boolean[] {false, true}) {
+				for (double fwhm : new double[] {5, 50}) {
+					var pathObjects = createObjects(2000, 1000, 101L);
+					SmoothFeaturesPlugin.smoothMeasurements(pathObjects, MEASUREMENTS, fwhm, "test", withinClass, useLegacyNames);
+					// Objects are sorted by x in place, so the reference can use the same order
+					checkMeasurements(pathObjects, fwhm, withinClass, useLegacyNames);
+				}
+			}
+		}
+	}
+	
+	private static List<PathObject> createObjects(int n, int size, long seed) {
+		var rand = new Random(seed);
+		PathClass[] pathClasses = {null, PathClassFactory.getPathClass("Tumor"), PathClassFactory.getPathClass("Stroma")};
+		List<PathObject> pathObjects = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			// Use integer coordinates so that some centroids are shared
+			double x = rand.nextInt(size);
+			double y = rand.nextInt(size);
+			var pathObject = PathObjects.createDetectionObject(
+					ROIs.createRectangleROI(x, y, 4, 4, ImagePlane.getDefaultPlane()),
+					pathClasses[rand.nextInt(pathClasses.length)]);
+			try (var ml = pathObject.getMeasurementList()) {
+				for (var name : MEASUREMENTS)
+					ml.putMeasurement(name, rand.nextDouble() < 0.1 ? Double.NaN : rand.nextGaussian());
+			}
+			pathObjects.add(pathObject);
+		}
+		return pathObjects;
+	}
+	
+	/**
+	 * Compare smoothed values with those from a simple pairwise loop.
+	 */
+	private static void checkMeasurements(List<PathObject> pathObjects, double fwhmPixels, boolean withinClass, boolean useLegacyNames) {
+		int n = pathObjects.size();
+		int m = MEASUREMENTS.size();
+		double sigmaPixels = fwhmPixels / Math.sqrt(8 * Math.log(2));
+		double sigma2 = 2 * sigmaPixels * sigmaPixels;
+		double maxDist = sigmaPixels * 3;
+		double[] distanceWeights = new double[(int)(maxDist + .5) + 1];
+		for (int i = 0; i < distanceWeights.length; i++)
+			distanceWeights[i] = Math.exp(-(i * i)/sigma2);
+		
+		float[][] values = new float[n][m];
+		float[][] weighted = new float[n][m];
+		float[][] denominators = new float[n][m];
+		int[] counts = new int[n];
+		for (int i = 0; i < n; i++) {
+			for (int ind = 0; ind < m; ind++) {
+				// Smoothed measurements are added to the same list, so avoid using the name of any of these
+				values[i][ind] = (float)pathObjects.get(i).getMeasurementList().getMeasurementValue(MEASUREMENTS.get(ind));
+				weighted[i][ind] = values[i][ind];
+				denominators[i][ind] = 1;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			var roiI = pathObjects.get(i).getROI();
+			double xi = (float)roiI.getCentroidX();
+			double yi = (float)roiI.getCentroidY();
+			for (int j = i+1; j < n; j++) {
+				var roiJ = pathObjects.get(j).getROI();
+				double xj = (float)roiJ.getCentroidX();
+				double yj = (float)roiJ.getCentroidY();
+				double distSq = (xj - xi)*(xj - xi) + (yj - yi)*(yj - yi);
+				if (distSq > maxDist * maxDist)
+					continue;
+				if (withinClass && getBaseClass(pathObjects.get(i)) != getBaseClass(pathObjects.get(j)))
+					continue;
+				if (distSq < fwhmPixels * fwhmPixels) {
+					counts[i]++;
+					counts[j]++;
+				}
+				double weight = distanceWeights[(int)(Math.sqrt(distSq) + .5)];
+				for (int ind = 0; ind < m; ind++) {
+					if (Float.isNaN(values[j][ind]))
+						continue;
+					weighted[i][ind] += values[j][ind] * weight;
+					denominators[i][ind] += weight;
+					if (Float.isNaN(values[i][ind]))
+						continue;
+					weighted[j][ind] += values[i][ind] * weight;
+					denominators[j][ind] += weight;
+				}
+			}
+		}
+		
+		for (int i = 0; i < n; i++) {
+			var ml = pathObjects.get(i).getMeasurementList();
+			float maxDenominator = Float.NEGATIVE_INFINITY;
+			for (int ind = 0; ind < m; ind++) {
+				String name = useLegacyNames ? MEASUREMENTS.get(ind) + " - Smoothed (FWHM test)" : "Smoothed: test: " + MEASUREMENTS.get(ind);
+				assertEquals(weighted[i][ind] / denominators[i][ind], ml.getMeasurementValue(name), 0.0);
+				maxDenominator = Math.max(maxDenominator, denominators[i][ind]);
+			}
+			if (useLegacyNames) {
+				assertEquals(maxDenominator, ml.getMeasurementValue("Smoothed denominator (local density, FWHM test)"), 0.0);
+				assertEquals(counts[i], ml.getMeasurementValue("Nearby detection counts (radius test)"), 0.0);
+			} else
+				assertEquals(counts[i], ml.getMeasurementValue("Smoothed: test: Nearby detection counts"), 0.0);
+		}
+	}
+	
+	private static PathClass getBaseClass(PathObject pathObject) {
+		return pathObject.getPathClass() == null ? null : pathObject.getPathClass().getBaseClass();
+	}
+
+}
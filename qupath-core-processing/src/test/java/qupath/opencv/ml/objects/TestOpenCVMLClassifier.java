@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.ml.objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_ml.RTrees;
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+import qupath.opencv.ml.OpenCVClassifiers;
+import qupath.opencv.ml.objects.features.FeatureExtractors;
+
+@SuppressWarnings("javadoc")
+public class TestOpenCVMLClassifier {
+	
+	@Test
+	public void test_parallelClassification() {
+		var rand = new Random(100L);
+		var measurements = Arrays.asList("A", "B");
+		var pathClasses = Arrays.asList(PathClassFactory.getPathClass("Class 1"), PathClassFactory.getPathClass("Class 2"));
+		
+		// Create objects with measurements that (mostly) determine the class
+		int n = 10000;
+		var pathObjects = new ArrayList<PathObject>();
+		for (int i = 0; i < n; i++) {
+			var pathObject = PathObjects.createDetectionObject(ROIs.createRectangleROI(i, 0, 1, 1, ImagePlane.getDefaultPlane()));
+			try (var ml = pathObject.getMeasurementList()) {
+				ml.putMeasurement("A", rand.nextGaussian());
+				ml.putMeasurement("B", rand.nextGaussian());
+			}
+			pathObjects.add(pathObject);
+		}
+		
+		// Train a random forest on a subset of the objects
+		int nTrain = 500;
+		var samples = new Mat(nTrain, measurements.size(), opencv_core.CV_32FC1);
+		var targets = new Mat(nTrain, 1, opencv_core.CV_32SC1);
+		FloatIndexer idxSamples = samples.createIndexer();
+		IntIndexer idxTargets = targets.createIndexer();
+		for (int i = 0; i < nTrain; i++) {
+			var ml = pathObjects.get(i).getMeasurementList();
+			double a = ml.getMeasurementValue("A");
+			double b = ml.getMeasurementValue("B");
+			idxSamples.put(i, 0, (float)a);
+			idxSamples.put(i, 1, (float)b);
+			idxTargets.put(i, 0, a + b + rand.nextGaussian() * 0.5 > 0 ? 1 : 0);
+		}
+		idxSamples.release();
+		idxTargets.release();
+		
+		var model = OpenCVClassifiers.createStatModel(RTrees.class);
+		model.train(model.createTrainData(samples, targets, null, false));
+		samples.close();
+		targets.close();
+		
+		var extractor = FeatureExtractors.createMeasurementListFeatureExtractor(measurements);
+		try {
+			OpenCVMLClassifier.setNumThreads(1);
+			assertEquals(n, OpenCVMLClassifier.classifyObjects(extractor, model, pathClasses, null, pathObjects, true, false));
+			List<PathClass> sequential = pathObjects.stream().map(PathObject::getPathClass).collect(Collectors.toList());
+			
+			for (var pathObject : pathObjects)
+				pathObject.setPathClass(null);
+			
+			// Parallel classification should give identical results
+			OpenCVMLClassifier.setNumThreads(4);
+			assertEquals(n, OpenCVMLClassifier.classifyObjects(extractor, model, pathClasses, null, pathObjects, true, false));
+			List<PathClass> parallel = pathObjects.stream().map(PathObject::getPathClass).collect(Collectors.toList());
+			
+			assertEquals(sequential, parallel);
+		} finally {
+			OpenCVMLClassifier.setNumThreads(0);
+		}
+	}
+
+}
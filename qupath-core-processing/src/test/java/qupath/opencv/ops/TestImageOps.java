@@ -246,6 +246,71 @@ public class TestImageOps {
 		
 	}
 	
+	/**
+	 * Check that applying sequential ops (which may be fused) gives the same result as applying each op in turn.
+	 */
+	@Test
+	public void testSequential() {
+		try (var scope = new PointerScope()) {
+			int size = 64;
+			for (int type : new int[] {opencv_core.CV_32FC3, opencv_core.CV_64FC3}) {
+				var mat = new Mat(size, size, type, Scalar.all(100));
+				addNoise(mat, 100);
+				
+				compareSequential(mat,
+						ImageOps.Filters.gaussianBlur(2.0),
+						ImageOps.Core.multiply(0.5),
+						ImageOps.Core.add(1, 2, 3),
+						ImageOps.Core.log(),
+						ImageOps.Core.power(1.5)
+						);
+				
+				compareSequential(mat,
+						ImageOps.Filters.gaussianBlur(1.0),
+						ImageOps.Filters.maximum(2),
+						ImageOps.Filters.sum(2),
+						ImageOps.Filters.mean(1),
+						ImageOps.Core.sqrt()
+						);
+				
+				compareSequential(mat,
+						ImageOps.Core.subtract(100),
+						ImageOps.Core.sequential(
+								ImageOps.Core.divide(2, 4, 8),
+								ImageOps.Core.multiply(3)
+								),
+						ImageOps.Filters.minimum(1),
+						ImageOps.Core.exp(),
+						ImageOps.Channels.sum()
+						);
+				
+				// Channel counts should still be checked
+				var opInvalid = ImageOps.Core.sequential(ImageOps.Core.multiply(1, 2), ImageOps.Core.add(1));
+				assertThrows(IllegalArgumentException.class, () -> opInvalid.apply(mat.clone()));
+			}
+			
+			// Integer images should retain rounding after each op
+			var matInt = new Mat(size, size, opencv_core.CV_8UC1, Scalar.all(3));
+			compareSequential(matInt,
+					ImageOps.Core.multiply(0.5),
+					ImageOps.Core.multiply(2)
+					);
+			var matIntOutput = ImageOps.Core.sequential(ImageOps.Core.multiply(0.5), ImageOps.Core.multiply(2)).apply(matInt.clone());
+			assertArrayEquals(new double[] {4}, OpenCVTools.extractDoubles(matIntOutput.row(0).col(0)));
+		}
+	}
+	
+	private static void compareSequential(Mat mat, ImageOp... ops) {
+		var expected = mat.clone();
+		for (var op : ops)
+			expected = op.apply(expected);
+		var actual = ImageOps.Core.sequential(ops).apply(mat.clone());
+		assertEquals(expected.rows(), actual.rows());
+		assertEquals(expected.cols(), actual.cols());
+		assertTrue(actual.isContinuous());
+		assertArrayEquals(OpenCVTools.extractDoubles(expected), OpenCVTools.extractDoubles(actual), 1e-3);
+	}
+	
 	/**
 	 * Apply an op to a (clone of a) Mat and check its values match the target.
 	 * @param mat
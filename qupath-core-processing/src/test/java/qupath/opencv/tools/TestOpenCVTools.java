@@ -38,6 +38,7 @@ import javax.imageio.ImageIO;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.bytedeco.javacpp.PointerScope;
 import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.UByteIndexer;
 import org.bytedeco.opencv.global.opencv_core;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.bytedeco.opencv.opencv_core.Scalar;
@@ -114,6 +115,55 @@ public class TestOpenCVTools {
 	}
 	
 	
+	/**
+	 * Test conversion of RGB images to Mats, for image types that can (and can't) use their pixel arrays directly.
+	 */
+	@Test
+	public void testRGBConversions() {
+		int width = 40;
+		int height = 30;
+		var rand = new Random(100L);
+		var imgARGB = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++)
+				imgARGB.setRGB(x, y, rand.nextInt());
+		}
+		
+		try (PointerScope scope = new PointerScope()) {
+			for (int type : new int[] {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_BGR}) {
+				var img = new BufferedImage(width, height, type);
+				var g2d = img.createGraphics();
+				g2d.drawImage(imgARGB, 0, 0, null);
+				g2d.dispose();
+				for (var imgTest : Arrays.asList(img, img.getSubimage(5, 3, 20, 15))) {
+					for (boolean includeAlpha : new boolean[] {false, true}) {
+						checkRGB(imgTest, OpenCVTools.imageToMatRGB(imgTest, includeAlpha), false, includeAlpha);
+						checkRGB(imgTest, OpenCVTools.imageToMatBGR(imgTest, includeAlpha), true, includeAlpha);
+					}
+				}
+			}
+		}
+	}
+	
+	private static void checkRGB(BufferedImage img, Mat mat, boolean isBGR, boolean includeAlpha) {
+		assertEquals(img.getWidth(), mat.cols());
+		assertEquals(img.getHeight(), mat.rows());
+		assertEquals(includeAlpha ? 4 : 3, mat.channels());
+		UByteIndexer indexer = mat.createIndexer();
+		for (int y = 0; y < img.getHeight(); y++) {
+			for (int x = 0; x < img.getWidth(); x++) {
+				int rgb = img.getRGB(x, y);
+				assertEquals((rgb >> 16) & 0xff, indexer.get(y, x, isBGR ? 2 : 0));
+				assertEquals((rgb >> 8) & 0xff, indexer.get(y, x, 1));
+				assertEquals(rgb & 0xff, indexer.get(y, x, isBGR ? 0 : 2));
+				if (includeAlpha)
+					assertEquals((rgb >> 24) & 0xff, indexer.get(y, x, 3));
+			}
+		}
+		indexer.release();
+	}
+	
+	
 	@Test
 	public void testReplaceNaNs() {
 		double[] values = new double[] {-2, 0, 0.43, 100, Double.NaN, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * Map using 2D coordinates as keys, stored in primitive arrays rather than as {@link Coordinate} objects.
+ * <p>
+ * Keys are compared using only x and y (as with {@link Coordinate#equals2D(Coordinate)}), 
+ * and entries are iterated in the order in which they were first added.
+ * 
+ * @param <V> value type
+ */
+class CoordinateMap<V> {
+	
+	private static final int EMPTY = -1;
+	
+	private double[] xs;
+	private double[] ys;
+	private Object[] values;
+	private int size = 0;
+	
+	private int[] table;
+	
+	/**
+	 * Create a new map with the specified expected size.
+	 * @param expectedSize
+	 */
+	CoordinateMap(int expectedSize) {
+		int capacity = Math.max(16, expectedSize);
+		xs = new double[capacity];
+		ys = new double[capacity];
+		values = new Object[capacity];
+		table = createTable(capacity);
+	}
+	
+	private static int[] createTable(int capacity) {
+		// Keep the load factor at most 0.5
+		int n = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+		var table = new int[n];
+		Arrays.fill(table, EMPTY);
+		return table;
+	}
+	
+	/**
+	 * Get the number of entries.
+	 * @return
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * Add an entry to the map.
+	 * @param x
+	 * @param y
+	 * @param value
+	 * @return the previous value associated with the coordinate, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	V put(double x, double y, V value) {
+		x = normalize(x);
+		y = normalize(y);
+		int slot = findSlot(x, y);
+		int ind = table[slot];
+		if (ind != EMPTY) {
+			var previous = (V)values[ind];
+			values[ind] = value;
+			return previous;
+		}
+		if (size == xs.length) {
+			int capacity = size * 2;
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			values = Arrays.copyOf(values, capacity);
+			rehash(capacity);
+			slot = findSlot(x, y);
+		}
+		xs[size] = x;
+		ys[size] = y;
+		values[size] = value;
+		table[slot] = size;
+		size++;
+		return null;
+	}
+	
+	/**
+	 * Add an entry to the map.
+	 * @param coord
+	 * @param value
+	 * @return the previous value associated with the coordinate, or null if there was none
+	 */
+	V put(Coordinate coord, V value) {
+		return put(coord.x, coord.y, value);
+	}
+	
+	/**
+	 * Get the value associated with a coordinate.
+	 * @param x
+	 * @param y
+	 * @return the value, or null if the map does not contain the coordinate
+	 */
+	@SuppressWarnings("unchecked")
+	V get(double x, double y) {
+		int ind = table[findSlot(normalize(x), normalize(y))];
+		return ind == EMPTY ? null : (V)values[ind];
+	}
+	
+	/**
+	 * Get the value associated with a coordinate.
+	 * @param coord
+	 * @return the value, or null if the map does not contain the coordinate
+	 */
+	V get(Coordinate coord) {
+		return get(coord.x, coord.y);
+	}
+	
+	/**
+	 * Get all the coordinates in the map, in the order in which they were added.
+	 * @return
+	 */
+	List<Coordinate> getCoordinates() {
+		var list = new ArrayList<Coordinate>(size);
+		for (int i = 0; i < size; i++)
+			list.add(new Coordinate(xs[i], ys[i]));
+		return list;
+	}
+	
+	private void rehash(int capacity) {
+		table = createTable(capacity);
+		for (int i = 0; i < size; i++)
+			table[findSlot(xs[i], ys[i])] = i;
+	}
+	
+	/**
+	 * Find the slot containing the coordinate, or the empty slot where it should be added.
+	 */
+	private int findSlot(double x, double y) {
+		int mask = table.length - 1;
+		int slot = hash(x, y) & mask;
+		while (true) {
+			int ind = table[slot];
+			if (ind == EMPTY || (sameValue(xs[ind], x) && sameValue(ys[ind], y)))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	private static boolean sameValue(double v1, double v2) {
+		return Double.doubleToLongBits(v1) == Double.doubleToLongBits(v2);
+	}
+	
+	/**
+	 * Ensure 0.0 and -0.0 are treated as the same value.
+	 */
+	private static double normalize(double value) {
+		return value + 0.0;
+	}
+	
+	private static int hash(double x, double y) {
+		long h = Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(y);
+		h *= 0xC2B2AE3D27D4EB4FL;
+		return (int)(h ^ (h >>> 32));
+	}
+
+}
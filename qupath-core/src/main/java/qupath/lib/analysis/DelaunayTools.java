@@ -33,6 +33,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -282,7 +283,7 @@ public class DelaunayTools {
 			
 			logger.debug("Creating subdivision for {} objects", pathObjects.size());
 			
-			var coords = new HashMap<Coordinate, PathObject>();
+			var coords = new CoordinateMap<PathObject>(pathObjects.size());
 			
 			double densify = densifyFactor;
 			if (!Double.isFinite(densify))
@@ -301,14 +302,23 @@ public class DelaunayTools {
 				break;
 			}
 			
+			// Built-in extractors are stateless and can be applied in parallel; 
+			// coordinates are still added in order, so that later objects take precedence for duplicates
+			List<Collection<Coordinate>> extracted;
+			if (extractorType == ExtractorType.CUSTOM)
+				extracted = pathObjects.stream().map(extractor).collect(Collectors.toList());
+			else
+				extracted = pathObjects.parallelStream().map(extractor).collect(Collectors.toList());
+			
+			int i = 0;
 			for (var pathObject : pathObjects) {
-				for (var c : extractor.apply(pathObject)) {
+				for (var c : extracted.get(i++)) {
 					coords.put(c, pathObject);
 				}
 			}
 			
 			double tolerance = cal.getAveragedPixelSize().doubleValue() / 1000.0;
-			return new Subdivision(createSubdivision(coords.keySet(), tolerance), pathObjects, coords, plane);
+			return new Subdivision(createSubdivision(coords.getCoordinates(), tolerance), pathObjects, coords, plane);
 		}
 		
 	}
@@ -330,7 +340,7 @@ public class DelaunayTools {
 		
 		logger.debug("Creating subdivision from ROI centroids for {} objects", pathObjects.size());
 		
-		var coords = new HashMap<Coordinate, PathObject>();
+		var coords = new CoordinateMap<PathObject>(pathObjects.size());
 		ImagePlane plane = null;
 		
 		var precisionModel = GeometryTools.getDefaultFactory().getPrecisionModel();
@@ -346,10 +356,9 @@ public class DelaunayTools {
 			}
 			double x = precisionModel.makePrecise(roi.getCentroidX());
 			double y = precisionModel.makePrecise(roi.getCentroidY());
-			var coord = new Coordinate(x, y);
-			coords.put(coord, pathObject);
+			coords.put(x, y, pathObject);
 		}
-		return new Subdivision(createSubdivision(coords.keySet(), 0.01), pathObjects, coords, plane);
+		return new Subdivision(createSubdivision(coords.getCoordinates(), 0.01), pathObjects, coords, plane);
 	}
 	
 	/**
@@ -374,7 +383,7 @@ public class DelaunayTools {
 		
 		logger.debug("Creating subdivision from geometry coordinates for {} objects", pathObjects.size());
 		
-		var coords = new HashMap<Coordinate, PathObject>();
+		var coords = new CoordinateMap<PathObject>(pathObjects.size());
 		ImagePlane plane = null;
 		
 		for (var pathObject : pathObjects) {
@@ -402,11 +411,24 @@ public class DelaunayTools {
 		
 		// Attempts to call VoronoiDiagramBuilder would sometimes fail when clipping to the envelope - 
 		// Because we do our own clipping anyway, we skip that step by requesting the diagram via the subdivision instead
-		return new Subdivision(createSubdivision(coords.keySet(), 0.001), pathObjects, coords, plane);
+		return new Subdivision(createSubdivision(coords.getCoordinates(), 0.001), pathObjects, coords, plane);
 	}
 	
 	
+	/**
+	 * Minimum number of coordinates for which a triangulation is computed by divide-and-conquer (in parallel), 
+	 * rather than by incremental insertion.
+	 */
+	private static final int DIVIDE_AND_CONQUER_THRESHOLD = 50_000;
+	
 	private static QuadEdgeSubdivision createSubdivision(Collection<Coordinate> coords, double tolerance) {
+		return createSubdivision(coords, tolerance, coords.size() >= DIVIDE_AND_CONQUER_THRESHOLD);
+	}
+	
+	static QuadEdgeSubdivision createSubdivision(Collection<Coordinate> coords, double tolerance, boolean divideAndConquer) {
+		if (divideAndConquer && !coords.isEmpty())
+			return createSubdivisionDivideAndConquer(coords, tolerance);
+		
 		var envelope = DelaunayTriangulationBuilder.envelope(coords);
 		var subdiv = new QuadEdgeSubdivision(envelope, tolerance);
 		var triangulator = new IncrementalDelaunayTriangulator(subdiv);
@@ -425,6 +447,110 @@ public class DelaunayTools {
 //		return builder.getSubdivision();
 	}
 	
+	/**
+	 * Create a subdivision using a divide-and-conquer triangulation, which can be much faster than incremental insertion 
+	 * for large numbers of coordinates.
+	 * <p>
+	 * The vertices of the subdivision's frame are triangulated along with the coordinates, so that the result 
+	 * matches that of incremental insertion (apart from the choice of diagonals for cocircular points).
+	 */
+	private static QuadEdgeSubdivision createSubdivisionDivideAndConquer(Collection<Coordinate> coords, double tolerance) {
+		var envelope = DelaunayTriangulationBuilder.envelope(coords);
+		var subdiv = new QuadEdgeSubdivision(envelope, tolerance);
+		subdiv.setLocator(getDefaultLocator(subdiv));
+		
+		// A new subdivision contains only the frame edges - we reuse these, since one is the starting edge
+		@SuppressWarnings("unchecked")
+		var frameEdges = new ArrayList<QuadEdge>((Collection<QuadEdge>)subdiv.getEdges());
+		var frameVertices = new ArrayList<Vertex>();
+		for (var edge : frameEdges)
+			frameVertices.add(edge.orig());
+		
+		// Sort all vertices by x and then y, skipping any within the tolerance of a previous vertex
+		var sorted = new ArrayList<Vertex>(coords.size() + frameVertices.size());
+		for (var c : coords)
+			sorted.add(new Vertex(c));
+		sorted.addAll(frameVertices);
+		sorted.sort(Comparator.comparingDouble(Vertex::getX).thenComparingDouble(Vertex::getY));
+		var vertices = new ArrayList<Vertex>(sorted.size());
+		for (var v : sorted) {
+			boolean keep = true;
+			if (!frameVertices.contains(v)) {
+				for (int i = vertices.size()-1; i >= 0; i--) {
+					var previous = vertices.get(i);
+					if (v.getX() - previous.getX() > tolerance)
+						break;
+					if (v.getCoordinate().equals2D(previous.getCoordinate()) || v.equals(previous, tolerance)) {
+						keep = false;
+						break;
+					}
+				}
+			}
+			if (keep)
+				vertices.add(v);
+		}
+		
+		int n = vertices.size();
+		double[] x = new double[n];
+		double[] y = new double[n];
+		boolean[] isFrame = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			var v = vertices.get(i);
+			x[i] = v.getX();
+			y[i] = v.getY();
+			isFrame[i] = frameVertices.contains(v);
+		}
+		var delaunay = DivideAndConquerDelaunay.triangulate(x, y, true);
+		
+		// Create the edges, using the existing edges of the frame where possible
+		var edges = new QuadEdge[delaunay.nHalfEdges() / 2];
+		for (int e = 0; e < delaunay.nHalfEdges(); e += 2) {
+			if (!delaunay.isLive(e))
+				continue;
+			int o = delaunay.org(e);
+			int d = delaunay.dest(e);
+			if (isFrame[o] && isFrame[d])
+				edges[e / 2] = findEdge(frameEdges, vertices.get(o), vertices.get(d));
+			else
+				edges[e / 2] = subdiv.makeEdge(vertices.get(o), vertices.get(d));
+		}
+		
+		// Link the edges around each vertex in counter-clockwise order
+		for (int v = 0; v < n; v++) {
+			int first = delaunay.vertexEdge(v);
+			int last = first;
+			if (isFrame[v]) {
+				// The two frame edges are already linked - so insert the other edges between them
+				while (!isFrame[delaunay.dest(last)] || !isFrame[delaunay.dest(delaunay.onext(last))])
+					last = delaunay.onext(last);
+				first = delaunay.onext(last);
+			}
+			int previous = first;
+			int e = delaunay.onext(first);
+			while (e != last) {
+				QuadEdge.splice(getQuadEdge(edges, previous), getQuadEdge(edges, e));
+				previous = e;
+				e = delaunay.onext(e);
+			}
+		}
+		return subdiv;
+	}
+	
+	private static QuadEdge getQuadEdge(QuadEdge[] edges, int halfEdge) {
+		var edge = edges[halfEdge / 2];
+		return halfEdge % 2 == 0 ? edge : edge.sym();
+	}
+	
+	private static QuadEdge findEdge(Collection<QuadEdge> edges, Vertex orig, Vertex dest) {
+		for (var edge : edges) {
+			if (edge.orig() == orig && edge.dest() == dest)
+				return edge;
+			if (edge.orig() == dest && edge.dest() == orig)
+				return edge.sym();
+		}
+		throw new IllegalArgumentException("No edge found between " + orig + " and " + dest);
+	}
+	
 	static QuadEdgeLocator getDefaultLocator(QuadEdgeSubdivision subdiv) {
 		return new FirstVertexLocator(subdiv);
 	}
@@ -493,20 +619,19 @@ public class DelaunayTools {
 			list.add(entry.getValue());
 		}
 		var clip = bounds == null ? null : bounds.getGeometry();
-		var annotations = new ArrayList<PathObject>();
 		var plane = subdivision.getImagePlane();
-		for (var entry : map.entrySet()) {
+		// Each classification can be merged independently, which is often the slowest part
+		return map.entrySet().parallelStream().map(entry -> {
 			var geometry = GeometryTools.union(entry.getValue());
 			if (clip != null && !clip.covers(geometry))
 				geometry = clip.intersection(geometry);
 			if (geometry.isEmpty())
-				continue;
+				return null;
 			var roi = GeometryTools.geometryToROI(geometry, plane);
 			var annotation = PathObjects.createAnnotationObject(roi, entry.getKey());
 			annotation.setLocked(true);
-			annotations.add(annotation);
-		}
-		return annotations;
+			return annotation;
+		}).filter(p -> p != null).collect(Collectors.toList());
 	}
 	
 	/**
@@ -582,7 +707,7 @@ public class DelaunayTools {
 		private final static Logger logger = LoggerFactory.getLogger(Subdivision.class);
 		
 		private Set<PathObject> pathObjects = new LinkedHashSet<>();
-		private Map<Coordinate, PathObject> coordinateMap = new HashMap<>();
+		private CoordinateMap<PathObject> coordinateMap;
 		private Map<PathObject, List<Coordinate>> objectCoordinateMap = new HashMap<>();
 		private QuadEdgeSubdivision subdivision;
 		
@@ -592,13 +717,12 @@ public class DelaunayTools {
 		private transient Map<PathObject, Geometry> voronoiFaces;
 		
 		
-		private Subdivision(QuadEdgeSubdivision subdivision, Collection<PathObject> pathObjects, Map<Coordinate, PathObject> coordinateMap, ImagePlane plane) {
+		private Subdivision(QuadEdgeSubdivision subdivision, Collection<PathObject> pathObjects, CoordinateMap<PathObject> coordinateMap, ImagePlane plane) {
 			this.subdivision = subdivision;
 			this.plane = plane;
 			this.pathObjects.addAll(pathObjects);
-			this.coordinateMap.putAll(coordinateMap);
+			this.coordinateMap = coordinateMap;
 			this.pathObjects = Collections.unmodifiableSet(this.pathObjects);
-			this.coordinateMap = Collections.unmodifiableMap(this.coordinateMap);
 		}
 		
 		/**
@@ -747,41 +871,54 @@ public class DelaunayTools {
 			
 			@SuppressWarnings("unchecked")
 			var edges = (List<QuadEdge>)subdivision.getVertexUniqueEdges(false);
+			
+			// Find the neighbors for each vertex in parallel, then add them to the map in order 
+			// (since an object may be represented by multiple vertices)
+			var missing = new LongAdder();
+			var neighborLists = edges.parallelStream()
+					.map(edge -> findNeighbors(edge, missing))
+					.collect(Collectors.toList());
+			
 			Map<PathObject, List<PathObject>> map = new HashMap<>();
-			var distanceMap = new HashMap<PathObject, Double>();
+			for (int i = 0; i < edges.size(); i++) {
+				var list = neighborLists.get(i);
+				if (list != null)
+					map.put(getPathObject(edges.get(i).orig()), list);
+			}
+			if (missing.sum() > 0)
+				logger.debug("Number of missing neighbors: {}", missing.sum());
+			return map;
+		}
+		
+		/**
+		 * Find the neighbors of the object associated with the origin of an edge, sorted by distance.
+		 * @return the neighbors, or null if no object is associated with the origin
+		 */
+		private List<PathObject> findNeighbors(QuadEdge edge, LongAdder missing) {
+			var origin = edge.orig();
+			var pathObject = getPathObject(origin);
+			if (pathObject == null) {
+				logger.warn("No object found for {}", origin);
+				return null;
+			}
 			
-			int missing = 0;
-			for (var edge : edges) {
-				var origin = edge.orig();
-				distanceMap.clear();
-				
-				var pathObject = getPathObject(origin);
-				if (pathObject == null) {
-					logger.warn("No object found for {}", pathObject);
+			var distanceMap = new HashMap<PathObject, Double>();
+			var list = new ArrayList<PathObject>();
+			var next = edge;
+			do {
+				var dest = next.dest();
+				var destObject = getPathObject(dest);
+				if (destObject == pathObject) {
 					continue;
+				} else if (destObject == null) {
+					missing.increment();
+				} else {
+					distanceMap.put(destObject, next.getLength());
+					list.add(destObject);
 				}
-				
-				var list = new ArrayList<PathObject>();
-				var next = edge;
-				do {
-					var dest = next.dest();
-					var destObject = getPathObject(dest);
-					if (destObject == pathObject) {
-						continue;
-					} else if (destObject == null) {
-						missing++;
-					} else {
-						distanceMap.put(destObject, next.getLength());
-						list.add(destObject);
-					}
-				} while ((next = next.oNext()) != edge);
-				Collections.sort(list, Comparator.comparingDouble(p -> distanceMap.get(p)));
-				
-				map.put(pathObject, Collections.unmodifiableList(list));
-			}
-			if (missing > 0)
-				logger.debug("Number of missing neighbors: {}", missing);
-			return map;
+			} while ((next = next.oNext()) != edge);
+			Collections.sort(list, Comparator.comparingDouble(p -> distanceMap.get(p)));
+			return Collections.unmodifiableList(list);
 		}
 		
 		
@@ -817,7 +954,7 @@ public class DelaunayTools {
 					logger.debug("Missing coordinate!");
 					continue;
 				}
-				var pathObject = coordinateMap.getOrDefault(coord, null);
+				var pathObject = coordinateMap.get(coord);
 				if (pathObject == null) {
 					// Shouldn't happen...
 					logger.warn("Missing object for coordinate {}", coord);
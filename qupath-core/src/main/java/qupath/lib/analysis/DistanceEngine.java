@@ -0,0 +1,354 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.geom.Point2;
+import qupath.lib.images.ImageData;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.classes.PathClassTools;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Helper class for calculating distances between objects in a hierarchy repeatedly.
+ * <p>
+ * Spatial indexes for the target objects are cached between calls, and only rebuilt if the targets change. 
+ * Distances are only recalculated for detections that have moved, or where the targets have changed. 
+ * This makes it much faster to update distances after (for example) some objects have been reclassified.
+ * <p>
+ * Indexes for different classifications and planes are built in parallel.
+ * <p>
+ * The targets are identified again on every call, so that changes are found even if no hierarchy event was fired 
+ * (e.g. objects reclassified by a script); only the indexes and distances are reused.
+ * <p>
+ * The engine holds only weak references to the hierarchy and measured objects, although it retains the target ROIs 
+ * and their indexes until {@link #clear()} is called.
+ * 
+ * @see DistanceTools
+ * @since 0.3
+ */
+public class DistanceEngine {
+	
+	private final static Logger logger = LoggerFactory.getLogger(DistanceEngine.class);
+	
+	private final DistanceCache annotationDistances;
+	private final DistanceCache detectionDistances;
+	
+	/**
+	 * Create a new engine.
+	 */
+	public DistanceEngine() {
+		annotationDistances = new DistanceCache(false);
+		detectionDistances = new DistanceCache(true);
+	}
+	
+	/**
+	 * Compute the distance for all detection object centroids to the closest annotation with each valid, not-ignored classification and add 
+	 * the result to the detection measurement list.
+	 * @param imageData
+	 * @param splitClassNames if true, split the classification name. For example, if an image contains classifications for both "CD3: CD4" and "CD3: CD8",
+	 *                        distances will be calculated for all components (e.g. "CD3", "CD4" and "CD8").
+	 * @see DistanceTools#detectionToAnnotationDistances(ImageData, boolean)
+	 */
+	public synchronized void detectionToAnnotationDistances(ImageData<?> imageData, boolean splitClassNames) {
+		var hierarchy = imageData.getHierarchy();
+		// TODO: Support TMA cores
+		if (hierarchy.getTMAGrid() != null)
+			logger.warn("Detection to annotation distances command currently ignores TMA grid information!");
+		annotationDistances.update(imageData, splitClassNames);
+	}
+	
+	/**
+	 * Compute the distance for all detection object centroids to the closest detection with each valid, not-ignored classification and add 
+	 * the result to the detection measurement list.
+	 * @param imageData
+	 * @param splitClassNames if true, split the classification name. For example, if an image contains classifications for both "CD3: CD4" and "CD3: CD8",
+	 *                        distances will be calculated for all components (e.g. "CD3", "CD4" and "CD8").
+	 * @see DistanceTools#detectionCentroidDistances(ImageData, boolean)
+	 */
+	public synchronized void detectionCentroidDistances(ImageData<?> imageData, boolean splitClassNames) {
+		var hierarchy = imageData.getHierarchy();
+		// TODO: Support TMA cores
+		if (hierarchy.getTMAGrid() != null)
+			logger.warn("Detection centroid distances command currently ignores TMA grid information!");
+		detectionDistances.update(imageData, splitClassNames);
+	}
+	
+	/**
+	 * Clear all cached indexes, so that all distances will be recalculated on the next call.
+	 */
+	public synchronized void clear() {
+		annotationDistances.clear();
+		detectionDistances.clear();
+	}
+	
+	
+	private static List<PathObject> getDetections(PathObjectHierarchy hierarchy) {
+		var detections = hierarchy.getCellObjects();
+		if (detections.isEmpty())
+			detections = hierarchy.getDetectionObjects();
+		return new ArrayList<>(detections);
+	}
+	
+	
+	/**
+	 * Cached distances to either annotations or detections.
+	 */
+	private static class DistanceCache {
+		
+		private static final boolean PREFER_NUCLEUS = true;
+		
+		private final boolean targetDetections;
+		
+		private WeakReference<PathObjectHierarchy> hierarchyRef;
+		private boolean splitClassNames;
+		private double pixelWidth = Double.NaN;
+		private double pixelHeight = Double.NaN;
+		
+		// Targets for each measurement
+		private Map<String, TargetGroup> groups = Collections.emptyMap();
+		// ROIs of the source objects when distances were last calculated
+		private Map<PathObject, ROI> sourceROIs = new WeakHashMap<>();
+		
+		DistanceCache(boolean targetDetections) {
+			this.targetDetections = targetDetections;
+		}
+		
+		void clear() {
+			hierarchyRef = null;
+			groups = Collections.emptyMap();
+			sourceROIs = new WeakHashMap<>();
+		}
+		
+		void update(ImageData<?> imageData, boolean splitClassNames) {
+			var hierarchy = imageData.getHierarchy();
+			
+			var cal = imageData.getServer().getPixelCalibration();
+			String xUnit = cal.getPixelWidthUnit();
+			String yUnit = cal.getPixelHeightUnit();
+			double pixelWidth = cal.getPixelWidth().doubleValue();
+			double pixelHeight = cal.getPixelHeight().doubleValue();
+			if (!xUnit.equals(yUnit))
+				throw new IllegalArgumentException("Pixel width & height units do not match! Width " + xUnit + ", height " + yUnit);
+			String unit = xUnit;
+			
+			// Indexes depend upon the pixel size - so can't be reused if this has changed
+			if (pixelWidth != this.pixelWidth || pixelHeight != this.pixelHeight)
+				clear();
+			
+			var detections = getDetections(hierarchy);
+			var sourcePlanes = new HashSet<ImagePlane>();
+			for (var detection : detections)
+				sourcePlanes.add(ImagePlane.getPlane(detection.getROI()));
+
+			// Identify the targets - this is always needed, since objects may have been reclassified without any event
+			Set<TargetGroup> newGroups = new HashSet<>();
+			boolean sameHierarchy = hierarchyRef != null && hierarchyRef.get() == hierarchy;
+			var previousGroups = sameHierarchy ? groups : Collections.<String, TargetGroup>emptyMap();
+			Map<String, TargetGroup> updatedGroups = new LinkedHashMap<>();
+			var targetObjects = targetDetections ? detections : new ArrayList<>(hierarchy.getAnnotationObjects());
+			for (var entry : getTargets(targetObjects, splitClassNames, unit).entrySet()) {
+				var name = entry.getKey();
+				var targetROIs = entry.getValue().stream()
+						.map(p -> PathObjectTools.getROI(p, PREFER_NUCLEUS))
+						.filter(r -> r != null)
+						.collect(Collectors.toList());
+				var previous = previousGroups.get(name);
+				if (previous != null && previous.hasSameTargets(targetROIs))
+					updatedGroups.put(name, previous);
+				else {
+					var group = new TargetGroup(targetROIs);
+					updatedGroups.put(name, group);
+					newGroups.add(group);
+				}
+			}
+			groups = updatedGroups;
+			
+			// Measurements for classifications that no longer have any targets are out of date
+			var staleNames = new ArrayList<String>();
+			if (splitClassNames == this.splitClassNames) {
+				for (var name : previousGroups.keySet()) {
+					if (!groups.containsKey(name))
+						staleNames.add(name);
+				}
+			}
+			
+			// Source planes may have changed even if the targets haven't
+			for (var group : groups.values()) {
+				if (!newGroups.contains(group) && !group.planes.containsAll(sourcePlanes))
+					newGroups.add(group);
+			}
+			
+			// Build indexes in parallel for all classifications & planes
+			logger.debug("Building distance indexes for {}/{} classifications", newGroups.size(), groups.size());
+			newGroups.parallelStream().forEach(g -> g.buildIndexes(sourcePlanes, targetDetections, pixelWidth, pixelHeight));
+			
+			// Calculate distances, skipping any that we know are already up-to-date
+			// The previous ROIs are copied, since a WeakHashMap can't be read safely from multiple threads
+			var previousSourceROIs = sameHierarchy ? new IdentityHashMap<>(sourceROIs) : Collections.<PathObject, ROI>emptyMap();
+			Map<PathObject, ROI> updatedSourceROIs = new ConcurrentHashMap<>();
+			var groupList = new ArrayList<>(groups.entrySet());
+			var staleNamesArray = staleNames.toArray(String[]::new);
+			detections.parallelStream().forEach(p -> {
+				var roi = PathObjectTools.getROI(p, PREFER_NUCLEUS);
+				var plane = ImagePlane.getPlane(roi);
+				boolean sourceUnchanged = previousSourceROIs.get(p) == roi;
+				try (var ml = p.getMeasurementList()) {
+					if (staleNamesArray.length > 0)
+						ml.removeMeasurements(staleNamesArray);
+					for (var entry : groupList) {
+						var group = entry.getValue();
+						var index = group.indexes.get(plane);
+						var name = entry.getKey();
+						if (index == null) {
+							// No targets on this plane (any more)
+							if (ml.containsNamedMeasurement(name))
+								ml.removeMeasurements(name);
+							continue;
+						}
+						if (sourceUnchanged && !newGroups.contains(group) && ml.containsNamedMeasurement(name))
+							continue;
+						ml.putMeasurement(name, index.distance(roi.getCentroidX(), roi.getCentroidY()));
+					}
+				}
+				updatedSourceROIs.put(p, roi);
+			});
+			
+			sourceROIs = new WeakHashMap<>(updatedSourceROIs);
+			hierarchyRef = new WeakReference<>(hierarchy);
+			this.splitClassNames = splitClassNames;
+			this.pixelWidth = pixelWidth;
+			this.pixelHeight = pixelHeight;
+			
+			hierarchy.fireObjectMeasurementsChangedEvent(DistanceTools.class, detections);
+		}
+		
+		/**
+		 * Get the target objects for each measurement, in a consistent order.
+		 */
+		private Map<String, List<PathObject>> getTargets(Collection<PathObject> targetObjects, boolean splitClassNames, String unit) {
+			var pathClasses = targetObjects.stream()
+					.map(p -> p.getPathClass())
+					.filter(p -> p != null && p.isValid() && !PathClassTools.isIgnoredClass(p))
+					.collect(Collectors.toCollection(LinkedHashSet::new));
+			
+			String type = targetDetections ? "detection" : "annotation";
+			Map<String, List<PathObject>> targets = new LinkedHashMap<>();
+			for (PathClass pathClass : pathClasses) {
+				if (splitClassNames) {
+					for (var name : PathClassTools.splitNames(pathClass)) {
+						String measurementName = "Distance to " + type + " with " + name + " " + unit;
+						if (!targets.containsKey(measurementName))
+							addTargets(targets, measurementName, targetObjects, p -> PathClassTools.containsName(p.getPathClass(), name));
+					}
+				} else {
+					String measurementName = "Distance to " + type + " " + pathClass + " " + unit;
+					addTargets(targets, measurementName, targetObjects, p -> p.getPathClass() == pathClass);
+				}
+			}
+			return targets;
+		}
+		
+		private static void addTargets(Map<String, List<PathObject>> targets, String measurementName, Collection<PathObject> targetObjects, Predicate<PathObject> filter) {
+			var filtered = targetObjects.stream().filter(filter).collect(Collectors.toList());
+			if (!filtered.isEmpty())
+				targets.put(measurementName, filtered);
+		}
+		
+	}
+	
+	
+	/**
+	 * Indexes for the targets of a single measurement, with one index per plane.
+	 */
+	private static class TargetGroup {
+		
+		private final List<ROI> targetROIs;
+		private final Set<ImagePlane> planes = new HashSet<>();
+		private Map<ImagePlane, PlaneDistanceIndex> indexes = Collections.emptyMap();
+		
+		TargetGroup(List<ROI> targetROIs) {
+			this.targetROIs = targetROIs;
+		}
+		
+		boolean hasSameTargets(List<ROI> rois) {
+			if (rois.size() != targetROIs.size())
+				return false;
+			// ROIs are immutable, so we only need to check for the same instances
+			for (int i = 0; i < rois.size(); i++) {
+				if (rois.get(i) != targetROIs.get(i))
+					return false;
+			}
+			return true;
+		}
+		
+		void buildIndexes(Collection<ImagePlane> sourcePlanes, boolean centroids, double pixelWidth, double pixelHeight) {
+			Map<ImagePlane, List<ROI>> targetsByPlane = new HashMap<>();
+			if (centroids) {
+				// Use the centroids, combined into a single points ROI per plane
+				Map<ImagePlane, List<Point2>> pointsByPlane = new HashMap<>();
+				for (var roi : targetROIs) {
+					var plane = ImagePlane.getPlane(roi);
+					if (sourcePlanes.contains(plane))
+						pointsByPlane.computeIfAbsent(plane, p -> new ArrayList<>()).add(new Point2(roi.getCentroidX(), roi.getCentroidY()));
+				}
+				for (var entry : pointsByPlane.entrySet())
+					targetsByPlane.put(entry.getKey(), Collections.singletonList(ROIs.createPointsROI(entry.getValue(), entry.getKey())));
+			} else {
+				for (var roi : targetROIs) {
+					var plane = ImagePlane.getPlane(roi);
+					if (sourcePlanes.contains(plane))
+						targetsByPlane.computeIfAbsent(plane, p -> new ArrayList<>()).add(roi);
+				}
+			}
+			indexes = DistanceTools.createPlaneIndexes(targetsByPlane, pixelWidth, pixelHeight);
+			planes.clear();
+			planes.addAll(sourcePlanes);
+		}
+		
+	}
+
+}
@@ -23,36 +23,30 @@ package qupath.lib.analysis;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.locationtech.jts.algorithm.distance.DistanceToPoint;
 import org.locationtech.jts.algorithm.distance.PointPairDistance;
-import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
 import org.locationtech.jts.algorithm.locate.PointOnGeometryLocator;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.Lineal;
 import org.locationtech.jts.geom.Location;
-import org.locationtech.jts.geom.Polygonal;
-import org.locationtech.jts.geom.PrecisionModel;
-import org.locationtech.jts.geom.Puntal;
-import org.locationtech.jts.geom.util.AffineTransformation;
-import org.locationtech.jts.geom.util.GeometryCombiner;
 import org.locationtech.jts.index.strtree.ItemBoundable;
 import org.locationtech.jts.index.strtree.ItemDistance;
 import org.locationtech.jts.index.strtree.STRtree;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import qupath.lib.images.ImageData;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
-import qupath.lib.objects.classes.PathClass;
-import qupath.lib.objects.classes.PathClassTools;
-import qupath.lib.roi.GeometryTools;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.interfaces.ROI;
 
 /**
  * Static methods for calculating distances between objects.
@@ -61,117 +55,46 @@ import qupath.lib.roi.GeometryTools;
  */
 public class DistanceTools {
 	
-	private final static Logger logger = LoggerFactory.getLogger(DistanceTools.class);
+	/**
+	 * Engines used by the static methods for each image. 
+	 * These don't hold strong references to the image data, hierarchy or measured objects.
+	 */
+	private static final Map<ImageData<?>, DistanceEngine> engines = Collections.synchronizedMap(new WeakHashMap<>());
+	
+	private static DistanceEngine getEngine(ImageData<?> imageData) {
+		return engines.computeIfAbsent(imageData, i -> new DistanceEngine());
+	}
 	
 	/**
 	 * Compute the distance for all detection object centroids to the closest annotation with each valid, not-ignored classification and add 
 	 * the result to the detection measurement list.
+	 * <p>
+	 * A {@link DistanceEngine} is retained for each {@link ImageData}, so that spatial indexes can be reused 
+	 * when distances are updated repeatedly.
+	 * 
 	 * @param imageData
 	 * @param splitClassNames if true, split the classification name. For example, if an image contains classifications for both "CD3: CD4" and "CD3: CD8",
 	 *                        distances will be calculated for all components (e.g. "CD3", "CD4" and "CD8").
+	 * @see DistanceEngine#detectionToAnnotationDistances(ImageData, boolean)
 	 */
 	public static void detectionToAnnotationDistances(ImageData<?> imageData, boolean splitClassNames) {
-		var server = imageData.getServer();
-		var hierarchy = imageData.getHierarchy();
-		var annotations = hierarchy.getAnnotationObjects();
-		var detections = hierarchy.getCellObjects();
-		if (detections.isEmpty())
-			detections = hierarchy.getDetectionObjects();
-		
-		// TODO: Support TMA cores
-		if (hierarchy.getTMAGrid() != null)
-			logger.warn("Detection to annotation distances command currently ignores TMA grid information!");
-		
-		var pathClasses = annotations.stream()
-				.map(p -> p.getPathClass())
-				.filter(p -> p != null && p.isValid() && !PathClassTools.isIgnoredClass(p))
-				.collect(Collectors.toSet());
-		
-		var cal = server.getPixelCalibration();
-		String xUnit = cal.getPixelWidthUnit();
-		String yUnit = cal.getPixelHeightUnit();
-		double pixelWidth = cal.getPixelWidth().doubleValue();
-		double pixelHeight = cal.getPixelHeight().doubleValue();
-		if (!xUnit.equals(yUnit))
-			throw new IllegalArgumentException("Pixel width & height units do not match! Width " + xUnit + ", height " + yUnit);
-		String unit = xUnit;
-		
-		for (PathClass pathClass : pathClasses) {
-			if (splitClassNames) {
-				var names = PathClassTools.splitNames(pathClass);
-				for (var name : names) {
-					logger.debug("Computing distances for {}", pathClass);
-					var filteredAnnotations = annotations.stream().filter(a -> PathClassTools.containsName(a.getPathClass(), name)).collect(Collectors.toList());
-					if (!filteredAnnotations.isEmpty()) {
-						String measurementName = "Distance to annotation with " + name + " " + unit;
-						centroidToBoundsDistance2D(detections, filteredAnnotations, pixelWidth, pixelHeight, measurementName);
-					}
-				}
-			} else {
-				logger.debug("Computing distances for {}", pathClass);
-				var filteredAnnotations = annotations.stream().filter(a -> a.getPathClass() == pathClass).collect(Collectors.toList());
-				if (!filteredAnnotations.isEmpty()) {
-					String name = "Distance to annotation " + pathClass + " " + unit;
-					centroidToBoundsDistance2D(detections, filteredAnnotations, pixelWidth, pixelHeight, name);
-				}
-			}
-		}
-		hierarchy.fireObjectMeasurementsChangedEvent(DistanceTools.class, detections);
+		getEngine(imageData).detectionToAnnotationDistances(imageData, splitClassNames);
 	}
 	
 	/**
-	 * Compute the distance for all detection object centroids to the closest annotation with each valid, not-ignored classification and add 
+	 * Compute the distance for all detection object centroids to the closest detection with each valid, not-ignored classification and add 
 	 * the result to the detection measurement list.
+	 * <p>
+	 * A {@link DistanceEngine} is retained for each {@link ImageData}, so that spatial indexes can be reused 
+	 * when distances are updated repeatedly.
+	 * 
 	 * @param imageData
 	 * @param splitClassNames if true, split the classification name. For example, if an image contains classifications for both "CD3: CD4" and "CD3: CD8",
 	 *                        distances will be calculated for all components (e.g. "CD3", "CD4" and "CD8").
+	 * @see DistanceEngine#detectionCentroidDistances(ImageData, boolean)
 	 */
 	public static void detectionCentroidDistances(ImageData<?> imageData, boolean splitClassNames) {
-		var server = imageData.getServer();
-		var hierarchy = imageData.getHierarchy();
-		var detections = hierarchy.getCellObjects();
-		if (detections.isEmpty())
-			detections = hierarchy.getDetectionObjects();
-		
-		// TODO: Support TMA cores
-		if (hierarchy.getTMAGrid() != null)
-			logger.warn("Detection centroid distances command currently ignores TMA grid information!");
-		
-		var pathClasses = detections.stream()
-				.map(p -> p.getPathClass())
-				.filter(p -> p != null && p.isValid() && !PathClassTools.isIgnoredClass(p))
-				.collect(Collectors.toSet());
-		
-		var cal = server.getPixelCalibration();
-		String xUnit = cal.getPixelWidthUnit();
-		String yUnit = cal.getPixelHeightUnit();
-		double pixelWidth = cal.getPixelWidth().doubleValue();
-		double pixelHeight = cal.getPixelHeight().doubleValue();
-		if (!xUnit.equals(yUnit))
-			throw new IllegalArgumentException("Pixel width & height units do not match! Width " + xUnit + ", height " + yUnit);
-		String unit = xUnit;
-		
-		for (PathClass pathClass : pathClasses) {
-			if (splitClassNames) {
-				var names = PathClassTools.splitNames(pathClass);
-				for (var name : names) {
-					logger.debug("Computing distances for {}", pathClass);
-					var filteredDetections = detections.stream().filter(a -> PathClassTools.containsName(a.getPathClass(), name)).collect(Collectors.toList());
-					if (!filteredDetections.isEmpty()) {
-						String measurementName = "Distance to detection with " + name + " " + unit;
-						centroidToCentroidDistance2D(detections, filteredDetections, pixelWidth, pixelHeight, measurementName);
-					}
-				}
-			} else {
-				logger.debug("Computing distances for {}", pathClass);
-				var filteredDetections = detections.stream().filter(a -> a.getPathClass() == pathClass).collect(Collectors.toList());
-				if (!filteredDetections.isEmpty()) {
-					String name = "Distance to detection " + pathClass + " " + unit;
-					centroidToCentroidDistance2D(detections, filteredDetections, pixelWidth, pixelHeight, name);
-				}
-			}
-		}
-		hierarchy.fireObjectMeasurementsChangedEvent(DistanceTools.class, detections);
+		getEngine(imageData).detectionCentroidDistances(imageData, splitClassNames);
 	}
 	
 	/**
@@ -188,114 +111,50 @@ public class DistanceTools {
 		
 		boolean preferNucleus = true;
 		
-		var timePoints = new TreeSet<Integer>();
-		var zSlices = new TreeSet<Integer>();
-		for (var temp : sourceObjects) {
-			timePoints.add(temp.getROI().getT());
-			zSlices.add(temp.getROI().getZ());
-		}
+		var sourcePlanes = new HashSet<ImagePlane>();
+		for (var temp : sourceObjects)
+			sourcePlanes.add(ImagePlane.getPlane(temp.getROI()));
 		
-		var transform = pixelWidth == 1 && pixelHeight == 1 ? null : AffineTransformation.scaleInstance(pixelWidth, pixelHeight);
-//		var builder = new GeometryTools.GeometryConverter.Builder()
-//				.pixelSize(pixelWidth, pixelHeight);
-////		
-//		var converter = builder.build();
+		Map<ImagePlane, List<ROI>> targetsByPlane = new HashMap<>();
+		for (var target : targetObjects) {
+			var roi = target.getROI();
+			if (roi == null)
+				continue;
+			var plane = ImagePlane.getPlane(roi);
+			if (sourcePlanes.contains(plane))
+				targetsByPlane.computeIfAbsent(plane, p -> new ArrayList<>()).add(roi);
+		}
+		var indexes = createPlaneIndexes(targetsByPlane, pixelWidth, pixelHeight);
+		if (indexes.isEmpty())
+			return;
 
-		for (int t : timePoints) {
-			for (int z : zSlices) {
-				
-				PrecisionModel precision = null;
-				
-				List<Geometry> areaGeometries = new ArrayList<>();
-				List<Geometry> lineGeometries = new ArrayList<>();
-				List<Geometry> pointGeometries = new ArrayList<>();
-				for (var annotation : targetObjects) {
-					var roi = annotation.getROI();
-					if (roi != null && roi.getZ() == z && roi.getT() == t) {
-						var geom = annotation.getROI().getGeometry();
-						if (transform != null) {
-							geom = transform.transform(geom);
-							if (precision == null)
-								precision = geom.getPrecisionModel();
-						}
-//						var geom = converter.roiToGeometry(annotation.getROI());
-						if (geom instanceof Puntal)
-							pointGeometries.add(geom);
-						else if (geom instanceof Lineal)
-							lineGeometries.add(geom);
-						else if (geom instanceof Polygonal)
-							areaGeometries.add(geom);
-						else {
-							for (int i = 0; i < geom.getNumGeometries(); i++) {
-								var geom2 = geom.getGeometryN(i);
-								if (geom2 instanceof Puntal)
-									pointGeometries.add(geom2);
-								else if (geom2 instanceof Lineal)
-									lineGeometries.add(geom2);
-								else if (geom2 instanceof Polygonal)
-									areaGeometries.add(geom2);
-								else
-									logger.warn("Unexpected nested Geometry collection, some Geometries may be ignored");
-							}
-						}
-					}
-				}
-		
-				if (areaGeometries.isEmpty() && pointGeometries.isEmpty() && lineGeometries.isEmpty())
-					continue;
-				
-				var precisionModel = precision == null ? GeometryTools.getDefaultFactory().getPrecisionModel() : precision;
-				
-				List<Coordinate> pointCoords = new ArrayList<>();
-				
-				Geometry temp = null;
-				if (!areaGeometries.isEmpty())
-					temp = areaGeometries.size() == 1 ? areaGeometries.get(0) : GeometryCombiner.combine(areaGeometries);
-				Geometry shapeGeometry = temp;
-				
-				temp = null;
-				if (!lineGeometries.isEmpty())
-					temp = lineGeometries.size() == 1 ? lineGeometries.get(0) : GeometryCombiner.combine(lineGeometries);
-				Geometry lineGeometry = temp;
-				
-				// Identify points, and create an STRtree to find nearest neighbors more quickly if there are a lot of them
-				if (!pointGeometries.isEmpty()) {
-					for (var geom : pointGeometries) {
-						for (var coord : geom.getCoordinates()) {
-							precisionModel.makePrecise(coord);
-							pointCoords.add(coord);
-						}
-					}
-				}
-				STRtree pointTree = pointCoords != null && pointCoords.size() > 1000 ? createCoordinateCache(pointCoords) : null;
-				CoordinateDistance coordinateDistance = new CoordinateDistance();
-				
-				int zi = z;
-				int ti = t;
-				
-				
-				var locator = shapeGeometry == null ? null : new IndexedPointInAreaLocator(shapeGeometry);
-				// See https://github.com/locationtech/jts/issues/571
-				if (locator != null)
-					locator.locate(new Coordinate(0, 0));
-				sourceObjects.parallelStream().forEach(p -> {
-					var roi = PathObjectTools.getROI(p, preferNucleus);
-					if (roi.getZ() != zi || roi.getT() != ti)
-						return;
-					Coordinate coord = new Coordinate(roi.getCentroidX() * pixelWidth, roi.getCentroidY() * pixelHeight);
-					precisionModel.makePrecise(coord);
-					
-					double pointDistance = pointCoords == null ? Double.POSITIVE_INFINITY : computeCoordinateDistance(coord, pointCoords, pointTree, coordinateDistance);
-					double lineDistance = lineGeometry == null ? Double.POSITIVE_INFINITY : computeDistance(coord, lineGeometry, null);
-					double shapeDistance = shapeGeometry == null ? Double.POSITIVE_INFINITY : computeDistance(coord, shapeGeometry, locator);
-					double distance = Math.min(lineDistance, Math.min(pointDistance, shapeDistance));
-					
-					try (var ml = p.getMeasurementList()) {
-						ml.putMeasurement(measurementName, distance);
-					}
-				});
+		sourceObjects.parallelStream().forEach(p -> {
+			var roi = PathObjectTools.getROI(p, preferNucleus);
+			var index = indexes.get(ImagePlane.getPlane(roi));
+			if (index == null)
+				return;
+			double distance = index.distance(roi.getCentroidX(), roi.getCentroidY());
+			try (var ml = p.getMeasurementList()) {
+				ml.putMeasurement(measurementName, distance);
 			}
-		}
+		});
+	}
+	
+	/**
+	 * Create indexes to compute distances to target ROIs on each plane in parallel.
+	 * @param targetsByPlane target ROIs, grouped by plane
+	 * @param pixelWidth
+	 * @param pixelHeight
+	 * @return a map of indexes for each plane that contains at least one target
+	 */
+	static Map<ImagePlane, PlaneDistanceIndex> createPlaneIndexes(Map<ImagePlane, ? extends Collection<? extends ROI>> targetsByPlane, double pixelWidth, double pixelHeight) {
+		Map<ImagePlane, PlaneDistanceIndex> indexes = new ConcurrentHashMap<>();
+		targetsByPlane.entrySet().parallelStream().forEach(entry -> {
+			var index = new PlaneDistanceIndex(entry.getValue(), pixelWidth, pixelHeight);
+			if (!index.isEmpty())
+				indexes.put(entry.getKey(), index);
+		});
+		return indexes;
 	}
 	
 	
@@ -364,16 +223,6 @@ public class DistanceTools {
 		return nearest == null ? Double.POSITIVE_INFINITY : coord.distance(nearest);
 	}
 	
-	private static double computeCoordinateDistance(Coordinate coord, Collection<Coordinate> targets, STRtree tree, ItemDistance distance) {
-		if (tree != null) {
-			return computeCoordinateDistance(coord, tree, distance);
-		}
-		double d = Double.POSITIVE_INFINITY;
-		for (var target : targets)
-			d = Math.min(d, coord.distance(target));
-		return d;
-	}
-	
 	private static class CoordinateDistance implements ItemDistance {
 
 		@Override
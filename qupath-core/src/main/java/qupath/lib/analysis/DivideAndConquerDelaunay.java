@@ -0,0 +1,516 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Delaunay triangulation using the divide-and-conquer algorithm of Guibas and Stolfi, 
+ * with the largest subproblems triangulated in parallel.
+ * <p>
+ * Points must be unique, sorted by x and then y, and not all collinear.
+ * The triangulation is stored using half-edges in primitive arrays: 
+ * half-edges {@code e} and {@code e ^ 1} are the two directions of the same edge, 
+ * and {@link #onext(int)} gives the next half-edge counter-clockwise around the origin.
+ * <p>
+ * Orientation and in-circle tests use a floating point filter, and are computed exactly whenever the filter is inconclusive.
+ * 
+ * @see <a href="https://doi.org/10.1145/282918.282923">Guibas and Stolfi (1985)</a>
+ */
+class DivideAndConquerDelaunay {
+	
+	/**
+	 * Subproblems larger than this may be split across threads.
+	 */
+	private static final int SEQUENTIAL_THRESHOLD = 20_000;
+	
+	private static final double EPSILON = Math.ulp(1.0) / 2.0;
+	private static final double CCW_ERROR_BOUND = (3.0 + 16.0 * EPSILON) * EPSILON;
+	private static final double INCIRCLE_ERROR_BOUND = (10.0 + 96.0 * EPSILON) * EPSILON;
+	
+	private final double[] x;
+	private final double[] y;
+	
+	private final int[] org;
+	private final int[] onext;
+	private final int[] oprev;
+	
+	private final int[] vertexEdges;
+	
+	private DivideAndConquerDelaunay(double[] x, double[] y) {
+		this.x = x;
+		this.y = y;
+		int nEdges = capacity(x.length);
+		org = new int[nEdges * 2];
+		onext = new int[nEdges * 2];
+		oprev = new int[nEdges * 2];
+		Arrays.fill(org, -1);
+		vertexEdges = new int[x.length];
+	}
+	
+	/**
+	 * Compute the Delaunay triangulation of the specified points.
+	 * @param x x-coordinates; points must be sorted by x then y
+	 * @param y y-coordinates
+	 * @param parallel if true, triangulate large subproblems in parallel
+	 * @return the triangulation
+	 * @throws IllegalArgumentException if fewer than 3 points are provided, or the points are not sorted and unique
+	 */
+	static DivideAndConquerDelaunay triangulate(double[] x, double[] y, boolean parallel) throws IllegalArgumentException {
+		int n = x.length;
+		if (n < 3 || y.length != n)
+			throw new IllegalArgumentException("At least 3 points are required for triangulation");
+		for (int i = 1; i < n; i++) {
+			if (x[i] < x[i-1] || (x[i] == x[i-1] && y[i] <= y[i-1]))
+				throw new IllegalArgumentException("Points must be unique and sorted by x, then y");
+		}
+		var delaunay = new DivideAndConquerDelaunay(x, y);
+		var task = new BuildTask(delaunay, 0, n, 0, parallel);
+		if (parallel && n > SEQUENTIAL_THRESHOLD)
+			ForkJoinPool.commonPool().invoke(task);
+		else
+			task.compute();
+		delaunay.updateVertexEdges();
+		return delaunay;
+	}
+	
+	/**
+	 * Get the number of vertices.
+	 * @return
+	 */
+	int nVertices() {
+		return x.length;
+	}
+	
+	/**
+	 * Get the total number of half-edges that may be stored, including those that are not used.
+	 * @return
+	 * @see #isLive(int)
+	 */
+	int nHalfEdges() {
+		return org.length;
+	}
+	
+	/**
+	 * Returns true if the half-edge is part of the triangulation.
+	 * @param e
+	 * @return
+	 */
+	boolean isLive(int e) {
+		return org[e] >= 0;
+	}
+	
+	/**
+	 * Get any half-edge with the specified origin vertex.
+	 * @param v
+	 * @return
+	 */
+	int vertexEdge(int v) {
+		return vertexEdges[v];
+	}
+	
+	/**
+	 * Get the origin vertex of a half-edge.
+	 * @param e
+	 * @return
+	 */
+	int org(int e) {
+		return org[e];
+	}
+	
+	/**
+	 * Get the destination vertex of a half-edge.
+	 * @param e
+	 * @return
+	 */
+	int dest(int e) {
+		return org[e ^ 1];
+	}
+	
+	/**
+	 * Get the next half-edge counter-clockwise around the origin.
+	 * @param e
+	 * @return
+	 */
+	int onext(int e) {
+		return onext[e];
+	}
+	
+	/**
+	 * Get the half-edge in the opposite direction.
+	 * @param e
+	 * @return
+	 */
+	static int sym(int e) {
+		return e ^ 1;
+	}
+	
+	private void updateVertexEdges() {
+		Arrays.fill(vertexEdges, -1);
+		for (int e = 0; e < org.length; e++) {
+			if (org[e] >= 0 && vertexEdges[org[e]] < 0)
+				vertexEdges[org[e]] = e;
+		}
+	}
+	
+	/**
+	 * Number of edges that need to be allocated for a subproblem.
+	 * This exceeds the maximum number of edges in a planar graph with n vertices (3n - 6), 
+	 * and is consistent with how subproblems are divided between threads.
+	 */
+	private static int capacity(int n) {
+		if (n <= SEQUENTIAL_THRESHOLD)
+			return 3 * n + 3;
+		int mid = n / 2;
+		return capacity(mid) + capacity(n - mid);
+	}
+	
+	
+	/**
+	 * Task to triangulate a range of points, which may be split into subtasks to run in parallel.
+	 * Each task has its own range of edges, so that subtasks don't interfere with one another.
+	 */
+	private static class BuildTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final DivideAndConquerDelaunay delaunay;
+		private final int lo, hi;
+		private final int edgeBase;
+		private final boolean parallel;
+		
+		private EdgePool pool;
+		private int leftEdge, rightEdge;
+		
+		BuildTask(DivideAndConquerDelaunay delaunay, int lo, int hi, int edgeBase, boolean parallel) {
+			this.delaunay = delaunay;
+			this.lo = lo;
+			this.hi = hi;
+			this.edgeBase = edgeBase;
+			this.parallel = parallel;
+		}
+
+		@Override
+		protected void compute() {
+			int n = hi - lo;
+			if (!parallel || n <= SEQUENTIAL_THRESHOLD) {
+				pool = new EdgePool(edgeBase, edgeBase + capacity(n));
+				int[] edges = delaunay.build(lo, hi, pool);
+				leftEdge = edges[0];
+				rightEdge = edges[1];
+				return;
+			}
+			int mid = lo + n / 2;
+			var left = new BuildTask(delaunay, lo, mid, edgeBase, parallel);
+			var right = new BuildTask(delaunay, mid, hi, edgeBase + capacity(mid - lo), parallel);
+			invokeAll(left, right);
+			pool = left.pool;
+			pool.add(right.pool);
+			int[] edges = delaunay.merge(left.leftEdge, left.rightEdge, right.leftEdge, right.rightEdge, pool);
+			leftEdge = edges[0];
+			rightEdge = edges[1];
+		}
+		
+	}
+	
+	
+	/**
+	 * Recursively triangulate a range of points.
+	 * @return the counter-clockwise convex hull edge out of the leftmost vertex, 
+	 *         and the clockwise convex hull edge out of the rightmost vertex
+	 */
+	private int[] build(int lo, int hi, EdgePool pool) {
+		int n = hi - lo;
+		if (n == 2) {
+			int a = makeEdge(lo, lo + 1, pool);
+			return new int[] {a, sym(a)};
+		}
+		if (n == 3) {
+			int s1 = lo, s2 = lo + 1, s3 = lo + 2;
+			int a = makeEdge(s1, s2, pool);
+			int b = makeEdge(s2, s3, pool);
+			splice(sym(a), b);
+			if (ccw(s1, s2, s3)) {
+				connect(b, a, pool);
+				return new int[] {a, sym(b)};
+			} else if (ccw(s1, s3, s2)) {
+				int c = connect(b, a, pool);
+				return new int[] {sym(c), c};
+			} else {
+				// Collinear
+				return new int[] {a, sym(b)};
+			}
+		}
+		int mid = lo + n / 2;
+		int[] left = build(lo, mid, pool);
+		int[] right = build(mid, hi, pool);
+		return merge(left[0], left[1], right[0], right[1], pool);
+	}
+	
+	/**
+	 * Merge two adjacent triangulations, where all the vertices on the left are to the left of those on the right.
+	 */
+	private int[] merge(int ldo, int ldi, int rdi, int rdo, EdgePool pool) {
+		// Find the lower common tangent
+		while (true) {
+			if (leftOf(org[rdi], ldi))
+				ldi = lnext(ldi);
+			else if (rightOf(org[ldi], rdi))
+				rdi = rprev(rdi);
+			else
+				break;
+		}
+		int basel = connect(sym(rdi), ldi, pool);
+		if (org[ldi] == org[ldo])
+			ldo = sym(basel);
+		if (org[rdi] == org[rdo])
+			rdo = basel;
+		
+		// Zip up the triangulations
+		while (true) {
+			int lcand = onext[sym(basel)];
+			if (valid(lcand, basel)) {
+				while (inCircle(dest(basel), org[basel], dest(lcand), dest(onext[lcand]))) {
+					int t = onext[lcand];
+					deleteEdge(lcand, pool);
+					lcand = t;
+				}
+			}
+			int rcand = oprev[basel];
+			if (valid(rcand, basel)) {
+				while (inCircle(dest(basel), org[basel], dest(rcand), dest(oprev[rcand]))) {
+					int t = oprev[rcand];
+					deleteEdge(rcand, pool);
+					rcand = t;
+				}
+			}
+			boolean lvalid = valid(lcand, basel);
+			boolean rvalid = valid(rcand, basel);
+			if (!lvalid && !rvalid)
+				break;
+			if (!lvalid || (rvalid && inCircle(dest(lcand), org[lcand], org[rcand], dest(rcand))))
+				basel = connect(rcand, sym(basel), pool);
+			else
+				basel = connect(sym(basel), sym(lcand), pool);
+		}
+		return new int[] {ldo, rdo};
+	}
+	
+	private int lnext(int e) {
+		return oprev[sym(e)];
+	}
+	
+	private int rprev(int e) {
+		return onext[sym(e)];
+	}
+	
+	private int makeEdge(int o, int d, EdgePool pool) {
+		int e = pool.allocate() * 2;
+		int s = e + 1;
+		org[e] = o;
+		org[s] = d;
+		onext[e] = e;
+		oprev[e] = e;
+		onext[s] = s;
+		oprev[s] = s;
+		return e;
+	}
+	
+	private void splice(int a, int b) {
+		int ta = onext[a];
+		int tb = onext[b];
+		onext[a] = tb;
+		onext[b] = ta;
+		oprev[tb] = a;
+		oprev[ta] = b;
+	}
+	
+	private int connect(int a, int b, EdgePool pool) {
+		int e = makeEdge(dest(a), org[b], pool);
+		splice(e, lnext(a));
+		splice(sym(e), b);
+		return e;
+	}
+	
+	private void deleteEdge(int e, EdgePool pool) {
+		splice(e, oprev[e]);
+		splice(sym(e), oprev[sym(e)]);
+		org[e] = -1;
+		org[sym(e)] = -1;
+		pool.free(e / 2);
+	}
+	
+	private boolean valid(int e, int basel) {
+		return rightOf(dest(e), basel);
+	}
+	
+	private boolean rightOf(int v, int e) {
+		return ccw(v, dest(e), org[e]);
+	}
+	
+	private boolean leftOf(int v, int e) {
+		return ccw(v, org[e], dest(e));
+	}
+	
+	/**
+	 * Returns true if the vertices a, b and c are in counter-clockwise order.
+	 */
+	private boolean ccw(int a, int b, int c) {
+		return orientation(x[a], y[a], x[b], y[b], x[c], y[c]) > 0;
+	}
+	
+	/**
+	 * Returns true if vertex d is strictly inside the circle through a, b and c (which are in counter-clockwise order).
+	 */
+	private boolean inCircle(int a, int b, int c, int d) {
+		return inCircle(x[a], y[a], x[b], y[b], x[c], y[c], x[d], y[d]) > 0;
+	}
+	
+	/**
+	 * Compute the sign of the orientation determinant, which is positive if the points are in counter-clockwise order.
+	 * @see <a href="https://www.cs.cmu.edu/~quake/robust.html">Shewchuk's robust predicates</a>
+	 */
+	static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+		double detLeft = (ax - cx) * (by - cy);
+		double detRight = (ay - cy) * (bx - cx);
+		double det = detLeft - detRight;
+		double errorBound = CCW_ERROR_BOUND * (Math.abs(detLeft) + Math.abs(detRight));
+		if (det > errorBound || -det > errorBound)
+			return det > 0 ? 1 : -1;
+		// Compute exactly
+		var acx = exact(ax).subtract(exact(cx));
+		var bcx = exact(bx).subtract(exact(cx));
+		var acy = exact(ay).subtract(exact(cy));
+		var bcy = exact(by).subtract(exact(cy));
+		return acx.multiply(bcy).subtract(acy.multiply(bcx)).signum();
+	}
+	
+	/**
+	 * Compute the sign of the in-circle determinant, which is positive if d is inside the circle through a, b and c 
+	 * (which are in counter-clockwise order).
+	 * @see <a href="https://www.cs.cmu.edu/~quake/robust.html">Shewchuk's robust predicates</a>
+	 */
+	static int inCircle(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+		double adx = ax - dx, ady = ay - dy;
+		double bdx = bx - dx, bdy = by - dy;
+		double cdx = cx - dx, cdy = cy - dy;
+		
+		double bdxcdy = bdx * cdy, cdxbdy = cdx * bdy;
+		double alift = adx * adx + ady * ady;
+		double cdxady = cdx * ady, adxcdy = adx * cdy;
+		double blift = bdx * bdx + bdy * bdy;
+		double adxbdy = adx * bdy, bdxady = bdx * ady;
+		double clift = cdx * cdx + cdy * cdy;
+		
+		double det = alift * (bdxcdy - cdxbdy) + blift * (cdxady - adxcdy) + clift * (adxbdy - bdxady);
+		double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * alift
+				+ (Math.abs(cdxady) + Math.abs(adxcdy)) * blift
+				+ (Math.abs(adxbdy) + Math.abs(bdxady)) * clift;
+		double errorBound = INCIRCLE_ERROR_BOUND * permanent;
+		if (det > errorBound || -det > errorBound)
+			return det > 0 ? 1 : -1;
+		// Compute exactly
+		var dxExact = exact(dx);
+		var dyExact = exact(dy);
+		var adxExact = exact(ax).subtract(dxExact);
+		var adyExact = exact(ay).subtract(dyExact);
+		var bdxExact = exact(bx).subtract(dxExact);
+		var bdyExact = exact(by).subtract(dyExact);
+		var cdxExact = exact(cx).subtract(dxExact);
+		var cdyExact = exact(cy).subtract(dyExact);
+		var aliftExact = adxExact.multiply(adxExact).add(adyExact.multiply(adyExact));
+		var bliftExact = bdxExact.multiply(bdxExact).add(bdyExact.multiply(bdyExact));
+		var cliftExact = cdxExact.multiply(cdxExact).add(cdyExact.multiply(cdyExact));
+		return aliftExact.multiply(bdxExact.multiply(cdyExact).subtract(cdxExact.multiply(bdyExact)))
+				.add(bliftExact.multiply(cdxExact.multiply(adyExact).subtract(adxExact.multiply(cdyExact))))
+				.add(cliftExact.multiply(adxExact.multiply(bdyExact).subtract(bdxExact.multiply(adyExact))))
+				.signum();
+	}
+	
+	private static BigDecimal exact(double value) {
+		return new BigDecimal(value);
+	}
+	
+	
+	/**
+	 * Allocates edges from one or more ranges, reusing deleted edges where possible.
+	 * This is not thread-safe; each pool should be used by only one thread at a time.
+	 */
+	private static class EdgePool {
+		
+		private int[] rangeStarts = new int[4];
+		private int[] rangeEnds = new int[4];
+		private int nRanges = 0;
+		private int currentRange = 0;
+		
+		private int[] freeEdges = new int[16];
+		private int nFree = 0;
+		
+		EdgePool(int start, int end) {
+			addRange(start, end);
+		}
+		
+		private void addRange(int start, int end) {
+			if (start >= end)
+				return;
+			if (nRanges == rangeStarts.length) {
+				rangeStarts = Arrays.copyOf(rangeStarts, nRanges * 2);
+				rangeEnds = Arrays.copyOf(rangeEnds, nRanges * 2);
+			}
+			rangeStarts[nRanges] = start;
+			rangeEnds[nRanges] = end;
+			nRanges++;
+		}
+		
+		/**
+		 * Add all the edges that are available to another pool to this one.
+		 */
+		void add(EdgePool pool) {
+			for (int i = pool.currentRange; i < pool.nRanges; i++)
+				addRange(pool.rangeStarts[i], pool.rangeEnds[i]);
+			for (int i = 0; i < pool.nFree; i++)
+				free(pool.freeEdges[i]);
+		}
+		
+		int allocate() {
+			if (nFree > 0)
+				return freeEdges[--nFree];
+			while (currentRange < nRanges) {
+				if (rangeStarts[currentRange] < rangeEnds[currentRange])
+					return rangeStarts[currentRange]++;
+				currentRange++;
+			}
+			throw new IllegalStateException("No edges available for Delaunay triangulation");
+		}
+		
+		void free(int edge) {
+			if (nFree == freeEdges.length)
+				freeEdges = Arrays.copyOf(freeEdges, nFree * 2);
+			freeEdges[nFree++] = edge;
+		}
+		
+	}
+
+}
@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Lineal;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.Puntal;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.locationtech.jts.geom.util.GeometryCombiner;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Index to find the distance from a centroid to the closest of a collection of target ROIs, all on the same plane.
+ * <p>
+ * Instances are immutable once created, and may be queried from multiple threads.
+ */
+class PlaneDistanceIndex {
+	
+	private final static Logger logger = LoggerFactory.getLogger(PlaneDistanceIndex.class);
+	
+	private final double pixelWidth;
+	private final double pixelHeight;
+	private final PrecisionModel precisionModel;
+	
+	private final Geometry shapeGeometry;
+	private final Geometry lineGeometry;
+	private final List<Coordinate> pointCoords = new ArrayList<>();
+	private final STRtree pointTree;
+	private final IndexedPointInAreaLocator locator;
+	
+	/**
+	 * Create an index for the specified target ROIs.
+	 * @param rois the target ROIs; these are assumed to be on the same plane
+	 * @param pixelWidth pixel width to use in Geometry conversion (use 1 for pixel units)
+	 * @param pixelHeight pixel height to use in Geometry conversion (use 1 for pixel units)
+	 */
+	PlaneDistanceIndex(Collection<? extends ROI> rois, double pixelWidth, double pixelHeight) {
+		this.pixelWidth = pixelWidth;
+		this.pixelHeight = pixelHeight;
+		
+		var transform = pixelWidth == 1 && pixelHeight == 1 ? null : AffineTransformation.scaleInstance(pixelWidth, pixelHeight);
+		PrecisionModel precision = null;
+
+		List<Geometry> areaGeometries = new ArrayList<>();
+		List<Geometry> lineGeometries = new ArrayList<>();
+		List<Geometry> pointGeometries = new ArrayList<>();
+		for (var roi : rois) {
+			var geom = roi.getGeometry();
+			if (transform != null) {
+				geom = transform.transform(geom);
+				if (precision == null)
+					precision = geom.getPrecisionModel();
+			}
+			if (geom instanceof Puntal)
+				pointGeometries.add(geom);
+			else if (geom instanceof Lineal)
+				lineGeometries.add(geom);
+			else if (geom instanceof Polygonal)
+				areaGeometries.add(geom);
+			else {
+				for (int i = 0; i < geom.getNumGeometries(); i++) {
+					var geom2 = geom.getGeometryN(i);
+					if (geom2 instanceof Puntal)
+						pointGeometries.add(geom2);
+					else if (geom2 instanceof Lineal)
+						lineGeometries.add(geom2);
+					else if (geom2 instanceof Polygonal)
+						areaGeometries.add(geom2);
+					else
+						logger.warn("Unexpected nested Geometry collection, some Geometries may be ignored");
+				}
+			}
+		}
+		
+		precisionModel = precision == null ? GeometryTools.getDefaultFactory().getPrecisionModel() : precision;
+		
+		shapeGeometry = areaGeometries.isEmpty() ? null : 
+			areaGeometries.size() == 1 ? areaGeometries.get(0) : GeometryCombiner.combine(areaGeometries);
+		lineGeometry = lineGeometries.isEmpty() ? null :
+			lineGeometries.size() == 1 ? lineGeometries.get(0) : GeometryCombiner.combine(lineGeometries);
+		
+		// Identify points, and create an STRtree to find nearest neighbors more quickly if there are a lot of them
+		for (var geom : pointGeometries) {
+			for (var coord : geom.getCoordinates()) {
+				precisionModel.makePrecise(coord);
+				pointCoords.add(coord);
+			}
+		}
+		if (pointCoords.size() > 1000) {
+			pointTree = DistanceTools.createCoordinateCache(pointCoords);
+			pointTree.build();
+		} else
+			pointTree = null;
+		
+		locator = shapeGeometry == null ? null : new IndexedPointInAreaLocator(shapeGeometry);
+		// See https://github.com/locationtech/jts/issues/571
+		if (locator != null)
+			locator.locate(new Coordinate(0, 0));
+	}
+	
+	/**
+	 * Returns true if the index does not contain any targets.
+	 * @return
+	 */
+	boolean isEmpty() {
+		return shapeGeometry == null && lineGeometry == null && pointCoords.isEmpty();
+	}
+	
+	/**
+	 * Compute the distance from a centroid to the closest target.
+	 * @param x centroid x-coordinate, in pixels
+	 * @param y centroid y-coordinate, in pixels
+	 * @return the distance, scaled according to the pixel size, or Double.POSITIVE_INFINITY if there are no targets
+	 */
+	double distance(double x, double y) {
+		Coordinate coord = new Coordinate(x * pixelWidth, y * pixelHeight);
+		precisionModel.makePrecise(coord);
+		
+		double pointDistance = pointTree != null ? DistanceTools.computeCoordinateDistance(coord, pointTree) : DistanceTools.computeCoordinateDistance(coord, pointCoords);
+		double lineDistance = lineGeometry == null ? Double.POSITIVE_INFINITY : DistanceTools.computeDistance(coord, lineGeometry, null);
+		double shapeDistance = shapeGeometry == null ? Double.POSITIVE_INFINITY : DistanceTools.computeDistance(coord, shapeGeometry, locator);
+		return Math.min(lineDistance, Math.min(pointDistance, shapeDistance));
+	}
+
+}
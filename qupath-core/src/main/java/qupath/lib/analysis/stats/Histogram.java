@@ -24,8 +24,11 @@
 package qupath.lib.analysis.stats;
 
 //import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 
+import qupath.lib.measurements.MeasurementList;
+import qupath.lib.measurements.MeasurementStore;
 import qupath.lib.objects.PathObject;
 
 
@@ -435,13 +438,10 @@ public class Histogram { // implements Serializable {
 	 * @see #makeMeasurementHistogram(Collection, String, int)
 	 */
 	public static double[] getMeasurementValues(final Collection<PathObject> pathObjects, final String measurementName) {
-		double[] values = new double[pathObjects.size()];
-		int ind = 0;
-		for (PathObject pathObject : pathObjects) {
-			values[ind] = pathObject.getMeasurementList().getMeasurementValue(measurementName);
-			ind++;
-		}
-		return values;
+		var lists = new ArrayList<MeasurementList>(pathObjects.size());
+		for (PathObject pathObject : pathObjects)
+			lists.add(pathObject.getMeasurementList());
+		return MeasurementStore.getMeasurementValues(lists, measurementName);
 	}
 	
 	/**
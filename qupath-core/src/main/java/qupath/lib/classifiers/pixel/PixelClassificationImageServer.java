@@ -46,6 +46,7 @@ import qupath.lib.images.servers.PixelType;
 import qupath.lib.images.servers.TileRequest;
 import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
 import qupath.lib.io.GsonTools;
+import qupath.lib.metrics.Metrics;
 import qupath.lib.regions.RegionRequest;
 
 /**
@@ -267,8 +268,42 @@ public class PixelClassificationImageServer extends AbstractTileableImageServer
 	public BufferedImage getCachedTile(TileRequest tile) {
 		if (tileMap != null && tileMap.containsKey(tile))
 			return tileMap.get(tile);
+		var tileCache = PixelClassificationTileCache.getDefaultCache();
+		if (tileCache != null)
+			return tileCache.getIfPresent(getPath(), tile);
 		return super.getCachedTile(tile);
 	}
+	
+	/**
+	 * Get a classified tile, computing it if necessary.
+	 * <p>
+	 * Unlike {@link #readBufferedImage(RegionRequest)}, this returns the tile directly rather than a copy - 
+	 * therefore the tile must not be modified.
+	 * 
+	 * @param tile
+	 * @return
+	 * @throws IOException
+	 * @since 0.3
+	 */
+	public BufferedImage getClassifiedTile(TileRequest tile) throws IOException {
+		return getTile(tile);
+	}
+	
+	/**
+	 * Get a tile, using the {@link PixelClassificationTileCache} if available rather than the main tile cache.
+	 */
+	@Override
+	protected BufferedImage getTile(TileRequest tileRequest) throws IOException {
+		if (tileMap != null) {
+			var img = tileMap.get(tileRequest);
+			if (img != null)
+				return img;
+		}
+		var tileCache = PixelClassificationTileCache.getDefaultCache();
+		if (tileCache == null)
+			return super.getTile(tileRequest);
+		return tileCache.get(getPath(), tileRequest, () -> readTile(tileRequest));
+	}
 
 
 	@Override
@@ -282,7 +317,11 @@ public class PixelClassificationImageServer extends AbstractTileableImageServer
 			img = BufferedImageTools.resize(img, tileRequest.getTileWidth(), tileRequest.getTileHeight(), allowSmoothInterpolation());
 		} else {
 			// Classify at this resolution if need be
+			var timer = Metrics.timer("classifier.pixel.tile");
+			long startTime = timer.start();
 			img = classifier.applyClassification(imageData, tileRequest.getRegionRequest());
+			timer.stop(startTime);
+			Metrics.counter("classifier.pixel.pixels").increment((long)img.getWidth() * img.getHeight());
 			img = BufferedImageTools.resize(img, tileRequest.getTileWidth(), tileRequest.getTileHeight(), allowSmoothInterpolation());
 		}
 		// If we have specified a color model, apply it now
@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.classifiers.pixel;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import qupath.lib.images.servers.TileRequest;
+
+/**
+ * A size-bounded cache of tiles computed by a {@link PixelClassificationImageServer}.
+ * <p>
+ * Tiles are keyed by the classifier identity (i.e. the server path) and {@link TileRequest}, and each tile is computed
+ * only once even if it is requested from several threads at the same time.
+ * Because the cache is separate from the main tile cache, classified tiles are not evicted to make space
+ * for the tiles of the image being viewed, and can be shared when the same classification is used for display,
+ * measurement and export.
+ * <p>
+ * No cache is used by default, in which case classified tiles are stored in the main tile cache.
+ * Where a cache is set with {@link #setDefaultCache(PixelClassificationTileCache)}, its size should be taken from the 
+ * memory available for tile caching (see {@link #getDefaultMaxBytes(long)}) so that the total remains within the user's limit.
+ *
+ * @since 0.3
+ */
+public class PixelClassificationTileCache {
+
+	private static PixelClassificationTileCache defaultCache;
+
+	private final long maxBytes;
+	private final Cache<TileKey, BufferedImage> cache;
+
+	/**
+	 * Create a new cache.
+	 * @param maxBytes the maximum number of bytes that cached tiles may occupy
+	 */
+	public PixelClassificationTileCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher((TileKey key, BufferedImage img) -> getSizeBytes(img))
+				.build();
+	}
+
+	/**
+	 * Get the cache used by all {@link PixelClassificationImageServer}s.
+	 * @return the default cache, or null if classified tiles should not be cached separately
+	 */
+	public static synchronized PixelClassificationTileCache getDefaultCache() {
+		return defaultCache;
+	}
+
+	/**
+	 * Set the cache used by all {@link PixelClassificationImageServer}s.
+	 * @param cache the cache to use, or null if classified tiles should not be cached separately
+	 */
+	public static synchronized void setDefaultCache(PixelClassificationTileCache cache) {
+		defaultCache = cache;
+	}
+
+	/**
+	 * Get the number of bytes that should be used to cache classified tiles, given the total number of bytes available for tile caching.
+	 * The remainder should be used for the main tile cache.
+	 * @param tileCacheBytes the total memory available for tile caching, usually determined by a user preference
+	 * @return
+	 */
+	public static long getDefaultMaxBytes(long tileCacheBytes) {
+		return tileCacheBytes / 4;
+	}
+
+	/**
+	 * Get the maximum number of bytes that cached tiles may occupy.
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Get a tile if it has already been computed, without computing it otherwise.
+	 * @param classifierID the classifier identity, usually the path of the server
+	 * @param tile
+	 * @return the tile, or null if it is not in the cache
+	 */
+	public BufferedImage getIfPresent(String classifierID, TileRequest tile) {
+		return cache.getIfPresent(new TileKey(classifierID, tile));
+	}
+
+	/**
+	 * Get a tile, computing it if necessary.
+	 * If the tile is already being computed by another thread, this will wait for the result rather than
+	 * computing the tile again.
+	 *
+	 * @param classifierID the classifier identity, usually the path of the server
+	 * @param tile the tile to return
+	 * @param loader function to compute the tile
+	 * @return the tile, or null if the loader returned null
+	 * @throws IOException if the tile could not be computed
+	 */
+	public BufferedImage get(String classifierID, TileRequest tile, Callable<BufferedImage> loader) throws IOException {
+		var key = new TileKey(classifierID, tile);
+		try {
+			return cache.get(key, loader);
+		} catch (InvalidCacheLoadException e) {
+			// Loader returned null
+			return null;
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+			var cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Remove all tiles for a specific classifier from the cache.
+	 * @param classifierID
+	 */
+	public void invalidate(String classifierID) {
+		cache.asMap().keySet().removeIf(k -> k.classifierID.equals(classifierID));
+	}
+
+	/**
+	 * Remove all tiles from the cache.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Get the number of tiles currently in the cache.
+	 * @return
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	private static int getSizeBytes(BufferedImage img) {
+		var raster = img.getRaster();
+		long bits = (long)raster.getWidth() * raster.getHeight() * raster.getNumBands() * DataBuffer.getDataTypeSize(raster.getTransferType());
+		return (int)Math.min(Integer.MAX_VALUE, bits / 8);
+	}
+
+
+	private static class TileKey {
+
+		private final String classifierID;
+		private final TileRequest tile;
+
+		private TileKey(String classifierID, TileRequest tile) {
+			this.classifierID = Objects.requireNonNull(classifierID);
+			this.tile = Objects.requireNonNull(tile);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * classifierID.hashCode() + tile.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof TileKey))
+				return false;
+			var other = (TileKey)obj;
+			return classifierID.equals(other.classifierID) && tile.equals(other.tile);
+		}
+
+	}
+
+}
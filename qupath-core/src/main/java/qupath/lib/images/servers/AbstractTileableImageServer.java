@@ -28,19 +28,30 @@ import java.awt.image.ColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.awt.common.BufferedImageTools;
 import qupath.lib.color.ColorModelFactory;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
+import qupath.lib.metrics.Metrics;
 import qupath.lib.regions.RegionRequest;
 
 /**
@@ -57,20 +68,45 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 	
 	private static final Logger logger = LoggerFactory.getLogger(AbstractTileableImageServer.class);
 	
+	/**
+	 * Default maximum number of tiles that may be read in parallel for a single region request.
+	 */
+	private static final int DEFAULT_MAX_PARALLEL_TILE_READS = 4;
+	
+	// Shared pool used to read tiles in parallel; the thread making the request also reads tiles, 
+	// so requests can always complete even if the pool is busy
+	private static final ExecutorService tileReadPool = createTileReadPool();
+	
 	private ColorModel colorModel;
-	private Map<String, BufferedImage> emptyTileMap = new HashMap<>();
+	private Map<String, BufferedImage> emptyTileMap = new ConcurrentHashMap<>();
 	
-	private transient Set<TileRequest> emptyTiles = new HashSet<>();
+	// Tiles may be requested in parallel, so these sets need to be thread-safe
+	private transient Set<TileRequest> emptyTiles = ConcurrentHashMap.newKeySet();
 	
 	private final static Long ZERO = Long.valueOf(0L);
 	
 	// Maintain a record of tiles that could not be cached, so we warn for each only once
-	private transient Set<RegionRequest> failedCacheTiles = new HashSet<>();
+	private transient Set<RegionRequest> failedCacheTiles = ConcurrentHashMap.newKeySet();
+	
+	// Name of the timer used to record readTile latency, created lazily only if metrics are enabled
+	private transient String readTileMetric;
+	
+	// Fingerprint used to identify tiles in the disk cache, created lazily only if a disk cache is used
+	private transient volatile String diskCacheFingerprint;
 		
 	protected AbstractTileableImageServer() {
 		super(BufferedImage.class);
 	}
 	
+	private static ExecutorService createTileReadPool() {
+		int nThreads = Math.max(DEFAULT_MAX_PARALLEL_TILE_READS, Runtime.getRuntime().availableProcessors());
+		var pool = new ThreadPoolExecutor(nThreads, nThreads, 10L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				ThreadTools.createThreadFactory("tile-reader-", true));
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	
 	protected BufferedImage getEmptyTile(int width, int height) throws IOException {
 		return getEmptyTile(width, height, true);
 //		return getEmptyTile(width, height,
@@ -160,6 +196,12 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 	/**
 	 * Get a tile for the request - ideally from the cache, but otherwise read it and 
 	 * then add it to the cache.
+	 * <p>
+	 * If a {@link DiskTileCache} is available, this is checked after the in-memory cache 
+	 * and before reading the tile.
+	 * <p>
+	 * If {@link Metrics} are enabled, cache hits and misses are counted and the time taken to 
+	 * read each tile is recorded for the server class.
 	 * 
 	 * @param tileRequest
 	 * @return
@@ -171,32 +213,71 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		if (emptyTiles.contains(tileRequest))
 			return getEmptyTile(tileRequest.getTileWidth(), tileRequest.getTileHeight());
 		
+		boolean doMetrics = Metrics.isEnabled();
 		var cache = getCache();
 		if (cache != null) {
 			var imgCached = cache.get(request);
 			if (imgCached != null) { 
 				logger.trace("Returning cached tile: {}", request);
+				if (doMetrics)
+					Metrics.counter("tile.cache.hits").increment();
 				return imgCached;
 			}
+			if (doMetrics)
+				Metrics.counter("tile.cache.misses").increment();
 		}
-		logger.trace("Reading tile: {}", request);
 		
-		var imgCached = readTile(tileRequest);
+		// Try the persistent cache next - but only for tiles requested from this server
+		var diskCache = request.getPath().equals(getPath()) ? ImageServerProvider.getDiskCache() : null;
+		BufferedImage imgCached = null;
+		if (diskCache != null) {
+			imgCached = diskCache.get(request, getDiskCacheFingerprint(), getDefaultColorModel());
+			if (imgCached != null) {
+				logger.trace("Returning tile from disk cache: {}", request);
+				if (doMetrics)
+					Metrics.counter("tile.diskcache.hits").increment();
+			}
+		}
+		
+		boolean fromDisk = imgCached != null;
+		if (!fromDisk) {
+			logger.trace("Reading tile: {}", request);
+			long startTime = doMetrics ? System.nanoTime() : 0L;
+			imgCached = readTile(tileRequest);
+			if (doMetrics) {
+				if (readTileMetric == null)
+					readTileMetric = "tile.read." + getClass().getName();
+				Metrics.timer(readTileMetric).stop(startTime);
+			}
+		}
 		
 		// Put the tile in the appropriate cache
 		if (imgCached != null) {
 			if (isEmptyTile(imgCached)) {
 				emptyTiles.add(tileRequest);
-			} else if (cache != null) {
-				cache.put(request, imgCached);
-				// Check if we were able to cache the tile; sometimes we can't if it is too big
-				if (!cache.containsKey(request) && failedCacheTiles.add(request))
-					logger.warn("Unable to add {} to cache.\nYou might need to give QuPath more memory, or to increase the 'Percentage memory for tile caching' preference.", request);
+			} else {
+				if (diskCache != null && !fromDisk)
+					diskCache.put(request, getDiskCacheFingerprint(), imgCached);
+				if (cache != null) {
+					cache.put(request, imgCached);
+					// Check if we were able to cache the tile; sometimes we can't if it is too big
+					if (!cache.containsKey(request) && failedCacheTiles.add(request))
+						logger.warn("Unable to add {} to cache.\nYou might need to give QuPath more memory, or to increase the 'Percentage memory for tile caching' preference.", request);
+				}
 			}
 		}
 		return imgCached;
 	}
 	
+	private String getDiskCacheFingerprint() {
+		var fingerprint = diskCacheFingerprint;
+		if (fingerprint == null) {
+			fingerprint = DiskTileCache.createFingerprint(this);
+			diskCacheFingerprint = fingerprint;
+		}
+		return fingerprint;
+	}
+	
 	/**
 	 * Create the default (blank) RGB image for this server.
 	 * <p>
@@ -248,34 +329,36 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		int height = (int)Math.max(1, Math.round(request.getHeight() / request.getDownsample()));
 		if (isRGB()) {
 			BufferedImage imgResult = createDefaultRGBImage(width, height);
-			Graphics2D g2d = imgResult.createGraphics();
-			g2d.scale(1.0/request.getDownsample(), 1.0/request.getDownsample());
-			g2d.translate(-request.getX(), -request.getY());
-			// Interpolate if downsampling
-			if (request.getDownsample() > 1)
-				g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-			
-			// Requests could be parallelized, but should consider the number of threads created/what happens if one blocks
-//			Map<TileRequest, BufferedImage> map = tiles.stream()
-//					.collect(Collectors.toMap(tileRequest -> tileRequest,
-//							tileRequest -> {
-//					try {
-//						return getTile(tileRequest);
-//					} catch (Exception ex) {
-//						return null;
-//					}
-//					}));
-//			for (TileRequest tileRequest : tiles) {
-//				BufferedImage imgTile = map.get(tileRequest);
-//				if (imgTile != null)
-//					g2d.drawImage(imgTile, tileRequest.getImageX(), tileRequest.getImageY(), tileRequest.getImageWidth(), tileRequest.getImageHeight(), null);
-//			}
+			var tileList = new ArrayList<>(tiles);
+			var tileImages = getTiles(tileList);
 			
-			for (TileRequest tileRequest : tiles) {
-				BufferedImage imgTile = getTile(tileRequest);
+			// Copy pixels directly where a tile maps exactly onto the output, and use Java2D for any that need scaling
+			var raster = imgResult.getRaster();
+			Graphics2D g2d = null;
+			for (int i = 0; i < tileList.size(); i++) {
+				var tileRequest = tileList.get(i);
+				var imgTile = tileImages[i];
+				// Drawing a transparent empty tile would have no effect
+				if (imgTile == null || (isEmptyTile(imgTile) && imgTile.getColorModel().hasAlpha()))
+					continue;
+				if (canCopyPixels(request, tileRequest, imgTile, raster)) {
+					int dx = (int)Math.round((tileRequest.getImageX() - request.getX()) * (1.0/request.getDownsample()));
+					int dy = (int)Math.round((tileRequest.getImageY() - request.getY()) * (1.0/request.getDownsample()));
+					copyPixels(imgTile.getRaster(), dx, dy, raster);
+					continue;
+				}
+				if (g2d == null) {
+					g2d = imgResult.createGraphics();
+					g2d.scale(1.0/request.getDownsample(), 1.0/request.getDownsample());
+					g2d.translate(-request.getX(), -request.getY());
+					// Interpolate if downsampling
+					if (request.getDownsample() > 1)
+						g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				}
 				g2d.drawImage(imgTile, tileRequest.getImageX(), tileRequest.getImageY(), tileRequest.getImageWidth(), tileRequest.getImageHeight(), null);
 			}
-			g2d.dispose();
+			if (g2d != null)
+				g2d.dispose();
 			
 			long endTime = System.currentTimeMillis();
 			logger.trace("Requested " + tiles.size() + " tiles in " + (endTime - startTime) + " ms (RGB)");
@@ -315,8 +398,11 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 					isEmptyRegion = isEmptyTile(imgTile);
 				}
 			} else {
-				for (var tileRequest : tiles) {
-					BufferedImage imgTile = getTile(tileRequest);
+				var tileList = new ArrayList<>(tiles);
+				var tileImages = getTiles(tileList);
+				for (int i = 0; i < tileList.size(); i++) {
+					var tileRequest = tileList.get(i);
+					BufferedImage imgTile = tileImages[i];
 					if (imgTile != null && !isEmptyTile(imgTile)) {
 						isEmptyRegion = false;
 						// Figure out coordinates
@@ -395,6 +481,107 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		}
 	}
 	
+	/**
+	 * Get the maximum number of tiles that may be read in parallel for a single region request.
+	 * <p>
+	 * The default is 4. Subclasses should override this to return 1 if tiles cannot be read efficiently 
+	 * in parallel, or a different value if they manage their own pool of readers.
+	 * 
+	 * @return the maximum number of tiles to read in parallel; values &lt;= 1 mean tiles are read sequentially
+	 * @since 0.3
+	 */
+	protected int getMaxParallelTileReads() {
+		return DEFAULT_MAX_PARALLEL_TILE_READS;
+	}
+	
+	/**
+	 * Get the tiles for a list of requests, using {@link #getTile(TileRequest)}.
+	 * <p>
+	 * Tiles that are not already cached are read in parallel, up to {@link #getMaxParallelTileReads()} at a time. 
+	 * The calling thread reads tiles as well, so that the request does not depend upon other threads being available.
+	 * 
+	 * @param tileRequests
+	 * @return an array of tiles, in the same order as the requests
+	 * @throws IOException if any tile could not be read
+	 */
+	private BufferedImage[] getTiles(List<TileRequest> tileRequests) throws IOException {
+		int n = tileRequests.size();
+		var tiles = new BufferedImage[n];
+		
+		// Identify tiles that will need to be read
+		var cache = getCache();
+		var toRead = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			var tileRequest = tileRequests.get(i);
+			if (!emptyTiles.contains(tileRequest) && (cache == null || !cache.containsKey(tileRequest.getRegionRequest())))
+				toRead.add(i);
+		}
+		
+		int nThreads = Math.min(toRead.size(), getMaxParallelTileReads());
+		if (nThreads > 1) {
+			var nextInd = new AtomicInteger();
+			var latch = new CountDownLatch(toRead.size());
+			var exception = new AtomicReference<Throwable>();
+			Runnable worker = () -> {
+				int ind;
+				while ((ind = nextInd.getAndIncrement()) < toRead.size()) {
+					int i = toRead.get(ind);
+					try {
+						if (exception.get() == null)
+							tiles[i] = getTile(tileRequests.get(i));
+					} catch (Throwable e) {
+						exception.compareAndSet(null, e);
+					} finally {
+						latch.countDown();
+					}
+				}
+			};
+			for (int t = 1; t < nThreads; t++)
+				tileReadPool.execute(worker);
+			worker.run();
+			try {
+				// Any tiles still being read must have been claimed by running workers
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading tiles for " + tileRequests.get(0).getRegionRequest());
+			}
+			var e = exception.get();
+			if (e instanceof IOException)
+				throw (IOException)e;
+			if (e instanceof RuntimeException)
+				throw (RuntimeException)e;
+			if (e instanceof Error)
+				throw (Error)e;
+			if (e != null)
+				throw new IOException(e);
+			logger.trace("Read {} tiles with {} threads", toRead.size(), nThreads);
+		}
+		
+		// Get everything else sequentially (usually from the cache)
+		for (int i = 0; i < n; i++) {
+			if (tiles[i] == null)
+				tiles[i] = getTile(tileRequests.get(i));
+		}
+		return tiles;
+	}
+	
+	/**
+	 * Check whether a tile can be copied directly into the output raster for an RGB request, giving the 
+	 * same result as drawing it with Java2D. This requires that the tile is not scaled, is aligned to 
+	 * whole pixels, and has no alpha channel that would need to be composited.
+	 */
+	private static boolean canCopyPixels(RegionRequest request, TileRequest tileRequest, BufferedImage imgTile, WritableRaster dest) {
+		if (imgTile.getColorModel().hasAlpha() || imgTile.getRaster().getNumBands() != dest.getNumBands())
+			return false;
+		double scale = 1.0/request.getDownsample();
+		if (tileRequest.getImageWidth() * scale != imgTile.getWidth() || tileRequest.getImageHeight() * scale != imgTile.getHeight())
+			return false;
+		double dx = (tileRequest.getImageX() - request.getX()) * scale;
+		double dy = (tileRequest.getImageY() - request.getY()) * scale;
+		return dx == Math.rint(dx) && dy == Math.rint(dy);
+	}
+	
 	/**
 	 * This method essentially wraps a call to {@link WritableRaster#setRect(int, int, Raster)}, while working 
 	 * around an inconvenient JDK bug: https://bugs.openjdk.java.net/browse/JDK-4847156
@@ -0,0 +1,548 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * A persistent cache of decoded image tiles on local disk.
+ * <p>
+ * This is intended as a second-level cache below the in-memory tile cache (see {@link ImageServerProvider#setCache(Map, Class)}),
+ * so that tiles do not need to be decoded again when an image is reopened, or when several scripts are run for the same image.
+ * Each tile is stored as an uncompressed raster in its own file, which is written and read using memory-mapping.
+ * Files are named according to a hash of the server path, a server fingerprint and {@link RegionRequest}, and the least 
+ * recently used tiles are deleted whenever the total size of the cache exceeds a maximum.
+ * <p>
+ * The cache used by {@link AbstractTileableImageServer} can be set with {@link ImageServerProvider#setDiskCache(DiskTileCache)},
+ * or by using the system properties {@code qupath.tilecache.dir} and {@code qupath.tilecache.size} (the maximum size in MB).
+ * <p>
+ * The fingerprint (see {@link #createFingerprint(ImageServer)}) includes the size and last modified time of any local files 
+ * used by the server, so that tiles are not reused if an image is replaced by another one with the same path.
+ *
+ * @since 0.3
+ */
+public class DiskTileCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(DiskTileCache.class);
+
+	private static final int MAGIC = 0x51505443; // QPTC
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".tile";
+
+	private static final long DEFAULT_MAX_SIZE_MB = 2048;
+
+	private final Path directory;
+	private final long maxBytes;
+
+	/**
+	 * Map of file names to file sizes, in access order.
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private long totalBytes = 0L;
+
+	private DiskTileCache(Path directory, long maxBytes) throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+		initializeEntries();
+	}
+
+	/**
+	 * Create a cache that stores tiles within the specified directory.
+	 * Tiles already in the directory from a previous cache will be reused.
+	 * @param directory the cache directory; this will be created if necessary
+	 * @param maxBytes the maximum number of bytes that tiles in the cache may occupy
+	 * @return
+	 * @throws IOException if the directory cannot be created or read
+	 */
+	public static DiskTileCache create(Path directory, long maxBytes) throws IOException {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("Maximum cache size must be > 0!");
+		return new DiskTileCache(directory, maxBytes);
+	}
+
+	/**
+	 * Create a cache from the system properties {@code qupath.tilecache.dir} and {@code qupath.tilecache.size}.
+	 * @return the cache, or null if no directory is specified or the cache could not be created
+	 */
+	static DiskTileCache createFromSystemProperties() {
+		String dir = System.getProperty("qupath.tilecache.dir");
+		if (dir == null || dir.isBlank())
+			return null;
+		long maxSizeMB = DEFAULT_MAX_SIZE_MB;
+		String size = System.getProperty("qupath.tilecache.size");
+		if (size != null && !size.isBlank()) {
+			try {
+				maxSizeMB = Long.parseLong(size.trim());
+			} catch (NumberFormatException e) {
+				logger.warn("Unable to parse tile cache size '{}' - will use {} MB", size, maxSizeMB);
+			}
+		}
+		try {
+			return create(Paths.get(dir), maxSizeMB * 1024L * 1024L);
+		} catch (Exception e) {
+			logger.warn("Unable to create disk tile cache in " + dir + ": " + e.getLocalizedMessage(), e);
+			return null;
+		}
+	}
+
+	private void initializeEntries() throws IOException {
+		var files = new ArrayList<Path>();
+		try (var stream = Files.list(directory)) {
+			files.addAll(stream.filter(p -> p.getFileName().toString().endsWith(EXTENSION)).collect(Collectors.toList()));
+		}
+		// Use the last modified time to approximate the access order from previous sessions
+		var times = new LinkedHashMap<Path, FileTime>();
+		for (var file : files) {
+			try {
+				times.put(file, Files.getLastModifiedTime(file));
+			} catch (IOException e) {
+				logger.debug("Unable to read modified time for {}", file);
+			}
+		}
+		synchronized (this) {
+			for (var file : times.keySet().stream().sorted(Comparator.comparing(times::get)).collect(Collectors.toList())) {
+				long size = Files.size(file);
+				entries.put(file.getFileName().toString(), size);
+				totalBytes += size;
+			}
+			evictIfNeeded();
+		}
+		logger.debug("Disk tile cache initialized with {} tiles ({} bytes) in {}", entries.size(), totalBytes, directory);
+	}
+
+	/**
+	 * Get the directory used by this cache.
+	 * @return
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Get the maximum number of bytes that tiles in this cache may occupy.
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Get the number of bytes currently occupied by tiles in this cache.
+	 * @return
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Get the number of tiles currently in this cache.
+	 * @return
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Check if the cache contains a tile for the specified request.
+	 * @param request
+	 * @param fingerprint the fingerprint of the server, or null if the server path alone identifies its pixels
+	 * @return
+	 */
+	public synchronized boolean containsKey(RegionRequest request, String fingerprint) {
+		return entries.containsKey(getFileName(createKey(request, fingerprint)));
+	}
+
+	/**
+	 * Remove all tiles from the cache.
+	 */
+	public synchronized void clear() {
+		for (var name : entries.keySet())
+			deleteQuietly(directory.resolve(name));
+		entries.clear();
+		totalBytes = 0L;
+	}
+
+	/**
+	 * Request a tile from the cache.
+	 * @param request the region request for the tile; the path of the request should be the path of the server
+	 * @param fingerprint the fingerprint of the server, or null if the server path alone identifies its pixels
+	 * @param colorModel color model to use if the tile was not of a standard {@link BufferedImage} type
+	 * @return the tile, or null if the tile is not in the cache or could not be read
+	 * @see #createFingerprint(ImageServer)
+	 */
+	public BufferedImage get(RegionRequest request, String fingerprint, ColorModel colorModel) {
+		String key = createKey(request, fingerprint);
+		String name = getFileName(key);
+		synchronized (this) {
+			if (!entries.containsKey(name))
+				return null;
+			// Update access order
+			entries.get(name);
+		}
+		var file = directory.resolve(name);
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.nativeOrder());
+			var img = readTile(buffer, key, colorModel);
+			if (img != null)
+				touch(file);
+			return img;
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Unable to read " + request + " from disk tile cache: " + e.getLocalizedMessage(), e);
+			remove(name);
+			return null;
+		}
+	}
+
+	/**
+	 * Add a tile to the cache.
+	 * @param request the region request for the tile; the path of the request should be the path of the server
+	 * @param fingerprint the fingerprint of the server, or null if the server path alone identifies its pixels
+	 * @param img the tile
+	 * @return true if the tile was added, false otherwise (e.g. because its pixels cannot be stored)
+	 * @see #createFingerprint(ImageServer)
+	 */
+	public boolean put(RegionRequest request, String fingerprint, BufferedImage img) {
+		var raster = img.getRaster();
+		int storageType = getStorageType(raster);
+		if (storageType == DataBuffer.TYPE_UNDEFINED)
+			return false;
+
+		String key = createKey(request, fingerprint);
+		String name = getFileName(key);
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int width = raster.getWidth();
+		int height = raster.getHeight();
+		int nBands = raster.getNumBands();
+		long headerBytes = 7 * Integer.BYTES + keyBytes.length;
+		long nBytes = headerBytes + (long)width * height * nBands * DataBuffer.getDataTypeSize(storageType) / 8;
+		if (nBytes > Integer.MAX_VALUE || nBytes > maxBytes)
+			return false;
+
+		Path temp = null;
+		try {
+			// Write to a temporary file first, so that a partially-written tile is never read
+			temp = Files.createTempFile(directory, "tile", ".tmp");
+			try (var channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, nBytes).order(ByteOrder.nativeOrder());
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putInt(keyBytes.length);
+				buffer.put(keyBytes);
+				buffer.putInt(img.getType());
+				buffer.putInt(storageType);
+				buffer.putInt(width);
+				buffer.putInt(height);
+				buffer.putInt(nBands);
+				writeSamples(raster, storageType, buffer);
+			}
+			Files.move(temp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Unable to write " + request + " to disk tile cache: " + e.getLocalizedMessage(), e);
+			if (temp != null)
+				deleteQuietly(temp);
+			return false;
+		}
+		synchronized (this) {
+			var previous = entries.put(name, nBytes);
+			if (previous != null)
+				totalBytes -= previous;
+			totalBytes += nBytes;
+			evictIfNeeded();
+		}
+		return true;
+	}
+
+	private synchronized void remove(String name) {
+		var size = entries.remove(name);
+		if (size != null) {
+			totalBytes -= size;
+			deleteQuietly(directory.resolve(name));
+		}
+	}
+
+	private void evictIfNeeded() {
+		var iter = entries.entrySet().iterator();
+		while (totalBytes > maxBytes && iter.hasNext()) {
+			var entry = iter.next();
+			totalBytes -= entry.getValue();
+			iter.remove();
+			deleteQuietly(directory.resolve(entry.getKey()));
+		}
+	}
+
+	private static void touch(Path file) {
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			logger.trace("Unable to update modified time for {}", file);
+		}
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// Can happen on some platforms if the file is still mapped
+			logger.debug("Unable to delete cached tile {}", file);
+		}
+	}
+
+	/**
+	 * Create a fingerprint for a server, which can be used along with its path to identify the pixels it returns.
+	 * <p>
+	 * This combines the size and last modified time of each local file used by the server with its image dimensions and pixel type.
+	 * It is not possible to detect changes to images that are not stored in local files, except where these alter the metadata.
+	 * @param server
+	 * @return
+	 */
+	public static String createFingerprint(ImageServer<?> server) {
+		return createFingerprint(server.getURIs(), server.getMetadata());
+	}
+	
+	static String createFingerprint(Collection<URI> uris, ImageServerMetadata metadata) {
+		var sb = new StringBuilder();
+		sb.append(metadata.getWidth()).append("x").append(metadata.getHeight())
+			.append("x").append(metadata.getSizeC()).append("x").append(metadata.getSizeZ()).append("x").append(metadata.getSizeT())
+			.append("|").append(metadata.getPixelType())
+			.append("|").append(metadata.nLevels());
+		for (var uri : uris) {
+			if (!"file".equals(uri.getScheme()))
+				continue;
+			try {
+				var path = Paths.get(uri);
+				if (Files.isRegularFile(path))
+					sb.append("|").append(Files.size(path)).append(":").append(Files.getLastModifiedTime(path).toMillis());
+			} catch (Exception e) {
+				logger.debug("Unable to read file attributes for {}: {}", uri, e.getLocalizedMessage());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Create a key that identifies a request, including the server path and fingerprint.
+	 * @param request
+	 * @param fingerprint
+	 * @return
+	 */
+	static String createKey(RegionRequest request, String fingerprint) {
+		return String.format("%s|%s|%s|%d|%d|%d|%d|%d|%d",
+				request.getPath(),
+				fingerprint == null ? "" : fingerprint,
+				Double.toString(request.getDownsample()),
+				request.getX(), request.getY(), request.getWidth(), request.getHeight(),
+				request.getZ(), request.getT());
+	}
+
+	private static String getFileName(String key) {
+		try {
+			var digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			var sb = new StringBuilder(digest.length * 2 + EXTENSION.length());
+			for (byte b : digest)
+				sb.append(String.format("%02x", b));
+			return sb.append(EXTENSION).toString();
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is required on all Java platforms
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Get the data type that should be used to store the samples of a raster, avoiding wasted
+	 * space for packed (e.g. RGB) rasters.
+	 * @param raster
+	 * @return the type, or {@link DataBuffer#TYPE_UNDEFINED} if the raster cannot be stored
+	 */
+	private static int getStorageType(WritableRaster raster) {
+		int type = raster.getDataBuffer().getDataType();
+		switch (type) {
+		case DataBuffer.TYPE_INT:
+		case DataBuffer.TYPE_USHORT:
+			for (int size : raster.getSampleModel().getSampleSize()) {
+				if (size > 8)
+					return type;
+			}
+			return DataBuffer.TYPE_BYTE;
+		case DataBuffer.TYPE_BYTE:
+		case DataBuffer.TYPE_SHORT:
+		case DataBuffer.TYPE_FLOAT:
+		case DataBuffer.TYPE_DOUBLE:
+			return type;
+		default:
+			return DataBuffer.TYPE_UNDEFINED;
+		}
+	}
+
+	private static void writeSamples(WritableRaster raster, int storageType, ByteBuffer buffer) {
+		int w = raster.getWidth();
+		int h = raster.getHeight();
+		int n = w * h;
+		int[] ints = null;
+		float[] floats = null;
+		double[] doubles = null;
+		for (int b = 0; b < raster.getNumBands(); b++) {
+			switch (storageType) {
+			case DataBuffer.TYPE_BYTE:
+				ints = raster.getSamples(0, 0, w, h, b, ints);
+				for (int i = 0; i < n; i++)
+					buffer.put((byte)ints[i]);
+				break;
+			case DataBuffer.TYPE_USHORT:
+			case DataBuffer.TYPE_SHORT:
+				ints = raster.getSamples(0, 0, w, h, b, ints);
+				for (int i = 0; i < n; i++)
+					buffer.putShort((short)ints[i]);
+				break;
+			case DataBuffer.TYPE_INT:
+				ints = raster.getSamples(0, 0, w, h, b, ints);
+				buffer.asIntBuffer().put(ints, 0, n);
+				buffer.position(buffer.position() + n * Integer.BYTES);
+				break;
+			case DataBuffer.TYPE_FLOAT:
+				floats = raster.getSamples(0, 0, w, h, b, floats);
+				buffer.asFloatBuffer().put(floats, 0, n);
+				buffer.position(buffer.position() + n * Float.BYTES);
+				break;
+			case DataBuffer.TYPE_DOUBLE:
+				doubles = raster.getSamples(0, 0, w, h, b, doubles);
+				buffer.asDoubleBuffer().put(doubles, 0, n);
+				buffer.position(buffer.position() + n * Double.BYTES);
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported storage type " + storageType);
+			}
+		}
+	}
+
+	/**
+	 * Read a tile from a buffer.
+	 * @param buffer
+	 * @param key
+	 * @param colorModel
+	 * @return the tile, or null if the tile cannot be created with the specified color model
+	 * @throws IOException if the buffer does not contain a valid tile for the key
+	 */
+	private static BufferedImage readTile(ByteBuffer buffer, String key, ColorModel colorModel) throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException("Invalid cached tile");
+			var keyBytes = new byte[buffer.getInt()];
+			buffer.get(keyBytes);
+			// Guard against (very unlikely) hash collisions
+			if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8)))
+				throw new IOException("Cached tile does not match key " + key);
+			int imageType = buffer.getInt();
+			int storageType = buffer.getInt();
+			int w = buffer.getInt();
+			int h = buffer.getInt();
+			int nBands = buffer.getInt();
+
+			BufferedImage img;
+			if (imageType == BufferedImage.TYPE_CUSTOM) {
+				if (colorModel == null)
+					return null;
+				var raster = colorModel.createCompatibleWritableRaster(w, h);
+				img = new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+			} else
+				img = new BufferedImage(w, h, imageType);
+			var raster = img.getRaster();
+			if (raster.getNumBands() != nBands)
+				return null;
+
+			int n = w * h;
+			int[] ints = storageType == DataBuffer.TYPE_FLOAT || storageType == DataBuffer.TYPE_DOUBLE ? null : new int[n];
+			float[] floats = storageType == DataBuffer.TYPE_FLOAT ? new float[n] : null;
+			double[] doubles = storageType == DataBuffer.TYPE_DOUBLE ? new double[n] : null;
+			for (int b = 0; b < nBands; b++) {
+				switch (storageType) {
+				case DataBuffer.TYPE_BYTE:
+					for (int i = 0; i < n; i++)
+						ints[i] = buffer.get() & 0xff;
+					raster.setSamples(0, 0, w, h, b, ints);
+					break;
+				case DataBuffer.TYPE_USHORT:
+					for (int i = 0; i < n; i++)
+						ints[i] = buffer.getShort() & 0xffff;
+					raster.setSamples(0, 0, w, h, b, ints);
+					break;
+				case DataBuffer.TYPE_SHORT:
+					for (int i = 0; i < n; i++)
+						ints[i] = buffer.getShort();
+					raster.setSamples(0, 0, w, h, b, ints);
+					break;
+				case DataBuffer.TYPE_INT:
+					buffer.asIntBuffer().get(ints);
+					buffer.position(buffer.position() + n * Integer.BYTES);
+					raster.setSamples(0, 0, w, h, b, ints);
+					break;
+				case DataBuffer.TYPE_FLOAT:
+					buffer.asFloatBuffer().get(floats);
+					buffer.position(buffer.position() + n * Float.BYTES);
+					raster.setSamples(0, 0, w, h, b, floats);
+					break;
+				case DataBuffer.TYPE_DOUBLE:
+					buffer.asDoubleBuffer().get(doubles);
+					buffer.position(buffer.position() + n * Double.BYTES);
+					raster.setSamples(0, 0, w, h, b, doubles);
+					break;
+				default:
+					throw new IOException("Unsupported storage type " + storageType);
+				}
+			}
+			return img;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Cached tile is truncated", e);
+		}
+	}
+
+}
@@ -58,6 +58,8 @@ public class ImageServerProvider {
 	
 	private static Map<Class<?>, Map<RegionRequest, ?>> cacheMap = new HashMap<>();
 	
+	private static volatile DiskTileCache diskCache = DiskTileCache.createFromSystemProperties();
+	
 	@SuppressWarnings("rawtypes")
 	private static ServiceLoader<ImageServerBuilder> serviceLoader = ServiceLoader.load(ImageServerBuilder.class);
 	
@@ -82,6 +84,24 @@ public class ImageServerProvider {
 		return (Map<RegionRequest, T>)cacheMap.get(cls);
 	}
 	
+	/**
+	 * Set the persistent cache to be used for image tiles, below the in-memory cache.
+	 * @param cache the cache, or null if tiles should not be cached on disk
+	 * @since 0.3
+	 */
+	public static void setDiskCache(DiskTileCache cache) {
+		diskCache = cache;
+	}
+	
+	/**
+	 * Get the persistent cache in use for image tiles, if any.
+	 * @return the cache, or null if tiles are not cached on disk
+	 * @since 0.3
+	 */
+	public static DiskTileCache getDiskCache() {
+		return diskCache;
+	}
+	
 	/**
 	 * Replace the default service loader with another.
 	 * <p>
@@ -21,19 +21,18 @@
 
 package qupath.lib.images.servers;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BandedSampleModel;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -52,7 +51,6 @@ import org.slf4j.LoggerFactory;
 
 import qupath.lib.classifiers.PathClassifierTools;
 import qupath.lib.color.ColorModelFactory;
-import qupath.lib.color.ColorToolsAwt;
 import qupath.lib.common.ColorTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
@@ -66,6 +64,7 @@ import qupath.lib.objects.hierarchy.PathObjectHierarchy;
 import qupath.lib.regions.ImageRegion;
 import qupath.lib.regions.RegionRequest;
 import qupath.lib.roi.RoiTools;
+import qupath.lib.roi.ScanlineRasterizer;
 import qupath.lib.roi.interfaces.ROI;
 
 
@@ -85,6 +84,8 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 	
 	private final static Logger logger = LoggerFactory.getLogger(LabeledImageServer.class);
 	
+	private static final ThreadLocal<ScanlineRasterizer> rasterizers = ThreadLocal.withInitial(() -> new ScanlineRasterizer(1, 1));
+	
 	static long counter = 0;
 	
 	private ImageServerMetadata originalMetadata;
@@ -786,26 +787,26 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 		return new BufferedImage(colorModel, raster, false, null);
 	}
 	
+	/**
+	 * Get a rasterizer for the specified tile; rasterizers are reused by each thread to avoid reallocating buffers.
+	 */
+	private static ScanlineRasterizer getRasterizer(TileRequest tileRequest) {
+		var rasterizer = rasterizers.get();
+		rasterizer.setSize(tileRequest.getTileWidth(), tileRequest.getTileHeight());
+		var request = tileRequest.getRegionRequest();
+		rasterizer.setRegion(request.getX(), request.getY(), request.getDownsample());
+		return rasterizer;
+	}
+	
 	private BufferedImage createBinaryTile(TileRequest tileRequest, Collection<PathObject> pathObjects, int label) {
 		int width = tileRequest.getTileWidth();
 		int height = tileRequest.getTileHeight();
 		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-		WritableRaster raster = img.getRaster();
-		Graphics2D g2d = img.createGraphics();
 		
 		if (!pathObjects.isEmpty()) {
-			
-			RegionRequest request = tileRequest.getRegionRequest();
-			double downsampleFactor = request.getDownsample();
-			
-			g2d.setClip(0, 0, width, height);
-			double scale = 1.0/downsampleFactor;
-			g2d.scale(scale, scale);
-			g2d.translate(-request.getX(), -request.getY());
-			g2d.setColor(Color.WHITE);
-			
-			BasicStroke stroke = new BasicStroke((float)(params.lineThickness * tileRequest.getDownsample()));
-			g2d.setStroke(stroke);
+			byte[] pixels = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+			var rasterizer = getRasterizer(tileRequest);
+			double lineThickness = params.lineThickness;
 
 			// We want to order consistently to avoid confusing overlaps
 			for (var entry : params.labels.entrySet()) {
@@ -813,22 +814,8 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 					continue;
 				var pathClass = getPathClass(entry.getKey());
 				for (var pathObject : pathObjects) {
-					if (getPathClass(pathObject) == pathClass) {
-						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea())
-							g2d.fill(roi.getShape());
-						else if (roi.isLine())
-							g2d.draw(roi.getShape());
-						else if (roi.isPoint()) {
-							for (var p : roi.getAllPoints()) {
-								int x = (int)((p.getX() - request.getX()) / downsampleFactor);
-								int y = (int)((p.getY() - request.getY()) / downsampleFactor);
-								if (x >= 0 && x < width && y >= 0 && y < height) {
-									raster.setSample(x, y, 0, 255);
-								}
-							}
-						}
-					}
+					if (getPathClass(pathObject) == pathClass)
+						rasterizer.paint(params.roiFunction.apply(pathObject), lineThickness, pixels, 255);
 				}
 			}
 			for (var entry : params.boundaryLabels.entrySet()) {
@@ -836,115 +823,65 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 					continue;
 				for (var pathObject : pathObjects) {
 					var pathClass = getPathClass(pathObject);
-					if (params.labels.containsKey(pathClass)) { // && !PathClassTools.isIgnoredClass(pathObject.getPathClass())) {
-						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea()) {
-							var shape = roi.getShape();
-							g2d.draw(shape);
-						}
-					}
+					if (params.labels.containsKey(pathClass)) // && !PathClassTools.isIgnoredClass(pathObject.getPathClass()))
+						rasterizer.paintBoundary(params.roiFunction.apply(pathObject), lineThickness, pixels, 255);
 				}
 			}
 		}
 		
-		g2d.dispose();
 		return img;
 	}
 	
 	
-	private static Color getColorForLabel(int label, boolean doRGB) {
-		if (doRGB)
-			return new Color(label, false);
-		return ColorToolsAwt.getCachedColor(label, label, label);
-	}
-	
-	
 	private BufferedImage createIndexedColorTile(TileRequest tileRequest, Collection<PathObject> pathObjects) {
 
-		RegionRequest request = tileRequest.getRegionRequest();
-
-		double downsampleFactor = request.getDownsample();
-
-		// Fill in the background color
+		// Fill in the background label
 		int width = tileRequest.getTileWidth();
 		int height = tileRequest.getTileHeight();
-		boolean doRGB = maxLabel > 255;
-		// If we have > 255 labels, we can only use Graphics2D if we pretend to have an RGB image
-		BufferedImage img = doRGB ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB) : new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-		WritableRaster raster = img.getRaster();
-		
-		Graphics2D g2d = img.createGraphics();
 		int bgLabel = params.labels.get(params.unannotatedClass);
-		Color color = getColorForLabel(bgLabel, doRGB);
-		g2d.setColor(color);
-		g2d.fillRect(0, 0, width, height);
+		int[] labels = new int[width * height];
+		Arrays.fill(labels, bgLabel);
 
 		if (!pathObjects.isEmpty()) {
-			g2d.setClip(0, 0, width, height);
-			double scale = 1.0/downsampleFactor;
-			g2d.scale(scale, scale);
-			g2d.translate(-request.getX(), -request.getY());
-			
-			BasicStroke stroke = new BasicStroke((float)(params.lineThickness * tileRequest.getDownsample()));
-			g2d.setStroke(stroke);
+			var rasterizer = getRasterizer(tileRequest);
+			double lineThickness = params.lineThickness;
 			
 			// We want to order consistently to avoid confusing overlaps
 			for (var entry : params.labels.entrySet()) {
 				var pathClass = getPathClass(entry.getKey());
 				int c = entry.getValue();
-				color = getColorForLabel(c, doRGB);
 				for (var pathObject : pathObjects) {
-					if (getPathClass(pathObject) == pathClass) {
-						var roi = params.roiFunction.apply(pathObject);
-						g2d.setColor(color);
-						if (roi.isArea())
-							g2d.fill(roi.getShape());
-						else if (roi.isLine())
-							g2d.draw(roi.getShape());
-						else if (roi.isPoint()) {
-							for (var p : roi.getAllPoints()) {
-								int x = (int)((p.getX() - request.getX()) / downsampleFactor);
-								int y = (int)((p.getY() - request.getY()) / downsampleFactor);
-								if (x >= 0 && x < width && y >= 0 && y < height) {
-									if (doRGB)
-										img.setRGB(x, y, color.getRGB());
-									else
-										raster.setSample(x, y, 0, c);
-								}
-							}
-						}
-					}
+					if (getPathClass(pathObject) == pathClass)
+						rasterizer.paint(params.roiFunction.apply(pathObject), lineThickness, labels, c);
 				}
 			}
 			for (var entry : params.boundaryLabels.entrySet()) {
 				int c = entry.getValue();
-				color = getColorForLabel(c, doRGB);
 				for (var pathObject : pathObjects) {
-//					if (pathObject.getPathClass() == pathClass) {
 					var pathClass = getPathClass(pathObject);
-					if (params.labels.containsKey(pathClass)) {// && !PathClassTools.isIgnoredClass(pathObject.getPathClass())) {
-						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea()) {
-							g2d.setColor(color);
-							g2d.draw(roi.getShape());
-						}
-					}
+					if (params.labels.containsKey(pathClass)) // && !PathClassTools.isIgnoredClass(pathObject.getPathClass()))
+						rasterizer.paintBoundary(params.roiFunction.apply(pathObject), lineThickness, labels, c);
 				}
 			}
 		}
-		g2d.dispose();
-		if (doRGB) {
+		
+		WritableRaster raster;
+		if (maxLabel >= 65536) {
 			// Resort to RGB if we have to
-			if (maxLabel >= 65536)
-				return img;
+			var img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+			for (int i = 0; i < labels.length; i++)
+				pixels[i] = labels[i] & 0xFFFFFF;
+			return img;
+		} else if (maxLabel > 255) {
 			// Convert to unsigned short if we can
-			var shortRaster = WritableRaster.createBandedRaster(DataBuffer.TYPE_USHORT, width, height, 1, null);
-			int[] samples = img.getRGB(0, 0, width, height, null, 0, width);
-			shortRaster.setSamples(0, 0, width, height, 0, samples);
-//			System.err.println("Before: " + Arrays.stream(samples).summaryStatistics());
-			raster = shortRaster;
-//			samples = raster.getSamples(0, 0, width, height, 0, (int[])null);
-//			System.err.println("After: " + Arrays.stream(samples).summaryStatistics());
+			raster = WritableRaster.createBandedRaster(DataBuffer.TYPE_USHORT, width, height, 1, null);
+			raster.setSamples(0, 0, width, height, 0, labels);
+		} else {
+			raster = WritableRaster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, 1, null);
+			byte[] pixels = ((DataBufferByte)raster.getDataBuffer()).getData();
+			for (int i = 0; i < labels.length; i++)
+				pixels[i] = (byte)labels[i];
 		}
 		return new BufferedImage((IndexColorModel)colorModel, raster, false, null);
 	}
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -39,7 +40,9 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
 
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -121,17 +124,19 @@ public class SparseImageServer extends AbstractTileableImageServer {
 			if (region.getT() > maxT)
 				maxT = region.getT();
 
-			ImageServer<BufferedImage> server = null;
-			
 			// Read the first server if we need it
 			if (metadata == null || path == null) {
-				server = manager.getServer(region, 1);
-				if (metadata == null) {
-					metadata = server.getMetadata();
-					colorModel = server.getDefaultThumbnail(0, 0).getColorModel();
+				ImageServer<BufferedImage> server = manager.acquireServer(region, 1);
+				try {
+					if (metadata == null) {
+						metadata = server.getMetadata();
+						colorModel = server.getDefaultThumbnail(0, 0).getColorModel();
+					}
+					if (path == null)
+						paths.add(region.toString() + " (" + server.getPath() + ")");
+				} finally {
+					manager.releaseServer(server);
 				}
-				if (path == null)
-					paths.add(region.toString() + " (" + server.getPath() + ")");
 			}
 		}
 		if (path == null)
@@ -222,16 +227,16 @@ public class SparseImageServer extends AbstractTileableImageServer {
 		
 		WritableRaster raster = null;
 		
-		for (ImageRegion subRegion : manager.getRegions()) {
-			
-			if (subRegion.getZ() != tileRequest.getZ() + originZ ||
-					subRegion.getT() != tileRequest.getT() + originT)
-				continue;
+		var subRegions = manager.getRegions(
+				tileRequest.getImageX() + originX, tileRequest.getImageY() + originY, tileRequest.getImageWidth(), tileRequest.getImageHeight(),
+				tileRequest.getZ() + originZ, tileRequest.getT() + originT);
+		
+		for (ImageRegion subRegion : subRegions) {
 			
 			double downsample = tileRequest.getRegionRequest().getDownsample();
-			if (subRegion.intersects(tileRequest.getImageX() + originX, tileRequest.getImageY() + originY, tileRequest.getImageWidth(), tileRequest.getImageHeight())) {
-				// If we overlap, request the overlapping portion
-				ImageServer<BufferedImage> serverTemp = manager.getServer(subRegion, downsample);
+			// Request the overlapping portion
+			ImageServer<BufferedImage> serverTemp = manager.acquireServer(subRegion, downsample);
+			try {
 				
 				// Get image coordinates for bounding box of valid region
 				int x1 = Math.max(tileRequest.getImageX() + originX, subRegion.getX());
@@ -278,6 +283,8 @@ public class SparseImageServer extends AbstractTileableImageServer {
 				int w = Math.min(imgTemp.getWidth(), raster.getWidth()-x);
 				int h = Math.min(imgTemp.getHeight(), raster.getHeight()-y);
 				raster.setDataElements(x, y, w, h, imgTemp.getRaster().getDataElements(0, 0, w, h, null));
+			} finally {
+				manager.releaseServer(serverTemp);
 			}
 		}
 		
@@ -424,14 +431,32 @@ public class SparseImageServer extends AbstractTileableImageServer {
 	 * different ImageRegions and different resolutions.
 	 * <p>
 	 * This also allows serialization/deserialization with JSON.
+	 * <p>
+	 * Regions are indexed spatially for each z-slice and timepoint, so that those overlapping a tile can be found quickly. 
+	 * Servers are opened lazily, and the least recently used servers are closed whenever more than 
+	 * {@link #DEFAULT_MAX_OPEN_SERVERS} would otherwise be open.
 	 */
 	public static class SparseImageServerManager implements AutoCloseable {
 		
+		/**
+		 * Default maximum number of servers that are kept open.
+		 * Servers that were supplied directly, or returned by {@link #getServer(ImageRegion, double)}, are not counted, and never closed by the pool.
+		 */
+		public static final int DEFAULT_MAX_OPEN_SERVERS = 64;
+		
 		private Map<ImageRegion, List<SparseImageServerManagerResolution>> regionMap = new LinkedHashMap<>();
 		private Set<Double> downsamples = new TreeSet<>();
 		
 		private transient List<ImageRegion> regionList;
-		private transient Map<ServerBuilder<BufferedImage>, ImageServer<BufferedImage>> serverMap = new HashMap<>();
+		private transient RegionIndex regionIndex;
+		
+		// Servers in access order, so that the least recently used may be closed
+		private transient Map<ServerBuilder<BufferedImage>, ImageServer<BufferedImage>> serverMap = new LinkedHashMap<>(16, 0.75f, true);
+		// Servers that were supplied directly or may be retained by a caller, and so cannot be closed & recreated
+		private transient Set<ServerBuilder<BufferedImage>> pinnedServers = new HashSet<>();
+		// Servers currently being used to read pixels, which should not be closed
+		private transient Map<ImageServer<BufferedImage>, Integer> serversInUse = new HashMap<>();
+		private transient int maxOpenServers = DEFAULT_MAX_OPEN_SERVERS;
 		
 		/**
 		 * Add the path to a new ImageServer for a specified region & downsample.
@@ -467,13 +492,16 @@ public class SparseImageServer extends AbstractTileableImageServer {
 		 */
 		private synchronized void addRegionServer(ImageRegion region, double downsample, ImageServer<BufferedImage> server) {
 			ServerBuilder<BufferedImage> builder = server.getBuilder();
-			 if (!serverMap.containsKey(builder))
+			 if (!serverMap.containsKey(builder)) {
 				serverMap.put(builder, server);
+				pinnedServers.add(builder);
+			 }
 			 addRegionServer(region, downsample, builder);
 		 }
 		
 		private void resetCaches() {
 			regionList = null;
+			regionIndex = null;
 		}
 		
 
@@ -491,11 +519,41 @@ public class SparseImageServer extends AbstractTileableImageServer {
 			return regionList;
 		}
 		
+		/**
+		 * Get all regions that intersect a bounding box on a specified z-slice and timepoint.
+		 * <p>
+		 * This uses a spatial index, and so is much faster than checking every region in {@link #getRegions()} 
+		 * when there are many regions.
+		 * 
+		 * @param x x-coordinate of the bounding box
+		 * @param y y-coordinate of the bounding box
+		 * @param width width of the bounding box
+		 * @param height height of the bounding box
+		 * @param z z-slice
+		 * @param t timepoint
+		 * @return an unmodifiable list of intersecting regions, in the same order as {@link #getRegions()}
+		 * @since 0.3
+		 */
+		public List<ImageRegion> getRegions(int x, int y, int width, int height, int z, int t) {
+			return getRegionIndex().query(x, y, width, height, z, t);
+		}
+		
+		private synchronized RegionIndex getRegionIndex() {
+			if (regionIndex == null)
+				regionIndex = new RegionIndex(new ArrayList<>(getRegions()));
+			return regionIndex;
+		}
+		
 		/**
 		 * Request the server for a specific downsample.
 		 * <p>
 		 * Note that this does not aim to return a server for any arbitrary region; rather, 
 		 * a server <i>must</i> exist for the specified region and downsample, otherwise this will return {@code null}. 
+		 * <p>
+		 * Because the caller may retain the returned server, it is excluded from the pool of servers that 
+		 * the manager closes to limit the number open, and remains open until the manager itself is closed.
+		 * Use {@link #acquireServer(ImageRegion, double)} and {@link #releaseServer(ImageServer)} instead 
+		 * where the server is only needed temporarily.
 		 * 
 		 * @param region specified region to which the server should correspond (must be found within {@code getRegions()})
 		 * @param downsample specified downsample for the server (must be found within {@code getDownsamples()})
@@ -503,6 +561,69 @@ public class SparseImageServer extends AbstractTileableImageServer {
 		 * @throws IOException 
 		 */
 		public synchronized ImageServer<BufferedImage> getServer(ImageRegion region, double downsample) throws IOException {
+			var builder = getServerBuilder(region, downsample);
+			if (builder == null)
+				return null;
+			var server = getOrBuildServer(builder);
+			pinnedServers.add(builder);
+			return server;
+		}
+		
+		/**
+		 * Request the server for a specific downsample, and flag that it is in use so that it will not be closed.
+		 * Each call must be followed by a call to {@link #releaseServer(ImageServer)}, after which the server 
+		 * should not be used.
+		 * 
+		 * @param region specified region to which the server should correspond
+		 * @param downsample specified downsample for the server
+		 * @return the server, or null if no server is found
+		 * @throws IOException
+		 * @see #getServer(ImageRegion, double)
+		 * @since 0.3
+		 */
+		public synchronized ImageServer<BufferedImage> acquireServer(ImageRegion region, double downsample) throws IOException {
+			var builder = getServerBuilder(region, downsample);
+			if (builder == null)
+				return null;
+			var server = getOrBuildServer(builder);
+			serversInUse.merge(server, 1, Integer::sum);
+			return server;
+		}
+		
+		/**
+		 * Release a server that was previously returned by {@link #acquireServer(ImageRegion, double)}.
+		 * If too many servers are open, the least recently used servers that are not in use will be closed.
+		 * @param server the server to release (may be null)
+		 * @since 0.3
+		 */
+		public void releaseServer(ImageServer<BufferedImage> server) {
+			List<ImageServer<BufferedImage>> toClose;
+			synchronized (this) {
+				if (server != null)
+					serversInUse.computeIfPresent(server, (s, n) -> n > 1 ? n - 1 : null);
+				toClose = removeUnusedServers();
+			}
+			closeServers(toClose);
+		}
+		
+		/**
+		 * Set the maximum number of servers built by this manager that may be open at any time.
+		 * This may be exceeded temporarily if more servers are being used in parallel.
+		 * @param maxOpenServers
+		 */
+		synchronized void setMaxOpenServers(int maxOpenServers) {
+			this.maxOpenServers = Math.max(1, maxOpenServers);
+		}
+		
+		/**
+		 * Get the number of servers that are currently open, excluding any that the pool may not close.
+		 * @return
+		 */
+		synchronized int nOpenServers() {
+			return serverMap.size() - pinnedServers.size();
+		}
+		
+		private synchronized ServerBuilder<BufferedImage> getServerBuilder(ImageRegion region, double downsample) {
 			// Get the best resolution map for the specified region & return null if none found
 			List<SparseImageServerManagerResolution> resolutions = regionMap.get(region);
 			if (resolutions == null || resolutions.isEmpty())
@@ -512,9 +633,12 @@ public class SparseImageServer extends AbstractTileableImageServer {
 				level--;
 			}
 			
+			return resolutions.get(level).getServerBuilder();
+		}
+		
+		private synchronized ImageServer<BufferedImage> getOrBuildServer(ServerBuilder<BufferedImage> builder) throws IOException {
 			// Create a new ImageServer if we need to, or reuse an existing one
 			// Note: the same server might be reused for multiple regions/resolutions if they have the same path
-			ServerBuilder<BufferedImage> builder = resolutions.get(level).getServerBuilder();
 			ImageServer<BufferedImage> server = serverMap.get(builder);
 			if (server == null) {
 				try {
@@ -528,11 +652,45 @@ public class SparseImageServer extends AbstractTileableImageServer {
 			}
 			return server;
 		}
+		
+		/**
+		 * Remove the least recently used servers that are not in use, until no more than maxOpenServers remain.
+		 * @return the removed servers, which should be closed
+		 */
+		private synchronized List<ImageServer<BufferedImage>> removeUnusedServers() {
+			int nExcess = nOpenServers() - maxOpenServers;
+			if (nExcess <= 0)
+				return Collections.emptyList();
+			List<ImageServer<BufferedImage>> removed = new ArrayList<>();
+			var iter = serverMap.entrySet().iterator();
+			while (iter.hasNext() && removed.size() < nExcess) {
+				var entry = iter.next();
+				if (pinnedServers.contains(entry.getKey()) || serversInUse.containsKey(entry.getValue()))
+					continue;
+				removed.add(entry.getValue());
+				iter.remove();
+			}
+			return removed;
+		}
+		
+		private static void closeServers(Collection<ImageServer<BufferedImage>> servers) {
+			for (var server : servers) {
+				logger.trace("Closing unused server {}", server);
+				try {
+					server.close();
+				} catch (Exception e) {
+					logger.warn("Unable to close server: " + e.getLocalizedMessage(), e);
+				}
+			}
+		}
 
 		@Override
-		public void close() throws Exception {
+		public synchronized void close() throws Exception {
 			for (ImageServer<BufferedImage> server : serverMap.values())
 				server.close();
+			serverMap.clear();
+			pinnedServers.clear();
+			serversInUse.clear();
 		}
 		
 		double[] getAvailableDownsamples() {
@@ -541,6 +699,53 @@ public class SparseImageServer extends AbstractTileableImageServer {
 		
 	}
 	
+	/**
+	 * Spatial index for the regions of a {@link SparseImageServerManager}, with a separate tree for each z-slice and timepoint.
+	 * The index is immutable, and rebuilt whenever regions are added.
+	 */
+	private static class RegionIndex {
+		
+		private final List<ImageRegion> regions;
+		private final Map<Long, STRtree> trees = new HashMap<>();
+		
+		RegionIndex(List<ImageRegion> regions) {
+			this.regions = regions;
+			for (int i = 0; i < regions.size(); i++) {
+				var region = regions.get(i);
+				var tree = trees.computeIfAbsent(getPlaneKey(region.getZ(), region.getT()), k -> new STRtree());
+				tree.insert(new Envelope(region.getX(), region.getMaxX(), region.getY(), region.getMaxY()), i);
+			}
+			// Build now, since the trees are then read-only and may be queried from multiple threads
+			for (var tree : trees.values())
+				tree.build();
+		}
+		
+		private static long getPlaneKey(int z, int t) {
+			return ((long)z << 32) | (t & 0xFFFFFFFFL);
+		}
+		
+		List<ImageRegion> query(int x, int y, int width, int height, int z, int t) {
+			var tree = trees.get(getPlaneKey(z, t));
+			if (tree == null)
+				return Collections.emptyList();
+			@SuppressWarnings("unchecked")
+			List<Integer> inds = tree.query(new Envelope(x, x + width, y, y + height));
+			if (inds.isEmpty())
+				return Collections.emptyList();
+			// Retain the original ordering, in case regions overlap
+			Collections.sort(inds);
+			List<ImageRegion> list = new ArrayList<>();
+			for (int i : inds) {
+				var region = regions.get(i);
+				// Envelopes that only touch are returned by the query, so we need a stricter test
+				if (region.intersects(x, y, width, height))
+					list.add(region);
+			}
+			return Collections.unmodifiableList(list);
+		}
+		
+	}
+	
 	static class SparseImageServerManagerRegion {
 		
 		private ImageRegion region;
@@ -0,0 +1,876 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.measurements.MeasurementList;
+import qupath.lib.measurements.MeasurementList.MeasurementListType;
+import qupath.lib.measurements.MeasurementListFactory;
+import qupath.lib.objects.MetadataStore;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathCellObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.PathTileObject;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.objects.hierarchy.DefaultTMAGrid;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.objects.hierarchy.TMAGrid;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Read and write a {@link PathObjectHierarchy} using a compact, columnar binary representation.
+ * <p>
+ * Objects are written in chunks. Within each chunk the object types, parents, classifications, ROIs and
+ * measurements are stored as separate typed columns, so that no Java serialization is required and
+ * measurement names are written once per chunk rather than once per object.
+ * <p>
+ * Objects that are neither detections nor descendants of detections are written first, followed by the TMA grid
+ * and then all remaining objects. This makes it possible to materialize annotations before any detection is read.
+ */
+final class ColumnarHierarchyIO {
+
+	private final static Logger logger = LoggerFactory.getLogger(ColumnarHierarchyIO.class);
+
+	/**
+	 * Maximum number of objects written within a single chunk.
+	 */
+	static final int CHUNK_SIZE = 1 << 16;
+
+	private static final byte TYPE_ANNOTATION = 1;
+	private static final byte TYPE_DETECTION = 2;
+	private static final byte TYPE_CELL = 3;
+	private static final byte TYPE_TILE = 4;
+	private static final byte TYPE_TMA_CORE = 5;
+
+	private static final byte FLAG_LOCKED = 1;
+	private static final byte FLAG_NAME = 1 << 1;
+	private static final byte FLAG_COLOR = 1 << 2;
+	private static final byte FLAG_PROBABILITY = 1 << 3;
+	private static final byte FLAG_METADATA = 1 << 4;
+	private static final byte FLAG_MISSING = 1 << 5;
+	private static final byte FLAG_NUCLEUS = 1 << 6;
+
+	private static final byte MEASUREMENTS_NONE = 0;
+	private static final byte MEASUREMENTS_GENERAL = 1;
+	private static final byte MEASUREMENTS_DOUBLE = 2;
+	private static final byte MEASUREMENTS_FLOAT = 3;
+
+	private ColumnarHierarchyIO() {}
+
+
+	/**
+	 * Write a hierarchy to an output stream.
+	 * @param out
+	 * @param hierarchy
+	 * @param onCollected optional consumer that will be passed all objects that will be written, in the order they are 
+	 *                    stored in the file. This is called while still holding the lock on the hierarchy.
+	 * @throws IOException
+	 */
+	static void writeHierarchy(DataOutputStream out, PathObjectHierarchy hierarchy, Consumer<List<PathObject>> onCollected) throws IOException {
+
+		var primary = new ObjectList();
+		var secondary = new ObjectList();
+		TMAGrid tmaGrid;
+		synchronized (hierarchy) {
+			tmaGrid = hierarchy.getTMAGrid();
+			var detectionRoots = new ObjectList();
+			collectPrimary(hierarchy.getRootObject(), -1, primary, detectionRoots);
+			int nPrimary = primary.size();
+			for (int i = 0; i < detectionRoots.size(); i++)
+				collectSubtree(detectionRoots.get(i), detectionRoots.getParent(i), secondary, nPrimary);
+			if (onCollected != null) {
+				var order = new ArrayList<PathObject>(primary.size() + secondary.size());
+				order.addAll(primary.objects);
+				order.addAll(secondary.objects);
+				onCollected.accept(order);
+			}
+		}
+
+		// Build a table of all the classifications we need
+		var classes = new LinkedHashMap<PathClass, Integer>();
+		primary.addClasses(classes);
+		secondary.addClasses(classes);
+
+		out.writeInt(primary.size());
+		out.writeInt(secondary.size());
+
+		writeClasses(out, classes);
+		writeChunks(out, primary, classes);
+
+		// Write the TMA grid, referencing the cores by index
+		if (tmaGrid == null)
+			out.writeInt(-1);
+		else {
+			var cores = tmaGrid.getTMACoreList();
+			var coreIndex = new IdentityHashMap<PathObject, Integer>();
+			for (int i = 0; i < primary.size(); i++) {
+				var pathObject = primary.get(i);
+				if (pathObject instanceof TMACoreObject)
+					coreIndex.put(pathObject, i);
+			}
+			out.writeInt(tmaGrid.getGridWidth());
+			out.writeInt(cores.size());
+			for (var core : cores)
+				out.writeInt(coreIndex.getOrDefault(core, -1));
+		}
+
+		writeChunks(out, secondary, classes);
+	}
+
+
+	/**
+	 * Write a flat list of objects to an output stream, ignoring any parent/child relationships.
+	 * @param out
+	 * @param pathObjects
+	 * @throws IOException
+	 * @see #readObjects(DataInputStream)
+	 */
+	static void writeObjects(DataOutputStream out, List<? extends PathObject> pathObjects) throws IOException {
+		var list = new ObjectList();
+		for (var pathObject : pathObjects)
+			list.add(pathObject, -1);
+		var classes = new LinkedHashMap<PathClass, Integer>();
+		list.addClasses(classes);
+		out.writeInt(list.size());
+		writeClasses(out, classes);
+		writeChunks(out, list, classes);
+	}
+
+	/**
+	 * Read a flat list of objects previously written with {@link #writeObjects(DataOutputStream, List)}.
+	 * The objects will not have parents.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static List<PathObject> readObjects(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		var classes = readClasses(in);
+		var reader = new HierarchyReader(in, 0, n, classes);
+		reader.readChunks(n);
+		return reader.getObjects();
+	}
+
+	private static void writeClasses(DataOutputStream out, Map<PathClass, Integer> classes) throws IOException {
+		out.writeInt(classes.size());
+		for (var pathClass : classes.keySet()) {
+			var parent = pathClass.getParentClass();
+			out.writeInt(parent == null ? -1 : classes.get(parent));
+			String name = pathClass.getName();
+			out.writeBoolean(name != null);
+			if (name != null)
+				writeString(out, name);
+			Integer color = pathClass.getColor();
+			out.writeBoolean(color != null);
+			if (color != null)
+				out.writeInt(color);
+		}
+	}
+
+	private static PathClass[] readClasses(DataInputStream in) throws IOException {
+		int nClasses = in.readInt();
+		var classes = new PathClass[nClasses];
+		for (int i = 0; i < nClasses; i++) {
+			int parent = in.readInt();
+			String name = in.readBoolean() ? readString(in) : null;
+			Integer color = in.readBoolean() ? in.readInt() : null;
+			if (parent < 0)
+				classes[i] = PathClassFactory.getPathClass(name, color);
+			else
+				classes[i] = PathClassFactory.getDerivedPathClass(classes[parent], name, color);
+		}
+		return classes;
+	}
+
+
+	private static void collectPrimary(PathObject parent, int parentIndex, ObjectList primary, ObjectList detectionRoots) {
+		for (var child : parent.getChildObjectsAsArray()) {
+			if (child.isDetection()) {
+				detectionRoots.add(child, parentIndex);
+			} else {
+				int ind = primary.size();
+				primary.add(child, parentIndex);
+				collectPrimary(child, ind, primary, detectionRoots);
+			}
+		}
+	}
+
+	private static void collectSubtree(PathObject pathObject, int parentIndex, ObjectList secondary, int offset) {
+		int ind = secondary.size() + offset;
+		secondary.add(pathObject, parentIndex);
+		if (pathObject.hasChildren()) {
+			for (var child : pathObject.getChildObjectsAsArray())
+				collectSubtree(child, ind, secondary, offset);
+		}
+	}
+
+	private static void writeChunks(DataOutputStream out, ObjectList objects, Map<PathClass, Integer> classes) throws IOException {
+		int n = objects.size();
+		for (int start = 0; start < n; start += CHUNK_SIZE) {
+			int end = Math.min(n, start + CHUNK_SIZE);
+			writeChunk(out, objects, start, end, classes);
+		}
+	}
+
+	private static void writeChunk(DataOutputStream out, ObjectList objects, int start, int end, Map<PathClass, Integer> classes) throws IOException {
+		int n = end - start;
+		var bytes = new ByteArrayOutputStream(n * 64);
+		var chunk = new DataOutputStream(bytes);
+
+		// Types
+		for (int i = start; i < end; i++)
+			chunk.writeByte(getType(objects.get(i)));
+
+		// Parents
+		for (int i = start; i < end; i++)
+			chunk.writeInt(objects.getParent(i));
+
+		// Classifications
+		for (int i = start; i < end; i++) {
+			var pathClass = objects.get(i).getPathClass();
+			chunk.writeInt(pathClass == null ? -1 : classes.get(pathClass));
+		}
+
+		// Flags
+		byte[] flags = new byte[n];
+		for (int i = start; i < end; i++) {
+			flags[i - start] = getFlags(objects.get(i));
+			chunk.writeByte(flags[i - start]);
+		}
+
+		// ROIs
+		for (int i = start; i < end; i++) {
+			var pathObject = objects.get(i);
+			writeROI(chunk, pathObject.getROI());
+			if ((flags[i - start] & FLAG_NUCLEUS) != 0)
+				writeROI(chunk, ((PathCellObject)pathObject).getNucleusROI());
+		}
+
+		// Optional properties, which are only written if flagged
+		for (int i = start; i < end; i++) {
+			var pathObject = objects.get(i);
+			byte flag = flags[i - start];
+			if ((flag & FLAG_NAME) != 0)
+				writeString(chunk, pathObject.getName());
+			if ((flag & FLAG_COLOR) != 0)
+				chunk.writeInt(pathObject.getColorRGB());
+			if ((flag & FLAG_PROBABILITY) != 0)
+				chunk.writeDouble(pathObject.getClassProbability());
+			if ((flag & FLAG_METADATA) != 0)
+				writeMetadata(chunk, pathObject);
+		}
+
+		// Measurements - the names are stored once per chunk for each distinct list
+		var nameLists = new HashMap<List<String>, Integer>();
+		var nameListsIdentity = new IdentityHashMap<List<String>, Integer>();
+		var nameListsOrdered = new ArrayList<List<String>>();
+		byte[] measurementTypes = new byte[n];
+		int[] nameListIndex = new int[n];
+		for (int i = start; i < end; i++) {
+			var pathObject = objects.get(i);
+			if (!pathObject.hasMeasurements()) {
+				measurementTypes[i - start] = MEASUREMENTS_NONE;
+				nameListIndex[i - start] = -1;
+				continue;
+			}
+			var measurements = pathObject.getMeasurementList();
+			var names = measurements.getMeasurementNames();
+			var ind = nameListsIdentity.get(names);
+			if (ind == null) {
+				ind = nameLists.get(names);
+				if (ind == null) {
+					ind = nameListsOrdered.size();
+					var copy = List.copyOf(names);
+					nameListsOrdered.add(copy);
+					nameLists.put(copy, ind);
+				}
+				nameListsIdentity.put(names, ind);
+			}
+			nameListIndex[i - start] = ind;
+			measurementTypes[i - start] = getMeasurementType(measurements);
+		}
+		chunk.writeInt(nameListsOrdered.size());
+		for (var names : nameListsOrdered) {
+			chunk.writeInt(names.size());
+			for (var name : names)
+				writeString(chunk, name);
+		}
+		chunk.write(measurementTypes);
+		for (int ind : nameListIndex)
+			chunk.writeInt(ind);
+		for (int i = start; i < end; i++) {
+			byte type = measurementTypes[i - start];
+			if (type == MEASUREMENTS_NONE)
+				continue;
+			var measurements = objects.get(i).getMeasurementList();
+			int nMeasurements = nameListsOrdered.get(nameListIndex[i - start]).size();
+			if (type == MEASUREMENTS_FLOAT) {
+				for (int m = 0; m < nMeasurements; m++)
+					chunk.writeFloat((float)measurements.getMeasurementValue(m));
+			} else {
+				for (int m = 0; m < nMeasurements; m++)
+					chunk.writeDouble(measurements.getMeasurementValue(m));
+			}
+		}
+
+		chunk.flush();
+		out.writeInt(n);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+
+	/**
+	 * Read the objects that are not detections (or descendants of detections), along with any TMA grid,
+	 * to create a new hierarchy.
+	 * The returned reader can be used to subsequently add the remaining objects.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static HierarchyReader readPrimaryHierarchy(DataInputStream in) throws IOException {
+		int nPrimary = in.readInt();
+		int nSecondary = in.readInt();
+
+		var classes = readClasses(in);
+		var reader = new HierarchyReader(in, nPrimary, nSecondary, classes);
+		reader.readChunks(nPrimary);
+
+		// Set the TMA grid before linking any other objects to the root
+		int gridWidth = in.readInt();
+		if (gridWidth >= 0) {
+			int nCores = in.readInt();
+			var cores = new ArrayList<TMACoreObject>(nCores);
+			for (int i = 0; i < nCores; i++) {
+				int ind = in.readInt();
+				if (ind >= 0 && reader.objects[ind] instanceof TMACoreObject)
+					cores.add((TMACoreObject)reader.objects[ind]);
+				else
+					logger.warn("Unable to find TMA core {} when reading hierarchy", i);
+			}
+			if (cores.size() == nCores)
+				reader.hierarchy.setTMAGrid(DefaultTMAGrid.create(cores, gridWidth));
+		}
+		reader.link(0, nPrimary);
+		return reader;
+	}
+
+
+	/**
+	 * Helper class to read objects in chunks, and add them to a hierarchy.
+	 */
+	static class HierarchyReader {
+
+		private final DataInputStream in;
+		private final PathObjectHierarchy hierarchy = new PathObjectHierarchy();
+		private final PathObject[] objects;
+		private final int[] parents;
+		private final PathClass[] classes;
+		private final int nPrimary;
+		private int nRead = 0;
+
+		private HierarchyReader(DataInputStream in, int nPrimary, int nSecondary, PathClass[] classes) {
+			this.in = in;
+			this.nPrimary = nPrimary;
+			this.objects = new PathObject[nPrimary + nSecondary];
+			this.parents = new int[nPrimary + nSecondary];
+			this.classes = classes;
+		}
+
+		/**
+		 * Get the hierarchy. Note that this may not yet contain all objects.
+		 * @return
+		 */
+		PathObjectHierarchy getHierarchy() {
+			return hierarchy;
+		}
+
+		/**
+		 * Get all objects, in the order in which they were stored.
+		 * Entries will be null for any objects that have not yet been read.
+		 * @return
+		 */
+		List<PathObject> getObjects() {
+			return Collections.unmodifiableList(Arrays.asList(objects));
+		}
+
+		/**
+		 * Query if there are objects that still need to be read from the input stream.
+		 * @return
+		 */
+		boolean hasRemainingObjects() {
+			return nRead < objects.length;
+		}
+
+		/**
+		 * Total number of objects in the hierarchy, including any that have not yet been read.
+		 * @return
+		 */
+		int getTotalObjectCount() {
+			return objects.length;
+		}
+
+		/**
+		 * Read up to the specified number of remaining objects and add them to the hierarchy,
+		 * without firing any hierarchy events.
+		 * The caller should synchronize on the hierarchy if it may be accessed from other threads.
+		 * @param maxObjects
+		 * @return the number of objects that were read
+		 * @throws IOException
+		 */
+		int readRemainingObjects(int maxObjects) throws IOException {
+			int start = nRead;
+			int n = decodeRemainingObjects(maxObjects);
+			if (n > 0)
+				linkObjects(start, start + n);
+			return n;
+		}
+
+		/**
+		 * Read up to the specified number of remaining objects, without adding them to the hierarchy.
+		 * The objects should then be added by passing the returned range to {@link #linkObjects(int, int)}.
+		 * @param maxObjects
+		 * @return the number of objects that were read, starting from the index given by {@link #getReadCount()} 
+		 *         before this call
+		 * @throws IOException
+		 */
+		int decodeRemainingObjects(int maxObjects) throws IOException {
+			int start = nRead;
+			int end = (int)Math.min(objects.length, (long)start + maxObjects);
+			if (end <= start)
+				return 0;
+			readChunks(end - start);
+			return nRead - start;
+		}
+
+		/**
+		 * Number of objects that have been read so far.
+		 * @return
+		 */
+		int getReadCount() {
+			return nRead;
+		}
+
+		/**
+		 * Add a range of objects that have already been read to the hierarchy, without firing any hierarchy events.
+		 * This synchronizes on the hierarchy, and may be called from a different thread to the one that read the objects 
+		 * (provided the range is safely published).
+		 * @param start index of the first object
+		 * @param end index after the last object
+		 */
+		void linkObjects(int start, int end) {
+			synchronized (hierarchy) {
+				link(start, end);
+			}
+		}
+
+		/**
+		 * Read enough chunks to decode (at least) the requested number of objects.
+		 * Chunks are read sequentially, but decoded in parallel.
+		 */
+		private void readChunks(int nObjects) throws IOException {
+			int target = Math.min(objects.length, nRead + nObjects);
+			// For the primary objects, we shouldn't read beyond the end of the section
+			if (nRead < nPrimary)
+				target = Math.min(target, nPrimary);
+			int batchSize = Math.max(1, Runtime.getRuntime().availableProcessors());
+			while (nRead < target) {
+				var offsets = new ArrayList<Integer>();
+				var chunks = new ArrayList<byte[]>();
+				var counts = new ArrayList<Integer>();
+				int offset = nRead;
+				while (offset < target && chunks.size() < batchSize) {
+					int n = in.readInt();
+					int len = in.readInt();
+					byte[] bytes = new byte[len];
+					in.readFully(bytes);
+					offsets.add(offset);
+					counts.add(n);
+					chunks.add(bytes);
+					offset += n;
+				}
+				var exceptions = new IOException[chunks.size()];
+				IntStream.range(0, chunks.size()).parallel().forEach(i -> {
+					try {
+						decodeChunk(ByteBuffer.wrap(chunks.get(i)), counts.get(i), offsets.get(i));
+					} catch (IOException e) {
+						exceptions[i] = e;
+					}
+				});
+				for (var e : exceptions) {
+					if (e != null)
+						throw e;
+				}
+				nRead = offset;
+			}
+		}
+
+		/**
+		 * Add objects to their parents, grouping consecutive objects that share the same parent.
+		 */
+		private void link(int start, int end) {
+			var root = hierarchy.getRootObject();
+			var batch = new ArrayList<PathObject>();
+			PathObject lastParent = null;
+			for (int i = start; i < end; i++) {
+				var pathObject = objects[i];
+				// Objects may already have a parent (e.g. TMA cores)
+				if (pathObject.getParent() != null)
+					continue;
+				int parentIndex = parents[i];
+				var parent = parentIndex < 0 ? root : objects[parentIndex];
+				if (parent != lastParent) {
+					if (lastParent != null && !batch.isEmpty())
+						lastParent.addPathObjects(batch);
+					batch.clear();
+					lastParent = parent;
+				}
+				batch.add(pathObject);
+			}
+			if (lastParent != null && !batch.isEmpty())
+				lastParent.addPathObjects(batch);
+		}
+
+		private void decodeChunk(ByteBuffer buffer, int n, int offset) throws IOException {
+			byte[] types = new byte[n];
+			buffer.get(types);
+
+			for (int i = 0; i < n; i++)
+				parents[offset + i] = buffer.getInt();
+
+			int[] classIndex = new int[n];
+			for (int i = 0; i < n; i++)
+				classIndex[i] = buffer.getInt();
+
+			byte[] flags = new byte[n];
+			buffer.get(flags);
+
+			ROI[] rois = new ROI[n];
+			ROI[] nuclei = new ROI[n];
+			for (int i = 0; i < n; i++) {
+				rois[i] = readROI(buffer);
+				if ((flags[i] & FLAG_NUCLEUS) != 0)
+					nuclei[i] = readROI(buffer);
+			}
+
+			String[] names = new String[n];
+			Integer[] colors = new Integer[n];
+			double[] probabilities = new double[n];
+			Map<Integer, Map<String, String>> metadata = new HashMap<>();
+			for (int i = 0; i < n; i++) {
+				byte flag = flags[i];
+				probabilities[i] = Double.NaN;
+				if ((flag & FLAG_NAME) != 0)
+					names[i] = readString(buffer);
+				if ((flag & FLAG_COLOR) != 0)
+					colors[i] = buffer.getInt();
+				if ((flag & FLAG_PROBABILITY) != 0)
+					probabilities[i] = buffer.getDouble();
+				if ((flag & FLAG_METADATA) != 0)
+					metadata.put(i, readMetadata(buffer));
+			}
+
+			int nNameLists = buffer.getInt();
+			var nameLists = new ArrayList<List<String>>(nNameLists);
+			for (int l = 0; l < nNameLists; l++) {
+				int nNames = buffer.getInt();
+				var list = new ArrayList<String>(nNames);
+				for (int m = 0; m < nNames; m++)
+					list.add(readString(buffer));
+				nameLists.add(list);
+			}
+			byte[] measurementTypes = new byte[n];
+			buffer.get(measurementTypes);
+			int[] nameListIndex = new int[n];
+			for (int i = 0; i < n; i++)
+				nameListIndex[i] = buffer.getInt();
+
+			for (int i = 0; i < n; i++) {
+				MeasurementList measurements = null;
+				byte measurementType = measurementTypes[i];
+				if (measurementType != MEASUREMENTS_NONE) {
+					var measurementNames = nameLists.get(nameListIndex[i]);
+					int nMeasurements = measurementNames.size();
+					measurements = MeasurementListFactory.createMeasurementList(nMeasurements, toListType(measurementType));
+					if (measurementType == MEASUREMENTS_FLOAT) {
+						for (int m = 0; m < nMeasurements; m++)
+							measurements.addMeasurement(measurementNames.get(m), buffer.getFloat());
+					} else {
+						for (int m = 0; m < nMeasurements; m++)
+							measurements.addMeasurement(measurementNames.get(m), buffer.getDouble());
+					}
+					measurements.close();
+				}
+				var pathClass = classIndex[i] < 0 ? null : classes[classIndex[i]];
+				var pathObject = createObject(types[i], rois[i], nuclei[i], pathClass, measurements, flags[i]);
+				// Setting the classification resets the color, so this must come first
+				if (!Double.isNaN(probabilities[i]))
+					pathObject.setPathClass(pathClass, probabilities[i]);
+				if (names[i] != null)
+					pathObject.setName(names[i]);
+				if (colors[i] != null)
+					pathObject.setColorRGB(colors[i]);
+				if ((flags[i] & FLAG_LOCKED) != 0)
+					pathObject.setLocked(true);
+				var map = metadata.get(i);
+				if (map != null)
+					applyMetadata(pathObject, map);
+				objects[offset + i] = pathObject;
+			}
+		}
+
+	}
+
+
+	private static PathObject createObject(byte type, ROI roi, ROI roiNucleus, PathClass pathClass, MeasurementList measurements, byte flags) throws IOException {
+		switch (type) {
+		case TYPE_ANNOTATION:
+			return PathObjects.createAnnotationObject(roi, pathClass, measurements);
+		case TYPE_DETECTION:
+			return PathObjects.createDetectionObject(roi, pathClass, measurements);
+		case TYPE_CELL:
+			return PathObjects.createCellObject(roi, roiNucleus, pathClass, measurements);
+		case TYPE_TILE:
+			return PathObjects.createTileObject(roi, pathClass, measurements);
+		case TYPE_TMA_CORE:
+			var core = PathObjects.createTMACoreObject(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight(), (flags & FLAG_MISSING) != 0);
+			core.setROI(roi);
+			if (pathClass != null)
+				core.setPathClass(pathClass);
+			if (measurements != null) {
+				var coreMeasurements = core.getMeasurementList();
+				for (int i = 0; i < measurements.size(); i++)
+					coreMeasurements.addMeasurement(measurements.getMeasurementName(i), measurements.getMeasurementValue(i));
+				coreMeasurements.close();
+			}
+			return core;
+		default:
+			throw new IOException("Unknown object type " + type);
+		}
+	}
+
+	private static byte getType(PathObject pathObject) {
+		if (pathObject instanceof PathCellObject)
+			return TYPE_CELL;
+		if (pathObject instanceof PathTileObject)
+			return TYPE_TILE;
+		if (pathObject instanceof TMACoreObject)
+			return TYPE_TMA_CORE;
+		if (pathObject.isDetection())
+			return TYPE_DETECTION;
+		if (!pathObject.isAnnotation())
+			logger.warn("Unknown object type {} will be written as an annotation", pathObject.getClass().getSimpleName());
+		return TYPE_ANNOTATION;
+	}
+
+	private static byte getFlags(PathObject pathObject) {
+		int flags = 0;
+		if (pathObject.isLocked())
+			flags |= FLAG_LOCKED;
+		if (pathObject.getName() != null)
+			flags |= FLAG_NAME;
+		if (pathObject.getColorRGB() != null)
+			flags |= FLAG_COLOR;
+		if (!Double.isNaN(pathObject.getClassProbability()))
+			flags |= FLAG_PROBABILITY;
+		if (!getMetadata(pathObject).isEmpty())
+			flags |= FLAG_METADATA;
+		if (pathObject instanceof TMACoreObject && ((TMACoreObject)pathObject).isMissing())
+			flags |= FLAG_MISSING;
+		if (pathObject instanceof PathCellObject && ((PathCellObject)pathObject).getNucleusROI() != null)
+			flags |= FLAG_NUCLEUS;
+		return (byte)flags;
+	}
+
+	private static byte getMeasurementType(MeasurementList measurements) {
+		if (measurements.supportsDynamicMeasurements())
+			return MEASUREMENTS_GENERAL;
+		// Use floats whenever this is lossless
+		for (int i = 0; i < measurements.size(); i++) {
+			double value = measurements.getMeasurementValue(i);
+			if ((float)value != value && !Double.isNaN(value))
+				return MEASUREMENTS_DOUBLE;
+		}
+		return MEASUREMENTS_FLOAT;
+	}
+
+	private static MeasurementListType toListType(byte type) {
+		switch (type) {
+		case MEASUREMENTS_FLOAT:
+			return MeasurementListType.FLOAT;
+		case MEASUREMENTS_DOUBLE:
+			return MeasurementListType.DOUBLE;
+		case MEASUREMENTS_GENERAL:
+		default:
+			return MeasurementListType.GENERAL;
+		}
+	}
+
+	/**
+	 * Annotations store their description as metadata, other objects may implement {@link MetadataStore}.
+	 */
+	private static Map<String, String> getMetadata(PathObject pathObject) {
+		if (pathObject instanceof MetadataStore)
+			return ((MetadataStore)pathObject).getMetadataMap();
+		if (pathObject instanceof PathAnnotationObject) {
+			var description = ((PathAnnotationObject)pathObject).getDescription();
+			if (description != null)
+				return Map.of(KEY_DESCRIPTION, description);
+		}
+		return Map.of();
+	}
+
+	private static final String KEY_DESCRIPTION = "description";
+
+	private static void applyMetadata(PathObject pathObject, Map<String, String> metadata) {
+		if (pathObject instanceof MetadataStore) {
+			var store = (MetadataStore)pathObject;
+			for (var entry : metadata.entrySet())
+				store.putMetadataValue(entry.getKey(), entry.getValue());
+		} else if (pathObject instanceof PathAnnotationObject) {
+			((PathAnnotationObject)pathObject).setDescription(metadata.get(KEY_DESCRIPTION));
+		}
+	}
+
+	private static void writeMetadata(DataOutputStream out, PathObject pathObject) throws IOException {
+		var metadata = getMetadata(pathObject);
+		out.writeInt(metadata.size());
+		for (var entry : metadata.entrySet()) {
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static Map<String, String> readMetadata(ByteBuffer buffer) {
+		int n = buffer.getInt();
+		var map = new LinkedHashMap<String, String>();
+		for (int i = 0; i < n; i++) {
+			String key = readString(buffer);
+			map.put(key, readString(buffer));
+		}
+		return map;
+	}
+
+
+	/**
+	 * Write a ROI using {@link GeometryCodec}.
+	 */
+	static void writeROI(DataOutputStream out, ROI roi) throws IOException {
+		out.write(GeometryCodec.encode(roi));
+	}
+
+	static ROI readROI(ByteBuffer buffer) throws IOException {
+		return GeometryCodec.readROI(buffer);
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static String readString(ByteBuffer buffer) {
+		int len = buffer.getInt();
+		String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), len, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + len);
+		return s;
+	}
+
+
+	/**
+	 * Simple list of objects with associated parent indices, used while writing.
+	 */
+	private static class ObjectList {
+
+		private final List<PathObject> objects = new ArrayList<>();
+		private int[] parents = new int[1024];
+
+		void add(PathObject pathObject, int parentIndex) {
+			int ind = objects.size();
+			if (ind == parents.length)
+				parents = Arrays.copyOf(parents, parents.length * 2);
+			parents[ind] = parentIndex;
+			objects.add(pathObject);
+		}
+
+		PathObject get(int ind) {
+			return objects.get(ind);
+		}
+
+		int getParent(int ind) {
+			return parents[ind];
+		}
+
+		int size() {
+			return objects.size();
+		}
+
+		void addClasses(Map<PathClass, Integer> classes) {
+			for (var pathObject : objects) {
+				var pathClass = pathObject.getPathClass();
+				if (pathClass != null)
+					addClass(pathClass, classes);
+			}
+		}
+
+		private static void addClass(PathClass pathClass, Map<PathClass, Integer> classes) {
+			if (classes.containsKey(pathClass))
+				return;
+			// Ensure parents are always added first
+			if (pathClass.getParentClass() != null)
+				addClass(pathClass.getParentClass(), classes);
+			classes.put(pathClass, classes.size());
+		}
+
+	}
+
+
+}
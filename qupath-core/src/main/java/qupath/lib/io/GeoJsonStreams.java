@@ -0,0 +1,363 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.locationtech.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import qupath.lib.io.PathIO.GeoJsonExportOptions;
+import qupath.lib.io.PathObjectTypeAdapters.FeatureCollection;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.GeometryTools;
+
+/**
+ * Helper class for reading and writing GeoJSON incrementally, so that very large numbers of objects
+ * can be exported and imported without holding the entire JSON representation in memory.
+ *
+ * @since 0.3
+ */
+class GeoJsonStreams {
+
+	private static final Logger logger = LoggerFactory.getLogger(GeoJsonStreams.class);
+
+	/**
+	 * Number of objects to convert to JSON in a single batch
+	 */
+	private static final int BATCH_SIZE = 512;
+
+	/**
+	 * Minimum number of objects in a batch before it is converted to JSON in parallel
+	 */
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	/**
+	 * Write objects as GeoJSON features, requesting each object from the iterator only when it is needed.
+	 * <p>
+	 * Objects are written as an array, or as a FeatureCollection if requested by the options.
+	 * The stream is flushed but not closed.
+	 *
+	 * @param stream the output stream
+	 * @param iterator iterator providing the objects to write
+	 * @param options export options
+	 * @return the number of objects written
+	 * @throws IOException
+	 */
+	static long writeFeatures(OutputStream stream, Iterator<? extends PathObject> iterator, GeoJsonExportOptions... options) throws IOException {
+		Collection<GeoJsonExportOptions> optionList = Arrays.asList(options);
+		boolean excludeMeasurements = optionList.contains(GeoJsonExportOptions.EXCLUDE_MEASUREMENTS);
+		boolean prettyPrint = optionList.contains(GeoJsonExportOptions.PRETTY_JSON);
+		boolean featureCollection = optionList.contains(GeoJsonExportOptions.FEATURE_COLLECTION);
+
+		var gson = GsonTools.getInstance(prettyPrint);
+		var writer = new OutputStreamWriter(new BufferedOutputStream(stream), StandardCharsets.UTF_8);
+		var out = gson.newJsonWriter(writer);
+
+		if (featureCollection) {
+			out.beginObject();
+			out.name("type");
+			out.value("FeatureCollection");
+			out.name("features");
+		}
+		out.beginArray();
+
+		long count = 0;
+		var batch = new ArrayList<PathObject>(BATCH_SIZE);
+		while (iterator.hasNext()) {
+			batch.clear();
+			while (batch.size() < BATCH_SIZE && iterator.hasNext())
+				batch.add(iterator.next());
+			if (prettyPrint) {
+				// Pre-formatted JSON would not be indented consistently, so write directly
+				for (var pathObject : batch) {
+					if (excludeMeasurements)
+						pathObject = PathObjectTools.transformObject(pathObject, null, false);
+					gson.toJson(pathObject, PathObject.class, out);
+				}
+			} else {
+				for (var json : toJson(gson, batch, excludeMeasurements))
+					out.jsonValue(json);
+			}
+			count += batch.size();
+		}
+
+		out.endArray();
+		if (featureCollection)
+			out.endObject();
+		out.flush();
+		return count;
+	}
+
+	/**
+	 * Convert a batch of objects to JSON, in parallel if the batch is large enough.
+	 */
+	private static String[] toJson(Gson gson, List<PathObject> pathObjects, boolean excludeMeasurements) {
+		var json = new String[pathObjects.size()];
+		var range = IntStream.range(0, json.length);
+		if (json.length >= PARALLEL_THRESHOLD)
+			range = range.parallel();
+		range.forEach(i -> {
+			var pathObject = pathObjects.get(i);
+			if (excludeMeasurements)
+				pathObject = PathObjectTools.transformObject(pathObject, null, false);
+			json[i] = gson.toJson(pathObject, PathObject.class);
+		});
+		return json;
+	}
+
+	/**
+	 * Create an iterator over all objects in a hierarchy in depth-first order, excluding the root object.
+	 * Child objects are only requested when the iterator reaches their parent, so the full list is never created.
+	 *
+	 * @param hierarchy
+	 * @return
+	 */
+	static Iterator<PathObject> iterateHierarchy(PathObjectHierarchy hierarchy) {
+		var stack = new ArrayDeque<PathObject>();
+		pushChildren(stack, hierarchy.getRootObject());
+		return new AbstractIterator<>() {
+			@Override
+			protected PathObject computeNext() {
+				var next = stack.poll();
+				if (next == null)
+					return endOfData();
+				pushChildren(stack, next);
+				return next;
+			}
+		};
+	}
+
+	private static void pushChildren(Deque<PathObject> stack, PathObject parent) {
+		if (!parent.hasChildren())
+			return;
+		var children = parent.getChildObjectsAsArray();
+		for (int i = children.length - 1; i >= 0; i--)
+			stack.push(children[i]);
+	}
+
+	/**
+	 * Create an iterator that reads objects lazily from GeoJSON.
+	 * <p>
+	 * Arrays and the "features" array of a FeatureCollection are read one element at a time.
+	 * Any other JSON object is read in full, and handled as described in {@link PathIO#readObjectsFromGeoJSON(InputStream)}.
+	 * <p>
+	 * The iterator should be closed when it is no longer needed. This will also close the input stream.
+	 *
+	 * @param stream
+	 * @return
+	 */
+	static FeatureIterator readFeatures(InputStream stream) {
+		return new FeatureIterator(stream);
+	}
+
+
+	/**
+	 * Iterator that reads objects from GeoJSON on demand.
+	 * {@link IOException}s that occur while reading are rethrown as {@link UncheckedIOException}s.
+	 */
+	static class FeatureIterator extends AbstractIterator<PathObject> implements Closeable {
+
+		private static enum State {START, ARRAY, OBJECT, FEATURES, DONE}
+
+		private final Gson gson = GsonTools.getInstance();
+		private final JsonReader reader;
+		private final Deque<PathObject> pending = new ArrayDeque<>();
+
+		private State state = State.START;
+		private JsonObject topLevelObject;
+		private boolean hasFeatures = false;
+
+		private FeatureIterator(InputStream stream) {
+			this.reader = gson.newJsonReader(
+					new InputStreamReader(new BufferedInputStream(stream), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		protected PathObject computeNext() {
+			try {
+				while (pending.isEmpty()) {
+					if (!advance())
+						return endOfData();
+				}
+				return pending.poll();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Read the next JSON token or element, adding any objects that are found to the pending queue.
+		 * @return false if the end of the input has been reached
+		 */
+		private boolean advance() throws IOException {
+			switch (state) {
+			case START:
+				JsonToken token;
+				try {
+					token = reader.peek();
+				} catch (EOFException e) {
+					// Empty input
+					state = State.DONE;
+					return false;
+				}
+				if (token == JsonToken.BEGIN_ARRAY) {
+					reader.beginArray();
+					state = State.ARRAY;
+				} else if (token == JsonToken.BEGIN_OBJECT) {
+					reader.beginObject();
+					topLevelObject = new JsonObject();
+					state = State.OBJECT;
+				} else {
+					logger.debug("Unable to read objects from JSON starting with {}", token);
+					state = State.DONE;
+				}
+				return true;
+			case ARRAY:
+			case FEATURES:
+				if (reader.hasNext()) {
+					addPathObjects(readElement(), pending, gson);
+				} else {
+					reader.endArray();
+					state = state == State.ARRAY ? State.DONE : State.OBJECT;
+				}
+				return true;
+			case OBJECT:
+				if (reader.hasNext()) {
+					String name = reader.nextName();
+					if ("features".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+						reader.beginArray();
+						hasFeatures = true;
+						state = State.FEATURES;
+					} else
+						topLevelObject.add(name, readElement());
+				} else {
+					reader.endObject();
+					state = State.DONE;
+					// If we didn't have any features, the object might be a Feature or Geometry
+					if (!hasFeatures)
+						addPathObjects(topLevelObject, pending, gson);
+					topLevelObject = null;
+				}
+				return true;
+			case DONE:
+			default:
+				return false;
+			}
+		}
+
+		private JsonElement readElement() {
+			return gson.fromJson(reader, JsonElement.class);
+		}
+
+		@Override
+		public void close() throws IOException {
+			state = State.DONE;
+			pending.clear();
+			reader.close();
+		}
+
+	}
+
+
+	/**
+	 * Try to parse objects from GeoJSON.
+	 * This might involve a FeatureCollection, Feature or Geometry, or an array of these.
+	 * @param element
+	 * @param pathObjects
+	 * @param gson
+	 * @return true if any objects were added
+	 */
+	static boolean addPathObjects(JsonElement element, Collection<PathObject> pathObjects, Gson gson) {
+		if (element == null)
+			return false;
+		if (element.isJsonArray()) {
+			var array = element.getAsJsonArray();
+			boolean changes = false;
+			for (int i = 0; i < array.size(); i++) {
+				changes = changes | addPathObjects(array.get(i), pathObjects, gson);
+			}
+			return changes;
+		}
+		if (element.isJsonObject()) {
+			var jsonObject = element.getAsJsonObject();
+			if (jsonObject.has("type")) {
+				String type = jsonObject.get("type").getAsString();
+				switch (type) {
+				case "Feature":
+					var pathObject = gson.fromJson(jsonObject, PathObject.class);
+					if (pathObject == null)
+						return false;
+					return pathObjects.add(pathObject);
+				case "FeatureCollection":
+					var featureCollection = gson.fromJson(jsonObject, FeatureCollection.class);
+					return pathObjects.addAll(featureCollection.getPathObjects());
+				case "Point":
+				case "MultiPoint":
+				case "LineString":
+				case "MultiLineString":
+				case "Polygon":
+				case "MultiPolygon":
+				case "GeometryCollection":
+					logger.warn("Creating annotation from GeoJSON geometry {}", type);
+					var geometry = gson.fromJson(jsonObject, Geometry.class);
+					geometry = GeometryTools.homogenizeGeometryCollection(geometry);
+					var roi = GeometryTools.geometryToROI(geometry, ImagePlane.getDefaultPlane());
+					var annotation = PathObjects.createAnnotationObject(roi);
+					return pathObjects.add(annotation);
+				}
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,599 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.EllipseROI;
+import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.LineROI;
+import qupath.lib.roi.PointsROI;
+import qupath.lib.roi.PolygonROI;
+import qupath.lib.roi.PolylineROI;
+import qupath.lib.roi.ROIs;
+import qupath.lib.roi.RectangleROI;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Compact binary encoding for {@link ROI} and {@link Geometry} objects.
+ * <p>
+ * Coordinates are quantized to integer multiples of a power of two, and each coordinate is stored as the
+ * difference from the previous one using a variable-length (zigzag varint) encoding.
+ * Because neighboring vertices of a polygon are usually close together, most coordinates require only one or two bytes,
+ * compared to four or eight for floating point values and often more than ten for GeoJSON text.
+ * <p>
+ * By default the encoding is lossless: the quantization step is chosen to be the largest power of two that represents
+ * all coordinates exactly. For coordinates that cannot be represented exactly (e.g. arbitrary doubles)
+ * the raw values are stored instead. Alternatively, a maximum quantization step can be given to trade precision for size.
+ * <p>
+ * The encoding is self-delimiting, so that encoded objects may be concatenated without needing to store their lengths.
+ *
+ * @since 0.3
+ */
+public final class GeometryCodec {
+
+	private static final byte VERSION = 1;
+
+	private static final byte GEOMETRY_POINT = 1;
+	private static final byte GEOMETRY_LINESTRING = 2;
+	private static final byte GEOMETRY_LINEARRING = 3;
+	private static final byte GEOMETRY_POLYGON = 4;
+	private static final byte GEOMETRY_MULTIPOINT = 5;
+	private static final byte GEOMETRY_MULTILINESTRING = 6;
+	private static final byte GEOMETRY_MULTIPOLYGON = 7;
+	private static final byte GEOMETRY_COLLECTION = 8;
+
+	private static final byte ROI_RECTANGLE = 1;
+	private static final byte ROI_ELLIPSE = 2;
+	private static final byte ROI_LINE = 3;
+	private static final byte ROI_POLYGON = 4;
+	private static final byte ROI_POLYLINE = 5;
+	private static final byte ROI_POINTS = 6;
+	private static final byte ROI_GEOMETRY = 7;
+
+	/**
+	 * Maximum number of fractional bits used when quantizing coordinates.
+	 */
+	private static final int MAX_SHIFT = 30;
+
+	/**
+	 * Shift value used to indicate that coordinates are stored as raw doubles.
+	 */
+	private static final int SHIFT_RAW = 0xFF;
+
+	/**
+	 * Quantized coordinates must be smaller than this, so that deltas never overflow.
+	 */
+	private static final double MAX_QUANTIZED = 0x1p62;
+
+	private GeometryCodec() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Encode a geometry losslessly.
+	 * @param geometry
+	 * @return
+	 */
+	public static byte[] encode(Geometry geometry) {
+		return encode(geometry, 0);
+	}
+
+	/**
+	 * Encode a geometry, optionally quantizing coordinates.
+	 * @param geometry the geometry to encode
+	 * @param precision the maximum acceptable quantization step; coordinates are rounded to a multiple of the largest power of two
+	 *                  that does not exceed this value. If &le; 0, the encoding is lossless.
+	 * @return
+	 */
+	public static byte[] encode(Geometry geometry, double precision) {
+		var coords = geometry.getCoordinates();
+		var values = new double[coords.length * 2];
+		for (int i = 0; i < coords.length; i++) {
+			values[i*2] = coords[i].x;
+			values[i*2+1] = coords[i].y;
+		}
+		var out = new Encoder(values.length * 2 + 16, chooseShift(values, precision));
+		out.writeByte(VERSION);
+		out.writeByte(out.shift);
+		out.writeGeometry(geometry);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decode a geometry encoded with {@link #encode(Geometry, double)}, using QuPath's default geometry factory.
+	 * @param bytes
+	 * @return
+	 * @throws IOException if the bytes do not contain a valid encoded geometry
+	 */
+	public static Geometry decodeGeometry(byte[] bytes) throws IOException {
+		return readGeometry(ByteBuffer.wrap(bytes), GeometryTools.getDefaultFactory());
+	}
+
+	/**
+	 * Decode a geometry encoded with {@link #encode(Geometry, double)}.
+	 * @param bytes
+	 * @param factory the factory used to create the geometry
+	 * @return
+	 * @throws IOException if the bytes do not contain a valid encoded geometry
+	 */
+	public static Geometry decodeGeometry(byte[] bytes, GeometryFactory factory) throws IOException {
+		return readGeometry(ByteBuffer.wrap(bytes), factory);
+	}
+
+	/**
+	 * Read a geometry from the current position of a buffer.
+	 * @param buffer
+	 * @param factory
+	 * @return
+	 * @throws IOException
+	 */
+	static Geometry readGeometry(ByteBuffer buffer, GeometryFactory factory) throws IOException {
+		try {
+			checkVersion(buffer.get());
+			var in = new Decoder(buffer, buffer.get() & 0xFF, factory);
+			return in.readGeometry();
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Invalid encoded geometry", e);
+		}
+	}
+
+	/**
+	 * Encode a ROI losslessly.
+	 * The ROI type and image plane are retained, so that the decoded ROI is equivalent to the original.
+	 * @param roi
+	 * @return
+	 */
+	public static byte[] encode(ROI roi) {
+		return encode(roi, 0);
+	}
+
+	/**
+	 * Encode a ROI, optionally quantizing coordinates.
+	 * @param roi the ROI to encode
+	 * @param precision the maximum acceptable quantization step; if &le; 0, the encoding is lossless
+	 * @return
+	 * @see #encode(Geometry, double)
+	 */
+	public static byte[] encode(ROI roi, double precision) {
+		byte type;
+		double[] values;
+		Geometry geometry = null;
+		if (roi instanceof RectangleROI || roi instanceof EllipseROI) {
+			type = roi instanceof RectangleROI ? ROI_RECTANGLE : ROI_ELLIPSE;
+			values = new double[] {roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight()};
+		} else if (roi instanceof LineROI) {
+			var line = (LineROI)roi;
+			type = ROI_LINE;
+			values = new double[] {line.getX1(), line.getY1(), line.getX2(), line.getY2()};
+		} else if (roi instanceof PolygonROI || roi instanceof PolylineROI || roi instanceof PointsROI) {
+			if (roi instanceof PolygonROI)
+				type = ROI_POLYGON;
+			else
+				type = roi instanceof PolylineROI ? ROI_POLYLINE : ROI_POINTS;
+			var points = roi.getAllPoints();
+			values = new double[points.size() * 2];
+			int i = 0;
+			for (var p : points) {
+				values[i++] = p.getX();
+				values[i++] = p.getY();
+			}
+		} else {
+			type = ROI_GEOMETRY;
+			geometry = roi.getGeometry();
+			var coords = geometry.getCoordinates();
+			values = new double[coords.length * 2];
+			for (int i = 0; i < coords.length; i++) {
+				values[i*2] = coords[i].x;
+				values[i*2+1] = coords[i].y;
+			}
+		}
+		var out = new Encoder(values.length * 2 + 24, chooseShift(values, precision));
+		out.writeByte(VERSION);
+		out.writeByte(type);
+		var plane = roi.getImagePlane();
+		out.writeVarLong(zigzag(plane.getC()));
+		out.writeVarLong(zigzag(plane.getZ()));
+		out.writeVarLong(zigzag(plane.getT()));
+		out.writeByte(out.shift);
+		switch (type) {
+		case ROI_GEOMETRY:
+			out.writeGeometry(geometry);
+			break;
+		case ROI_POLYGON:
+		case ROI_POLYLINE:
+		case ROI_POINTS:
+			out.writeVarInt(values.length / 2);
+			// Fall through
+		default:
+			for (int i = 0; i < values.length; i += 2)
+				out.writeCoordinate(values[i], values[i+1]);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decode a ROI encoded with {@link #encode(ROI, double)}.
+	 * @param bytes
+	 * @return
+	 * @throws IOException if the bytes do not contain a valid encoded ROI
+	 */
+	public static ROI decodeROI(byte[] bytes) throws IOException {
+		return readROI(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Read a ROI from the current position of a buffer.
+	 * @param buffer
+	 * @return
+	 * @throws IOException
+	 */
+	static ROI readROI(ByteBuffer buffer) throws IOException {
+		try {
+			checkVersion(buffer.get());
+			byte type = buffer.get();
+			int c = (int)unzigzag(readVarLong(buffer));
+			int z = (int)unzigzag(readVarLong(buffer));
+			int t = (int)unzigzag(readVarLong(buffer));
+			var plane = ImagePlane.getPlaneWithChannel(c, z, t);
+			var in = new Decoder(buffer, buffer.get() & 0xFF, GeometryTools.getDefaultFactory());
+			switch (type) {
+			case ROI_RECTANGLE:
+			case ROI_ELLIPSE:
+			case ROI_LINE:
+				double[] v = new double[4];
+				in.readCoordinates(v, 2);
+				if (type == ROI_RECTANGLE)
+					return ROIs.createRectangleROI(v[0], v[1], v[2], v[3], plane);
+				else if (type == ROI_ELLIPSE)
+					return ROIs.createEllipseROI(v[0], v[1], v[2], v[3], plane);
+				return ROIs.createLineROI(v[0], v[1], v[2], v[3], plane);
+			case ROI_POLYGON:
+			case ROI_POLYLINE:
+			case ROI_POINTS:
+				int n = in.readCount();
+				double[] x = new double[n];
+				double[] y = new double[n];
+				for (int i = 0; i < n; i++) {
+					x[i] = in.readX();
+					y[i] = in.readY();
+				}
+				if (type == ROI_POLYGON)
+					return ROIs.createPolygonROI(x, y, plane);
+				else if (type == ROI_POLYLINE)
+					return ROIs.createPolylineROI(x, y, plane);
+				return ROIs.createPointsROI(x, y, plane);
+			case ROI_GEOMETRY:
+				return GeometryTools.geometryToROI(in.readGeometry(), plane);
+			default:
+				throw new IOException("Unknown encoded ROI type " + type);
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Invalid encoded ROI", e);
+		}
+	}
+
+	private static void checkVersion(byte version) throws IOException {
+		if (version != VERSION)
+			throw new IOException("Unsupported geometry encoding version " + version);
+	}
+
+
+	/**
+	 * Choose the number of fractional bits to retain when quantizing values.
+	 * @param values the values to quantize
+	 * @param precision maximum quantization step, or &le; 0 if the values must be represented exactly
+	 * @return the number of fractional bits, or {@link #SHIFT_RAW} if values should be stored without quantization
+	 */
+	static int chooseShift(double[] values, double precision) {
+		int maxShift = MAX_SHIFT;
+		if (precision > 0)
+			maxShift = Math.max(0, Math.min(MAX_SHIFT, -Math.getExponent(precision)));
+		int shift = 0;
+		double maxAbs = 0;
+		for (double v : values) {
+			if (!Double.isFinite(v))
+				return SHIFT_RAW;
+			maxAbs = Math.max(maxAbs, Math.abs(v));
+			if (shift <= maxShift)
+				shift = Math.max(shift, fractionalBits(v));
+		}
+		if (shift > maxShift) {
+			// Can't represent exactly - so either quantize with lower precision, or store raw values
+			if (precision <= 0)
+				return SHIFT_RAW;
+			shift = maxShift;
+		}
+		if (Math.scalb(maxAbs, shift) >= MAX_QUANTIZED)
+			return SHIFT_RAW;
+		return shift;
+	}
+
+	/**
+	 * Get the number of fractional bits needed to represent a finite double exactly.
+	 */
+	private static int fractionalBits(double v) {
+		if (v == 0 || v == Math.rint(v))
+			return 0;
+		long bits = Double.doubleToRawLongBits(v);
+		int exponent = (int)((bits >>> 52) & 0x7ff);
+		long mantissa = bits & 0xfffffffffffffL;
+		if (exponent == 0)
+			exponent = 1;
+		else
+			mantissa |= 1L << 52;
+		// v = mantissa * 2^(exponent - 1075)
+		int power = exponent - 1075 + Long.numberOfTrailingZeros(mantissa);
+		return Math.max(0, -power);
+	}
+
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private static long unzigzag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Malformed variable-length integer");
+	}
+
+
+	private static class Encoder {
+
+		private final int shift;
+		private byte[] bytes;
+		private int pos = 0;
+		private long lastX, lastY;
+
+		private Encoder(int capacity, int shift) {
+			this.bytes = new byte[Math.max(16, capacity)];
+			this.shift = shift;
+		}
+
+		private void ensureCapacity(int n) {
+			if (pos + n > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + n));
+		}
+
+		void writeByte(int b) {
+			ensureCapacity(1);
+			bytes[pos++] = (byte)b;
+		}
+
+		void writeVarInt(int v) {
+			writeVarLong(v & 0xFFFFFFFFL);
+		}
+
+		void writeVarLong(long v) {
+			ensureCapacity(10);
+			while ((v & ~0x7FL) != 0) {
+				bytes[pos++] = (byte)((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[pos++] = (byte)v;
+		}
+
+		void writeCoordinate(double x, double y) {
+			if (shift == SHIFT_RAW) {
+				writeLong(Double.doubleToLongBits(x));
+				writeLong(Double.doubleToLongBits(y));
+				return;
+			}
+			long qx = Math.round(Math.scalb(x, shift));
+			long qy = Math.round(Math.scalb(y, shift));
+			writeVarLong(zigzag(qx - lastX));
+			writeVarLong(zigzag(qy - lastY));
+			lastX = qx;
+			lastY = qy;
+		}
+
+		private void writeLong(long v) {
+			ensureCapacity(8);
+			for (int i = 56; i >= 0; i -= 8)
+				bytes[pos++] = (byte)(v >>> i);
+		}
+
+		void writeGeometry(Geometry geometry) {
+			if (geometry instanceof Point) {
+				writeByte(GEOMETRY_POINT);
+				writeCoordinates(geometry.getCoordinates(), false);
+			} else if (geometry instanceof LinearRing) {
+				writeByte(GEOMETRY_LINEARRING);
+				writeCoordinates(geometry.getCoordinates(), true);
+			} else if (geometry instanceof LineString) {
+				writeByte(GEOMETRY_LINESTRING);
+				writeCoordinates(geometry.getCoordinates(), false);
+			} else if (geometry instanceof Polygon) {
+				var polygon = (Polygon)geometry;
+				writeByte(GEOMETRY_POLYGON);
+				if (polygon.isEmpty()) {
+					writeVarInt(0);
+					return;
+				}
+				writeVarInt(polygon.getNumInteriorRing() + 1);
+				writeCoordinates(polygon.getExteriorRing().getCoordinates(), true);
+				for (int i = 0; i < polygon.getNumInteriorRing(); i++)
+					writeCoordinates(polygon.getInteriorRingN(i).getCoordinates(), true);
+			} else if (geometry instanceof GeometryCollection) {
+				if (geometry instanceof MultiPoint)
+					writeByte(GEOMETRY_MULTIPOINT);
+				else if (geometry instanceof MultiLineString)
+					writeByte(GEOMETRY_MULTILINESTRING);
+				else if (geometry instanceof MultiPolygon)
+					writeByte(GEOMETRY_MULTIPOLYGON);
+				else
+					writeByte(GEOMETRY_COLLECTION);
+				int n = geometry.getNumGeometries();
+				writeVarInt(n);
+				for (int i = 0; i < n; i++)
+					writeGeometry(geometry.getGeometryN(i));
+			} else
+				throw new IllegalArgumentException("Unsupported geometry type " + geometry.getGeometryType());
+		}
+
+		/**
+		 * Write a coordinate array. Rings are closed, so the last coordinate is omitted.
+		 */
+		private void writeCoordinates(Coordinate[] coords, boolean isRing) {
+			int n = coords.length;
+			if (isRing && n > 0)
+				n--;
+			writeVarInt(n);
+			for (int i = 0; i < n; i++)
+				writeCoordinate(coords[i].x, coords[i].y);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, pos);
+		}
+
+	}
+
+
+	private static class Decoder {
+
+		private final ByteBuffer buffer;
+		private final int shift;
+		private final GeometryFactory factory;
+		private long lastX, lastY;
+
+		private Decoder(ByteBuffer buffer, int shift, GeometryFactory factory) throws IOException {
+			if (shift != SHIFT_RAW && shift > MAX_SHIFT)
+				throw new IOException("Invalid coordinate shift " + shift);
+			this.buffer = buffer;
+			this.shift = shift;
+			this.factory = factory;
+		}
+
+		int readCount() throws IOException {
+			long n = readVarLong(buffer);
+			// Every coordinate requires at least two bytes
+			if (n < 0 || n > buffer.remaining())
+				throw new IOException("Invalid coordinate count " + n);
+			return (int)n;
+		}
+
+		double readX() {
+			if (shift == SHIFT_RAW)
+				return Double.longBitsToDouble(buffer.getLong());
+			lastX += unzigzag(readVarLong(buffer));
+			return Math.scalb((double)lastX, -shift);
+		}
+
+		double readY() {
+			if (shift == SHIFT_RAW)
+				return Double.longBitsToDouble(buffer.getLong());
+			lastY += unzigzag(readVarLong(buffer));
+			return Math.scalb((double)lastY, -shift);
+		}
+
+		void readCoordinates(double[] values, int nCoordinates) {
+			for (int i = 0; i < nCoordinates; i++) {
+				values[i*2] = readX();
+				values[i*2+1] = readY();
+			}
+		}
+
+		private Coordinate[] readCoordinates(boolean isRing) throws IOException {
+			int n = readCount();
+			var coords = new Coordinate[isRing && n > 0 ? n + 1 : n];
+			for (int i = 0; i < n; i++) {
+				double x = readX();
+				double y = readY();
+				coords[i] = new Coordinate(x, y);
+			}
+			if (coords.length > n)
+				coords[n] = new Coordinate(coords[0]);
+			return coords;
+		}
+
+		Geometry readGeometry() throws IOException {
+			byte type = buffer.get();
+			switch (type) {
+			case GEOMETRY_POINT:
+				var pointCoords = readCoordinates(false);
+				return pointCoords.length == 0 ? factory.createPoint() : factory.createPoint(pointCoords[0]);
+			case GEOMETRY_LINESTRING:
+				return factory.createLineString(readCoordinates(false));
+			case GEOMETRY_LINEARRING:
+				return factory.createLinearRing(readCoordinates(true));
+			case GEOMETRY_POLYGON:
+				int nRings = readCount();
+				if (nRings == 0)
+					return factory.createPolygon();
+				var shell = factory.createLinearRing(readCoordinates(true));
+				var holes = new LinearRing[nRings - 1];
+				for (int i = 0; i < holes.length; i++)
+					holes[i] = factory.createLinearRing(readCoordinates(true));
+				return factory.createPolygon(shell, holes);
+			case GEOMETRY_MULTIPOINT:
+				return factory.createMultiPoint(readGeometries(new Point[readCount()]));
+			case GEOMETRY_MULTILINESTRING:
+				return factory.createMultiLineString(readGeometries(new LineString[readCount()]));
+			case GEOMETRY_MULTIPOLYGON:
+				return factory.createMultiPolygon(readGeometries(new Polygon[readCount()]));
+			case GEOMETRY_COLLECTION:
+				return factory.createGeometryCollection(readGeometries(new Geometry[readCount()]));
+			default:
+				throw new IOException("Unknown encoded geometry type " + type);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private <T extends Geometry> T[] readGeometries(T[] geometries) throws IOException {
+			for (int i = 0; i < geometries.length; i++) {
+				var geometry = readGeometry();
+				if (!geometries.getClass().getComponentType().isInstance(geometry))
+					throw new IOException("Unexpected geometry type " + geometry.getGeometryType());
+				geometries[i] = (T)geometry;
+			}
+			return geometries;
+		}
+
+	}
+
+}
@@ -0,0 +1,735 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.objects.MetadataStore;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.objects.PathROIObject;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
+
+/**
+ * Append-only journal recording changes made to an {@link ImageData} since its data file was last written in full.
+ * <p>
+ * Writing a complete data file requires time proportional to the number of objects in the hierarchy.
+ * A journal instead records only the objects that have changed, as determined from {@link PathObjectHierarchyEvent}s.
+ * Each save appends a record to a separate journal file, which is replayed after the data file has been read.
+ * <p>
+ * The journal is compacted back into the data file whenever it becomes large relative to the data file itself,
+ * or the hierarchy has changed in a way that cannot be recorded incrementally (e.g. a structure change
+ * event for the root object).
+ * <p>
+ * Objects are identified by their position within the data file; new objects are assigned subsequent identifiers
+ * in the order in which they are first written to the journal.
+ * <p>
+ * Changes that are not reported to the hierarchy through events cannot be recorded, so any code that modifies 
+ * objects should fire the appropriate event (e.g. {@link PathObjectHierarchy#fireObjectsChangedEvent(Object, java.util.Collection)}).
+ * If the {@link ImageData} reports a change but no events have been received, the data file is written in full.
+ * This means that the time needed to save depends upon the number of objects changed, not the size of the hierarchy.
+ *
+ * @since 0.3
+ */
+public class ImageDataJournal implements PathObjectHierarchyListener {
+
+	private final static Logger logger = LoggerFactory.getLogger(ImageDataJournal.class);
+
+	private final static byte[] JOURNAL_MAGIC = new byte[] {(byte)0x89, 'Q', 'P', 'J', 'R', 'N', 'L', '\n'};
+
+	private final static int JOURNAL_VERSION = 1;
+
+	private final static int HEADER_LENGTH = JOURNAL_MAGIC.length + Integer.BYTES + Long.BYTES * 2;
+
+	private final static int RECORD_HEADER_LENGTH = Integer.BYTES + Long.BYTES;
+
+	/**
+	 * Maximum number of records to append before the journal is compacted.
+	 */
+	private final static int MAX_RECORDS = 100;
+
+	/**
+	 * The journal is compacted whenever its size exceeds this fraction of the size of the data file.
+	 */
+	private final static double MAX_JOURNAL_FRACTION = 0.25;
+
+	/**
+	 * The data file is written in full whenever more than this fraction of objects would need to be written to the journal.
+	 */
+	private final static double MAX_CHANGED_FRACTION = 0.25;
+
+	/**
+	 * Number of bytes from the start and end of a data file used to check that a journal belongs to it.
+	 */
+	private final static int CHECKSUM_BYTES = 64 * 1024;
+
+	/**
+	 * Journals for all hierarchies that are being tracked.
+	 * Journals don't reference the hierarchy, so it can still be garbage collected.
+	 */
+	private final static Map<PathObjectHierarchy, ImageDataJournal> journals = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final Path pathData;
+	private long dataSize;
+	private long dataChecksum;
+
+	private long journalLength = 0L;
+	private int nRecords = 0;
+
+	private final Map<PathObject, Integer> ids;
+	private int nextId;
+
+	private final Set<PathObject> changedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Set<PathObject> changedParents = Collections.newSetFromMap(new IdentityHashMap<>());
+	private boolean requiresFullWrite = false;
+
+	/**
+	 * True while objects are still being read lazily, and so cannot yet be identified.
+	 */
+	private volatile boolean loading = false;
+
+	private ImageDataJournal(Path pathData, PathObject root, List<PathObject> order) {
+		this.pathData = pathData;
+		this.ids = new IdentityHashMap<>(order.size());
+		setObjects(order);
+	}
+
+
+	/**
+	 * Read an {@link ImageData} from a data file, applying any changes recorded in a journal.
+	 * Subsequent changes to the hierarchy are tracked, so that they can be saved with {@link #appendChanges(Path, Path, ImageData)}.
+	 *
+	 * @param <T>
+	 * @param pathData path to the data file
+	 * @param pathJournal path to the journal; this need not exist
+	 * @param server an ImageServer to use rather than any that might be stored within the data file, or null if a new server should be built
+	 * @param cls
+	 * @return
+	 * @throws IOException
+	 */
+	public static <T> ImageData<T> readImageData(Path pathData, Path pathJournal, ImageServer<T> server, Class<T> cls) throws IOException {
+		logger.info("Reading data from {}...", pathData.getFileName().toString());
+		try (var stream = Files.newInputStream(pathData)) {
+			return PathIO.readImageData(stream, server, cls, (imageData, order) -> startTracking(pathData, pathJournal, imageData, order));
+		}
+	}
+
+	/**
+	 * Read an {@link ImageData} from a data file, allowing detections to be added in the background.
+	 * <p>
+	 * Changes are tracked from the start, so that any edits made while detections are being read can be appended 
+	 * to the journal later.
+	 * If the journal contains any changes then everything is read before this method returns, 
+	 * since the changes can only be applied once all objects are available.
+	 *
+	 * @param <T>
+	 * @param pathData path to the data file
+	 * @param pathJournal path to the journal; this need not exist
+	 * @param server an ImageServer to use rather than any that might be stored within the data file, or null if a new server should be built
+	 * @param cls
+	 * @param hierarchyExecutor executor used to add detections to the hierarchy and fire hierarchy events
+	 * @return
+	 * @throws IOException
+	 * @see PathIO#readImageDataLazily(Path, ImageServer, Class, Executor)
+	 */
+	public static <T> LazyImageData<T> readImageDataLazily(Path pathData, Path pathJournal, ImageServer<T> server, Class<T> cls, Executor hierarchyExecutor) throws IOException {
+		if (Files.isRegularFile(pathJournal) && Files.size(pathJournal) > 0L)
+			return LazyImageData.completed(readImageData(pathData, pathJournal, server, cls));
+		var journal = new AtomicReference<ImageDataJournal>();
+		return PathIO.readImageDataLazily(pathData, server, cls, hierarchyExecutor,
+				imageData -> {
+					// Start tracking before any other thread can access the hierarchy
+					var hierarchy = imageData.getHierarchy();
+					journal.set(new ImageDataJournal(pathData, hierarchy.getRootObject(), Collections.emptyList()));
+					journal.get().loading = true;
+					hierarchy.addPathObjectListener(journal.get());
+					journals.put(hierarchy, journal.get());
+				},
+				(imageData, order) -> {
+					if (journal.get() == null)
+						startTracking(pathData, pathJournal, imageData, order);
+					else
+						journal.get().finishLoading(imageData.getHierarchy(), order);
+				});
+	}
+
+	/**
+	 * Read a {@link PathObjectHierarchy} from a data file, applying any changes recorded in a journal.
+	 *
+	 * @param pathData path to the data file
+	 * @param pathJournal path to the journal; this need not exist
+	 * @return
+	 * @throws IOException
+	 */
+	public static PathObjectHierarchy readHierarchy(Path pathData, Path pathJournal) throws IOException {
+		try (var stream = Files.newInputStream(pathData)) {
+			return PathIO.readHierarchy(stream, (hierarchy, order) -> {
+				try {
+					var journal = new ImageDataJournal(pathData, hierarchy.getRootObject(), order);
+					journal.updateDataChecksum();
+					journal.replay(pathJournal, hierarchy, null);
+				} catch (IOException e) {
+					logger.warn("Unable to apply journal " + pathJournal + ": " + e.getLocalizedMessage(), e);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Write an {@link ImageData} to a data file in full, deleting any existing journal.
+	 * Subsequent changes to the hierarchy are tracked, so that they can be saved with {@link #appendChanges(Path, Path, ImageData)}.
+	 *
+	 * @param pathData path to the data file
+	 * @param pathJournal path to the journal, which will be deleted if it exists
+	 * @param imageData
+	 * @throws IOException
+	 */
+	public static void writeImageData(Path pathData, Path pathJournal, ImageData<?> imageData) throws IOException {
+		// Ensure we aren't still reading from the data file
+		PathIO.awaitLazyRead(imageData);
+		var hierarchy = imageData.getHierarchy();
+		stopTracking(hierarchy);
+		var journal = new AtomicReference<ImageDataJournal>();
+		try (var stream = Files.newOutputStream(pathData)) {
+			// Start tracking changes as soon as we know which objects will be written
+			PathIO.writeImageData(stream, imageData, order -> {
+				journal.set(new ImageDataJournal(pathData, hierarchy.getRootObject(), order));
+				hierarchy.addPathObjectListener(journal.get());
+			});
+		} catch (IOException e) {
+			if (journal.get() != null)
+				hierarchy.removePathObjectListener(journal.get());
+			throw e;
+		}
+		Files.deleteIfExists(pathJournal);
+		journal.get().updateDataChecksum();
+		journals.put(hierarchy, journal.get());
+	}
+
+	/**
+	 * Try to append any changes to the hierarchy of an {@link ImageData} to a journal, rather than writing the data file in full.
+	 * <p>
+	 * This requires that the {@link ImageData} was previously read or written using this class, and that the data file
+	 * has not been modified elsewhere since. If this returns false, the caller should use
+	 * {@link #writeImageData(Path, Path, ImageData)} instead - which also compacts the journal.
+	 * <p>
+	 * This also returns false if the {@link ImageData} reports a change, but no change has been reported 
+	 * through a hierarchy event.
+	 *
+	 * @param pathData path to the data file
+	 * @param pathJournal path to the journal
+	 * @param imageData
+	 * @return true if the changes were appended to the journal, false if the data file should be written in full
+	 * @throws IOException
+	 */
+	public static boolean appendChanges(Path pathData, Path pathJournal, ImageData<?> imageData) throws IOException {
+		var journal = journals.get(imageData.getHierarchy());
+		if (journal == null)
+			return false;
+		return journal.append(pathData, pathJournal, imageData);
+	}
+
+	/**
+	 * Stop tracking changes for a hierarchy, if required.
+	 */
+	private static void stopTracking(PathObjectHierarchy hierarchy) {
+		var journal = journals.remove(hierarchy);
+		if (journal != null)
+			hierarchy.removePathObjectListener(journal);
+	}
+
+
+	/**
+	 * Apply any journal to a newly-read {@link ImageData}, and start tracking subsequent changes.
+	 * @param order objects in the order they were stored in the data file, or null if the file predates the columnar format
+	 */
+	private static <T> void startTracking(Path pathData, Path pathJournal, ImageData<T> imageData, List<PathObject> order) {
+		var hierarchy = imageData.getHierarchy();
+		stopTracking(hierarchy);
+		// Data files that predate the columnar format will need to be written in full
+		if (order == null)
+			return;
+		synchronized (hierarchy) {
+			boolean isChanged = imageData.isChanged();
+			try {
+				var journal = new ImageDataJournal(pathData, hierarchy.getRootObject(), order);
+				journal.updateDataChecksum();
+				if (journal.replay(pathJournal, hierarchy, imageData))
+					hierarchy.fireHierarchyChangedEvent(ImageDataJournal.class);
+				hierarchy.addPathObjectListener(journal);
+				journals.put(hierarchy, journal);
+			} catch (IOException e) {
+				logger.warn("Unable to apply journal " + pathJournal + ": " + e.getLocalizedMessage(), e);
+			}
+			// Applying the journal shouldn't be considered a change to the data
+			if (!isChanged)
+				imageData.setChanged(false);
+		}
+	}
+
+
+	/**
+	 * Finish tracking changes after all objects have been read lazily.
+	 * @param order objects in the order they were stored in the data file, or null if the file predates the columnar format
+	 */
+	private void finishLoading(PathObjectHierarchy hierarchy, List<PathObject> order) {
+		if (order == null) {
+			stopTracking(hierarchy);
+			return;
+		}
+		synchronized (hierarchy) {
+			try {
+				setObjects(order);
+				updateDataChecksum();
+			} catch (IOException e) {
+				logger.warn("Unable to read data file checksum: " + e.getLocalizedMessage(), e);
+				requiresFullWrite = true;
+			}
+			loading = false;
+		}
+	}
+
+	private void setObjects(List<PathObject> order) {
+		ids.clear();
+		int i = 0;
+		for (var pathObject : order)
+			ids.put(pathObject, i++);
+		nextId = order.size();
+	}
+
+	private void updateDataChecksum() throws IOException {
+		dataSize = Files.size(pathData);
+		dataChecksum = computeChecksum(pathData);
+	}
+
+
+	@Override
+	public void hierarchyChanged(PathObjectHierarchyEvent event) {
+		synchronized (event.getHierarchy()) {
+			if (requiresFullWrite)
+				return;
+			// Objects added by a lazy read are already in the data file
+			if (loading && event.getSource() == LazyImageData.class)
+				return;
+			switch (event.getEventType()) {
+			case ADDED:
+				// Objects may have been moved below the added object
+				changedParents.add(event.getStructureChangeBase());
+				changedParents.addAll(event.getChangedObjects());
+				break;
+			case REMOVED:
+				changedParents.add(event.getStructureChangeBase());
+				break;
+			case OTHER_STRUCTURE_CHANGE:
+				var base = event.getStructureChangeBase();
+				if (base == null || base.isRootObject()) {
+					// Anything could have changed, so we can't do better than writing everything
+					requiresFullWrite = true;
+					changedObjects.clear();
+					changedParents.clear();
+				} else
+					addSubtree(base);
+				break;
+			case CHANGE_CLASSIFICATION:
+			case CHANGE_MEASUREMENTS:
+			case CHANGE_OTHER:
+			default:
+				changedObjects.addAll(event.getChangedObjects());
+				break;
+			}
+		}
+	}
+
+	private void addSubtree(PathObject pathObject) {
+		changedObjects.add(pathObject);
+		if (pathObject.hasChildren()) {
+			changedParents.add(pathObject);
+			for (var child : pathObject.getChildObjectsAsArray())
+				addSubtree(child);
+		}
+	}
+
+
+	private boolean append(Path pathData, Path pathJournal, ImageData<?> imageData) throws IOException {
+		if (loading || requiresFullWrite || !this.pathData.equals(pathData) || !Files.isRegularFile(pathData))
+			return false;
+		// Check if it's time to compact the journal
+		if (nRecords >= MAX_RECORDS || journalLength > dataSize * MAX_JOURNAL_FRACTION)
+			return false;
+		// Check the files haven't been changed elsewhere
+		long currentLength = Files.exists(pathJournal) ? Files.size(pathJournal) : 0L;
+		if (currentLength != journalLength || Files.size(pathData) != dataSize || computeChecksum(pathData) != dataChecksum)
+			return false;
+
+		long startTime = System.currentTimeMillis();
+		byte[] metadata = PathIO.serializeImageMetadata(imageData);
+		byte[] record;
+		var hierarchy = imageData.getHierarchy();
+		synchronized (hierarchy) {
+			if (changedObjects.isEmpty() && changedParents.isEmpty() && imageData.isChanged()) {
+				logger.debug("ImageData has changes that have not been tracked");
+				return false;
+			}
+			record = createRecord(hierarchy, metadata);
+		}
+		if (record == null)
+			return false;
+
+		var crc = new CRC32();
+		crc.update(record);
+		try (var out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(pathJournal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+			if (journalLength == 0L)
+				writeHeader(out);
+			out.writeInt(record.length);
+			out.writeLong(crc.getValue());
+			out.write(record);
+		} catch (IOException e) {
+			// We've already discarded the changes, so need to write everything next time
+			requiresFullWrite = true;
+			truncate(pathJournal, journalLength);
+			throw e;
+		}
+		journalLength = Files.size(pathJournal);
+		nRecords++;
+		long endTime = System.currentTimeMillis();
+		logger.info(String.format("Changes appended to journal in %.2f seconds", (endTime - startTime)/1000.));
+		return true;
+	}
+
+	/**
+	 * Create a journal record containing all changes since the last record, and reset the changes.
+	 * The caller should hold the lock on the hierarchy.
+	 * @return the record, or null if the data file should be written in full instead
+	 */
+	private byte[] createRecord(PathObjectHierarchy hierarchy, byte[] metadata) throws IOException {
+		var root = hierarchy.getRootObject();
+
+		// Find the parents whose child lists need to be written, including those of any new objects
+		var queue = new ArrayDeque<PathObject>();
+		for (var parent : changedParents) {
+			if (parent == root || (ids.containsKey(parent) && PathObjectTools.hierarchyContainsObject(hierarchy, parent)))
+				queue.add(parent);
+		}
+		var newIds = new IdentityHashMap<PathObject, Integer>();
+		var newObjects = new ArrayList<PathObject>();
+		var parents = new ArrayList<PathObject>();
+		var parentChildren = new ArrayList<PathObject[]>();
+		var visited = Collections.newSetFromMap(new IdentityHashMap<PathObject, Boolean>());
+		while (!queue.isEmpty()) {
+			var parent = queue.poll();
+			if (!visited.add(parent))
+				continue;
+			var children = parent.getChildObjectsAsArray();
+			parents.add(parent);
+			parentChildren.add(children);
+			for (var child : children) {
+				if (!ids.containsKey(child) && !newIds.containsKey(child)) {
+					newIds.put(child, nextId + newObjects.size());
+					newObjects.add(child);
+					if (child.hasChildren())
+						queue.add(child);
+				}
+			}
+		}
+
+		// Find the existing objects that have changed
+		var changed = new ArrayList<PathObject>();
+		var changedIds = new ArrayList<Integer>();
+		for (var pathObject : changedObjects) {
+			var id = ids.get(pathObject);
+			if (id != null && PathObjectTools.hierarchyContainsObject(hierarchy, pathObject)) {
+				changed.add(pathObject);
+				changedIds.add(id);
+			}
+		}
+
+		int nWritten = newObjects.size() + changed.size();
+		if (nWritten > (ids.size() + newObjects.size()) * MAX_CHANGED_FRACTION) {
+			logger.debug("Too many changes to append to journal ({} objects)", nWritten);
+			return null;
+		}
+
+		var bytes = new ByteArrayOutputStream();
+		try (var out = new DataOutputStream(bytes)) {
+			out.writeInt(nextId);
+			out.writeInt(metadata.length);
+			out.write(metadata);
+
+			var objects = new ArrayList<PathObject>(nWritten);
+			objects.addAll(newObjects);
+			objects.addAll(changed);
+			ColumnarHierarchyIO.writeObjects(out, objects);
+			out.writeInt(newObjects.size());
+			for (int id : changedIds)
+				out.writeInt(id);
+
+			out.writeInt(parents.size());
+			for (int i = 0; i < parents.size(); i++) {
+				var parent = parents.get(i);
+				out.writeInt(parent == root ? -1 : getId(parent, newIds));
+				var children = parentChildren.get(i);
+				out.writeInt(children.length);
+				for (var child : children)
+					out.writeInt(getId(child, newIds));
+			}
+		}
+
+		ids.putAll(newIds);
+		nextId += newObjects.size();
+		changedObjects.clear();
+		changedParents.clear();
+		logger.debug("Journal record created for {} new, {} changed object(s) and {} parent(s)", newObjects.size(), changed.size(), parents.size());
+		return bytes.toByteArray();
+	}
+
+	private int getId(PathObject pathObject, Map<PathObject, Integer> newIds) {
+		var id = ids.get(pathObject);
+		return id == null ? newIds.get(pathObject) : id;
+	}
+
+
+	/**
+	 * Apply all valid records from a journal file to a hierarchy.
+	 * @param pathJournal
+	 * @param hierarchy
+	 * @param imageData the {@link ImageData} to update with any image metadata in the journal; may be null
+	 * @return true if any records were applied, false otherwise
+	 * @throws IOException
+	 */
+	private boolean replay(Path pathJournal, PathObjectHierarchy hierarchy, ImageData<?> imageData) throws IOException {
+		if (!Files.isRegularFile(pathJournal))
+			return false;
+		long size = Files.size(pathJournal);
+		if (size == 0L)
+			return false;
+
+		var objects = new ArrayList<PathObject>(Collections.nCopies(nextId, null));
+		for (var entry : ids.entrySet())
+			objects.set(entry.getValue(), entry.getKey());
+
+		long startTime = System.currentTimeMillis();
+		long position = 0L;
+		try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(pathJournal)))) {
+			if (size < HEADER_LENGTH || !readHeader(in)) {
+				logger.warn("Journal {} does not match the data file and will be ignored", pathJournal);
+				requiresFullWrite = true;
+				return false;
+			}
+			position = HEADER_LENGTH;
+			while (size - position >= RECORD_HEADER_LENGTH) {
+				int length = in.readInt();
+				long checksum = in.readLong();
+				if (length < 0 || length > size - position - RECORD_HEADER_LENGTH)
+					break;
+				byte[] record = new byte[length];
+				in.readFully(record);
+				var crc = new CRC32();
+				crc.update(record);
+				if (crc.getValue() != checksum || !applyRecord(record, objects, hierarchy.getRootObject(), imageData))
+					break;
+				position += RECORD_HEADER_LENGTH + length;
+				nRecords++;
+			}
+		}
+		if (position < size) {
+			logger.warn("Journal {} is incomplete - only the first {} of {} bytes could be applied", pathJournal, position, size);
+			requiresFullWrite = true;
+		}
+		journalLength = position;
+		setObjects(objects);
+		long endTime = System.currentTimeMillis();
+		logger.debug(String.format("%d journal record(s) applied in %.2f seconds", nRecords, (endTime - startTime)/1000.));
+		return nRecords > 0;
+	}
+
+	private static boolean applyRecord(byte[] record, List<PathObject> objects, PathObject root, ImageData<?> imageData) throws IOException {
+		try (var in = new DataInputStream(new ByteArrayInputStream(record))) {
+			int nExpected = in.readInt();
+			if (nExpected != objects.size()) {
+				logger.warn("Journal record expects {} objects, but {} are available", nExpected, objects.size());
+				return false;
+			}
+			byte[] metadata = new byte[in.readInt()];
+			in.readFully(metadata);
+			if (imageData != null)
+				PathIO.applyImageMetadata(metadata, imageData);
+
+			var pathObjects = ColumnarHierarchyIO.readObjects(in);
+			int nNew = in.readInt();
+			objects.addAll(pathObjects.subList(0, nNew));
+			for (int i = nNew; i < pathObjects.size(); i++) {
+				int id = in.readInt();
+				objects.set(id, updateObject(objects.get(id), pathObjects.get(i)));
+			}
+
+			int nParents = in.readInt();
+			for (int i = 0; i < nParents; i++) {
+				int id = in.readInt();
+				var parent = id < 0 ? root : objects.get(id);
+				var children = new PathObject[in.readInt()];
+				for (int c = 0; c < children.length; c++)
+					children[c] = objects.get(in.readInt());
+				parent.clearPathObjects();
+				parent.addPathObjects(Arrays.asList(children));
+			}
+			return true;
+		} catch (IndexOutOfBoundsException e) {
+			logger.warn("Invalid journal record: " + e.getLocalizedMessage(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Update an object using values read from the journal.
+	 * Detections are replaced, since their ROIs cannot be changed; other objects are updated in place,
+	 * so that any references to them (e.g. from a TMA grid) remain valid.
+	 * @return the object that should be used from now on
+	 */
+	private static PathObject updateObject(PathObject current, PathObject updated) {
+		if (current.isDetection() || !(current instanceof PathROIObject) || current.getClass() != updated.getClass()) {
+			var parent = current.getParent();
+			if (current.hasChildren())
+				updated.addPathObjects(new ArrayList<>(current.getChildObjects()));
+			if (parent != null) {
+				parent.removePathObject(current);
+				parent.addPathObject(updated);
+			}
+			return updated;
+		}
+		((PathROIObject)current).setROI(updated.getROI());
+		// Setting the classification resets the color, so this must come first
+		current.setPathClass(updated.getPathClass(), updated.getClassProbability());
+		current.setName(updated.getName());
+		current.setColorRGB(updated.getColorRGB());
+		current.setLocked(updated.isLocked());
+		var measurements = current.getMeasurementList();
+		measurements.clear();
+		if (updated.hasMeasurements()) {
+			var updatedMeasurements = updated.getMeasurementList();
+			for (int i = 0; i < updatedMeasurements.size(); i++)
+				measurements.addMeasurement(updatedMeasurements.getMeasurementName(i), updatedMeasurements.getMeasurementValue(i));
+		}
+		measurements.close();
+		if (current instanceof TMACoreObject)
+			((TMACoreObject)current).setMissing(((TMACoreObject)updated).isMissing());
+		if (current instanceof MetadataStore) {
+			for (var entry : ((MetadataStore)updated).getMetadataMap().entrySet())
+				((MetadataStore)current).putMetadataValue(entry.getKey(), entry.getValue());
+		}
+		if (current instanceof PathAnnotationObject)
+			((PathAnnotationObject)current).setDescription(((PathAnnotationObject)updated).getDescription());
+		return current;
+	}
+
+
+	private void writeHeader(DataOutputStream out) throws IOException {
+		out.write(JOURNAL_MAGIC);
+		out.writeInt(JOURNAL_VERSION);
+		out.writeLong(dataSize);
+		out.writeLong(dataChecksum);
+	}
+
+	/**
+	 * Read the journal header, and check that it matches the data file.
+	 */
+	private boolean readHeader(DataInputStream in) throws IOException {
+		byte[] magic = new byte[JOURNAL_MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, JOURNAL_MAGIC))
+			return false;
+		int version = in.readInt();
+		if (version > JOURNAL_VERSION) {
+			logger.warn("Unsupported journal version {}", version);
+			return false;
+		}
+		return in.readLong() == dataSize && in.readLong() == dataChecksum;
+	}
+
+	private static void truncate(Path path, long length) {
+		try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(length);
+		} catch (IOException e) {
+			logger.warn("Unable to truncate " + path + ": " + e.getLocalizedMessage(), e);
+		}
+	}
+
+	/**
+	 * Compute a checksum from the start and end of a file.
+	 * This is used to check that a journal belongs to a specific data file, without needing to read the entire file.
+	 */
+	private static long computeChecksum(Path path) throws IOException {
+		var crc = new CRC32();
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			var buffer = ByteBuffer.allocate((int)Math.min(size, CHECKSUM_BYTES));
+			readFully(channel, buffer, 0L);
+			crc.update(buffer.flip());
+			if (size > CHECKSUM_BYTES) {
+				buffer.clear();
+				readFully(channel, buffer, size - buffer.capacity());
+				crc.update(buffer.flip());
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of file");
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import qupath.lib.images.ImageData;
+
+/**
+ * Wrapper for an {@link ImageData} where the object hierarchy may still be loading in the background.
+ * <p>
+ * Annotations and TMA cores are available as soon as the {@link ImageData} is returned; detections are read
+ * on a background thread, and added to the hierarchy in batches using the executor passed when reading started.
+ * A hierarchy change event is fired after each batch is added.
+ * <p>
+ * Writing the {@link ImageData} with {@link PathIO} waits until all detections have been added.
+ *
+ * @param <T>
+ * @see PathIO#readImageDataLazily(java.nio.file.Path, qupath.lib.images.servers.ImageServer, Class)
+ * @since 0.3
+ */
+public class LazyImageData<T> {
+
+	private final ImageData<T> imageData;
+	private final CompletableFuture<ImageData<T>> future;
+
+	LazyImageData(ImageData<T> imageData, CompletableFuture<ImageData<T>> future) {
+		this.imageData = imageData;
+		this.future = future;
+	}
+
+	/**
+	 * Create a {@link LazyImageData} for an {@link ImageData} that has already been fully read.
+	 * @param <T>
+	 * @param imageData
+	 * @return
+	 */
+	public static <T> LazyImageData<T> completed(ImageData<T> imageData) {
+		return new LazyImageData<>(imageData, CompletableFuture.completedFuture(imageData));
+	}
+
+	/**
+	 * Get the {@link ImageData}. Its hierarchy may not yet contain all objects.
+	 * @return
+	 */
+	public ImageData<T> getImageData() {
+		return imageData;
+	}
+
+	/**
+	 * Get a future that completes whenever all objects have been added to the hierarchy.
+	 * @return
+	 */
+	public CompletableFuture<ImageData<T>> getFuture() {
+		return future;
+	}
+
+	/**
+	 * Query whether all objects have been read.
+	 * @return
+	 */
+	public boolean isComplete() {
+		return future.isDone();
+	}
+
+	/**
+	 * Wait until all objects have been read, and return the {@link ImageData}.
+	 * Any objects that have been read but not yet added to the hierarchy are added on the calling thread, 
+	 * so this may safely be called from the thread used to add objects.
+	 * @return
+	 * @throws InterruptedException
+	 * @throws ExecutionException if reading objects failed
+	 */
+	public ImageData<T> awaitComplete() throws InterruptedException, ExecutionException {
+		try {
+			PathIO.awaitLazyRead(imageData);
+		} catch (IOException e) {
+			throw new ExecutionException(e);
+		}
+		return future.get();
+	}
+
+}
@@ -25,6 +25,10 @@ package qupath.lib.io;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -32,12 +36,12 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
@@ -48,38 +52,51 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Locale.Category;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-import org.locationtech.jts.geom.Geometry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
+import com.google.common.collect.Iterators;
 import com.google.gson.reflect.TypeToken;
 import qupath.lib.color.ColorDeconvolutionStains;
 import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerBuilder.DefaultImageServerBuilder;
 import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
 import qupath.lib.images.servers.ImageServerProvider;
-import qupath.lib.io.PathObjectTypeAdapters.FeatureCollection;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
-import qupath.lib.objects.PathObjects;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
 import qupath.lib.plugins.workflow.Workflow;
-import qupath.lib.regions.ImagePlane;
-import qupath.lib.roi.GeometryTools;
 
 /**
  * Primary class for loading/saving {@link ImageData} objects.
@@ -96,8 +113,42 @@ public class PathIO {
 	 * Version 1.0 was the first...
 	 * Version 2 switched to integers, and includes Locale information
 	 * Version 3 stores JSON instead of a server path
+	 * Version 4 stores objects in a columnar binary format (with ROIs encoded by {@link GeometryCodec}), rather than using Java serialization
 	 */
-	private final static int DATA_FILE_VERSION = 3;
+	private final static int DATA_FILE_VERSION = 4;
+	
+	/**
+	 * Most recent data file version that relied upon Java serialization.
+	 */
+	private final static int DATA_FILE_VERSION_SERIALIZED = 3;
+	
+	/**
+	 * Identifier written at the start of data files from version 4 onwards.
+	 * The first byte ensures that this cannot be mistaken for the start of a Java serialization stream.
+	 */
+	private final static byte[] DATA_FILE_MAGIC = new byte[] {(byte)0x89, 'Q', 'P', 'D', 'A', 'T', 'A', '\n'};
+	
+	/**
+	 * Identifier written at the start of binary object files.
+	 */
+	private final static byte[] OBJECT_FILE_MAGIC = new byte[] {(byte)0x89, 'Q', 'P', 'O', 'B', 'J', 'S', '\n'};
+	
+	/**
+	 * Binary object file version identifier.
+	 */
+	private final static int OBJECT_FILE_VERSION = 1;
+	
+	/**
+	 * Number of objects to add to a hierarchy at a time, when objects are read lazily.
+	 */
+	private final static int LAZY_BATCH_SIZE = ColumnarHierarchyIO.CHUNK_SIZE * 4;
+	
+	private final static ExecutorService lazyReadPool = Executors.newCachedThreadPool(ThreadTools.createThreadFactory("data-reader-", true));
+	
+	/**
+	 * Lazy reads that are still in progress, so that they can be completed before the data is written.
+	 */
+	private final static Map<ImageData<?>, LazyHierarchyLoader<?>> lazyLoaders = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	private PathIO() {}
 	
@@ -139,8 +190,12 @@ public class PathIO {
 	 * @since 0.3
 	 */
 	public static <T> ServerBuilder<T> extractServerBuilder(Path file) throws IOException {
-		try (InputStream fileIn = Files.newInputStream(file)) {
-			ObjectInputStream inStream = new ObjectInputStream(new BufferedInputStream(fileIn));
+		try (var fileIn = new BufferedInputStream(Files.newInputStream(file))) {
+			if (isColumnarDataFile(fileIn)) {
+				ImageDataHeader<T> header = readHeader(new DataInputStream(fileIn), true);
+				return header.serverBuilder;
+			}
+			ObjectInputStream inStream = new ObjectInputStream(fileIn);
 			// Check the first line, then read the server path if it is valid
 			String firstLine = inStream.readUTF();
 			if (firstLine.startsWith("Data file version")) {
@@ -176,7 +231,7 @@ public class PathIO {
 		} else {
 			String json = serverString;
 			var wrapper = GsonTools.getInstance().fromJson(json, ServerBuilderWrapper.class);
-			if (warnIfInvalid && !Objects.equals(wrapper.dataVersion, DATA_FILE_VERSION)) {
+			if (warnIfInvalid && (wrapper.dataVersion < DATA_FILE_VERSION_SERIALIZED || wrapper.dataVersion > DATA_FILE_VERSION)) {
 				logger.warn("Attempting to read data file version {} written by QuPath {} (expected data file version {})", wrapper.dataVersion, wrapper.qupathVersion, DATA_FILE_VERSION);
 			}
 			return (ServerBuilder<T>)wrapper.server;
@@ -211,12 +266,12 @@ public class PathIO {
 	
 	
 	
-	private static <T> ImageData<T> readImageDataSerialized(final Path path, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws FileNotFoundException, IOException {
+	private static <T> ImageData<T> readImageDataFromPath(final Path path, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws FileNotFoundException, IOException {
 		if (path == null)
 			return null;
 		logger.info("Reading data from {}...", path.getFileName().toString());
 		try (InputStream stream = Files.newInputStream(path)) {
-			imageData = readImageDataSerialized(stream, imageData, server, cls);	
+			imageData = readImageData(stream, imageData, server, cls);	
 			// Set the last saved path (actually the path from which this was opened)
 			if (imageData != null)
 				imageData.setLastSavedPath(path.toAbsolutePath().toString(), true);
@@ -306,45 +361,12 @@ public class PathIO {
 				}
 			}
 
-			// Create an entirely new ImageData if necessary
-			var existingBuilder = imageData == null || imageData.getServer() == null ? null : imageData.getServer().getBuilder();
-			if (imageData == null || !Objects.equals(serverBuilder, existingBuilder)) {
-				// Create a new server if we need to
-				if (server == null) {
-					try {
-						server = serverBuilder.build();
-					} catch (Exception e) {
-						logger.error(e.getLocalizedMessage());
-					};
-					if (server == null) {
-						logger.error("Warning: Unable to build server with " + serverBuilder);
-						//							throw new RuntimeException("Warning: Unable to create server for path " + serverPath);
-					}
-				}
-				// TODO: Make this less clumsy... but for now we need to ensure we have a fully-initialized hierarchy (which deserialization alone doesn't achieve)
-				PathObjectHierarchy hierarchy2 = new PathObjectHierarchy();
-				hierarchy2.setHierarchy(hierarchy);
-				hierarchy = hierarchy2;
-
-				imageData = new ImageData<>(server, hierarchy, imageType);
-			} else {
-				if (imageType != null)
-					imageData.setImageType(imageType);
-				// Set the new hierarchy
-				imageData.getHierarchy().setHierarchy(hierarchy);
-			}
-			// Set the other properties we have just read
-			if (workflow != null) {
-				imageData.getHistoryWorkflow().clear();
-				imageData.getHistoryWorkflow().addSteps(workflow.getSteps());
-			}
-			if (stains != null) {
-				imageData.setColorDeconvolutionStains(stains);
-			}
-			if (propertyMap != null) {
-				for (Entry<String, Object> entry : propertyMap.entrySet())
-					imageData.setProperty(entry.getKey(), entry.getValue());
-			}
+			// TODO: Make this less clumsy... but for now we need to ensure we have a fully-initialized hierarchy (which deserialization alone doesn't achieve)
+			PathObjectHierarchy hierarchy2 = new PathObjectHierarchy();
+			hierarchy2.setHierarchy(hierarchy);
+			hierarchy = hierarchy2;
+			
+			imageData = updateImageData(imageData, server, serverBuilder, hierarchy, imageType, stains, workflow, propertyMap);
 
 			long endTime = System.currentTimeMillis();
 
@@ -364,6 +386,55 @@ public class PathIO {
 	}
 	
 	
+	/**
+	 * Update an existing {@link ImageData} with values that have been read from a file, or create a new {@link ImageData} 
+	 * if no suitable instance is available.
+	 */
+	private static <T> ImageData<T> updateImageData(ImageData<T> imageData, ImageServer<T> server, ServerBuilder<T> serverBuilder, PathObjectHierarchy hierarchy, 
+			ImageData.ImageType imageType, ColorDeconvolutionStains stains, Workflow workflow, Map<String, Object> propertyMap) {
+		// Create an entirely new ImageData if necessary
+		var existingBuilder = imageData == null || imageData.getServer() == null ? null : imageData.getServer().getBuilder();
+		if (imageData == null || !Objects.equals(serverBuilder, existingBuilder)) {
+			// Create a new server if we need to
+			if (server == null) {
+				try {
+					server = serverBuilder.build();
+				} catch (Exception e) {
+					logger.error(e.getLocalizedMessage());
+				};
+				if (server == null) {
+					logger.error("Warning: Unable to build server with " + serverBuilder);
+				}
+			}
+			imageData = new ImageData<>(server, hierarchy, imageType);
+		} else {
+			if (imageType != null)
+				imageData.setImageType(imageType);
+			// Set the new hierarchy
+			imageData.getHierarchy().setHierarchy(hierarchy);
+		}
+		// Set the other properties we have just read
+		setImageMetadata(imageData, null, stains, workflow, propertyMap);
+		return imageData;
+	}
+	
+	private static void setImageMetadata(ImageData<?> imageData, ImageData.ImageType imageType, ColorDeconvolutionStains stains, Workflow workflow, Map<String, Object> propertyMap) {
+		if (imageType != null)
+			imageData.setImageType(imageType);
+		if (workflow != null) {
+			imageData.getHistoryWorkflow().clear();
+			imageData.getHistoryWorkflow().addSteps(workflow.getSteps());
+		}
+		if (stains != null) {
+			imageData.setColorDeconvolutionStains(stains);
+		}
+		if (propertyMap != null) {
+			for (Entry<String, Object> entry : propertyMap.entrySet())
+				imageData.setProperty(entry.getKey(), entry.getValue());
+		}
+	}
+	
+
 //	/**
 //	 * Test if a specified file can be identified as a zip file.
 //	 * 
@@ -398,7 +469,10 @@ public class PathIO {
 	 * @throws IOException
 	 */
 	public static <T> ImageData<T> readImageData(final InputStream stream, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws IOException {
-		return readImageDataSerialized(stream, imageData, server, cls);
+		var bufferedStream = new BufferedInputStream(stream);
+		if (isColumnarDataFile(bufferedStream))
+			return readImageDataColumnar(bufferedStream, imageData, server, cls, null);
+		return readImageDataSerialized(bufferedStream, imageData, server, cls);
 	}
 
 	
@@ -433,7 +507,199 @@ public class PathIO {
 	 * @throws IOException 
 	 */
 	public static <T> ImageData<T> readImageData(final Path path, ImageData<T> imageData, ImageServer<T> server, Class<T> cls) throws IOException {
-		return readImageDataSerialized(path, imageData, server, cls);
+		return readImageDataFromPath(path, imageData, server, cls);
+	}
+	
+	/**
+	 * Read {@link ImageData} from a file, allowing detections to be added to the hierarchy in the background.
+	 * <p>
+	 * Annotations, TMA cores and image properties are read before this method returns. 
+	 * For data files written with QuPath v0.3 and later, detections are then read on a background thread 
+	 * and added to the hierarchy in batches; for older data files everything is read immediately.
+	 * <p>
+	 * Detections are added to the hierarchy, and a hierarchy change event fired, on the background thread.
+	 * Use {@link #readImageDataLazily(Path, ImageServer, Class, Executor)} if this should happen on a specific thread.
+	 * 
+	 * @param <T>
+	 * @param path
+	 * @param server an ImageServer to use rather than any that might be stored within the data file, or null if a new server should be built.
+	 * @param cls
+	 * @return
+	 * @throws IOException
+	 * @since 0.3
+	 */
+	public static <T> LazyImageData<T> readImageDataLazily(final Path path, ImageServer<T> server, Class<T> cls) throws IOException {
+		return readImageDataLazily(path, server, cls, Runnable::run);
+	}
+	
+	/**
+	 * Read {@link ImageData} from a file, allowing detections to be added to the hierarchy in the background.
+	 * <p>
+	 * Annotations, TMA cores and image properties are read before this method returns. 
+	 * For data files written with QuPath v0.3 and later, detections are then read on a background thread.
+	 * Each batch of detections is added to the hierarchy by a task passed to hierarchyExecutor, 
+	 * which also fires a hierarchy change event. This means that if the executor runs tasks on the thread 
+	 * that normally accesses the hierarchy (e.g. the JavaFX application thread), objects are never added 
+	 * while that thread is using the hierarchy.
+	 * <p>
+	 * If the {@link ImageData} is written before all detections have been added, writing will wait for them.
+	 * 
+	 * @param <T>
+	 * @param path
+	 * @param server an ImageServer to use rather than any that might be stored within the data file, or null if a new server should be built.
+	 * @param cls
+	 * @param hierarchyExecutor executor used to add detections to the hierarchy and fire hierarchy events
+	 * @return
+	 * @throws IOException
+	 * @since 0.3
+	 */
+	public static <T> LazyImageData<T> readImageDataLazily(final Path path, ImageServer<T> server, Class<T> cls, Executor hierarchyExecutor) throws IOException {
+		return readImageDataLazily(path, server, cls, hierarchyExecutor, null, null);
+	}
+	
+	/**
+	 * Read {@link ImageData} lazily, optionally passing the objects in the order they were stored to a consumer 
+	 * once they have all been added to the hierarchy.
+	 * The list of objects is null if the data file predates the columnar format.
+	 * <p>
+	 * If objects will be read in the background, the {@link ImageData} is first passed to onCreate - 
+	 * before it is accessible from any other thread.
+	 */
+	static <T> LazyImageData<T> readImageDataLazily(final Path path, ImageServer<T> server, Class<T> cls, Executor hierarchyExecutor, Consumer<ImageData<T>> onCreate, BiConsumer<ImageData<T>, List<PathObject>> onComplete) throws IOException {
+		logger.info("Reading data lazily from {}...", path.getFileName().toString());
+		var stream = new BufferedInputStream(Files.newInputStream(path));
+		boolean closeStream = true;
+		try {
+			if (!isColumnarDataFile(stream)) {
+				var imageData = readImageDataSerialized(stream, null, server, cls);
+				if (imageData != null) {
+					imageData.setLastSavedPath(path.toAbsolutePath().toString(), true);
+					if (onComplete != null)
+						onComplete.accept(imageData, null);
+				}
+				return LazyImageData.completed(imageData);
+			}
+			var in = new DataInputStream(stream);
+			ImageDataHeader<T> header = readHeader(in, server == null);
+			var reader = ColumnarHierarchyIO.readPrimaryHierarchy(in);
+			var imageData = header.createImageData(null, server, reader.getHierarchy());
+			imageData.setLastSavedPath(path.toAbsolutePath().toString(), true);
+			if (!reader.hasRemainingObjects()) {
+				if (onComplete != null)
+					onComplete.accept(imageData, reader.getObjects());
+				return LazyImageData.completed(imageData);
+			}
+			
+			if (onCreate != null)
+				onCreate.accept(imageData);
+			var loader = new LazyHierarchyLoader<>(imageData, reader, onComplete);
+			// Register before decoding starts, since the executor may complete the loader immediately
+			lazyLoaders.put(imageData, loader);
+			loader.future.whenComplete((d, e) -> lazyLoaders.remove(imageData));
+			loader.decoding = CompletableFuture.runAsync(() -> {
+				long startTime = System.currentTimeMillis();
+				try (stream) {
+					while (reader.hasRemainingObjects()) {
+						int start = reader.getReadCount();
+						int n = reader.decodeRemainingObjects(LAZY_BATCH_SIZE);
+						loader.pending.add(new int[] {start, start + n});
+						hierarchyExecutor.execute(loader::addPending);
+					}
+				} catch (IOException e) {
+					loader.future.completeExceptionally(e);
+					throw new CompletionException(e);
+				}
+				long endTime = System.currentTimeMillis();
+				logger.debug(String.format("Hierarchy with %d object(s) read lazily in %.2f seconds", reader.getTotalObjectCount(), (endTime - startTime)/1000.));
+				loader.decodingComplete = true;
+				hierarchyExecutor.execute(loader::addPending);
+			}, lazyReadPool);
+			closeStream = false;
+			return new LazyImageData<>(imageData, loader.future);
+		} finally {
+			if (closeStream)
+				stream.close();
+		}
+	}
+
+	/**
+	 * Helper class to add objects that have been read lazily to a hierarchy.
+	 */
+	private static class LazyHierarchyLoader<T> {
+		
+		private final ImageData<T> imageData;
+		private final ColumnarHierarchyIO.HierarchyReader reader;
+		private final BiConsumer<ImageData<T>, List<PathObject>> onComplete;
+		private final CompletableFuture<ImageData<T>> future = new CompletableFuture<>();
+		
+		// Ranges of objects that have been read, but not yet added to the hierarchy
+		private final Queue<int[]> pending = new ConcurrentLinkedQueue<>();
+		private volatile boolean decodingComplete = false;
+		private CompletableFuture<Void> decoding;
+		
+		LazyHierarchyLoader(ImageData<T> imageData, ColumnarHierarchyIO.HierarchyReader reader, BiConsumer<ImageData<T>, List<PathObject>> onComplete) {
+			this.imageData = imageData;
+			this.reader = reader;
+			this.onComplete = onComplete;
+		}
+		
+		/**
+		 * Add any objects that have been read to the hierarchy, firing a single event if anything was added.
+		 */
+		synchronized void addPending() {
+			if (future.isDone())
+				return;
+			// Check this first, so that we can't miss objects read after the queue is emptied
+			boolean lastBatch = decodingComplete;
+			var hierarchy = imageData.getHierarchy();
+			synchronized (hierarchy) {
+				boolean added = false;
+				int[] range;
+				while ((range = pending.poll()) != null) {
+					reader.linkObjects(range[0], range[1]);
+					added = true;
+				}
+				if (added) {
+					// Adding objects that were already in the data file isn't a change to the ImageData
+					boolean isChanged = imageData.isChanged();
+					hierarchy.fireHierarchyChangedEvent(LazyImageData.class);
+					if (!isChanged)
+						imageData.setChanged(false);
+				}
+			}
+			if (lastBatch) {
+				if (onComplete != null)
+					onComplete.accept(imageData, reader.getObjects());
+				future.complete(imageData);
+			}
+		}
+		
+		/**
+		 * Wait for all objects to be read, and add them to the hierarchy on the current thread.
+		 */
+		void awaitComplete() throws IOException {
+			try {
+				decoding.join();
+			} catch (CompletionException e) {
+				throw new IOException("Unable to read all objects", e.getCause());
+			}
+			addPending();
+		}
+		
+	}
+	
+	/**
+	 * Wait until all objects have been added to an {@link ImageData} that is being read lazily, if necessary.
+	 * This should be called before writing the data, and without holding the lock on the hierarchy.
+	 * @param imageData
+	 * @throws IOException if not all objects could be read
+	 */
+	static void awaitLazyRead(ImageData<?> imageData) throws IOException {
+		var loader = lazyLoaders.get(imageData);
+		if (loader != null) {
+			logger.info("Waiting for objects to be read before writing data");
+			loader.awaitComplete();
+		}
 	}
 
 	/**
@@ -457,6 +723,9 @@ public class PathIO {
 	 * @throws IOException 
 	 */
 	public static void writeImageData(final File file, final ImageData<?> imageData) throws FileNotFoundException, IOException {
+		// Ensure we aren't still reading from the file
+		awaitLazyRead(imageData);
+		
 		File backup = null;
 		
 		// Backup any existing file... just in case of disaster
@@ -468,7 +737,7 @@ public class PathIO {
 		
 		// Write the data
 		try (var stream = new FileOutputStream(file)) {
-			writeImageDataSerialized(stream, imageData);
+			writeImageDataColumnar(stream, imageData, null);
 			
 			// Remember the saved path
 			imageData.setLastSavedPath(file.getAbsolutePath(), true);
@@ -487,56 +756,68 @@ public class PathIO {
 	 * @throws IOException
 	 */
 	public static void writeImageData(final OutputStream stream, final ImageData<?> imageData) throws IOException {
-		writeImageDataSerialized(stream, imageData);
+		writeImageDataColumnar(stream, imageData, null);
 	}
 	
+	/**
+	 * Write {@link ImageData} to an output stream, optionally passing the objects in the order they will be stored to a consumer.
+	 * The consumer is called while holding the lock on the hierarchy.
+	 */
+	static void writeImageData(final OutputStream stream, final ImageData<?> imageData, Consumer<List<PathObject>> onCollected) throws IOException {
+		writeImageDataColumnar(stream, imageData, onCollected);
+	}
 
-	private static void writeImageDataSerialized(final OutputStream stream, final ImageData<?> imageData) throws IOException {
-				
-		try (OutputStream outputStream = new BufferedOutputStream(stream)) {
+	private static void writeImageDataColumnar(final OutputStream stream, final ImageData<?> imageData, Consumer<List<PathObject>> onCollected) throws IOException {
+		
+		awaitLazyRead(imageData);
+		
+		try (var out = new DataOutputStream(new BufferedOutputStream(stream))) {
 			long startTime = System.currentTimeMillis();
 			
-			ObjectOutputStream outStream = new ObjectOutputStream(outputStream);
-			
 			// Write the identifier
-			outStream.writeUTF("Data file version " + DATA_FILE_VERSION);
-			
-			// Try to write a backwards-compatible image path
-			var server = imageData.getServer();
-//			var uris = server.getURIs();
-//			String path;
-//			if (uris.size() == 1) {
-//				var uri = uris.iterator().next();
-//				var serverPath = GeneralTools.toPath(uri);
-//				if (serverPath != null && Files.exists(serverPath))
-//					path = serverPath.toFile().getAbsolutePath();
-//				else
-//					path = uri.toString();
-//			} else
-//				path = server.getPath();
-//			outStream.writeObject("Image path: " + path);
+			out.write(DATA_FILE_MAGIC);
+			out.writeInt(DATA_FILE_VERSION);
 			
 			// Write JSON object including QuPath version and ServerBuilder
 			// Note that the builder may be null, in which case the server cannot be recreated
+			var server = imageData.getServer();
 			var builder = server.getBuilder();
 			if (builder == null)
 				logger.warn("Server {} does not provide a builder - it will not be possible to recover the ImageServer from this data file", server);
 			var wrapper = ServerBuilderWrapper.create(builder, server.getPath());
 			String json = GsonTools.getInstance().toJson(wrapper);
-			outStream.writeObject(json);
+			ColumnarHierarchyIO.writeString(out, json);
 			
-			// Write the current locale
-			outStream.writeObject(Locale.getDefault(Category.FORMAT));
+			// Write the main image metadata - this is small, and may contain arbitrary (serializable) properties
+			byte[] bytes = serializeImageMetadata(imageData);
+			out.writeInt(bytes.length);
+			out.write(bytes);
 			
-			// Write the rest of the main image metadata
-			outStream.writeObject(imageData.getImageType());
-			outStream.writeObject(imageData.getColorDeconvolutionStains());
-			outStream.writeObject(imageData.getHistoryWorkflow());
-			
-			// Write the rest of the main image metadata
+			// Write the objects
 			PathObjectHierarchy hierarchy = imageData.getHierarchy();
 			logger.info(String.format("Writing object hierarchy with %d object(s)...", hierarchy.nObjects()));
-			outStream.writeObject(hierarchy);
+			ColumnarHierarchyIO.writeHierarchy(out, hierarchy, onCollected);
+			out.flush();
+			
+			long endTime = System.currentTimeMillis();
+			logger.info(String.format("Image data written in %.2f seconds", (endTime - startTime)/1000.));
+		}
+	}
+	
+	
+	/**
+	 * Serialize the image type, stains, workflow and (serializable) properties of an {@link ImageData}.
+	 * @param imageData
+	 * @return
+	 * @throws IOException
+	 * @see #applyImageMetadata(byte[], ImageData)
+	 */
+	static byte[] serializeImageMetadata(final ImageData<?> imageData) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var metadataStream = new ObjectOutputStream(bytes)) {
+			metadataStream.writeObject(imageData.getImageType());
+			metadataStream.writeObject(imageData.getColorDeconvolutionStains());
+			metadataStream.writeObject(imageData.getHistoryWorkflow());
 			
 			// Write any remaining (serializable) properties
 			Map<String, Object> map = new HashMap<>();
@@ -546,17 +827,127 @@ public class PathIO {
 				else
 					logger.error("Property not serializable and will not be saved!  Key: " + entry.getKey() + ", Value: " + entry.getValue());
 			}
-			if (map != null)
-				outStream.writeObject(map);
-			
-			// Write EOF marker
-			outStream.writeObject("EOF");
-			
+			metadataStream.writeObject(map);
+			metadataStream.writeObject("EOF");
+		}
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Update an {@link ImageData} using metadata created by {@link #serializeImageMetadata(ImageData)}.
+	 * @param bytes
+	 * @param imageData
+	 * @throws IOException
+	 */
+	static void applyImageMetadata(byte[] bytes, final ImageData<?> imageData) throws IOException {
+		var header = new ImageDataHeader<>();
+		deserializeImageMetadata(bytes, header);
+		setImageMetadata(imageData, header.imageType, header.stains, header.workflow, header.propertyMap);
+	}
+	
+	
+	/**
+	 * Test whether a stream contains data written in the columnar format (from data file version 4 onwards), 
+	 * without consuming any bytes.
+	 */
+	private static boolean isColumnarDataFile(BufferedInputStream stream) throws IOException {
+		stream.mark(DATA_FILE_MAGIC.length);
+		byte[] bytes = stream.readNBytes(DATA_FILE_MAGIC.length);
+		stream.reset();
+		return Arrays.equals(bytes, DATA_FILE_MAGIC);
+	}
+	
+	
+	/**
+	 * Read {@link ImageData} from an input stream, optionally passing the objects in the order they were stored to a consumer.
+	 * The list of objects is null if the data file predates the columnar format.
+	 */
+	static <T> ImageData<T> readImageData(final InputStream stream, ImageServer<T> server, Class<T> cls, BiConsumer<ImageData<T>, List<PathObject>> onComplete) throws IOException {
+		var bufferedStream = new BufferedInputStream(stream);
+		if (isColumnarDataFile(bufferedStream))
+			return readImageDataColumnar(bufferedStream, null, server, cls, onComplete);
+		var imageData = readImageDataSerialized(bufferedStream, null, server, cls);
+		if (imageData != null && onComplete != null)
+			onComplete.accept(imageData, null);
+		return imageData;
+	}
+	
+	private static <T> ImageData<T> readImageDataColumnar(final InputStream stream, ImageData<T> imageData, ImageServer<T> server, Class<T> cls, BiConsumer<ImageData<T>, List<PathObject>> onComplete) throws IOException {
+		long startTime = System.currentTimeMillis();
+		try (var in = new DataInputStream(stream)) {
+			// Don't log warnings if we are provided with a server
+			ImageDataHeader<T> header = readHeader(in, server == null);
+			var reader = ColumnarHierarchyIO.readPrimaryHierarchy(in);
+			reader.readRemainingObjects(Integer.MAX_VALUE);
+			imageData = header.createImageData(imageData, server, reader.getHierarchy());
 			long endTime = System.currentTimeMillis();
-			logger.info(String.format("Image data written in %.2f seconds", (endTime - startTime)/1000.));
+			logger.debug(String.format("Hierarchy with %d object(s) read in %.2f seconds", reader.getTotalObjectCount(), (endTime - startTime)/1000.));
+			if (onComplete != null)
+				onComplete.accept(imageData, reader.getObjects());
+			return imageData;
+		}
+	}
+	
+	
+	private static <T> ImageDataHeader<T> readHeader(DataInputStream in, boolean warnIfInvalid) throws IOException {
+		byte[] magic = new byte[DATA_FILE_MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, DATA_FILE_MAGIC))
+			throw new IOException("Input stream does not contain valid QuPath data!");
+		int version = in.readInt();
+		if (version > DATA_FILE_VERSION)
+			throw new IOException("Unsupported data file version " + version + " (expected " + DATA_FILE_VERSION + " or earlier)");
+		
+		var header = new ImageDataHeader<T>();
+		header.serverBuilder = extractServerBuilder(ColumnarHierarchyIO.readString(in), warnIfInvalid);
+		
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		deserializeImageMetadata(bytes, header);
+		return header;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static void deserializeImageMetadata(byte[] bytes, ImageDataHeader<?> header) throws IOException {
+		try (var metadataStream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			while (true) {
+				Object input = metadataStream.readObject();
+				if (input instanceof ImageData.ImageType)
+					header.imageType = (ImageData.ImageType)input;
+				else if (input instanceof ColorDeconvolutionStains)
+					header.stains = (ColorDeconvolutionStains)input;
+				else if (input instanceof Workflow)
+					header.workflow = (Workflow)input;
+				else if (input instanceof Map)
+					header.propertyMap = (Map<String, Object>)input;
+				else if ("EOF".equals(input))
+					break;
+				else if (input != null)
+					logger.warn("Unsupported object of class {} will be skipped: {}", input.getClass().getName(), input);
+			}
+		} catch (ClassNotFoundException e) {
+			logger.error("Unable to find class: " + e.getLocalizedMessage(), e);
 		}
 	}
 	
+	
+	/**
+	 * Image-level information read from the start of a data file, before any objects.
+	 */
+	private static class ImageDataHeader<T> {
+		
+		private ServerBuilder<T> serverBuilder;
+		private ImageData.ImageType imageType;
+		private ColorDeconvolutionStains stains;
+		private Workflow workflow;
+		private Map<String, Object> propertyMap;
+		
+		private ImageData<T> createImageData(ImageData<T> imageData, ImageServer<T> server, PathObjectHierarchy hierarchy) {
+			return updateImageData(imageData, server, serverBuilder, hierarchy, imageType, stains, workflow, propertyMap);
+		}
+		
+	}
+	
 	/**
 	 * Read a hierarchy from a .qpdata file.
 	 * 
@@ -595,11 +986,31 @@ public class PathIO {
 	 * @throws IOException 
 	 */
 	public static PathObjectHierarchy readHierarchy(final InputStream fileIn) throws IOException {
+		return readHierarchy(fileIn, null);
+	}
+	
+	/**
+	 * Read a {@link PathObjectHierarchy}, optionally passing the objects in the order they were stored to a consumer.
+	 * The consumer is not called if the data file predates the columnar format.
+	 */
+	static PathObjectHierarchy readHierarchy(final InputStream fileIn, BiConsumer<PathObjectHierarchy, List<PathObject>> onComplete) throws IOException {
+		
+		var bufferedStream = new BufferedInputStream(fileIn);
+		if (isColumnarDataFile(bufferedStream)) {
+			try (var in = new DataInputStream(bufferedStream)) {
+				readHeader(in, false);
+				var reader = ColumnarHierarchyIO.readPrimaryHierarchy(in);
+				reader.readRemainingObjects(Integer.MAX_VALUE);
+				if (onComplete != null)
+					onComplete.accept(reader.getHierarchy(), reader.getObjects());
+				return reader.getHierarchy();
+			}
+		}
 
 		Locale locale = Locale.getDefault(Category.FORMAT);
 		boolean localeChanged = false;
 
-		try (ObjectInputStream inStream = new ObjectInputStream(new BufferedInputStream(fileIn))) {
+		try (ObjectInputStream inStream = new ObjectInputStream(bufferedStream)) {
 			if (!inStream.readUTF().startsWith("Data file version")) {
 				logger.error("Input stream is not from a valid QuPath data file!");
 			}
@@ -658,6 +1069,8 @@ public class PathIO {
 	 * <li>GeoJSON, with extension .geojson or .json</li>
 	 * <li>QuPath data file, with extension .qpdata</li>
 	 * <li>A zip file containing one or more entries containing GeoJSON or QuPath serialized data</li>
+	 * <li>A gzip-compressed GeoJSON file, with extension .geojson.gz or .json.gz</li>
+	 * <li>A binary object file, with extension .qpobj</li>
 	 * </ul>
 	 * Note that this is subject to change, with support for other files possibly being added in the future.
 	 * 
@@ -696,11 +1109,21 @@ public class PathIO {
 				return readObjectsFromGeoJSON(stream);
 			}
 		}
+		if (name.endsWith(EXT_JSON + EXT_GZIP) || name.endsWith(EXT_GEOJSON + EXT_GZIP)) {
+			try (var stream = new GZIPInputStream(Files.newInputStream(path))) {
+				return readObjectsFromGeoJSON(stream);
+			}
+		}
 		if (name.endsWith(EXT_DATA)) {
 			try (var stream = new BufferedInputStream(Files.newInputStream(path))) {
 				return new ArrayList<>(readHierarchy(stream).getRootObject().getChildObjects());	
 			}
 		}
+		if (name.endsWith(EXT_OBJECTS)) {
+			try (var stream = Files.newInputStream(path)) {
+				return readObjectsFromBinary(stream);
+			}
+		}
 		logger.warn("Unable to read objects from {}", path.toString());
 		return Collections.emptyList();
 	}
@@ -724,78 +1147,87 @@ public class PathIO {
 	 * @throws IOException
 	 */
 	public static List<PathObject> readObjectsFromGeoJSON(InputStream stream) throws IOException {
-		// Prepare template
-		var gson = GsonTools.getInstance();
-		try (var reader = new InputStreamReader(new BufferedInputStream(stream))) {
-			var element = gson.fromJson(reader, JsonElement.class);
-			var pathObjects = new ArrayList<PathObject>();
-			addPathObjects(element, pathObjects, gson);
-			return pathObjects;
-		}
+		var pathObjects = new ArrayList<PathObject>();
+		readObjectsFromGeoJSON(stream, Integer.MAX_VALUE, pathObjects::addAll);
+		return pathObjects;
 	}
 	
 	/**
-	 * Try to parse objects from GeoJSON.
-	 * This might involve a FeatureCollection, Feature or Geometry.
-	 * @param element
-	 * @param pathObjects
-	 * @param gson
-	 * @return
+	 * Read {@link PathObject}s from an input stream containing GeoJSON, passing them to a consumer in batches.
+	 * <p>
+	 * Unlike {@link #readObjectsFromGeoJSON(InputStream)}, features within an array or FeatureCollection are parsed 
+	 * one at a time, so that the memory required is determined by the batch size rather than the size of the file.
+	 * The input stream is closed when reading is complete.
+	 * 
+	 * @param stream the input stream containing JSON data to read
+	 * @param batchSize the maximum number of objects to pass to the consumer at a time
+	 * @param consumer consumer to accept each batch of objects
+	 * @return the total number of objects read
+	 * @throws IOException
+	 * @see #readObjectsFromGeoJSON(InputStream)
+	 * @since 0.3
 	 */
-	private static boolean addPathObjects(JsonElement element, List<PathObject> pathObjects, Gson gson) {
-		if (element == null)
-			return false;
-		if (element.isJsonArray()) {
-			var array = element.getAsJsonArray();
-			boolean changes = false;
-			for (int i = 0; i < array.size(); i++) {
-				changes = changes | addPathObjects(array.get(i), pathObjects, gson);
-			}
-			return changes;
-		}
-		if (element.isJsonObject()) {
-			var jsonObject = element.getAsJsonObject();
-			if (jsonObject.has("type")) {
-				String type = jsonObject.get("type").getAsString();
-				switch (type) {
-				case "Feature":
-					var pathObject = gson.fromJson(jsonObject, PathObject.class);
-					if (pathObject == null)
-						return false;
-					return pathObjects.add(pathObject);
-				case "FeatureCollection":
-					var featureCollection = gson.fromJson(jsonObject, FeatureCollection.class);
-					return pathObjects.addAll(featureCollection.getPathObjects());
-				case "Point":
-				case "MultiPoint":
-				case "LineString":
-				case "MultiLineString":
-				case "Polygon":
-				case "MultiPolygon":
-				case "GeometryCollection":
-					logger.warn("Creating annotation from GeoJSON geometry {}", type);
-					var geometry = gson.fromJson(jsonObject, Geometry.class);
-					geometry = GeometryTools.homogenizeGeometryCollection(geometry);
-					var roi = GeometryTools.geometryToROI(geometry, ImagePlane.getDefaultPlane());
-					var annotation = PathObjects.createAnnotationObject(roi);
-					return pathObjects.add(annotation);
+	public static long readObjectsFromGeoJSON(InputStream stream, int batchSize, Consumer<? super List<PathObject>> consumer) throws IOException {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("Batch size must be > 0, but was " + batchSize);
+		try (var iterator = GeoJsonStreams.readFeatures(stream)) {
+			long count = 0;
+			var batch = new ArrayList<PathObject>();
+			while (iterator.hasNext()) {
+				batch.add(iterator.next());
+				if (batch.size() == batchSize) {
+					consumer.accept(batch);
+					count += batch.size();
+					batch = new ArrayList<>();
 				}
 			}
+			if (!batch.isEmpty()) {
+				consumer.accept(batch);
+				count += batch.size();
+			}
+			return count;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		}
-		return false;
 	}
 	
+	/**
+	 * Create a lazily-populated stream of {@link PathObject}s read from an input stream containing GeoJSON.
+	 * <p>
+	 * Features within an array or FeatureCollection are parsed only when they are required by the stream.
+	 * The returned stream should be closed after use (e.g. with a try-with-resources statement); this closes the input stream.
+	 * Any {@link IOException} that occurs while reading is thrown as an {@link UncheckedIOException}.
+	 * 
+	 * @param stream the input stream containing JSON data to read
+	 * @return a sequential stream of objects
+	 * @see #readObjectsFromGeoJSON(InputStream)
+	 * @since 0.3
+	 */
+	public static Stream<PathObject> streamObjectsFromGeoJSON(InputStream stream) {
+		var iterator = GeoJsonStreams.readFeatures(stream);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					try {
+						iterator.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
 	
 	private static String EXT_JSON = ".json";
 	private static String EXT_GEOJSON = ".geojson";
 	private static String EXT_DATA = ".qpdata";
+	private static String EXT_GZIP = ".gz";
+	private static String EXT_ZIP = ".zip";
+	private static String EXT_OBJECTS = ".qpobj";
 	
 	/**
 	 * @return file extensions for files from which objects can be read.
 	 * @see #readObjects(Path)
 	 */
 	public static List<String> getObjectFileExtensions() {
-		return Arrays.asList(EXT_JSON, EXT_GEOJSON, EXT_DATA, ".zip");
+		return Arrays.asList(EXT_JSON, EXT_GEOJSON, EXT_DATA, EXT_ZIP, EXT_GZIP, EXT_OBJECTS);
 	}
 	
 	/**
@@ -831,24 +1263,94 @@ public class PathIO {
 
 	/**
 	 * Export a collection of objects as a GeoJSON "FeatureCollection" to a file specified by its path.
+	 * <p>
+	 * If the path ends with .zip, the GeoJSON is written to a single entry within a zip file. 
+	 * If it ends with .gz, the GeoJSON is gzip-compressed.
 	 * @param path
 	 * @param pathObjects
 	 * @param options
 	 * @throws IOException
 	 */
 	public static void exportObjectsAsGeoJSON(Path path, Collection<? extends PathObject> pathObjects, GeoJsonExportOptions... options) throws IOException {
+		try (var stream = createGeoJsonOutputStream(path)) {
+			exportObjectsAsGeoJSON(stream, pathObjects, options);
+		}
+	}
+	
+	/**
+	 * Export objects as GeoJSON to a file specified by its path, requesting each object from an iterator only when it is needed.
+	 * <p>
+	 * This is intended for very large numbers of objects, since neither the objects nor their JSON representation 
+	 * need to be held in memory all at once.
+	 * Objects are always written within an array, or as a "FeatureCollection" if requested in the options.
+	 * Compression is handled as in {@link #exportObjectsAsGeoJSON(Path, Collection, GeoJsonExportOptions...)}.
+	 * 
+	 * @param path
+	 * @param iterator
+	 * @param options
+	 * @return the number of objects written
+	 * @throws IOException
+	 * @since 0.3
+	 */
+	public static long exportObjectsAsGeoJSON(Path path, Iterator<? extends PathObject> iterator, GeoJsonExportOptions... options) throws IOException {
+		try (var stream = createGeoJsonOutputStream(path)) {
+			return exportObjectsAsGeoJSON(stream, iterator, options);
+		}
+	}
+	
+	/**
+	 * Export objects as GeoJSON to an output stream, requesting each object from an iterator only when it is needed.
+	 * Objects are always written within an array, or as a "FeatureCollection" if requested in the options.
+	 * The output stream is flushed, but not closed.
+	 * 
+	 * @param stream
+	 * @param iterator
+	 * @param options
+	 * @return the number of objects written
+	 * @throws IOException
+	 * @since 0.3
+	 */
+	public static long exportObjectsAsGeoJSON(OutputStream stream, Iterator<? extends PathObject> iterator, GeoJsonExportOptions... options) throws IOException {
+		return GeoJsonStreams.writeFeatures(stream, iterator, options);
+	}
+	
+	/**
+	 * Export objects within a hierarchy as GeoJSON, without first creating a list of all the objects.
+	 * Objects are visited in depth-first order, and the root object is never exported.
+	 * 
+	 * @param path the output path; compression is handled as in {@link #exportObjectsAsGeoJSON(Path, Collection, GeoJsonExportOptions...)}
+	 * @param hierarchy the hierarchy containing the objects
+	 * @param filter optional filter to select the objects to export; if null, all objects are exported
+	 * @param options
+	 * @return the number of objects written
+	 * @throws IOException
+	 * @since 0.3
+	 */
+	public static long exportHierarchyAsGeoJSON(Path path, PathObjectHierarchy hierarchy, Predicate<? super PathObject> filter, GeoJsonExportOptions... options) throws IOException {
+		Iterator<PathObject> iterator = GeoJsonStreams.iterateHierarchy(hierarchy);
+		if (filter != null)
+			iterator = Iterators.filter(iterator, filter::test);
+		return exportObjectsAsGeoJSON(path, iterator, options);
+	}
+	
+	/**
+	 * Create an output stream to write GeoJSON to a path, compressing the output if the path ends with .zip or .gz.
+	 */
+	private static OutputStream createGeoJsonOutputStream(Path path) throws IOException {
 		String name = path.getFileName().toString();
-		if (name.toLowerCase().endsWith(".zip")) {
-			try (var zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
-				ZipEntry entry = new ZipEntry(GeneralTools.getNameWithoutExtension(name) + ".geojson");
-				zos.putNextEntry(entry);
-				exportObjectsAsGeoJSON(zos, pathObjects, options);
-				zos.closeEntry();
-			}
-		} else {
-			try (var stream = Files.newOutputStream(path)) {
-				exportObjectsAsGeoJSON(stream, pathObjects, options);
-			}
+		String nameLower = name.toLowerCase();
+		var stream = new BufferedOutputStream(Files.newOutputStream(path));
+		try {
+			if (nameLower.endsWith(EXT_ZIP)) {
+				var zos = new ZipOutputStream(stream);
+				zos.putNextEntry(new ZipEntry(GeneralTools.getNameWithoutExtension(name) + EXT_GEOJSON));
+				return zos;
+			} else if (nameLower.endsWith(EXT_GZIP))
+				return new GZIPOutputStream(stream);
+			return stream;
+		} catch (IOException e) {
+			stream.close();
+			throw e;
 		}
 	}
 
@@ -876,6 +1378,61 @@ public class PathIO {
 		writer.flush();
 	}
 	
+	/**
+	 * Export a collection of objects to a file in QuPath's binary object format.
+	 * @param path
+	 * @param pathObjects
+	 * @throws IOException
+	 * @see #exportObjectsAsBinary(OutputStream, Collection)
+	 * @since 0.3
+	 */
+	public static void exportObjectsAsBinary(Path path, Collection<? extends PathObject> pathObjects) throws IOException {
+		try (var stream = Files.newOutputStream(path)) {
+			exportObjectsAsBinary(stream, pathObjects);
+		}
+	}
+	
+	/**
+	 * Export a collection of objects to an output stream in QuPath's binary object format.
+	 * <p>
+	 * This uses the same columnar encoding as .qpdata files (with ROIs encoded by {@link GeometryCodec}), 
+	 * and is typically much smaller and faster to read than GeoJSON.
+	 * Objects are written as a flat list: parent/child relationships are not stored.
+	 * @param stream
+	 * @param pathObjects
+	 * @throws IOException
+	 * @see #readObjectsFromBinary(InputStream)
+	 * @since 0.3
+	 */
+	public static void exportObjectsAsBinary(OutputStream stream, Collection<? extends PathObject> pathObjects) throws IOException {
+		var out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.write(OBJECT_FILE_MAGIC);
+		out.writeInt(OBJECT_FILE_VERSION);
+		ColumnarHierarchyIO.writeObjects(out, new ArrayList<>(pathObjects));
+		out.flush();
+	}
+	
+	/**
+	 * Read a list of objects from an input stream containing QuPath's binary object format.
+	 * The objects will not have parents.
+	 * @param stream
+	 * @return
+	 * @throws IOException if the stream does not contain a supported binary object file
+	 * @see #exportObjectsAsBinary(OutputStream, Collection)
+	 * @since 0.3
+	 */
+	public static List<PathObject> readObjectsFromBinary(InputStream stream) throws IOException {
+		var in = new DataInputStream(new BufferedInputStream(stream));
+		byte[] magic = new byte[OBJECT_FILE_MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, OBJECT_FILE_MAGIC))
+			throw new IOException("Input stream does not contain valid QuPath objects!");
+		int version = in.readInt();
+		if (version > OBJECT_FILE_VERSION)
+			throw new IOException("Unsupported object file version " + version + " (expected " + OBJECT_FILE_VERSION + " or earlier)");
+		return ColumnarHierarchyIO.readObjects(in);
+	}
+	
 	
 //	private static boolean serializePathObject(File file, PathObject pathObject) {
 //		boolean success = false;
@@ -22,9 +22,13 @@
 package qupath.lib.io;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
 
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateSequence;
@@ -63,6 +67,15 @@ class ROITypeAdapters {
 	static ROITypeAdapter ROI_ADAPTER_INSTANCE = new ROITypeAdapter();
 	static GeometryTypeAdapter GEOMETRY_ADAPTER_INSTANCE = new GeometryTypeAdapter();
 	
+	/**
+	 * Minimum number of coordinates in a sequence before formatting is parallelized
+	 */
+	private static final int PARALLEL_COORDINATE_THRESHOLD = 10_000;
+	
+	private static final int MAX_FAST_DECIMALS = 8;
+	private static final double MAX_FAST_VALUE = 1e9;
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L};
+	
 	private static Gson gson = new GsonBuilder()
 			.setLenient()
 			.create();
@@ -282,18 +295,30 @@ class ROITypeAdapters {
 	static void writeCoordinates(MultiPoint multiPoint, JsonWriter out, int nDecimals) throws IOException {
 		Coordinate[] coords = multiPoint.getCoordinates();
 		out.beginArray();
-		for (Coordinate c : coords)
-			out.jsonValue(coordinateToString(c, nDecimals));
+		for (String s : coordinatesToStrings(coords.length, i -> coords[i].x, i -> coords[i].y, nDecimals))
+			out.jsonValue(s);
 		out.endArray();
 	}
 
 	static void writeCoordinates(LineString lineString, JsonWriter out, int nDecimals) throws IOException {
-		Coordinate[] coords = lineString.getCoordinates();
+		CoordinateSequence coords = lineString.getCoordinateSequence();
 		out.beginArray();
-		for (Coordinate c : coords)
-			out.jsonValue(coordinateToString(c, nDecimals));
+		for (String s : coordinatesToStrings(coords.size(), coords::getX, coords::getY, nDecimals))
+			out.jsonValue(s);
 		out.endArray();
 	}
+	
+	/**
+	 * Format coordinates as JSON arrays. Very long sequences are formatted in parallel.
+	 */
+	private static String[] coordinatesToStrings(int n, IntToDoubleFunction xFun, IntToDoubleFunction yFun, int nDecimals) {
+		String[] strings = new String[n];
+		var range = IntStream.range(0, n);
+		if (n >= PARALLEL_COORDINATE_THRESHOLD)
+			range = range.parallel();
+		range.forEach(i -> strings[i] = coordinateToString(xFun.applyAsDouble(i), yFun.applyAsDouble(i), nDecimals));
+		return strings;
+	}
 
 	static void writeCoordinates(Polygon polygon, JsonWriter out, int nDecimals) throws IOException {
 		out.beginArray();
@@ -318,8 +343,8 @@ class ROITypeAdapters {
 		out.name("coordinates");
 		out.beginArray();
 		Coordinate[] coords = multiPoint.getCoordinates();
-		for (Coordinate c : coords)
-			out.jsonValue(coordinateToString(c, nDecimals));
+		for (String s : coordinatesToStrings(coords.length, i -> coords[i].x, i -> coords[i].y, nDecimals))
+			out.jsonValue(s);
 		out.endArray();
 	}
 
@@ -330,8 +355,8 @@ class ROITypeAdapters {
 		out.name("coordinates");
 		out.beginArray();
 		CoordinateSequence coords = lineString.getCoordinateSequence();
-		for (int i = 0; i < coords.size(); i++)
-			out.jsonValue(coordinateToString(coords.getX(i), coords.getY(i), nDecimals));
+		for (String s : coordinatesToStrings(coords.size(), coords::getX, coords::getY, nDecimals))
+			out.jsonValue(s);
 		out.endArray();
 	}
 
@@ -340,8 +365,50 @@ class ROITypeAdapters {
 	}
 
 	static String coordinateToString(double x, double y, int nDecimals) {
-		return "[" + GeneralTools.formatNumber(Locale.US, x, nDecimals) + ", "
-				+ GeneralTools.formatNumber(Locale.US, y, nDecimals) + "]";		
+		var sb = new StringBuilder(24);
+		sb.append('[');
+		appendNumber(sb, x, nDecimals);
+		sb.append(", ");
+		appendNumber(sb, y, nDecimals);
+		sb.append(']');
+		return sb.toString();
+	}
+	
+	/**
+	 * Append a number with a maximum number of decimal places, omitting trailing zeros.
+	 * <p>
+	 * This gives the same output as {@link GeneralTools#formatNumber(Locale, double, int)} with {@link Locale#US}, 
+	 * but does not require synchronization - and so can be used from multiple threads.
+	 */
+	static void appendNumber(StringBuilder sb, double value, int nDecimals) {
+		if (nDecimals < 0 || nDecimals > MAX_FAST_DECIMALS || !Double.isFinite(value) || Math.abs(value) >= MAX_FAST_VALUE) {
+			sb.append(GeneralTools.formatNumber(Locale.US, value, nDecimals));
+			return;
+		}
+		long scale = POWERS_OF_TEN[nDecimals];
+		double scaled = Math.abs(value) * scale;
+		long rounded;
+		// Values close to a tie need to be rounded exactly, since multiplication may have introduced an error
+		if (Math.abs(scaled - Math.floor(scaled) - 0.5) < 1e-6)
+			rounded = new BigDecimal(Math.abs(value)).setScale(nDecimals, RoundingMode.HALF_EVEN).unscaledValue().longValue();
+		else
+			rounded = (long)Math.rint(scaled);
+		if (value < 0)
+			sb.append('-');
+		sb.append(rounded / scale);
+		long fraction = rounded % scale;
+		if (fraction == 0)
+			return;
+		// Strip trailing zeros
+		int nDigits = nDecimals;
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			nDigits--;
+		}
+		sb.append('.');
+		for (long p = POWERS_OF_TEN[nDigits-1]; p > fraction; p /= 10)
+			sb.append('0');
+		sb.append(fraction);
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,299 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.measurements;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared, columnar storage for the values of numeric measurement lists.
+ * <p>
+ * When enabled, closed float and double measurement lists (see {@link MeasurementListFactory}) that have identical
+ * measurement names no longer store their values in their own arrays; rather, each list becomes a view onto
+ * one row of a store shared by all lists with the same names. Values are stored in blocks of rows, and within each
+ * block the values for each measurement are contiguous - so that scanning a single measurement across many objects
+ * touches little memory. Blocks may be stored on the Java heap, or off-heap in direct buffers.
+ * <p>
+ * Lists are copied back into their own arrays if they are reopened (e.g. a measurement is added),
+ * and their rows in the store are reused once they are no longer needed.
+ * <p>
+ * The default storage type can be set with the system property {@code qupath.measurements.storage},
+ * with the value {@code none}, {@code heap} or {@code offheap}.
+ *
+ * @since 0.3
+ */
+public final class MeasurementStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(MeasurementStore.class);
+
+	/**
+	 * Options for storing the values of numeric measurement lists.
+	 */
+	public enum StorageType {
+		/**
+		 * Each measurement list stores its own values (the default).
+		 */
+		NONE,
+		/**
+		 * Lists with the same measurement names share a columnar store on the Java heap.
+		 */
+		HEAP,
+		/**
+		 * Lists with the same measurement names share a columnar store outside the Java heap.
+		 */
+		OFF_HEAP
+	}
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	private static final int BLOCK_SHIFT = 10;
+	private static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_MASK = BLOCK_ROWS - 1;
+
+	private static volatile StorageType defaultStorageType = parseStorageType(System.getProperty("qupath.measurements.storage"));
+
+	private final int nColumns;
+	private final boolean isDouble;
+	private final StorageType type;
+	private final boolean isOffHeap;
+
+	private volatile FloatBuffer[] floatBlocks = new FloatBuffer[0];
+	private volatile DoubleBuffer[] doubleBlocks = new DoubleBuffer[0];
+
+	private int nRows = 0;
+	private int[] freeRows = new int[16];
+	private int nFreeRows = 0;
+
+	MeasurementStore(int nColumns, boolean isDouble, StorageType type) {
+		this.nColumns = nColumns;
+		this.isDouble = isDouble;
+		this.type = type;
+		this.isOffHeap = type == StorageType.OFF_HEAP;
+	}
+	
+	/**
+	 * Get the type of storage used by this store.
+	 * @return
+	 */
+	StorageType getStorageType() {
+		return type;
+	}
+
+	private static StorageType parseStorageType(String value) {
+		if (value == null || value.isBlank())
+			return StorageType.NONE;
+		switch (value.trim().toLowerCase().replace("_", "").replace("-", "")) {
+		case "heap":
+			return StorageType.HEAP;
+		case "offheap":
+			return StorageType.OFF_HEAP;
+		case "none":
+			return StorageType.NONE;
+		default:
+			logger.warn("Unknown measurement storage type '{}' - shared storage will not be used", value);
+			return StorageType.NONE;
+		}
+	}
+
+	/**
+	 * Set the storage type used for numeric measurement lists closed from now on.
+	 * Lists that already use a shared store are not affected.
+	 * @param type
+	 */
+	public static void setDefaultStorageType(StorageType type) {
+		defaultStorageType = type == null ? StorageType.NONE : type;
+	}
+
+	/**
+	 * Get the storage type used for numeric measurement lists whenever they are closed.
+	 * @return
+	 */
+	public static StorageType getDefaultStorageType() {
+		return defaultStorageType;
+	}
+
+	/**
+	 * Extract the values of a single measurement from many measurement lists.
+	 * <p>
+	 * This is equivalent to calling {@link MeasurementList#getMeasurementValue(String)} for each list,
+	 * but avoids repeating the name lookup for consecutive lists that share their names - which,
+	 * combined with shared storage, makes scanning a measurement across many objects much cheaper.
+	 *
+	 * @param lists the measurement lists
+	 * @param name the measurement name
+	 * @return an array with the same length as the input list, containing NaN where a measurement is not present
+	 */
+	public static double[] getMeasurementValues(List<? extends MeasurementList> lists, String name) {
+		double[] values = new double[lists.size()];
+		Map<String, Integer> lastMap = null;
+		int lastInd = -1;
+		int i = 0;
+		for (var list : lists) {
+			if (list instanceof NumericMeasurementList.AbstractNumericMeasurementList) {
+				var numeric = (NumericMeasurementList.AbstractNumericMeasurementList)list;
+				var map = numeric.getSharedMap();
+				if (map != null) {
+					if (map != lastMap) {
+						Integer ind = map.get(name);
+						lastInd = ind == null ? -1 : ind.intValue();
+						lastMap = map;
+					}
+					values[i++] = lastInd < 0 ? Double.NaN : numeric.getMeasurementValue(lastInd);
+					continue;
+				}
+			}
+			values[i++] = list == null ? Double.NaN : list.getMeasurementValue(name);
+		}
+		return values;
+	}
+
+	/**
+	 * Allocate a row for a measurement list. The row will be released automatically when the list is
+	 * garbage collected, or when {@link Row#release()} is called.
+	 * @param list the list that will use the row
+	 * @return the allocated row
+	 */
+	synchronized Row allocateRow(Object list) {
+		int row;
+		if (nFreeRows > 0)
+			row = freeRows[--nFreeRows];
+		else {
+			row = nRows++;
+			ensureCapacity(nRows);
+		}
+		return new Row(this, row, CLEANER.register(list, new Releaser(this, row)));
+	}
+
+	private synchronized void releaseRow(int row) {
+		if (nFreeRows == freeRows.length)
+			freeRows = Arrays.copyOf(freeRows, freeRows.length * 2);
+		freeRows[nFreeRows++] = row;
+	}
+
+	private void ensureCapacity(int rows) {
+		int nBlocks = (rows + BLOCK_ROWS - 1) >> BLOCK_SHIFT;
+		if (isDouble) {
+			if (doubleBlocks.length >= nBlocks)
+				return;
+			var blocks = Arrays.copyOf(doubleBlocks, nBlocks);
+			for (int b = doubleBlocks.length; b < nBlocks; b++)
+				blocks[b] = isOffHeap ? allocateDirect(BLOCK_ROWS * nColumns * Double.BYTES).asDoubleBuffer() : DoubleBuffer.allocate(BLOCK_ROWS * nColumns);
+			doubleBlocks = blocks;
+		} else {
+			if (floatBlocks.length >= nBlocks)
+				return;
+			var blocks = Arrays.copyOf(floatBlocks, nBlocks);
+			for (int b = floatBlocks.length; b < nBlocks; b++)
+				blocks[b] = isOffHeap ? allocateDirect(BLOCK_ROWS * nColumns * Float.BYTES).asFloatBuffer() : FloatBuffer.allocate(BLOCK_ROWS * nColumns);
+			floatBlocks = blocks;
+		}
+	}
+
+	private static ByteBuffer allocateDirect(int nBytes) {
+		return ByteBuffer.allocateDirect(nBytes).order(ByteOrder.nativeOrder());
+	}
+
+	private static int offset(int row, int column) {
+		return column * BLOCK_ROWS + (row & BLOCK_MASK);
+	}
+
+	double get(int row, int column) {
+		if (isDouble)
+			return doubleBlocks[row >> BLOCK_SHIFT].get(offset(row, column));
+		else
+			return floatBlocks[row >> BLOCK_SHIFT].get(offset(row, column));
+	}
+
+	void set(int row, int column, double value) {
+		if (isDouble)
+			doubleBlocks[row >> BLOCK_SHIFT].put(offset(row, column), value);
+		else
+			floatBlocks[row >> BLOCK_SHIFT].put(offset(row, column), (float)value);
+	}
+
+
+	/**
+	 * A row allocated within a store, used by a single measurement list.
+	 */
+	static class Row {
+
+		private final MeasurementStore store;
+		private final int row;
+		private final Cleaner.Cleanable cleanable;
+
+		private Row(MeasurementStore store, int row, Cleaner.Cleanable cleanable) {
+			this.store = store;
+			this.row = row;
+			this.cleanable = cleanable;
+		}
+
+		MeasurementStore getStore() {
+			return store;
+		}
+
+		double get(int column) {
+			return store.get(row, column);
+		}
+
+		void set(int column, double value) {
+			store.set(row, column, value);
+		}
+
+		/**
+		 * Release the row, so that it may be reused.
+		 */
+		void release() {
+			cleanable.clean();
+		}
+
+	}
+
+	/**
+	 * Action to release a row; this must not reference the list that uses the row.
+	 */
+	private static class Releaser implements Runnable {
+
+		private final MeasurementStore store;
+		private final int row;
+
+		private Releaser(MeasurementStore store, int row) {
+			this.store = store;
+			this.row = row;
+		}
+
+		@Override
+		public void run() {
+			store.releaseRow(row);
+		}
+
+	}
+
+}
@@ -23,9 +23,12 @@
 
 package qupath.lib.measurements;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +53,9 @@ import org.slf4j.LoggerFactory;
  * are made, remembering to close each list when it is fully populated can improve performance and greatly
  * reduce memory requirements.
  * <p>
+ * If shared storage is enabled via {@link MeasurementStore}, closing a list also moves its values into a columnar
+ * store shared by all lists with the same names; the list then acts as a view onto one row of that store.
+ * <p>
  * These lists can be instantiated through the {@link MeasurementListFactory} class.
  * 
  * @author Pete Bankhead
@@ -66,6 +72,8 @@ class NumericMeasurementList {
 		
 		private List<String> names;
 		private Map<String, Integer> map;
+		private Map<MeasurementStore.StorageType, MeasurementStore> floatStores = new EnumMap<>(MeasurementStore.StorageType.class);
+		private Map<MeasurementStore.StorageType, MeasurementStore> doubleStores = new EnumMap<>(MeasurementStore.StorageType.class);
 		
 		NameMap(List<String> names) {
 			this.names = Collections.unmodifiableList(new ArrayList<>(names)); // Make a defensive copy
@@ -89,11 +97,16 @@ class NumericMeasurementList {
 			return map;
 		}
 		
+		synchronized MeasurementStore getStore(boolean isDouble, MeasurementStore.StorageType type) {
+			var stores = isDouble ? doubleStores : floatStores;
+			return stores.computeIfAbsent(type, t -> new MeasurementStore(names.size(), isDouble, t));
+		}
+		
 	}
 	
 	
 	
-	private static abstract class AbstractNumericMeasurementList implements MeasurementList {
+	static abstract class AbstractNumericMeasurementList implements MeasurementList {
 		
 		private static final long serialVersionUID = 1L;
 		
@@ -104,6 +117,10 @@ class NumericMeasurementList {
 		boolean isClosed = false;
 
 		private Map<String, Integer> map; // Optional map for fast measurement lookup
+		
+		// Optional row in a shared store, used instead of the local values.
+		// This is volatile so that values written to the row are visible to other threads once the row is assigned.
+		transient volatile MeasurementStore.Row storeRow;
 
 		AbstractNumericMeasurementList(int capacity) {
 			names = new ArrayList<>(capacity);
@@ -118,6 +135,19 @@ class NumericMeasurementList {
 		 */
 		protected abstract void setValue(int index, double value);
 		
+		/**
+		 * Replace the local values with a new (empty) array with the specified capacity.
+		 * @param capacity
+		 */
+		abstract void resetLocalValues(int capacity);
+		
+		/**
+		 * Discard the local values, because they are held in a shared store.
+		 */
+		abstract void releaseLocalValues();
+		
+		abstract boolean isDouble();
+		
 		boolean isClosed() {
 			return isClosed;
 		}
@@ -133,6 +163,44 @@ class NumericMeasurementList {
 			this.namesUnmodifiable = names; // NameMap always returns an unmodifiable list
 			this.map = nameMap.getMap();
 			isClosed = true;
+			var storageType = MeasurementStore.getDefaultStorageType();
+			if (storageType != MeasurementStore.StorageType.NONE && !names.isEmpty())
+				attachStore(nameMap.getStore(isDouble(), storageType));
+		}
+		
+		/**
+		 * Move the values of this list into a row of a shared store.
+		 */
+		private void attachStore(MeasurementStore store) {
+			var row = store.allocateRow(this);
+			int n = size();
+			for (int i = 0; i < n; i++)
+				row.set(i, getMeasurementValue(i));
+			storeRow = row;
+			releaseLocalValues();
+		}
+		
+		/**
+		 * Copy the values of this list out of any shared store, so that they can be modified.
+		 */
+		private void detachStore() {
+			var row = storeRow;
+			if (row == null)
+				return;
+			int n = size();
+			resetLocalValues(n);
+			for (int i = 0; i < n; i++)
+				setValue(i, row.get(i));
+			storeRow = null;
+			row.release();
+		}
+		
+		/**
+		 * Get the map of names to indices shared between closed lists, or null if the list is open.
+		 * @return
+		 */
+		Map<String, Integer> getSharedMap() {
+			return isClosed ? map : null;
 		}
 		
 		
@@ -226,6 +294,7 @@ class NumericMeasurementList {
 		
 		void ensureListOpen() {
 			if (isClosed()) {
+				detachStore();
 				isClosed = false;
 				map = null;
 				names = new ArrayList<>(names);	
@@ -318,8 +387,12 @@ class NumericMeasurementList {
 		
 		@Override
 		public double getMeasurementValue(int ind) {
-			if (ind >= 0 && ind < size())
+			if (ind >= 0 && ind < size()) {
+				var row = storeRow;
+				if (row != null)
+					return row.get(ind);
 				return values[ind];
+			}
 			return Double.NaN;
 		}
 
@@ -334,6 +407,34 @@ class NumericMeasurementList {
 			values[index] = (float)value;
 		}
 		
+		@Override
+		void resetLocalValues(int capacity) {
+			values = new double[capacity];
+		}
+		
+		@Override
+		void releaseLocalValues() {
+			values = null;
+		}
+		
+		@Override
+		boolean isDouble() {
+			return true;
+		}
+		
+		private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+			// Values held in a shared store need to be written as if they were local
+			var row = storeRow;
+			if (row != null) {
+				values = new double[size()];
+				for (int i = 0; i < values.length; i++)
+					values[i] = row.get(i);
+			}
+			out.defaultWriteObject();
+			if (row != null)
+				values = null;
+		}
+		
 		@Override
 		public void compactStorage() {
 			super.compactStorage();
@@ -372,8 +473,12 @@ class NumericMeasurementList {
 
 		@Override
 		public double getMeasurementValue(int ind) {
-			if (ind >= 0 && ind < size())
+			if (ind >= 0 && ind < size()) {
+				var row = storeRow;
+				if (row != null)
+					return row.get(ind);
 				return values[ind];
+			}
 			return Double.NaN;
 		}
 
@@ -388,6 +493,34 @@ class NumericMeasurementList {
 			values[index] = (float)value;
 		}
 		
+		@Override
+		void resetLocalValues(int capacity) {
+			values = new float[capacity];
+		}
+		
+		@Override
+		void releaseLocalValues() {
+			values = null;
+		}
+		
+		@Override
+		boolean isDouble() {
+			return false;
+		}
+		
+		private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+			// Values held in a shared store need to be written as if they were local
+			var row = storeRow;
+			if (row != null) {
+				values = new float[size()];
+				for (int i = 0; i < values.length; i++)
+					values[i] = (float)row.get(i);
+			}
+			out.defaultWriteObject();
+			if (row != null)
+				values = null;
+		}
+		
 		@Override
 		public void compactStorage() {
 			super.compactStorage();
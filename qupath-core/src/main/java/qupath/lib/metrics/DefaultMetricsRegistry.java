@@ -0,0 +1,248 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Default {@link MetricsRegistry}, which stores all metrics in memory.
+ * <p>
+ * Metrics are updated without locking, so that they can be used from many threads at once.
+ * Histograms use logarithmic buckets (8 per power of 2), so percentiles are approximate.
+ */
+final class DefaultMetricsRegistry implements MetricsRegistry {
+	
+	private final Map<String, DefaultCounter> counters = new ConcurrentHashMap<>();
+	private final Map<String, DefaultTimer> timers = new ConcurrentHashMap<>();
+	private final Map<String, DefaultHistogram> histograms = new ConcurrentHashMap<>();
+
+	@Override
+	public Counter counter(String name) {
+		return getOrCreate(counters, name, n -> new DefaultCounter());
+	}
+
+	@Override
+	public Timer timer(String name) {
+		return getOrCreate(timers, name, n -> new DefaultTimer());
+	}
+
+	@Override
+	public Histogram histogram(String name) {
+		return getOrCreate(histograms, name, n -> new DefaultHistogram());
+	}
+	
+	/**
+	 * Avoid computeIfAbsent where possible, since it may lock even if the value is present.
+	 */
+	private static <T> T getOrCreate(Map<String, T> map, String name, Function<String, T> creator) {
+		var metric = map.get(Objects.requireNonNull(name));
+		if (metric == null)
+			metric = map.computeIfAbsent(name, creator);
+		return metric;
+	}
+
+	@Override
+	public Map<String, Object> snapshot() {
+		var countMap = new TreeMap<String, Long>();
+		counters.forEach((name, counter) -> countMap.put(name, counter.getCount()));
+		var timerMap = new TreeMap<String, Map<String, Object>>();
+		timers.forEach((name, timer) -> timerMap.put(name, timer.millis.snapshot("ms")));
+		var histogramMap = new TreeMap<String, Map<String, Object>>();
+		histograms.forEach((name, histogram) -> histogramMap.put(name, histogram.snapshot(null)));
+		
+		var map = new LinkedHashMap<String, Object>();
+		map.put("counters", countMap);
+		map.put("timers", timerMap);
+		map.put("histograms", histogramMap);
+		return map;
+	}
+
+	@Override
+	public void reset() {
+		counters.clear();
+		timers.clear();
+		histograms.clear();
+	}
+	
+	
+	static class DefaultCounter implements Counter {
+		
+		private final LongAdder count = new LongAdder();
+
+		@Override
+		public void increment(long n) {
+			count.add(n);
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+		
+	}
+	
+	
+	static class DefaultTimer implements Timer {
+		
+		private final DefaultHistogram millis = new DefaultHistogram();
+
+		@Override
+		public void record(long nanos) {
+			millis.update(nanos / 1e6);
+		}
+
+		@Override
+		public long getCount() {
+			return millis.getCount();
+		}
+		
+	}
+	
+	
+	static class DefaultHistogram implements Histogram {
+		
+		private static final int SUB_BUCKETS = 8;
+		private static final int MIN_EXPONENT = -20;
+		private static final int MAX_EXPONENT = 43;
+		
+		// Bucket 0 is for values <= 0
+		private static final int N_BUCKETS = 1 + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+		
+		private final LongAdder count = new LongAdder();
+		private final DoubleAdder sum = new DoubleAdder();
+		private final AtomicLong minBits = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+		private final AtomicLong maxBits = new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+		private final AtomicLongArray buckets = new AtomicLongArray(N_BUCKETS);
+
+		@Override
+		public void update(double value) {
+			if (Double.isNaN(value))
+				return;
+			count.increment();
+			sum.add(value);
+			buckets.incrementAndGet(bucketIndex(value));
+			long bits;
+			while (value < Double.longBitsToDouble(bits = minBits.get())) {
+				if (minBits.compareAndSet(bits, Double.doubleToLongBits(value)))
+					break;
+			}
+			while (value > Double.longBitsToDouble(bits = maxBits.get())) {
+				if (maxBits.compareAndSet(bits, Double.doubleToLongBits(value)))
+					break;
+			}
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+		
+		double getMin() {
+			return Double.longBitsToDouble(minBits.get());
+		}
+		
+		double getMax() {
+			return Double.longBitsToDouble(maxBits.get());
+		}
+		
+		/**
+		 * Get an approximate percentile from the bucket counts.
+		 * @param percentile value between 0 and 100
+		 * @return
+		 */
+		double getPercentile(double percentile) {
+			long[] counts = new long[N_BUCKETS];
+			long total = 0;
+			for (int i = 0; i < N_BUCKETS; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+			if (total == 0)
+				return Double.NaN;
+			if (percentile <= 0)
+				return getMin();
+			if (percentile >= 100)
+				return getMax();
+			long target = Math.max(1L, (long)Math.ceil(total * percentile / 100.0));
+			long cumulative = 0;
+			int ind = N_BUCKETS - 1;
+			for (int i = 0; i < N_BUCKETS; i++) {
+				cumulative += counts[i];
+				if (cumulative >= target) {
+					ind = i;
+					break;
+				}
+			}
+			double value = ind == 0 ? 0 : (bucketLowerBound(ind) + bucketLowerBound(ind + 1)) / 2.0;
+			return Math.max(getMin(), Math.min(getMax(), value));
+		}
+		
+		static int bucketIndex(double value) {
+			if (!(value > 0))
+				return 0;
+			int exponent = Math.getExponent(value);
+			if (exponent < MIN_EXPONENT)
+				return 1;
+			if (exponent > MAX_EXPONENT)
+				return N_BUCKETS - 1;
+			// Use the top bits of the mantissa to select the sub-bucket
+			int sub = (int)((Double.doubleToRawLongBits(value) >>> (52 - 3)) & (SUB_BUCKETS - 1));
+			return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub;
+		}
+		
+		static double bucketLowerBound(int ind) {
+			int exponent = (ind - 1) / SUB_BUCKETS + MIN_EXPONENT;
+			int sub = (ind - 1) % SUB_BUCKETS;
+			return Math.scalb(1.0 + sub / (double)SUB_BUCKETS, exponent);
+		}
+		
+		Map<String, Object> snapshot(String unit) {
+			var map = new LinkedHashMap<String, Object>();
+			long n = getCount();
+			map.put("count", n);
+			if (unit != null)
+				map.put("unit", unit);
+			if (n > 0) {
+				double total = sum.sum();
+				map.put("sum", total);
+				map.put("mean", total / n);
+				map.put("min", getMin());
+				map.put("max", getMax());
+				map.put("p50", getPercentile(50));
+				map.put("p90", getPercentile(90));
+				map.put("p99", getPercentile(99));
+			}
+			return map;
+		}
+		
+	}
+
+}
@@ -0,0 +1,208 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.io.GsonTools;
+import qupath.lib.metrics.MetricsRegistry.Counter;
+import qupath.lib.metrics.MetricsRegistry.Histogram;
+import qupath.lib.metrics.MetricsRegistry.Timer;
+
+/**
+ * Static access to the {@link MetricsRegistry} used to instrument QuPath.
+ * <p>
+ * Metrics are disabled by default. When disabled, all metrics returned are no-ops, and code that needs 
+ * to do extra work to record a metric (e.g. building a name) should check {@link #isEnabled()} first.
+ * Metrics can be enabled by calling {@link #setEnabled(boolean)}, or by setting the system property 
+ * {@code qupath.metrics=true}.
+ * <p>
+ * Metric names are dot-separated, e.g. {@code tile.cache.hits}.
+ * 
+ * @since 0.3
+ */
+public final class Metrics {
+	
+	private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+	
+	private static final MetricsRegistry NO_OP = new NoOpRegistry();
+	
+	private static volatile MetricsRegistry registry = NO_OP;
+	
+	static {
+		if (Boolean.getBoolean("qupath.metrics"))
+			setEnabled(true);
+	}
+	
+	// Suppress default constructor for non-instantiability
+	private Metrics() {
+		throw new AssertionError();
+	}
+	
+	/**
+	 * Returns true if metrics are currently being recorded.
+	 * @return
+	 */
+	public static boolean isEnabled() {
+		return registry != NO_OP;
+	}
+	
+	/**
+	 * Enable or disable recording metrics.
+	 * If no registry has been set, enabling metrics will create a new default registry.
+	 * @param enabled
+	 */
+	public static synchronized void setEnabled(boolean enabled) {
+		if (enabled == isEnabled())
+			return;
+		registry = enabled ? MetricsRegistry.createDefault() : NO_OP;
+		logger.debug("Metrics {}", enabled ? "enabled" : "disabled");
+	}
+	
+	/**
+	 * Set the registry used to record metrics. This enables metrics if the registry is not null, 
+	 * or disables them otherwise.
+	 * @param registry
+	 */
+	public static synchronized void setRegistry(MetricsRegistry registry) {
+		Metrics.registry = registry == null ? NO_OP : registry;
+	}
+	
+	/**
+	 * Get the registry currently used to record metrics.
+	 * @return the registry, or null if metrics are disabled
+	 */
+	public static MetricsRegistry getRegistry() {
+		var current = registry;
+		return current == NO_OP ? null : current;
+	}
+	
+	/**
+	 * Get a counter from the current registry.
+	 * @param name
+	 * @return
+	 */
+	public static Counter counter(String name) {
+		return registry.counter(name);
+	}
+	
+	/**
+	 * Get a timer from the current registry.
+	 * @param name
+	 * @return
+	 */
+	public static Timer timer(String name) {
+		return registry.timer(name);
+	}
+	
+	/**
+	 * Get a histogram from the current registry.
+	 * @param name
+	 * @return
+	 */
+	public static Histogram histogram(String name) {
+		return registry.histogram(name);
+	}
+	
+	/**
+	 * Remove all metrics from the current registry.
+	 */
+	public static void reset() {
+		registry.reset();
+	}
+	
+	/**
+	 * Get a JSON representation of the current metrics.
+	 * @return
+	 */
+	public static String toJson() {
+		return GsonTools.getInstance(true).toJson(registry.snapshot());
+	}
+	
+	/**
+	 * Write the current metrics to a JSON file.
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void writeJson(Path path) throws IOException {
+		Files.writeString(path, toJson(), StandardCharsets.UTF_8);
+	}
+	
+	
+	private static class NoOpRegistry implements MetricsRegistry, Counter, Timer, Histogram {
+
+		@Override
+		public Counter counter(String name) {
+			return this;
+		}
+
+		@Override
+		public Timer timer(String name) {
+			return this;
+		}
+
+		@Override
+		public Histogram histogram(String name) {
+			return this;
+		}
+
+		@Override
+		public Map<String, Object> snapshot() {
+			return Collections.emptyMap();
+		}
+
+		@Override
+		public void reset() {}
+
+		@Override
+		public void update(double value) {}
+
+		@Override
+		public void record(long nanos) {}
+		
+		@Override
+		public long start() {
+			return 0L;
+		}
+		
+		@Override
+		public void stop(long startNanos) {}
+
+		@Override
+		public void increment(long n) {}
+
+		@Override
+		public long getCount() {
+			return 0L;
+		}
+		
+	}
+
+}
@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.metrics;
+
+import java.util.Map;
+
+/**
+ * Registry for named metrics.
+ * <p>
+ * Implementations must be thread-safe, and should return the same metric each time the same name is requested.
+ * A custom registry can be installed with {@link Metrics#setRegistry(MetricsRegistry)}, e.g. to forward 
+ * measurements to an external monitoring system.
+ * 
+ * @since 0.3
+ * @see Metrics
+ */
+public interface MetricsRegistry {
+	
+	/**
+	 * Get the counter with the specified name, creating it if necessary.
+	 * @param name
+	 * @return
+	 */
+	Counter counter(String name);
+	
+	/**
+	 * Get the timer with the specified name, creating it if necessary.
+	 * @param name
+	 * @return
+	 */
+	Timer timer(String name);
+	
+	/**
+	 * Get the histogram with the specified name, creating it if necessary.
+	 * @param name
+	 * @return
+	 */
+	Histogram histogram(String name);
+	
+	/**
+	 * Get a snapshot of the current values of all metrics, suitable for serializing as JSON.
+	 * @return
+	 */
+	Map<String, Object> snapshot();
+	
+	/**
+	 * Remove all metrics from the registry.
+	 */
+	void reset();
+	
+	/**
+	 * Create a new registry that stores metrics in memory.
+	 * @return
+	 */
+	static MetricsRegistry createDefault() {
+		return new DefaultMetricsRegistry();
+	}
+	
+	
+	/**
+	 * A counter that can only increase.
+	 */
+	interface Counter {
+		
+		/**
+		 * Increment the counter by the specified amount.
+		 * @param n
+		 */
+		void increment(long n);
+		
+		/**
+		 * Increment the counter by 1.
+		 */
+		default void increment() {
+			increment(1L);
+		}
+		
+		/**
+		 * Get the current count.
+		 * @return
+		 */
+		long getCount();
+		
+	}
+	
+	/**
+	 * A timer for recording the duration of events.
+	 */
+	interface Timer {
+		
+		/**
+		 * Record an event with the specified duration.
+		 * @param nanos the duration, in nanoseconds
+		 */
+		void record(long nanos);
+		
+		/**
+		 * Get a start time to pass to {@link #stop(long)} when the event is complete.
+		 * @return
+		 */
+		default long start() {
+			return System.nanoTime();
+		}
+		
+		/**
+		 * Record an event that started at the specified time.
+		 * @param startNanos the value returned by {@link #start()}
+		 */
+		default void stop(long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+		
+		/**
+		 * Get the number of events recorded.
+		 * @return
+		 */
+		long getCount();
+		
+	}
+	
+	/**
+	 * A histogram for recording the distribution of values.
+	 */
+	interface Histogram {
+		
+		/**
+		 * Record a value.
+		 * @param value
+		 */
+		void update(double value);
+		
+		/**
+		 * Get the number of values recorded.
+		 * @return
+		 */
+		long getCount();
+		
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Lightweight counters, timers and histograms for measuring performance-critical code.
+ */
+package qupath.lib.metrics;
\ No newline at end of file
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.objects.hierarchy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+
+/**
+ * A spatial index that combines an immutable {@link PackedSpatialIndex} with a small overlay of changes.
+ * <p>
+ * Items inserted after the index was frozen are stored in a {@link ShardedSpatialIndex}, while items removed 
+ * from the packed index are recorded so that they can be skipped during queries.
+ * This means that occasional edits don't require the packed index to be rebuilt; 
+ * {@link #getChangeCount()} can be used to decide when rebuilding has become worthwhile.
+ */
+class FrozenSpatialIndex implements SpatialIndex {
+
+	private final PackedSpatialIndex packed;
+	private final ShardedSpatialIndex added;
+	private final Set<Object> removed = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+	
+	private volatile int changeCount = 0;
+	
+	private static final Envelope MAX_ENVELOPE = new Envelope(-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE);
+
+	/**
+	 * Create a frozen index.
+	 * @param packed the packed index containing all items at the time of freezing
+	 * @param tileSize tile size to use for any items inserted later
+	 */
+	FrozenSpatialIndex(PackedSpatialIndex packed, double tileSize) {
+		this.packed = packed;
+		this.added = new ShardedSpatialIndex(tileSize, 1);
+	}
+	
+	/**
+	 * Get the number of insertions and removals since the index was frozen.
+	 * @return
+	 */
+	int getChangeCount() {
+		return changeCount;
+	}
+
+	@Override
+	public void insert(Envelope itemEnv, Object item) {
+		added.insert(itemEnv, item);
+		changeCount++;
+	}
+
+	/**
+	 * Remove an item from the index.
+	 * Items that are not found among those inserted since freezing are looked up in the packed index, 
+	 * and hidden from subsequent queries if they are found there.
+	 * <p>
+	 * The envelope is used to find the item in the packed index; if it isn't found there (e.g. because the envelope 
+	 * has changed since the index was built), the entire index is searched.
+	 */
+	@Override
+	public boolean remove(Envelope itemEnv, Object item) {
+		if (added.remove(itemEnv, item)) {
+			changeCount++;
+			return true;
+		}
+		if (!isPacked(itemEnv, item))
+			return false;
+		if (removed.add(item)) {
+			changeCount++;
+			return true;
+		}
+		return false;
+	}
+	
+	private boolean isPacked(Envelope itemEnv, Object item) {
+		if (itemEnv != null && packed.anyMatch(itemEnv, i -> i == item))
+			return true;
+		return packed.anyMatch(MAX_ENVELOPE, i -> i == item);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List query(Envelope searchEnv) {
+		var list = new ArrayList<Object>();
+		query(searchEnv, item -> list.add(item));
+		return list;
+	}
+
+	@Override
+	public void query(Envelope searchEnv, ItemVisitor visitor) {
+		anyMatch(searchEnv, item -> {
+			visitor.visitItem(item);
+			return false;
+		});
+	}
+
+	/**
+	 * Query whether any item in the index satisfies a predicate, stopping as soon as one is found.
+	 * @param searchEnv
+	 * @param predicate
+	 * @return
+	 */
+	boolean anyMatch(Envelope searchEnv, Predicate<Object> predicate) {
+		boolean anyRemoved = !removed.isEmpty();
+		if (packed.anyMatch(searchEnv, item -> (!anyRemoved || !removed.contains(item)) && predicate.test(item)))
+			return true;
+		return added.anyMatch(searchEnv, predicate);
+	}
+
+}
@@ -810,6 +810,42 @@ public final class PathObjectHierarchy implements Serializable {
 	public boolean hasObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region) {
 		return tileCache.hasObjectsForRegion(cls, region, true);
 	}
+
+	/**
+	 * Optimize the spatial cache used by {@link #getObjectsForRegion(Class, ImageRegion, Collection)} and
+	 * {@link #hasObjectsForRegion(Class, ImageRegion)} for a hierarchy that is not expected to change for some time,
+	 * e.g. after object detection is complete.
+	 * <p>
+	 * Subsequent changes to the hierarchy are stored separately, and don't require the cache to be rebuilt; 
+	 * calling this method again will incorporate them.
+	 * @since 0.3
+	 */
+	public void freezeSpatialCache() {
+		tileCache.freeze();
+	}
+	
+	/**
+	 * Set the number of consecutive queries without any change to a hierarchy, after which its spatial cache is 
+	 * frozen automatically on a background thread (see {@link #freezeSpatialCache()}).
+	 * This applies to all hierarchies.
+	 * @param n the number of queries, or 0 if the spatial cache should only be frozen explicitly (the default)
+	 * @throws IllegalArgumentException if n &lt; 0
+	 * @since 0.3
+	 */
+	public static void setSpatialCacheFreezeThreshold(int n) throws IllegalArgumentException {
+		PathObjectTileCache.setFreezeAfterQueries(n);
+	}
+	
+	/**
+	 * Get the number of consecutive queries without any change to a hierarchy, after which its spatial cache is 
+	 * frozen automatically.
+	 * @return the number of queries, or 0 if the spatial cache is only frozen explicitly
+	 * @see #setSpatialCacheFreezeThreshold(int)
+	 * @since 0.3
+	 */
+	public static int getSpatialCacheFreezeThreshold() {
+		return PathObjectTileCache.getFreezeAfterQueries();
+	}
 	
 	
 	void fireObjectRemovedEvent(Object source, PathObject pathObject, PathObject previousParent) {
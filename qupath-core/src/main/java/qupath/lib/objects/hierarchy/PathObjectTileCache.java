@@ -25,14 +25,15 @@ package qupath.lib.objects.hierarchy;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.WeakHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
 import org.locationtech.jts.algorithm.locate.PointOnGeometryLocator;
@@ -46,10 +47,12 @@ import org.locationtech.jts.geom.Polygonal;
 import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.locationtech.jts.index.SpatialIndex;
-import org.locationtech.jts.index.quadtree.Quadtree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheBuilder;
+
+import qupath.lib.common.ThreadTools;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
 import qupath.lib.objects.TemporaryObject;
@@ -67,6 +70,16 @@ import qupath.lib.roi.interfaces.ROI;
  * In practice, the cache itself is constructed lazily whenever a request is made 
  * through getObjectsForRegion, so as to avoid rebuilding it too often when the hierarchy
  * is changing a lot.
+ * <p>
+ * Queries do not acquire any cache-wide lock: each spatial index is divided into independently-locked shards,
+ * so that objects can be added or removed in one part of the image without blocking queries elsewhere.
+ * <p>
+ * When the hierarchy is not changing (e.g. after detection has finished), the cache can be <i>frozen</i>: 
+ * each index is then replaced by a {@link PackedSpatialIndex}, which is smaller and faster to query.
+ * This happens explicitly via {@link #freeze()} or, if {@link #setFreezeAfterQueries(int)} has been used, automatically 
+ * on a background thread after that many queries without any change.
+ * Later changes to the hierarchy are stored in a small overlay (see {@link FrozenSpatialIndex}), 
+ * so that edits don't require any index to be rebuilt.
  * 
  * @author Pete Bankhead
  *
@@ -75,6 +88,19 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	
 	public static int DEFAULT_TILE_SIZE = 1024;
 	
+	/**
+	 * Number of consecutive queries without any change to the hierarchy, after which the cache is frozen automatically 
+	 * on a background thread.
+	 * The default is 0, meaning that the cache is only frozen when requested explicitly.
+	 */
+	private static volatile int freezeAfterQueries = 0;
+	
+	/**
+	 * Executor used to freeze caches automatically, so that this doesn't happen on the thread making a query.
+	 */
+	private final static ExecutorService freezeExecutor = Executors.newSingleThreadExecutor(
+			ThreadTools.createThreadFactory("hierarchy-cache-", true, Thread.MIN_PRIORITY));
+	
 	final private static Logger logger = LoggerFactory.getLogger(PathObjectTileCache.class);
 	
 	/**
@@ -83,33 +109,65 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	private final static Envelope MAX_ENVELOPE = new Envelope(-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE);
 	
 	/**
-	 * Keep a map of envelopes per ROI; ROIs should be immutable.
+	 * Store a spatial index according to the class of PathObject.
+	 * The map is replaced (rather than cleared) whenever the cache is reconstructed, so that queries running 
+	 * concurrently continue to see a consistent (if slightly out of date) index.
+	 * Values are {@link ShardedSpatialIndex} instances, unless the cache is frozen - in which case they are 
+	 * all {@link FrozenSpatialIndex} instances (except for any classes added since freezing).
 	 */
-	private Map<ROI, Envelope> envelopeMap = new WeakHashMap<>();
+	private volatile Map<Class<? extends PathObject>, SpatialIndex> map = new ConcurrentHashMap<>();
 	
-	/**
-	 * Keep a map of envelopes per object, because potentially an object might have its ROI replaced behind our back...
-	 */
-	private Map<PathObject, Envelope> lastEnvelopeMap = new WeakHashMap<>();
+	private volatile boolean isFrozen = false;
 	
 	/**
-	 * Store a spatial index according to the class of PathObject.
+	 * Number of queries since the hierarchy last changed.
 	 */
-	private Map<Class<? extends PathObject>, SpatialIndex> map = new HashMap<>();
+	private final AtomicInteger queriesSinceChange = new AtomicInteger();
 	
 	/**
 	 * Map to cache Geometries, specifically for annotations.
+	 * Keys are weak and compared by identity.
 	 */
-	final private static Map<ROI, Geometry> geometryMap = Collections.synchronizedMap(new WeakHashMap<>());
-	final private static Map<ROI, PointOnGeometryLocator> locatorMap = Collections.synchronizedMap(new WeakHashMap<>());
-//	final private static Map<ROI, Coordinate> centroidMap = Collections.synchronizedMap(new WeakHashMap<>());
+	final private static Map<ROI, Geometry> geometryMap = CacheBuilder.newBuilder().weakKeys().<ROI, Geometry>build().asMap();
+	final private static Map<ROI, PointOnGeometryLocator> locatorMap = CacheBuilder.newBuilder().weakKeys().<ROI, PointOnGeometryLocator>build().asMap();
 
 	private PathObjectHierarchy hierarchy;
-	private boolean isActive = false;
+	private volatile boolean isActive = false;
+	
+	/**
+	 * Incremented whenever the cache is reset, so that a reset during construction isn't lost.
+	 */
+	private volatile long resetCount = 0;
+	
+	/**
+	 * Incremented whenever objects are added to or removed from the cache, so that freezing can detect changes.
+	 * Guarded by the lock.
+	 */
+	private long modificationCount = 0;
+	
+	/**
+	 * Lock used to serialize modifications to the cache; queries do not require it.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
 	
-	private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-    private final Lock r = rwl.readLock();
-    private final Lock w = rwl.writeLock();
+	
+	/**
+	 * Set the number of consecutive queries without any change to the hierarchy, after which a cache is frozen automatically.
+	 * @param n the number of queries, or 0 if caches should only be frozen explicitly
+	 */
+	static void setFreezeAfterQueries(int n) {
+		if (n < 0)
+			throw new IllegalArgumentException("Number of queries must be >= 0");
+		freezeAfterQueries = n;
+	}
+	
+	/**
+	 * Get the number of consecutive queries without any change to the hierarchy, after which a cache is frozen automatically.
+	 * @return the number of queries, or 0 if caches are only frozen explicitly
+	 */
+	static int getFreezeAfterQueries() {
+		return freezeAfterQueries;
+	}
 	
 	
 	public PathObjectTileCache(PathObjectHierarchy hierarchy) {
@@ -119,35 +177,38 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	}
 	
 	public void resetCache() {
+		resetCount++;
+		queriesSinceChange.set(0);
 		isActive = false;
 		logger.trace("Cache reset!");
 	}
 	
 //	int cacheCounter = 0;
 
-	private void constructCache(Class<? extends PathObject> limitToClass) {
-		w.lock();
+	private void constructCache() {
+		lock.lock();
 		try {
-	//		logger.info("Skipping cache reconstruction...");
+			// Another thread may have constructed the cache while we were waiting
+			if (isActive)
+				return;
 			long startTime = System.currentTimeMillis();
-			isActive = true;
-			if (limitToClass == null)
-				map.clear();
-			else
-				map.remove(limitToClass);
-			addToCache(hierarchy.getRootObject(), true, limitToClass);
+			long count = resetCount;
+			var newMap = new ConcurrentHashMap<Class<? extends PathObject>, SpatialIndex>();
+			addToCache(newMap, hierarchy.getRootObject(), true);
+			map = newMap;
+			isFrozen = false;
+			// If the cache was reset during construction, we'll need to construct it again next time
+			isActive = count == resetCount;
 			long endTime = System.currentTimeMillis();
 			logger.debug("Cache reconstructed in " + (endTime - startTime)/1000.);
 		} finally {
-			w.unlock();
+			lock.unlock();
 		}
-//		cacheCounter += (endTime - startTime);
-//		logger.info("Cache count: " + (cacheCounter)/1000.);
 	}
 	
 	private void ensureCacheConstructed() {
 		if (!isActive())
-			constructCache(null);
+			constructCache();
 	}
 	
 	// TRUE if the cache has been constructed
@@ -156,33 +217,103 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	}
 	
 	/**
-	 * Add a PathObject to the cache, optionally including children.
+	 * Query whether the cache is currently frozen, i.e. using packed spatial indexes.
+	 * @return
+	 */
+	public boolean isFrozen() {
+		return isFrozen;
+	}
+	
+	/**
+	 * Freeze the cache, replacing the spatial index for each class by a packed, bulk-loaded index.
+	 * This is worthwhile whenever the hierarchy is not expected to change for some time, but will be queried often.
+	 * If the cache is already frozen, it is only rebuilt if the hierarchy has changed since.
+	 * <p>
+	 * The packed indexes are built without holding the lock, so that changes to the hierarchy aren't blocked; 
+	 * if the hierarchy changes in the meantime, the cache isn't frozen.
+	 */
+	public void freeze() {
+		ensureCacheConstructed();
+		Map<Class<? extends PathObject>, SpatialIndex> currentMap;
+		long count;
+		lock.lock();
+		try {
+			if (!isActive || (isFrozen && !hasChangedSinceFreeze()))
+				return;
+			currentMap = map;
+			count = modificationCount;
+		} finally {
+			lock.unlock();
+		}
+		
+		long startTime = System.currentTimeMillis();
+		var newMap = new ConcurrentHashMap<Class<? extends PathObject>, SpatialIndex>();
+		for (var entry : currentMap.entrySet()) {
+			var list = entry.getValue().query(MAX_ENVELOPE);
+			var items = list.toArray();
+			var bounds = new double[items.length * 4];
+			for (int i = 0; i < items.length; i++) {
+				var roi = ((PathObject)items[i]).getROI();
+				bounds[i*4] = roi.getBoundsX();
+				bounds[i*4+1] = roi.getBoundsY();
+				bounds[i*4+2] = roi.getBoundsX() + roi.getBoundsWidth();
+				bounds[i*4+3] = roi.getBoundsY() + roi.getBoundsHeight();
+			}
+			newMap.put(entry.getKey(), new FrozenSpatialIndex(new PackedSpatialIndex(items, bounds), DEFAULT_TILE_SIZE));
+		}
+		
+		lock.lock();
+		try {
+			if (map != currentMap || modificationCount != count || !isActive) {
+				logger.debug("Cache changed while freezing - will not be frozen");
+				return;
+			}
+			map = newMap;
+			isFrozen = true;
+			long endTime = System.currentTimeMillis();
+			logger.debug("Cache frozen in {} ms", endTime - startTime);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Query whether objects have been added or removed since the cache was frozen.
+	 */
+	private boolean hasChangedSinceFreeze() {
+		for (var index : map.values()) {
+			if (!(index instanceof FrozenSpatialIndex) || ((FrozenSpatialIndex)index).getChangeCount() > 0)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Register a query, requesting that the cache be frozen in the background if there have been enough queries since the last change.
+	 */
+	private void countQuery() {
+		int n = freezeAfterQueries;
+		if (n > 0 && queriesSinceChange.incrementAndGet() == n && (!isFrozen || hasChangedSinceFreeze()))
+			freezeExecutor.execute(this::freeze);
+	}
+	
+	/**
+	 * Add a PathObject to a map of spatial indexes, optionally including children.
 	 * 
+	 * @param targetMap
 	 * @param pathObject
 	 * @param includeChildren
 	 */
-	private void addToCache(PathObject pathObject, boolean includeChildren, Class<? extends PathObject> limitToClass) {
-		// If the cache isn't active, we can ignore this... it will be constructed when it is needed
-		if (!isActive())
-			return;
-
+	private void addToCache(Map<Class<? extends PathObject>, SpatialIndex> targetMap, PathObject pathObject, boolean includeChildren) {
 		if (pathObject.hasROI()) {
-			Class<? extends PathObject> cls = pathObject.getClass();
-			if (limitToClass == null || cls == limitToClass) {
-				SpatialIndex mapObjects = map.get(cls);
-				if (mapObjects == null) {
-					mapObjects = createSpatialIndex();
-					map.put(cls, mapObjects);
-				}
-				Envelope envelope = getEnvelope(pathObject);
-				mapObjects.insert(envelope, pathObject);
-			}
+			var mapObjects = targetMap.computeIfAbsent(pathObject.getClass(), c -> createSpatialIndex());
+			mapObjects.insert(getEnvelope(pathObject.getROI()), pathObject);
 		}
 		
 		// Add the children
 		if (includeChildren && !(pathObject instanceof TemporaryObject) && pathObject.hasChildren()) {
 			for (PathObject child : pathObject.getChildObjectsAsArray())
-				addToCache(child, includeChildren, limitToClass);
+				addToCache(targetMap, child, includeChildren);
 		}
 	}
 
@@ -248,21 +379,13 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 //		return getGeometry(possibleParent).covers(getGeometry(possibleChild));
 //	}
 	
-	private Map<Geometry, PreparedGeometry> preparedGeometryMap = new WeakHashMap<>();
+	private Map<Geometry, PreparedGeometry> preparedGeometryMap = CacheBuilder.newBuilder().weakKeys().<Geometry, PreparedGeometry>build().asMap();
 	
 	PreparedGeometry getPreparedGeometry(Geometry geometry) {
 		var prepared = preparedGeometryMap.get(geometry);
 		if (prepared != null)
 			return prepared;
-		
-		synchronized (preparedGeometryMap) {
-			prepared = preparedGeometryMap.get(geometry);
-			if (prepared != null)
-				return prepared;
-			prepared = PreparedGeometryFactory.prepare(geometry);
-			preparedGeometryMap.put(geometry, prepared);
-			return prepared;
-		}
+		return preparedGeometryMap.computeIfAbsent(geometry, g -> PreparedGeometryFactory.prepare(g));
 	}
 	
 	boolean covers(PathObject possibleParent, PathObject possibleChild) {
@@ -320,25 +443,36 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	}
 	
 	
-	private SpatialIndex createSpatialIndex() {
-		return new Quadtree();
-//		return new STRtree();
+	private ShardedSpatialIndex createSpatialIndex() {
+		return new ShardedSpatialIndex(DEFAULT_TILE_SIZE);
 	}
 	
-	private Envelope getEnvelope(PathObject pathObject) {
-		var envelope = getEnvelope(pathObject.getROI());
-		lastEnvelopeMap.put(pathObject, envelope);
-		return envelope;
+	private static Envelope getEnvelope(ROI roi) {
+		return new Envelope(roi.getBoundsX(), roi.getBoundsX() + roi.getBoundsWidth(),
+				roi.getBoundsY(), roi.getBoundsY() + roi.getBoundsHeight());
 	}
 	
-	private Envelope getEnvelope(ROI roi) {
-		var envelope = envelopeMap.get(roi);
-		if (envelope == null) {
-			envelope = new Envelope(roi.getBoundsX(), roi.getBoundsX() + roi.getBoundsWidth(),
-					roi.getBoundsY(), roi.getBoundsY() + roi.getBoundsHeight());
-			envelopeMap.put(roi, envelope);
+	private static boolean anyMatch(SpatialIndex index, Envelope envelope, Predicate<Object> predicate) {
+		if (index instanceof ShardedSpatialIndex)
+			return ((ShardedSpatialIndex)index).anyMatch(envelope, predicate);
+		if (index instanceof FrozenSpatialIndex)
+			return ((FrozenSpatialIndex)index).anyMatch(envelope, predicate);
+		if (index instanceof PackedSpatialIndex)
+			return ((PackedSpatialIndex)index).anyMatch(envelope, predicate);
+		for (var item : index.query(envelope)) {
+			if (predicate.test(item))
+				return true;
 		}
-		return envelope;
+		return false;
+	}
+	
+	/**
+	 * Check whether the bounding box of a ROI intersects an envelope, without creating a new envelope.
+	 */
+	private static boolean intersects(Envelope envelope, ROI roi) {
+		double x = roi.getBoundsX();
+		double y = roi.getBoundsY();
+		return envelope.intersects(x, x + roi.getBoundsWidth(), y, y + roi.getBoundsHeight());
 	}
 	
 	private Envelope getEnvelope(ImageRegion region) {
@@ -359,32 +493,19 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 		if (!isActive())
 			return;
 		
-		SpatialIndex mapObjects = map.get(pathObject.getClass());
-		
-		// We can remove objects from a Quadtree
-		if (mapObjects instanceof Quadtree) {
-			Envelope envelope = lastEnvelopeMap.get(pathObject);
-			envelope = MAX_ENVELOPE;
-			if (envelope != null) {
-				if (mapObjects.remove(envelope, pathObject)) {
-					logger.debug("Removed {} from cache", pathObject);
-				} else
-					logger.debug("Unable to remove {} from cache", pathObject);
-			} else {
-				logger.debug("No envelope found for {}", pathObject);					
-			}
-//				System.err.println("After: " + mapObjects.query(MAX_ENVELOPE).size());
-			// Remove the children
-			if (removeChildren) {
-				for (PathObject child : pathObject.getChildObjectsAsArray())
-					removeFromCache(child, removeChildren);
-			}
-		} else if (mapObjects instanceof SpatialIndex && !removeChildren) {
-			// We can't remove objects from a STRtree, but since we're just removing one object we can rebuild only the cache for this class
-			constructCache(pathObject.getClass());
-		} else {
-			// If we need to remove multiple objects, better to just rebuild the entire cache
-			constructCache(null);
+		var mapObjects = map.get(pathObject.getClass());
+		if (mapObjects != null) {
+			// The ROI may have been replaced since the object was added - in which case the index will search more widely
+			var roi = pathObject.getROI();
+			if (mapObjects.remove(roi == null ? null : getEnvelope(roi), pathObject)) {
+				logger.debug("Removed {} from cache", pathObject);
+			} else
+				logger.debug("Unable to remove {} from cache", pathObject);
+		}
+		// Remove the children
+		if (removeChildren) {
+			for (PathObject child : pathObject.getChildObjectsAsArray())
+				removeFromCache(child, removeChildren);
 		}
 	}
 	
@@ -418,85 +539,65 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	 */
 	public Collection<PathObject> getObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region, Collection<PathObject> pathObjects, boolean includeSubclasses) {
 		ensureCacheConstructed();
+		countQuery();
 		
 		var envelope = region == null ? MAX_ENVELOPE : getEnvelope(region);
 		
 		int z = region == null ? -1 : region.getZ();
 		int t = region == null ? -1 : region.getT();
-		r.lock();
-		try {
-			// Iterate through all the classes, getting objects of the specified class or subclasses thereof
-			for (Entry<Class<? extends PathObject>, SpatialIndex> entry : map.entrySet()) {
-				if (cls == null || (includeSubclasses && cls.isAssignableFrom(entry.getKey())) || cls.isInstance(entry.getKey())) {
-					if (entry.getValue() != null) {
-						var list = entry.getValue().query(envelope);
-						if (list.isEmpty())
-							continue;
-						
-						if (pathObjects == null)
-							pathObjects = new HashSet<PathObject>();
-						
-						// Add all objects that have a parent, i.e. might be in the hierarchy
-						for (PathObject pathObject : (List<PathObject>)list) {
-							var roi = pathObject.getROI();
-							if (roi == null || region == null || (roi.getZ() == z && roi.getT() == t)) {
-								if (pathObject.getParent() != null || pathObject.isRootObject()) {
-									if (envelope.intersects(getEnvelope(pathObject)))
-										pathObjects.add(pathObject);
-								}
-							}
+		
+		// Iterate through all the classes, getting objects of the specified class or subclasses thereof
+		for (Entry<Class<? extends PathObject>, SpatialIndex> entry : map.entrySet()) {
+			if (cls == null || (includeSubclasses && cls.isAssignableFrom(entry.getKey())) || cls.isInstance(entry.getKey())) {
+				if (pathObjects == null)
+					pathObjects = new HashSet<PathObject>();
+				var collection = pathObjects;
+				
+				// Add all objects that have a parent, i.e. might be in the hierarchy
+				entry.getValue().query(envelope, item -> {
+					var pathObject = (PathObject)item;
+					var roi = pathObject.getROI();
+					if (roi == null || region == null || (roi.getZ() == z && roi.getT() == t)) {
+						if (pathObject.getParent() != null || pathObject.isRootObject()) {
+							if (roi == null || intersects(envelope, roi))
+								collection.add(pathObject);
 						}
 					}
-//						pathObjects = entry.getValue().getObjectsForRegion(region, pathObjects);
-				}
+				});
 			}
-	//		logger.info("Objects for " + region + ": " + (pathObjects == null ? 0 : pathObjects.size()));
-			if (pathObjects == null)
-				return Collections.emptySet();
-			return pathObjects;
-		} finally {
-			r.unlock();
 		}
+		if (pathObjects == null)
+			return Collections.emptySet();
+		return pathObjects;
 	}
 	
 	public boolean hasObjectsForRegion(Class<? extends PathObject> cls, ImageRegion region, boolean includeSubclasses) {
 		ensureCacheConstructed();
+		countQuery();
 		
 		var envelope = region == null ? MAX_ENVELOPE : getEnvelope(region);
 		
 		int z = region == null ? -1 : region.getZ();
 		int t = region == null ? -1 : region.getT();
-		r.lock();
-		try {
-			// Iterate through all the classes, getting objects of the specified class or subclasses thereof
-			for (Entry<Class<? extends PathObject>, SpatialIndex> entry : map.entrySet()) {
-				if (cls == null || cls.isInstance(entry.getKey()) || (includeSubclasses && cls.isAssignableFrom(entry.getKey()))) {
-					if (entry.getValue() != null) {
-						var list = (List<PathObject>)entry.getValue().query(envelope);
-						for (var pathObject : list) {
-							var roi = pathObject.getROI();
-							if (roi == null)
-								continue;
-							if (region == null)
-								return true;
-							if (roi.getZ() != z || roi.getT() != t)
-								continue;
-							if (region.intersects(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight())) {
-								return true;
-							}
-						}
-//						if (list.stream().anyMatch(p -> p.hasROI() && 
-//								(region == null || (p.getROI().getZ() == z && p.getROI().getT() == t))))
-//							return true;
-//						if (entry.getValue().hasObjectsForRegion(region))
-//							return true;
-					}
-				}
+		
+		// Iterate through all the classes, checking objects of the specified class or subclasses thereof
+		for (Entry<Class<? extends PathObject>, SpatialIndex> entry : map.entrySet()) {
+			if (cls == null || cls.isInstance(entry.getKey()) || (includeSubclasses && cls.isAssignableFrom(entry.getKey()))) {
+				boolean found = anyMatch(entry.getValue(), envelope, item -> {
+					var roi = ((PathObject)item).getROI();
+					if (roi == null)
+						return false;
+					if (region == null)
+						return true;
+					if (roi.getZ() != z || roi.getT() != t)
+						return false;
+					return region.intersects(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight());
+				});
+				if (found)
+					return true;
 			}
-			return false;
-		} finally {
-			r.unlock();
 		}
+		return false;
 	}
 	
 //	public synchronized Collection<PathObject> getObjectsForRegion(Class<? extends PathObject> cls, Rectangle region, Collection<PathObject> pathObjects) {
@@ -533,14 +634,20 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 
 	@Override
 	public void hierarchyChanged(final PathObjectHierarchyEvent event) {
-		w.lock();
+		lock.lock();
 		try {
 			boolean singleChange = event.getChangedObjects().size() == 1;
 			PathObject singleObject = singleChange ? event.getChangedObjects().get(0) : null;
 			if (singleChange && event.getEventType() == HierarchyEventType.ADDED) {
+				queriesSinceChange.set(0);
+				modificationCount++;
 				removeFromCache(singleObject, false);
-				addToCache(singleObject, false, singleObject.getClass());
+				// If the cache isn't active, we can ignore this... it will be constructed when it is needed
+				if (isActive())
+					addToCache(map, singleObject, false);
 			} else if (singleChange && event.getEventType() == HierarchyEventType.REMOVED) {
+				queriesSinceChange.set(0);
+				modificationCount++;
 				removeFromCache(singleObject, false);
 			} else if (event.getEventType() == HierarchyEventType.OTHER_STRUCTURE_CHANGE || event.getEventType() == HierarchyEventType.CHANGE_OTHER) {
 //				if (singleChange && !singleObject.isRootObject()) {
@@ -552,7 +659,7 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 					resetCache();
 			}
 		} finally {
-			w.unlock();
+			lock.unlock();
 		}
 //		else if (event.getEventType() == HierarchyEventType.OBJECT_CHANGE)
 //			resetCache(); // TODO: Check if full change is necessary for object change events			
@@ -0,0 +1,256 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.objects.hierarchy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.quadtree.Quadtree;
+
+/**
+ * A thread-safe {@link SpatialIndex} that stripes items across independently-locked shards.
+ * <p>
+ * Space is divided into square tiles, and each tile is mapped to one of a fixed number of shards.
+ * Items are stored in the shard of the tile containing the minimum corner of their envelope, unless the envelope
+ * is larger than a tile - in which case they are stored in a separate shard that is checked for every query.
+ * This means that queries need only lock the shards for tiles close to the query envelope, and that insertions
+ * or removals in one part of an image don't block queries elsewhere.
+ * <p>
+ * As with {@link Quadtree}, queries may return items whose envelopes do not intersect the query envelope;
+ * callers should perform their own check if this matters.
+ */
+class ShardedSpatialIndex implements SpatialIndex {
+
+	private final double tileSize;
+	private final int mask;
+	private final Shard[] shards;
+	private final Shard largeShard = new Shard();
+
+	/**
+	 * Create a sharded index with a default number of shards, based upon the number of available processors.
+	 * @param tileSize
+	 */
+	ShardedSpatialIndex(double tileSize) {
+		this(tileSize, Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * Create a sharded index.
+	 * @param tileSize size of each square tile; items with envelopes larger than this are stored separately
+	 * @param nShards requested number of shards; this will be rounded up to a power of 2, between 16 and 1024
+	 */
+	ShardedSpatialIndex(double tileSize, int nShards) {
+		if (!(tileSize > 0))
+			throw new IllegalArgumentException("Tile size must be > 0!");
+		this.tileSize = tileSize;
+		int n = Integer.highestOneBit(Math.min(1024, Math.max(16, nShards) * 2 - 1));
+		this.mask = n - 1;
+		this.shards = new Shard[n];
+		for (int i = 0; i < n; i++)
+			shards[i] = new Shard();
+	}
+
+	private Shard getShard(Envelope envelope) {
+		if (envelope.getWidth() > tileSize || envelope.getHeight() > tileSize)
+			return largeShard;
+		return shards[shardIndex(tileIndex(envelope.getMinX()), tileIndex(envelope.getMinY()))];
+	}
+
+	private long tileIndex(double value) {
+		return (long)Math.floor(value / tileSize);
+	}
+
+	private int shardIndex(long tx, long ty) {
+		long h = tx * 0x9E3779B97F4A7C15L + ty * 0xC2B2AE3D27D4EB4FL;
+		h ^= (h >>> 32);
+		h ^= (h >>> 16);
+		return (int)h & mask;
+	}
+
+	/**
+	 * Get all the shards that might contain items intersecting an envelope.
+	 */
+	private List<Shard> getShards(Envelope envelope) {
+		var list = new ArrayList<Shard>();
+		list.add(largeShard);
+		// Any items stored in the standard shards have a minimum corner no more than one tile size below the query envelope
+		double tx0 = Math.floor((envelope.getMinX() - tileSize) / tileSize);
+		double tx1 = Math.floor(envelope.getMaxX() / tileSize);
+		double ty0 = Math.floor((envelope.getMinY() - tileSize) / tileSize);
+		double ty1 = Math.floor(envelope.getMaxY() / tileSize);
+		double nTiles = (tx1 - tx0 + 1) * (ty1 - ty0 + 1);
+		if (!(nTiles < shards.length)) {
+			for (var shard : shards)
+				list.add(shard);
+			return list;
+		}
+		var visited = new boolean[shards.length];
+		for (long ty = (long)ty0; ty <= (long)ty1; ty++) {
+			for (long tx = (long)tx0; tx <= (long)tx1; tx++) {
+				int ind = shardIndex(tx, ty);
+				if (!visited[ind]) {
+					visited[ind] = true;
+					list.add(shards[ind]);
+				}
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void insert(Envelope itemEnv, Object item) {
+		getShard(itemEnv).insert(itemEnv, item);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List query(Envelope searchEnv) {
+		var list = new ArrayList<Object>();
+		query(searchEnv, item -> list.add(item));
+		return list;
+	}
+
+	@Override
+	public void query(Envelope searchEnv, ItemVisitor visitor) {
+		for (var shard : getShards(searchEnv))
+			shard.query(searchEnv, visitor);
+	}
+
+	/**
+	 * Query whether any item in the index satisfies a predicate, stopping as soon as one is found.
+	 * @param searchEnv
+	 * @param predicate
+	 * @return
+	 */
+	boolean anyMatch(Envelope searchEnv, Predicate<Object> predicate) {
+		for (var shard : getShards(searchEnv)) {
+			if (shard.anyMatch(searchEnv, predicate))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Remove an item from the index.
+	 * The envelope should be the same one that was used when inserting the item; if the item cannot be found
+	 * using this envelope, all shards are searched.
+	 */
+	@Override
+	public boolean remove(Envelope itemEnv, Object item) {
+		if (itemEnv != null && getShard(itemEnv).remove(itemEnv, item))
+			return true;
+		var all = new Envelope(-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE);
+		if (largeShard.remove(all, item))
+			return true;
+		for (var shard : shards) {
+			if (shard.remove(all, item))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the total number of items in the index.
+	 * @return
+	 */
+	int size() {
+		int n = largeShard.size();
+		for (var shard : shards)
+			n += shard.size();
+		return n;
+	}
+
+
+	/**
+	 * A single {@link Quadtree}, guarded by its own lock.
+	 */
+	private static class Shard {
+
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private final Quadtree tree = new Quadtree();
+		// Quadtree.size() traverses the tree, so we keep our own count
+		private int count = 0;
+
+		void insert(Envelope envelope, Object item) {
+			lock.writeLock().lock();
+			try {
+				tree.insert(envelope, item);
+				count++;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		boolean remove(Envelope envelope, Object item) {
+			lock.writeLock().lock();
+			try {
+				if (count == 0 || !tree.remove(envelope, item))
+					return false;
+				count--;
+				return true;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		void query(Envelope envelope, ItemVisitor visitor) {
+			lock.readLock().lock();
+			try {
+				if (count > 0)
+					tree.query(envelope, visitor);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		boolean anyMatch(Envelope envelope, Predicate<Object> predicate) {
+			lock.readLock().lock();
+			try {
+				if (count == 0)
+					return false;
+				for (var item : tree.query(envelope)) {
+					if (predicate.test(item))
+						return true;
+				}
+				return false;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		int size() {
+			lock.readLock().lock();
+			try {
+				return count;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+	}
+
+}
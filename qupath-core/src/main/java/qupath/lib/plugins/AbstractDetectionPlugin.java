@@ -79,6 +79,22 @@ public abstract class AbstractDetectionPlugin<T> extends AbstractInteractivePlug
 		return objects;
 //		return InteractivePluginTools.getObjectsForChoice(runner.getHierarchy(), getSupportedParentObjectClasses(), getParameterList(runner.getImageData()));
 	}
+	
+	/**
+	 * Run the plugin, and then freeze the spatial cache of the hierarchy - since detection is usually followed by 
+	 * many queries (e.g. for display) and few changes.
+	 * @see PathObjectHierarchy#freezeSpatialCache()
+	 */
+	@Override
+	public boolean runPlugin(final PluginRunner<T> pluginRunner, final String arg) {
+		boolean completed = super.runPlugin(pluginRunner, arg);
+		if (completed) {
+			var imageData = pluginRunner.getImageData();
+			if (imageData != null)
+				imageData.getHierarchy().freezeSpatialCache();
+		}
+		return completed;
+	}
 
 
 }
\ No newline at end of file
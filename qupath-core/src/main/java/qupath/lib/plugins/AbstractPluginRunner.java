@@ -23,22 +23,27 @@
 
 package qupath.lib.plugins;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import qupath.lib.common.ThreadTools;
+import qupath.lib.analysis.stats.RunningStatistics;
 import qupath.lib.images.ImageData;
+import qupath.lib.metrics.Metrics;
+import qupath.lib.regions.ImageRegion;
 
 
 /**
@@ -46,6 +51,19 @@ import qupath.lib.images.ImageData;
  * e.g. running through a GUI, or from a command line only.
  * <p>
  * Note!  This makes use of a static threadpool, which will be reused by all inheriting classes.
+ * The pool is a {@link ForkJoinPool} of daemon threads, which persists between runs 
+ * (it is only replaced if the number of threads is changed).
+ * Waiting for tasks to complete is done as a {@link ForkJoinPool.ManagedBlocker}, so that if a task 
+ * running on the pool itself calls {@link #runTasks(Collection, boolean)}, the pool can add a thread 
+ * to compensate rather than deadlocking.
+ * <p>
+ * Where tasks provide a region (see {@link PathTask#getRegion()}), they are ordered before submission: 
+ * unusually large tasks are started first, so that they don't leave threads idle at the end of the run, 
+ * while the remaining tasks are ordered spatially so that neighboring tasks run at similar times, 
+ * and can benefit from cached image tiles.
+ * <p>
+ * If {@link Metrics} are enabled, the duration of each task is recorded with the timer {@code plugin.task}, 
+ * and the duration of each call to {@link #runTasks(Collection, boolean)} with {@code plugin.run}.
  * 
  * @author Pete Bankhead
  *
@@ -56,10 +74,12 @@ public abstract class AbstractPluginRunner<T> implements PluginRunner<T> {
 	final private static Logger logger = LoggerFactory.getLogger(AbstractPluginRunner.class);
 
 	private static int numThreadsRequested = Runtime.getRuntime().availableProcessors();
-	private static int counter = 0;
+	private static AtomicInteger counter = new AtomicInteger(0);
 
-	private static ExecutorService pool;
+	private static ForkJoinPool pool;
 	private ExecutorCompletionService<Runnable> service;
+	
+	private RunningStatistics taskTimes = new RunningStatistics();
 
 	private Map<Future<Runnable>, Runnable> pendingTasks = Collections.synchronizedMap(new HashMap<>());
 	
@@ -116,6 +136,38 @@ public abstract class AbstractPluginRunner<T> implements PluginRunner<T> {
 		int max = Runtime.getRuntime().availableProcessors();
 		return numThreadsRequested <= 0 || numThreadsRequested > max ? max : numThreadsRequested;
 	}
+	
+	/**
+	 * Get the shared pool, creating it if necessary.
+	 * @return
+	 */
+	private synchronized static ForkJoinPool getPool() {
+		if (pool == null || pool.isShutdown()) {
+			int n = getNumThreads();
+			var prefix = "plugin-runner-" + counter.incrementAndGet() + "-";
+			// Use the context class loader of the creating thread, so that tasks can access classes from extensions
+			var classLoader = Thread.currentThread().getContextClassLoader();
+			var threadCounter = new AtomicInteger(0);
+			pool = new ForkJoinPool(n, p -> {
+				var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				thread.setName(prefix + threadCounter.incrementAndGet());
+				thread.setContextClassLoader(classLoader);
+				return thread;
+			}, null, false);
+			logger.debug("New threadpool created with {} threads", n);
+		}
+		return pool;
+	}
+	
+	/**
+	 * Get timing statistics (in milliseconds) for the tasks completed during the last call to 
+	 * {@link #runTasks(Collection, boolean)}.
+	 * @return
+	 * @since 0.3
+	 */
+	public RunningStatistics getTaskTimeStatistics() {
+		return taskTimes;
+	}
 
 	protected abstract SimpleProgressMonitor makeProgressMonitor();
 	
@@ -137,25 +189,44 @@ public abstract class AbstractPluginRunner<T> implements PluginRunner<T> {
 		// Reset cancelled status
 		tasksCancelled = false;
 		
-		// Ensure we have a pool
-		if (pool == null || pool.isShutdown()) {
-			int n = getNumThreads();
-			pool = Executors.newFixedThreadPool(n, ThreadTools.createThreadFactory("plugin-runner-"+(+counter)+"-", false));
-			logger.debug("New threadpool created with {} threads", n);
-			service = new ExecutorCompletionService<>(pool);
-		} else if (service == null)
-			service = new ExecutorCompletionService<>(pool);
+		// Ensure we have a pool - this uses daemon threads, so doesn't need to be shutdown to permit application shutdown
+		service = new ExecutorCompletionService<>(getPool());
+		
+		var times = new RunningStatistics();
+		taskTimes = times;
+		long startTime = System.currentTimeMillis();
+		var taskTimer = Metrics.timer("plugin.task");
+		var runTimer = Metrics.timer("plugin.run");
+		long runStart = runTimer.start();
 		
 		monitor = makeProgressMonitor();
 		monitor.startMonitoring(null, tasks.size(), true);
-		for (Runnable task : tasks) {
-			Future<Runnable> future = service.submit(task, task);
+		for (Runnable task : orderTasks(tasks)) {
+			Runnable timedTask = () -> {
+				long start = System.nanoTime();
+				try {
+					task.run();
+				} finally {
+					long nanos = System.nanoTime() - start;
+					taskTimer.record(nanos);
+					double millis = nanos / 1e6;
+					synchronized (times) {
+						times.addValue(millis);
+					}
+				}
+			};
+			Future<Runnable> future = service.submit(timedTask, task);
 			pendingTasks.put(future, task);
 		}
-		// TODO: See if this needs to be shutdown here, or there's a better way..?
-		// In any case, it was inhibiting application shutdown just letting it be...
-		pool.shutdown();
 		awaitCompletion();
+		runTimer.stop(runStart);
+		
+		long endTime = System.currentTimeMillis();
+		synchronized (times) {
+			if (times.size() > 0)
+				logger.debug(String.format("%d tasks completed in %.2f seconds (task time mean %.1f ms, max %.1f ms, total %.1f ms)",
+						times.size(), (endTime - startTime)/1000.0, times.getMean(), times.getMax(), times.getSum()));
+		}
 		
 		// Post-process any PathTasks
 		postProcess(tasks.stream().filter(t -> t instanceof PathTask).map(t -> (PathTask)t).collect(Collectors.toList()));
@@ -173,6 +244,62 @@ public abstract class AbstractPluginRunner<T> implements PluginRunner<T> {
 //	}
 
 	
+	/**
+	 * Order tasks for submission to the pool.
+	 * <p>
+	 * Tasks that don't provide a region retain their original order, and are submitted last.
+	 * Of the remaining tasks, any that are much larger than typical are submitted first (largest first); 
+	 * the others are sorted in a spatial order (by plane, then row of tiles, then x).
+	 * 
+	 * @param tasks
+	 * @return
+	 */
+	static List<Runnable> orderTasks(Collection<Runnable> tasks) {
+		var withRegion = new ArrayList<Runnable>();
+		var withoutRegion = new ArrayList<Runnable>();
+		var regions = new HashMap<Runnable, ImageRegion>();
+		for (var task : tasks) {
+			var region = task instanceof PathTask ? ((PathTask)task).getRegion() : null;
+			if (region == null)
+				withoutRegion.add(task);
+			else {
+				withRegion.add(task);
+				regions.put(task, region);
+			}
+		}
+		if (withRegion.size() <= 1)
+			return new ArrayList<>(tasks);
+		
+		// Use the median size to identify oversized tasks, and to define rows for spatial ordering
+		double[] areas = withRegion.stream().mapToDouble(t -> area(regions.get(t))).sorted().toArray();
+		double medianArea = areas[areas.length/2];
+		double rowHeight = Math.max(1.0, Math.sqrt(medianArea));
+		
+		var large = new ArrayList<Runnable>();
+		var typical = new ArrayList<Runnable>();
+		for (var task : withRegion) {
+			if (area(regions.get(task)) > medianArea * 2)
+				large.add(task);
+			else
+				typical.add(task);
+		}
+		large.sort(Comparator.comparingDouble((Runnable t) -> area(regions.get(t))).reversed());
+		typical.sort(Comparator.comparingInt((Runnable t) -> regions.get(t).getT())
+				.thenComparingInt(t -> regions.get(t).getZ())
+				.thenComparingLong(t -> (long)Math.floor(regions.get(t).getMinY() / rowHeight))
+				.thenComparingInt(t -> regions.get(t).getMinX()));
+		
+		var ordered = new ArrayList<Runnable>(tasks.size());
+		ordered.addAll(large);
+		ordered.addAll(typical);
+		ordered.addAll(withoutRegion);
+		return ordered;
+	}
+	
+	private static double area(ImageRegion region) {
+		return (double)region.getWidth() * region.getHeight();
+	}
+	
 	/**
 	 * Await the completion of currently-running tasks, notifying any listener if necessary.
 	 */
@@ -192,7 +319,7 @@ public abstract class AbstractPluginRunner<T> implements PluginRunner<T> {
 					}
 					tasksCancelled = true;
 				}
-				future = future == null ? service.take() : future;
+				future = future == null ? takeCompleted() : future;
 //				logger.warn("Future: {}", future);
 				// If the task finished without being cancelled, run post-processing if required & update the progress monitor
 				if (!future.isCancelled()) {
@@ -215,13 +342,12 @@ public abstract class AbstractPluginRunner<T> implements PluginRunner<T> {
 //				logger.error("CAUSING Error running plugin: {}", e2.getLocalizedMessage(), e2);
 //			}
 //			e.printStackTrace();
-			if (pool != null)
-				pool.shutdownNow();
+			// The pool is shared, so cancel our own tasks rather than shutting it down
+			cancelPendingTasks();
 			monitor.pluginCompleted("Completed with error " + e.getLocalizedMessage());
 		} catch (Exception e) {
 			logger.error("Error running plugin: {}", e.getLocalizedMessage(), e);
-			if (pool != null)
-				pool.shutdownNow();
+			cancelPendingTasks();
 			monitor.pluginCompleted("Completed with error " + e.getLocalizedMessage());
 		} finally {
 			pendingTasks.clear();
@@ -229,6 +355,46 @@ public abstract class AbstractPluginRunner<T> implements PluginRunner<T> {
 	}
 
 	
+	/**
+	 * Wait for the next task to complete, allowing the pool to compensate if this is called from one of its own threads.
+	 */
+	private Future<Runnable> takeCompleted() throws InterruptedException {
+		var blocker = new CompletionBlocker(service);
+		ForkJoinPool.managedBlock(blocker);
+		return blocker.future;
+	}
+	
+	private static class CompletionBlocker implements ForkJoinPool.ManagedBlocker {
+		
+		private final ExecutorCompletionService<Runnable> service;
+		private Future<Runnable> future;
+		
+		CompletionBlocker(ExecutorCompletionService<Runnable> service) {
+			this.service = service;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			if (future == null)
+				future = service.take();
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			if (future == null)
+				future = service.poll();
+			return future != null;
+		}
+		
+	}
+	
+	private void cancelPendingTasks() {
+		for (Future<?> future : pendingTasks.keySet().toArray(new Future<?>[0]))
+			future.cancel(true);
+	}
+
+	
 	/**
 	 * Perform post-processing after a task has complete.
 	 * 
@@ -28,6 +28,9 @@ import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import qupath.lib.geom.ImmutableDimension;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ServerTools;
@@ -51,6 +54,8 @@ import qupath.lib.roi.interfaces.ROI;
  */
 public abstract class AbstractTileableDetectionPlugin<T> extends AbstractDetectionPlugin<T> {
 	
+	private static final Logger logger = LoggerFactory.getLogger(AbstractTileableDetectionPlugin.class);
+	
 	private static int PREFERRED_TILE_SIZE = 2048;
 	private static int MAX_TILE_SIZE = 3072;
 
@@ -80,18 +85,50 @@ public abstract class AbstractTileableDetectionPlugin<T> extends AbstractDetecti
 	 * If the overlap is 0, then tile boundaries are likely to be visible in the results.
 	 * <p>
 	 * If the overlap is &gt; 0, then the overlap should also be &gt; the expected largest size of a detected object -
-	 * otherwise objects may be lost of trimmed when overlaps are resolved.  This is because (currently) 
+	 * otherwise objects may be lost of trimmed when overlaps are resolved.  This is because (by default) 
 	 * the resolution of overlapping detections involves taking the largest one, rather than (for example) merging them.
 	 * <p>
-	 * (Merging may be permitted in later versions, but only where measurements are not made by the plugin -
+	 * (Merging is permitted with {@link OverlapPolicy#MERGE_BY_IOU}, but only where measurements are not made by the plugin -
 	 * since merged objects may require different measurements, e.g. for area or mean than can be easily computed
 	 * in a general way from the individual objects being merged).
 	 * 
 	 * @param imageData
 	 * @param params
 	 * @return The overlap size in pixels, or 0 if overlapped tiles are not supported.
+	 * @see #getOverlapPolicy(ImageData, ParameterList)
 	 */
 	protected abstract int getTileOverlap(final ImageData<T> imageData, final ParameterList params);
+	
+	/**
+	 * Get the policy used to resolve overlapping detections in adjacent tiles.
+	 * <p>
+	 * The default implementation returns {@link OverlapPolicy#KEEP_LARGEST}. Plugins that do not make measurements
+	 * may override this to return {@link OverlapPolicy#MERGE_BY_IOU}.
+	 * 
+	 * @param imageData
+	 * @param params
+	 * @return
+	 * @since 0.3
+	 */
+	protected OverlapPolicy getOverlapPolicy(final ImageData<T> imageData, final ParameterList params) {
+		return OverlapPolicy.KEEP_LARGEST;
+	}
+	
+	/**
+	 * Policies for resolving overlapping detections in adjacent tiles.
+	 * @since 0.3
+	 */
+	public static enum OverlapPolicy {
+		/**
+		 * Where two objects overlap substantially, keep the object with the larger area
+		 */
+		KEEP_LARGEST,
+		/**
+		 * Where two detections or cells have an intersection over union of at least 0.5, replace them with a single
+		 * object created from their union (without measurements); otherwise keep the object with the larger area
+		 */
+		MERGE_BY_IOU
+	}
 
 	
 	/**
@@ -136,12 +173,11 @@ public abstract class AbstractTileableDetectionPlugin<T> extends AbstractDetecti
 //			return;
 //		}
 		
-		ParallelDetectionTileManager manager = new ParallelDetectionTileManager(parentObject); 
+		ParallelDetectionTileManager manager = new ParallelDetectionTileManager(parentObject, getOverlapPolicy(imageData, params)); 
 		
 		List<ParallelTileObject> tileList = new ArrayList<>();
-		AtomicInteger countdown = new AtomicInteger(pathROIs.size());
 		for (ROI pathROI : pathROIs) {
-			ParallelTileObject tile = new ParallelTileObject(manager, pathROI, imageData.getHierarchy(), countdown);
+			ParallelTileObject tile = new ParallelTileObject(manager, pathROI);
 			parentObject.addPathObject(tile);
 			for (ParallelTileObject tileTemp : tileList) {
 				if (tileTemp.suggestNeighbor(tile))
@@ -161,16 +197,23 @@ public abstract class AbstractTileableDetectionPlugin<T> extends AbstractDetecti
 		private PathObject parent;
 		private List<PathObject> originalChildObjects;
 		
-		private boolean wasCancelled = false;
+		private final OverlapPolicy overlapPolicy;
+		
+		private volatile boolean wasCancelled = false;
 		
 		private AtomicInteger countdown;
 		private List<ParallelTileObject> tiles = new ArrayList<>();
 		
-		ParallelDetectionTileManager(PathObject parent) {
+		ParallelDetectionTileManager(PathObject parent, OverlapPolicy overlapPolicy) {
 			this.parent = parent;
+			this.overlapPolicy = overlapPolicy == null ? OverlapPolicy.KEEP_LARGEST : overlapPolicy;
 			this.originalChildObjects = new ArrayList<>(parent.getChildObjects());
 		}
 		
+		OverlapPolicy getOverlapPolicy() {
+			return overlapPolicy;
+		}
+		
 		public void setTiles(Collection<ParallelTileObject> tiles) {
 			this.tiles = new ArrayList<>(tiles);
 			countdown = new AtomicInteger(tiles.size());
@@ -178,9 +221,14 @@ public abstract class AbstractTileableDetectionPlugin<T> extends AbstractDetecti
 			this.parent.addPathObjects(tiles);
 		}
 		
-		public void tileComplete(PathObject tile, boolean wasCancelled) {
+		public void tileComplete(ParallelTileObject tile, boolean wasCancelled) {
 			if (wasCancelled)
 				this.wasCancelled = true;
+			else if (!this.wasCancelled) {
+				// Resolve overlaps with completed neighbors now, rather than waiting for all tiles to finish
+				int nResolved = tile.resolveCompletedOverlaps(overlapPolicy);
+				logger.trace("Resolved {} overlaps for {}", nResolved, tile);
+			}
 			int remaining = countdown.decrementAndGet();
 			if (remaining == 0)
 				postprocess();
@@ -193,10 +241,8 @@ public abstract class AbstractTileableDetectionPlugin<T> extends AbstractDetecti
 				parent.addPathObjects(originalChildObjects);
 			} else {
 				// Add the objects from all the children
-				for (var tile : tiles) {
-					tile.resolveOverlaps();
+				for (var tile : tiles)
 					parent.addPathObjects(tile.getChildObjects());
-				}
 				if (parent.hasChildren())
 					parent.setLocked(true);
 			}
@@ -21,19 +21,21 @@
  * #L%
  */
 
+
 package qupath.lib.plugins;
 
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.locationtech.jts.geom.Geometry;
 import org.slf4j.Logger;
@@ -41,16 +43,16 @@ import org.slf4j.LoggerFactory;
 
 import qupath.lib.common.ColorTools;
 import qupath.lib.objects.DefaultPathObjectComparator;
+import qupath.lib.objects.PathCellObject;
 import qupath.lib.objects.PathObject;
-import qupath.lib.objects.PathObjectTools;
-import qupath.lib.objects.PathROIObject;
+import qupath.lib.objects.PathObjects;
 import qupath.lib.objects.PathTileObject;
 import qupath.lib.objects.TemporaryObject;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.classes.PathClassFactory;
-import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.plugins.AbstractTileableDetectionPlugin.OverlapPolicy;
 import qupath.lib.plugins.AbstractTileableDetectionPlugin.ParallelDetectionTileManager;
-import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.GeometryTools;
 import qupath.lib.roi.interfaces.ROI;
 
 /**
@@ -58,7 +60,10 @@ import qupath.lib.roi.interfaces.ROI;
  * detection.
  * <p>
  * ParallelTileObjects maintain knowledge of adjacent tiles, and are thereby able to resolve overlaps
- * after detection is complete (here, based on keeping the object with the larger area).
+ * after detection is complete (by default, based on keeping the object with the larger area).
+ * Overlaps between two tiles are resolved as soon as both tiles are complete, by whichever thread completes the
+ * second tile. Only the two tiles involved are locked, so that the overlaps of different tile pairs can be resolved
+ * in parallel.
  * 
  * @author Pete Bankhead
  *
@@ -84,6 +89,18 @@ public class ParallelTileObject extends PathTileObject implements TemporaryObjec
 		 */
 		DONE }
 	
+	/**
+	 * Minimum proportion of the smaller object that must be overlapped for one of two objects to be removed.
+	 */
+	private static final double OVERLAP_THRESHOLD = 0.1;
+	
+	/**
+	 * Minimum intersection over union for two objects to be merged, when using {@link OverlapPolicy#MERGE_BY_IOU}.
+	 */
+	static final double MERGE_IOU_THRESHOLD = 0.5;
+	
+	private static final AtomicLong NEXT_ID = new AtomicLong();
+	
 	private static PathClass pathClassPending = PathClassFactory.getPathClass(
 			"Tile-Pending", ColorTools.packRGB(50, 50, 200));
 
@@ -95,20 +112,22 @@ public class ParallelTileObject extends PathTileObject implements TemporaryObjec
 
 	private ParallelDetectionTileManager manager;
 	
-	AtomicInteger countdown;
+	/**
+	 * Used to lock tiles in a consistent order when resolving overlaps
+	 */
+	private final long id = NEXT_ID.incrementAndGet();
+	private final Object overlapLock = new Object();
+	
 	Rectangle2D bounds;
-	PathObjectHierarchy hierarchy;
-	Map<ParallelTileObject, Rectangle2D> map = new TreeMap<>(DefaultPathObjectComparator.getInstance());
+	Map<ParallelTileObject, TileOverlap> map = new TreeMap<>(DefaultPathObjectComparator.getInstance());
 
-	private Status status = Status.PENDING;
+	private volatile Status status = Status.PENDING;
 	
-	ParallelTileObject(final ParallelDetectionTileManager manager, final ROI pathROI, final PathObjectHierarchy hierarchy, final AtomicInteger countdown) {
+	ParallelTileObject(final ParallelDetectionTileManager manager, final ROI pathROI) {
 		super(pathROI);
 		this.manager = manager;
 		setPathClass(pathClassPending);
 		this.bounds = getBounds2D(pathROI);
-		this.hierarchy = hierarchy;
-		this.countdown = countdown;
 		setColorRGB(ColorTools.packRGB(128, 128, 128));
 	}
 
@@ -120,9 +139,14 @@ public class ParallelTileObject extends PathTileObject implements TemporaryObjec
 	 */
 	public synchronized boolean suggestNeighbor(final ParallelTileObject pto) {
 		if (bounds.intersects(pto.bounds)) {
-			Rectangle2D intersection = new Rectangle2D.Double();
-			Rectangle2D.intersect(bounds, pto.bounds, intersection);
-			map.put(pto, intersection);
+			// Share the overlap with the neighbor, if it has already been registered there
+			TileOverlap overlap = pto.map.get(this);
+			if (overlap == null) {
+				Rectangle2D intersection = new Rectangle2D.Double();
+				Rectangle2D.intersect(bounds, pto.bounds, intersection);
+				overlap = new TileOverlap(this, pto, intersection);
+			}
+			map.put(pto, overlap);
 			return true;
 		}
 		return false;
@@ -135,7 +159,7 @@ public class ParallelTileObject extends PathTileObject implements TemporaryObjec
 	 * 
 	 * @param status
 	 */
-	public synchronized void updateStatus(Status status) {
+	public void updateStatus(Status status) {
 		Objects.nonNull(status);
 		this.status = status;
 		switch(status) {
@@ -165,7 +189,7 @@ public class ParallelTileObject extends PathTileObject implements TemporaryObjec
 	 * 
 	 * @return
 	 */
-	public synchronized boolean isProcessing() {
+	public boolean isProcessing() {
 		return status == Status.PROCESSING;
 	}
 
@@ -174,18 +198,18 @@ public class ParallelTileObject extends PathTileObject implements TemporaryObjec
 	 * 
 	 * @return
 	 */
-	public synchronized boolean isComplete() {
+	public boolean isComplete() {
 		return status == Status.DONE;
 	}
 
 	/**
 	 * Notify the tile that its processing is done.
 	 * 
-	 * This both changes its display color, and triggers a check to see if overlaps with
-	 * detections made in adjacent tiles can be resolved.
+	 * This both changes its display color, and triggers the resolution of overlaps with
+	 * detections made in adjacent tiles that are already complete.
 	 * @param wasCancelled 
 	 */
-	public synchronized void setComplete(boolean wasCancelled) {
+	public void setComplete(boolean wasCancelled) {
 		// Flag that the processing is complete
 		updateStatus(Status.DONE);
 		manager.tileComplete(this, wasCancelled);
@@ -194,133 +218,32 @@ public class ParallelTileObject extends PathTileObject implements TemporaryObjec
 	
 	/**
 	 * Request that the tile object attempts to resolve overlaps with its neighboring tiles.
+	 * Overlaps are only resolved with neighbors that are already complete, and only once for each pair of tiles.
 	 */
-	public synchronized void resolveOverlaps() {
-//		// If we don't have any children, notify that the test is complete
-	//			if (!hasChildren()) {
-	//				for (ParallelTileObject pto : map.keySet())
-	//					pto.notifyTestComplete(this);
-	//				map.clear();
-	//				checkAllTestsComplete();
-	//				return;
-	//			}
-
-	long startTime = System.currentTimeMillis();
-	int nRemoved = 0;
-	
-	boolean preferNucleus = false;
-
-	// If we do have children, loop through & perform tests
-	Iterator<Entry<ParallelTileObject, Rectangle2D>> iterMap = map.entrySet().iterator();
-	while (iterMap.hasNext()) {
-		Entry<ParallelTileObject, Rectangle2D> entry = iterMap.next();
-
-		// If the parallel tile object hasn't been processed yet, then just continue - nothing to compare
-		ParallelTileObject pto = entry.getKey();
-		if (!pto.isComplete())
-			continue;
-		
-		ParallelTileObject first, second;
-		
-		// Choose a consistent order for the comparison
-		if (this.getROI().getBoundsX() > pto.getROI().getBoundsX() || 
-				this.getROI().getBoundsY() > pto.getROI().getBoundsY()) {
-			first = this;
-			second = pto;
-		} else {
-			first = pto;
-			second = this;
+	public void resolveOverlaps() {
+		long startTime = System.currentTimeMillis();
+		int nRemoved = 0;
+		for (var entry : map.entrySet()) {
+			if (entry.getKey().isComplete())
+				nRemoved += entry.getValue().resolve(manager.getOverlapPolicy());
 		}
-//		ROI firstBounds = first.getROI();
-//		ROI secondBounds = second.getROI();
-
-		// Compare this object's lists with that object's list
-		List<PathObject> listFirst = first.getObjectsForRegion(entry.getValue());
-		List<PathObject> listSecond = second.getObjectsForRegion(entry.getValue());
-
-		// Only need to compare potential overlaps if both lists are non-empty
-		if (!listFirst.isEmpty() && !listSecond.isEmpty()) {
-
-			Map<ROI, Geometry> cache = new HashMap<>();
-
-			Iterator<PathObject> iterFirst = listFirst.iterator();
-			while (iterFirst.hasNext()) {
-				PathObject firstObject = iterFirst.next();
-				ROI firstROI = PathObjectTools.getROI(firstObject, preferNucleus);
-				ImageRegion firstRegion = ImageRegion.createInstance(firstROI);
-				Geometry firstGeometry = null;
-				double firstArea = Double.NaN;
-
-				Iterator<PathObject> iterSecond = listSecond.iterator();
-				while (iterSecond.hasNext()) {
-					PathObject secondObject = iterSecond.next();
-					ROI secondROI = PathObjectTools.getROI(secondObject, preferNucleus);
-//					
-					// Do quick overlap test
-					if (!firstRegion.intersects(
-							secondROI.getBoundsX(), secondROI.getBoundsY(),
-							secondROI.getBoundsWidth(), secondROI.getBoundsHeight()))
-						continue;
-					
-					// Get geometries
-					if (firstGeometry == null) {
-						firstGeometry = firstROI.getGeometry();
-						firstArea = firstGeometry.getArea();
-					}
-					Geometry secondGeometry = cache.get(secondROI);
-					if (secondGeometry == null) {
-						secondGeometry = secondROI.getGeometry();
-						cache.put(secondROI, secondGeometry);
-					}
-
-					Geometry intersection;
-					try {
-						// Get the intersection
-						if (!firstGeometry.intersects(secondGeometry))
-							continue;
-
-						intersection = firstGeometry.intersection(secondGeometry);
-					} catch (Exception e) {
-						logger.warn("Error resolving overlaps: {}", e.getLocalizedMessage());
-						logger.debug(e.getLocalizedMessage(), e);
-						continue;
-					}
-					if (intersection.isEmpty())
-						continue;
-					
-					// Check areas
-					double intersectionArea = intersection.getArea();
-					double secondArea = secondGeometry.getArea();
-					double threshold = 0.1;
-					if (firstArea >= secondArea) {
-						if (intersectionArea / secondArea > threshold) {
-							second.removePathObject(secondObject);
-							nRemoved++;
-						}
-					} else {
-						if (intersectionArea / firstArea > threshold) {
-							first.removePathObject(firstObject);
-							nRemoved++;
-							break;
-						}
-					}
-				}
-			}
-
-		}
-
-		// Remove the neighbor from the map
-		iterMap.remove();
-
-		pto.notifyTestComplete(this);
-
+		long endTime = System.currentTimeMillis();
+		logger.debug(String.format("Resolved %d overlaps: %.2f seconds", nRemoved, (endTime - startTime) / 1000.));
 	}
-
-	checkAllTestsComplete();
-
-	long endTime = System.currentTimeMillis();
-	logger.debug(String.format("Resolved %d overlaps: %.2f seconds", nRemoved, (endTime - startTime) / 1000.));
-	//			logger.info(String.format("Resolved %d possible overlaps with %d iterations (tested %d of %d): %.2f seconds", nOverlaps, counter, detectedCounter-skipCounter, detectedCounter, (endTime2 - startTime2) / 1000.));
+	
+	/**
+	 * Resolve overlaps with all neighbors that have also finished processing.
+	 * This should be called exactly once for each tile, after it is complete.
+	 * @param policy
+	 * @return the number of overlaps that were resolved
+	 */
+	int resolveCompletedOverlaps(OverlapPolicy policy) {
+		int nResolved = 0;
+		for (var overlap : map.values()) {
+			if (overlap.tileComplete())
+				nResolved += overlap.resolve(policy);
+		}
+		return nResolved;
 	}
 
 
@@ -340,50 +263,316 @@ public class ParallelTileObject extends PathTileObject implements TemporaryObjec
 		Collections.sort(pathObjects, DefaultPathObjectComparator.getInstance());
 		return pathObjects;
 	}
+	
+	
+	/**
+	 * Resolve overlaps between the objects of two tiles within a specified region.
+	 * <p>
+	 * Objects from the second tile are indexed using a spatial hash, so that each object in the first tile is only 
+	 * compared with nearby objects - rather than with every object in the overlapping region.
+	 * 
+	 * @param first the first tile; merged objects are added here
+	 * @param second the second tile
+	 * @param region the overlapping region of the two tiles
+	 * @param policy the policy for handling overlapping objects
+	 * @return the number of overlaps that were resolved
+	 */
+	static int resolveOverlaps(ParallelTileObject first, ParallelTileObject second, Rectangle2D region, OverlapPolicy policy) {
+		List<PathObject> listFirst = first.getObjectsForRegion(region);
+		List<PathObject> listSecond = second.getObjectsForRegion(region);
 
-
-
-	boolean checkAllTestsComplete() {
-//		return true;
-		if (map.isEmpty() && getParent() != null) {
-			if (countdown == null) {
-				hierarchy.removeObject(this, true);
-			} else if (countdown.decrementAndGet() == 0) {
-				PathObject parent = getParent();
-				List<PathObject> parallelObjects = new ArrayList<>();
-				for (PathObject temp : parent.getChildObjectsAsArray()) {
-					if (temp instanceof ParallelTileObject) {
-						parallelObjects.add(temp);
+		// Only need to compare potential overlaps if both lists are non-empty
+		if (listFirst.isEmpty() || listSecond.isEmpty())
+			return 0;
+		
+		List<PathObject> removeFirst = new ArrayList<>();
+		List<PathObject> addFirst = new ArrayList<>();
+		List<PathObject> removeSecond = new ArrayList<>();
+		
+		var hash = new SpatialHash(createCandidates(listSecond));
+		int nResolved = 0;
+		int visit = 0;
+		for (var c1 : createCandidates(listFirst)) {
+			for (var c2 : hash.query(c1.roi, visit++)) {
+				if (c2.removed)
+					continue;
+				
+				// Do quick overlap test
+				if (!boundsIntersect(c1.roi, c2.roi))
+					continue;
+				
+				Geometry intersection;
+				try {
+					// Get the intersection
+					if (!c1.getGeometry().intersects(c2.getGeometry()))
+						continue;
+					intersection = c1.getGeometry().intersection(c2.getGeometry());
+				} catch (Exception e) {
+					logger.warn("Error resolving overlaps: {}", e.getLocalizedMessage());
+					logger.debug(e.getLocalizedMessage(), e);
+					continue;
+				}
+				if (intersection.isEmpty())
+					continue;
+				
+				double intersectionArea = intersection.getArea();
+				double firstArea = c1.getArea();
+				double secondArea = c2.getArea();
+				
+				// Merge objects that are very similar, if requested
+				if (policy == OverlapPolicy.MERGE_BY_IOU && intersectionArea / (firstArea + secondArea - intersectionArea) >= MERGE_IOU_THRESHOLD) {
+					PathObject merged = null;
+					try {
+						merged = mergeObjects(c1, c2);
+					} catch (Exception e) {
+						logger.warn("Error merging overlapping objects: {}", e.getLocalizedMessage());
+						logger.debug(e.getLocalizedMessage(), e);
+					}
+					if (merged != null) {
+						if (c1.isOriginal)
+							removeFirst.add(c1.pathObject);
+						else
+							addFirst.remove(c1.pathObject);
+						addFirst.add(merged);
+						c1.replace(merged);
+						c2.removed = true;
+						removeSecond.add(c2.pathObject);
+						nResolved++;
+						continue;
 					}
 				}
-				parent.removePathObjects(parallelObjects);
-				for (PathObject temp : parallelObjects)
-					parent.addPathObjects(temp.getChildObjects());
-
-				if (parent.hasChildren() && parent instanceof PathROIObject)
-					((PathROIObject)parent).setLocked(true);
-
-				hierarchy.fireHierarchyChangedEvent(parent);
+				
+				// Keep the largest object
+				if (firstArea >= secondArea) {
+					if (intersectionArea / secondArea > OVERLAP_THRESHOLD) {
+						c2.removed = true;
+						removeSecond.add(c2.pathObject);
+						nResolved++;
+					}
+				} else if (intersectionArea / firstArea > OVERLAP_THRESHOLD) {
+					if (c1.isOriginal)
+						removeFirst.add(c1.pathObject);
+					else
+						addFirst.remove(c1.pathObject);
+					nResolved++;
+					break;
+				}
 			}
-			return true;
-			//				getParent().removePathObject(this);
-			//				getParent().addPathObjects(getPathObjectList());
 		}
-		return false;
+		
+		if (!removeFirst.isEmpty())
+			first.removePathObjects(removeFirst);
+		if (!addFirst.isEmpty())
+			first.addPathObjects(addFirst);
+		if (!removeSecond.isEmpty())
+			second.removePathObjects(removeSecond);
+		return nResolved;
 	}
-
-
-	void notifyTestComplete(final ParallelTileObject pto) {
-		if (isComplete()) {
-			map.remove(pto);
-			checkAllTestsComplete();
-		}
+	
+	
+	/**
+	 * Create a single object to replace two overlapping objects.
+	 * Measurements are not retained, since they would no longer be valid for the merged object.
+	 * @return the merged object, or null if the objects cannot be merged
+	 */
+	private static PathObject mergeObjects(Candidate c1, Candidate c2) {
+		var o1 = c1.pathObject;
+		var o2 = c2.pathObject;
+		boolean cells = o1.isCell() && o2.isCell();
+		if (!cells && !(isSimpleDetection(o1) && isSimpleDetection(o2)))
+			return null;
+		var plane = c1.roi.getImagePlane();
+		var pathClass = c1.getArea() >= c2.getArea() ? o1.getPathClass() : o2.getPathClass();
+		var roi = GeometryTools.geometryToROI(c1.getGeometry().union(c2.getGeometry()), plane);
+		if (!cells)
+			return PathObjects.createDetectionObject(roi, pathClass);
+		
+		var nucleus1 = ((PathCellObject)o1).getNucleusROI();
+		var nucleus2 = ((PathCellObject)o2).getNucleusROI();
+		ROI nucleus;
+		if (nucleus1 == null)
+			nucleus = nucleus2;
+		else if (nucleus2 == null)
+			nucleus = nucleus1;
+		else
+			nucleus = GeometryTools.geometryToROI(nucleus1.getGeometry().union(nucleus2.getGeometry()), plane);
+		return PathObjects.createCellObject(roi, nucleus, pathClass, null);
+	}
+	
+	private static boolean isSimpleDetection(PathObject pathObject) {
+		return pathObject.isDetection() && !pathObject.isCell() && !pathObject.isTile();
+	}
+	
+	private static boolean boundsIntersect(ROI r1, ROI r2) {
+		return r1.getBoundsX() <= r2.getBoundsX() + r2.getBoundsWidth() &&
+				r2.getBoundsX() <= r1.getBoundsX() + r1.getBoundsWidth() &&
+				r1.getBoundsY() <= r2.getBoundsY() + r2.getBoundsHeight() &&
+				r2.getBoundsY() <= r1.getBoundsY() + r1.getBoundsHeight();
+	}
+	
+	private static List<Candidate> createCandidates(List<PathObject> pathObjects) {
+		List<Candidate> candidates = new ArrayList<>(pathObjects.size());
+		for (var pathObject : pathObjects)
+			candidates.add(new Candidate(candidates.size(), pathObject));
+		return candidates;
 	}
 
 
 	private static Rectangle2D getBounds2D(final ROI pathROI) {
 		return new Rectangle2D.Double(pathROI.getBoundsX(), pathROI.getBoundsY(), pathROI.getBoundsWidth(), pathROI.getBoundsHeight());
 	}
+	
+	
+	/**
+	 * The overlap between two adjacent tiles, shared by both tiles.
+	 */
+	static class TileOverlap {
+		
+		private final ParallelTileObject first, second;
+		private final Rectangle2D region;
+		private final AtomicInteger pending = new AtomicInteger(2);
+		private final AtomicBoolean resolved = new AtomicBoolean(false);
+		
+		private TileOverlap(ParallelTileObject tile1, ParallelTileObject tile2, Rectangle2D region) {
+			// Choose a consistent order for the comparison
+			if (tile1.getROI().getBoundsX() > tile2.getROI().getBoundsX() || 
+					tile1.getROI().getBoundsY() > tile2.getROI().getBoundsY()) {
+				first = tile1;
+				second = tile2;
+			} else {
+				first = tile2;
+				second = tile1;
+			}
+			this.region = region;
+		}
+		
+		/**
+		 * Notify that one of the tiles is complete.
+		 * @return true if both tiles are now complete
+		 */
+		boolean tileComplete() {
+			return pending.decrementAndGet() == 0;
+		}
+		
+		/**
+		 * Resolve overlapping objects between the tiles, if this has not been done already.
+		 * @param policy
+		 * @return the number of overlaps that were resolved
+		 */
+		int resolve(OverlapPolicy policy) {
+			if (!resolved.compareAndSet(false, true))
+				return 0;
+			var lock1 = first.id < second.id ? first.overlapLock : second.overlapLock;
+			var lock2 = first.id < second.id ? second.overlapLock : first.overlapLock;
+			synchronized (lock1) {
+				synchronized (lock2) {
+					return resolveOverlaps(first, second, region, policy);
+				}
+			}
+		}
+		
+	}
+	
+	
+	/**
+	 * An object being tested for overlaps, with its geometry computed lazily.
+	 */
+	private static class Candidate {
+		
+		private final int index;
+		private PathObject pathObject;
+		private ROI roi;
+		private Geometry geometry;
+		private double area = Double.NaN;
+		private boolean isOriginal = true;
+		private boolean removed = false;
+		private int lastVisit = -1;
+		
+		private Candidate(int index, PathObject pathObject) {
+			this.index = index;
+			this.pathObject = pathObject;
+			this.roi = pathObject.getROI();
+		}
+		
+		private Geometry getGeometry() {
+			if (geometry == null) {
+				geometry = roi.getGeometry();
+				area = geometry.getArea();
+			}
+			return geometry;
+		}
+		
+		private double getArea() {
+			getGeometry();
+			return area;
+		}
+		
+		private void replace(PathObject pathObject) {
+			this.pathObject = pathObject;
+			this.roi = pathObject.getROI();
+			this.geometry = null;
+			this.isOriginal = false;
+		}
+		
+	}
+	
+	
+	/**
+	 * Spatial hash used to find candidates with bounding boxes close to a ROI.
+	 * The cell size is based on the average size of the indexed objects.
+	 */
+	private static class SpatialHash {
+		
+		private final double cellSize;
+		private final Map<Long, List<Candidate>> cells = new HashMap<>();
+		
+		private SpatialHash(List<Candidate> candidates) {
+			double sum = 0;
+			for (var c : candidates)
+				sum += Math.max(c.roi.getBoundsWidth(), c.roi.getBoundsHeight());
+			cellSize = Math.max(1.0, sum / Math.max(1, candidates.size()));
+			for (var c : candidates) {
+				for (int y = cell(c.roi.getBoundsY()); y <= cell(c.roi.getBoundsY() + c.roi.getBoundsHeight()); y++) {
+					for (int x = cell(c.roi.getBoundsX()); x <= cell(c.roi.getBoundsX() + c.roi.getBoundsWidth()); x++)
+						cells.computeIfAbsent(key(x, y), k -> new ArrayList<>()).add(c);
+				}
+			}
+		}
+		
+		/**
+		 * Get all candidates in cells that overlap the bounding box of a ROI, in their original order.
+		 * @param roi
+		 * @param visit a value unique to this query, used to avoid returning the same candidate twice
+		 * @return
+		 */
+		private List<Candidate> query(ROI roi, int visit) {
+			List<Candidate> results = new ArrayList<>();
+			for (int y = cell(roi.getBoundsY()); y <= cell(roi.getBoundsY() + roi.getBoundsHeight()); y++) {
+				for (int x = cell(roi.getBoundsX()); x <= cell(roi.getBoundsX() + roi.getBoundsWidth()); x++) {
+					var list = cells.get(key(x, y));
+					if (list == null)
+						continue;
+					for (var c : list) {
+						if (c.lastVisit != visit) {
+							c.lastVisit = visit;
+							results.add(c);
+						}
+					}
+				}
+			}
+			results.sort(Comparator.comparingInt(c -> c.index));
+			return results;
+		}
+		
+		private int cell(double value) {
+			return (int)Math.floor(value / cellSize);
+		}
+		
+		private static long key(int x, int y) {
+			return ((long)x << 32) | (y & 0xffffffffL);
+		}
+		
+	}
 
 
-}
\ No newline at end of file
+}
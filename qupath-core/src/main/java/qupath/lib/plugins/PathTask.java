@@ -23,6 +23,8 @@
 
 package qupath.lib.plugins;
 
+import qupath.lib.regions.ImageRegion;
+
 /**
  * Helper interface to define plugin tasks that require post-processing on a specific thread 
  * (i.e. the EDT, or JavaFX Platform equivalent).
@@ -49,5 +51,15 @@ public interface PathTask extends Runnable {
 	 * @return
 	 */
 	public default String getLastResultsDescription() {return null;}
+	
+	/**
+	 * Get the image region that this task will process, if known.
+	 * This may be used by a {@link PluginRunner} to decide the order in which tasks are run.
+	 * Default implementation returns null.
+	 * 
+	 * @return
+	 * @since 0.3
+	 */
+	public default ImageRegion getRegion() {return null;}
 
 }
@@ -45,6 +45,7 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
@@ -65,6 +66,8 @@ import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ServerTools;
 import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
 import qupath.lib.io.GsonTools;
+import qupath.lib.io.ImageDataJournal;
+import qupath.lib.io.LazyImageData;
 import qupath.lib.io.PathIO;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
@@ -521,6 +524,10 @@ class DefaultProject implements Project<BufferedImage> {
 			getEntryPath(true);
 			if (Files.exists(entry.getImageDataPath()))
 				Files.copy(entry.getImageDataPath(), getImageDataPath(), StandardCopyOption.REPLACE_EXISTING);
+			if (Files.exists(entry.getJournalPath()))
+				Files.copy(entry.getJournalPath(), getJournalPath(), StandardCopyOption.REPLACE_EXISTING);
+			else
+				Files.deleteIfExists(getJournalPath());
 			if (Files.exists(entry.getDataSummaryPath()))
 				Files.copy(entry.getDataSummaryPath(), getDataSummaryPath(), StandardCopyOption.REPLACE_EXISTING);
 			if (getThumbnail() == null && Files.exists(entry.getThumbnailPath()))
@@ -670,6 +677,14 @@ class DefaultProject implements Project<BufferedImage> {
 			return Paths.get(getEntryPath().toString(), "data.qpdata.bkp");
 		}
 		
+		/**
+		 * Get the path used to store changes to the ImageData since the data file was last written in full
+		 * @return
+		 */
+		private Path getJournalPath() {
+			return Paths.get(getEntryPath().toString(), "data.qpjournal");
+		}
+		
 		private Path getDataSummaryPath() {
 			return Paths.get(getEntryPath().toString(), "summary.json");
 		}
@@ -697,8 +712,8 @@ class DefaultProject implements Project<BufferedImage> {
 				return null;
 			ImageData<BufferedImage> imageData = null;
 			if (Files.exists(path)) {
-				try (var stream = Files.newInputStream(path)) {
-					imageData = PathIO.readImageData(stream, null, server, BufferedImage.class);
+				try {
+					imageData = ImageDataJournal.readImageData(path, getJournalPath(), server, BufferedImage.class);
 					imageData.setLastSavedPath(path.toString(), true);
 				} catch (IOException e) {
 					logger.error("Error reading image data from " + path, e);
@@ -730,16 +745,45 @@ class DefaultProject implements Project<BufferedImage> {
 			return imageData;
 		}
 
+		@Override
+		public synchronized LazyImageData<BufferedImage> readImageDataLazily(Executor hierarchyExecutor) throws IOException {
+			Path path = getImageDataPath();
+			if (!Files.exists(path))
+				return LazyImageData.completed(readImageData());
+			ImageServer<BufferedImage> server;
+			try {
+				server = getServerBuilder().build();
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+			if (server == null)
+				return LazyImageData.completed(null);
+			LazyImageData<BufferedImage> lazyData;
+			try {
+				lazyData = ImageDataJournal.readImageDataLazily(path, getJournalPath(), server, BufferedImage.class, hierarchyExecutor);
+			} catch (IOException e) {
+				// Fall back to the default behavior, which can also restore from a backup if needed
+				logger.error("Error reading image data from " + path, e);
+				return LazyImageData.completed(readImageData());
+			}
+			var imageData = lazyData.getImageData();
+			imageData.setLastSavedPath(path.toString(), true);
+			var name = getOriginalImageName();
+			if (name != null)
+				ServerTools.setImageName(server, name);
+			imageData.setProperty(IMAGE_ID, getFullProjectEntryID()); // Required to be able to test for the ID later
+			imageData.setChanged(false);
+			return lazyData;
+		}
+
 		@Override
 		public synchronized void saveImageData(ImageData<BufferedImage> imageData) throws IOException {
 			// Get entry path, creating if needed
 			getEntryPath(true);
 			var pathData = getImageDataPath();
-			
-			// If we already have a file, back it up first
-			var pathBackup = getBackupImageDataPath();
-			if (Files.exists(pathData))
-				Files.move(pathData, pathBackup, StandardCopyOption.REPLACE_EXISTING);
+			var pathJournal = getJournalPath();
 			
 			// Set the entry property, if needed
 			// This handles cases where an ImageData is being moved to become part of this project, 
@@ -750,23 +794,35 @@ class DefaultProject implements Project<BufferedImage> {
 				imageData.setProperty(IMAGE_ID, id);
 			}
 			
-			// Write to a temp file first
 			long timestamp = 0L;
-			try (var stream = Files.newOutputStream(pathData)) {
-				logger.debug("Saving image data to {}", pathData);
-				PathIO.writeImageData(stream, imageData);
+			if (ImageDataJournal.appendChanges(pathData, pathJournal, imageData)) {
+				// Only the changes since the last save needed to be written
+				logger.debug("Saving image data changes to {}", pathJournal);
 				imageData.setLastSavedPath(pathData.toString(), true);
-				timestamp = Files.getLastModifiedTime(pathData).toMillis();
-				// Delete backup file if it exists
-				if (Files.exists(pathBackup))
-					Files.delete(pathBackup);
-			} catch (IOException e) {
-				// Try to restore the backup
-				if (Files.exists(pathBackup)) {
-					logger.warn("Exception writing image file - attempting to restore {} from backup", pathData);
-					Files.move(pathBackup, pathData, StandardCopyOption.REPLACE_EXISTING);				
+				timestamp = Files.getLastModifiedTime(pathJournal).toMillis();
+			} else {
+				// If we already have a file, back it up first
+				var pathBackup = getBackupImageDataPath();
+				if (Files.exists(pathData))
+					Files.move(pathData, pathBackup, StandardCopyOption.REPLACE_EXISTING);
+				
+				// Write the full data file - this also compacts any journal
+				try {
+					logger.debug("Saving image data to {}", pathData);
+					ImageDataJournal.writeImageData(pathData, pathJournal, imageData);
+					imageData.setLastSavedPath(pathData.toString(), true);
+					timestamp = Files.getLastModifiedTime(pathData).toMillis();
+					// Delete backup file if it exists
+					if (Files.exists(pathBackup))
+						Files.delete(pathBackup);
+				} catch (IOException e) {
+					// Try to restore the backup
+					if (Files.exists(pathBackup)) {
+						logger.warn("Exception writing image file - attempting to restore {} from backup", pathData);
+						Files.move(pathBackup, pathData, StandardCopyOption.REPLACE_EXISTING);				
+					}
+					throw e;
 				}
-				throw e;
 			}
 			
 			// If successful, write the server (including metadata)
@@ -799,11 +855,8 @@ class DefaultProject implements Project<BufferedImage> {
 		@Override
 		public synchronized PathObjectHierarchy readHierarchy() throws IOException {
 			var path = getImageDataPath();
-			if (Files.exists(path)) {
-				try (var stream = Files.newInputStream(path)) {
-					return PathIO.readHierarchy(stream);
-				}
-			}
+			if (Files.exists(path))
+				return ImageDataJournal.readHierarchy(path, getJournalPath());
 			return new PathObjectHierarchy();
 		}
 		
@@ -29,10 +29,12 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
 
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.io.LazyImageData;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
 import qupath.lib.projects.ResourceManager.Manager;
 
@@ -192,6 +194,23 @@ public interface ProjectImageEntry<T> {
 	 */
 	public ImageData<T> readImageData() throws IOException;
 	
+	/**
+	 * Read the {@link ImageData} associated with this entry, potentially returning before all objects have been added to the hierarchy.
+	 * <p>
+	 * This can be used to display annotations quickly for images with very large numbers of detections.
+	 * The default implementation simply calls {@link #readImageData()}.
+	 * 
+	 * @param hierarchyExecutor executor used to add objects to the hierarchy and fire hierarchy events 
+	 *                          (e.g. one that runs tasks on the JavaFX application thread)
+	 * @return
+	 * @throws IOException
+	 * @see #readImageData()
+	 * @since 0.3
+	 */
+	public default LazyImageData<T> readImageDataLazily(Executor hierarchyExecutor) throws IOException {
+		return LazyImageData.completed(readImageData());
+	}
+	
 	/**
 	 * Save the {@link ImageData} for this entry using the default storage location for the project.
 	 * @param imageData 
@@ -0,0 +1,533 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.roi;
+
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Rasterize ROIs into primitive label arrays using a scanline algorithm.
+ * <p>
+ * This is intended for creating labeled images containing very large numbers of objects, for which painting
+ * with {@link java.awt.Graphics2D} can be a bottleneck. Coordinates are read directly from polygon vertices or
+ * JTS geometries, and labels are written into an {@code int[]} or {@code byte[]} array without creating any
+ * {@link java.awt.Shape}.
+ * <p>
+ * A pixel is filled if its center falls inside an area ROI (using the even-odd rule). Lines and boundaries are drawn
+ * by filling all pixels with centers within half the line thickness of a line segment. Filled areas therefore match
+ * those obtained with {@link java.awt.Graphics2D} using {@link java.awt.RenderingHints#VALUE_STROKE_PURE}, while lines
+ * may differ by up to one pixel from the strokes drawn by Java2D.
+ * <p>
+ * Instances are not thread-safe, but may be reused to avoid reallocating internal buffers.
+ *
+ * @since 0.3
+ */
+public class ScanlineRasterizer {
+
+	private int width;
+	private int height;
+
+	private double originX = 0;
+	private double originY = 0;
+	private double downsample = 1.0;
+
+	private int[] intTarget;
+	private byte[] byteTarget;
+	private int intValue;
+	private byte byteValue;
+
+	// Polygon edges, in pixel coordinates
+	private int nEdges = 0;
+	private double[] edgeX = new double[64];
+	private double[] edgeYMin = new double[64];
+	private double[] edgeSlope = new double[64];
+	private int[] edgeRowStart = new int[64];
+	private int[] edgeRowEnd = new int[64];
+	private int[] edgeNext = new int[64];
+	private int minRow;
+	private int maxRow;
+
+	private int[] rowHeads = new int[0];
+	private int[] active = new int[64];
+	private double[] crossings = new double[64];
+
+	/**
+	 * Create a rasterizer for an image with the specified size.
+	 * @param width
+	 * @param height
+	 */
+	public ScanlineRasterizer(int width, int height) {
+		setSize(width, height);
+	}
+
+	/**
+	 * Set the size of the image being rasterized.
+	 * @param width
+	 * @param height
+	 */
+	public void setSize(int width, int height) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Width and height must be > 0");
+		this.width = width;
+		this.height = height;
+		if (rowHeads.length < height)
+			rowHeads = new int[height];
+	}
+
+	/**
+	 * Set the region of the full-resolution image that corresponds to the image being rasterized.
+	 * @param x x-coordinate of the top left of the region
+	 * @param y y-coordinate of the top left of the region
+	 * @param downsample downsample factor for the region
+	 */
+	public void setRegion(double x, double y, double downsample) {
+		if (!(downsample > 0))
+			throw new IllegalArgumentException("Downsample must be > 0");
+		this.originX = x;
+		this.originY = y;
+		this.downsample = downsample;
+	}
+
+	/**
+	 * Get the width of the image being rasterized.
+	 * @return
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the image being rasterized.
+	 * @return
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Paint a ROI into a label array. Area ROIs are filled, lines are drawn and points are set as single pixels.
+	 * @param roi the ROI to paint
+	 * @param lineThickness the thickness of lines, in pixels of the image being rasterized
+	 * @param labels label array, in row-major order with length at least width x height
+	 * @param label the label value to set
+	 */
+	public void paint(ROI roi, double lineThickness, int[] labels, int label) {
+		setTarget(labels, label);
+		paint(roi, lineThickness);
+	}
+
+	/**
+	 * Paint a ROI into a byte array. Area ROIs are filled, lines are drawn and points are set as single pixels.
+	 * @param roi the ROI to paint
+	 * @param lineThickness the thickness of lines, in pixels of the image being rasterized
+	 * @param labels label array, in row-major order with length at least width x height
+	 * @param label the label value to set; this will be cast to a byte
+	 */
+	public void paint(ROI roi, double lineThickness, byte[] labels, int label) {
+		setTarget(labels, label);
+		paint(roi, lineThickness);
+	}
+
+	/**
+	 * Paint the boundary of an area ROI into a label array. Other ROIs are ignored.
+	 * @param roi the ROI to paint
+	 * @param lineThickness the thickness of the boundary, in pixels of the image being rasterized
+	 * @param labels label array, in row-major order with length at least width x height
+	 * @param label the label value to set
+	 */
+	public void paintBoundary(ROI roi, double lineThickness, int[] labels, int label) {
+		setTarget(labels, label);
+		if (roi.isArea())
+			drawLines(roi, lineThickness);
+	}
+
+	/**
+	 * Paint the boundary of an area ROI into a byte array. Other ROIs are ignored.
+	 * @param roi the ROI to paint
+	 * @param lineThickness the thickness of the boundary, in pixels of the image being rasterized
+	 * @param labels label array, in row-major order with length at least width x height
+	 * @param label the label value to set; this will be cast to a byte
+	 */
+	public void paintBoundary(ROI roi, double lineThickness, byte[] labels, int label) {
+		setTarget(labels, label);
+		if (roi.isArea())
+			drawLines(roi, lineThickness);
+	}
+
+	private void setTarget(int[] labels, int label) {
+		if (labels.length < width * height)
+			throw new IllegalArgumentException("Label array length " + labels.length + " is too short for " + width + "x" + height + " image");
+		this.intTarget = labels;
+		this.byteTarget = null;
+		this.intValue = label;
+	}
+
+	private void setTarget(byte[] labels, int label) {
+		if (labels.length < width * height)
+			throw new IllegalArgumentException("Label array length " + labels.length + " is too short for " + width + "x" + height + " image");
+		this.intTarget = null;
+		this.byteTarget = labels;
+		this.byteValue = (byte)label;
+	}
+
+	private void paint(ROI roi, double lineThickness) {
+		if (roi.isArea())
+			fillArea(roi);
+		else if (roi.isLine())
+			drawLines(roi, lineThickness);
+		else if (roi.isPoint())
+			drawPoints(roi);
+	}
+
+	private double toPixelX(double x) {
+		return (x - originX) / downsample;
+	}
+
+	private double toPixelY(double y) {
+		return (y - originY) / downsample;
+	}
+
+	/**
+	 * Check whether a ROI might touch the image, with an optional padding in pixels.
+	 */
+	private boolean intersectsImage(ROI roi, double pad) {
+		return toPixelX(roi.getBoundsX() + roi.getBoundsWidth()) + pad >= 0 &&
+				toPixelY(roi.getBoundsY() + roi.getBoundsHeight()) + pad >= 0 &&
+				toPixelX(roi.getBoundsX()) - pad < width &&
+				toPixelY(roi.getBoundsY()) - pad < height;
+	}
+
+	/**
+	 * Fill pixels in a single row, from x0 (inclusive) to x1 (exclusive).
+	 */
+	private void fillPixels(int row, int x0, int x1) {
+		if (x0 < 0)
+			x0 = 0;
+		if (x1 > width)
+			x1 = width;
+		if (x0 >= x1)
+			return;
+		int offset = row * width;
+		if (intTarget != null)
+			Arrays.fill(intTarget, offset + x0, offset + x1, intValue);
+		else
+			Arrays.fill(byteTarget, offset + x0, offset + x1, byteValue);
+	}
+
+
+	private void fillArea(ROI roi) {
+		if (!intersectsImage(roi, 1))
+			return;
+
+		if (roi instanceof RectangleROI) {
+			double x0 = toPixelX(roi.getBoundsX());
+			double y0 = toPixelY(roi.getBoundsY());
+			double x1 = toPixelX(roi.getBoundsX() + roi.getBoundsWidth());
+			double y1 = toPixelY(roi.getBoundsY() + roi.getBoundsHeight());
+			int col0 = (int)Math.ceil(x0 - 0.5);
+			int col1 = (int)Math.ceil(x1 - 0.5);
+			int row1 = Math.min(height, (int)Math.ceil(y1 - 0.5));
+			for (int row = Math.max(0, (int)Math.ceil(y0 - 0.5)); row < row1; row++)
+				fillPixels(row, col0, col1);
+			return;
+		}
+
+		nEdges = 0;
+		minRow = height;
+		maxRow = 0;
+		if (roi instanceof PolygonROI)
+			addRing(((PolygonROI)roi).getVertices());
+		else
+			addGeometryEdges(roi.getGeometry());
+		scanEdges();
+	}
+
+	private void addRing(Vertices vertices) {
+		int n = vertices.size();
+		for (int i = 0; i < n; i++) {
+			int next = i == n-1 ? 0 : i + 1;
+			addEdge(vertices.getX(i), vertices.getY(i), vertices.getX(next), vertices.getY(next));
+		}
+	}
+
+	private void addRing(CoordinateSequence coords) {
+		int n = coords.size();
+		for (int i = 0; i < n; i++) {
+			int next = i == n-1 ? 0 : i + 1;
+			addEdge(coords.getX(i), coords.getY(i), coords.getX(next), coords.getY(next));
+		}
+	}
+
+	private void addGeometryEdges(Geometry geometry) {
+		if (geometry instanceof Polygon) {
+			var polygon = (Polygon)geometry;
+			addRing(polygon.getExteriorRing().getCoordinateSequence());
+			for (int i = 0; i < polygon.getNumInteriorRing(); i++)
+				addRing(polygon.getInteriorRingN(i).getCoordinateSequence());
+		} else if (geometry instanceof GeometryCollection) {
+			for (int i = 0; i < geometry.getNumGeometries(); i++)
+				addGeometryEdges(geometry.getGeometryN(i));
+		}
+	}
+
+	private void addEdge(double x0, double y0, double x1, double y1) {
+		double u0 = toPixelX(x0);
+		double v0 = toPixelY(y0);
+		double u1 = toPixelX(x1);
+		double v1 = toPixelY(y1);
+		if (v0 == v1)
+			return;
+		if (v0 > v1) {
+			double temp = u0;
+			u0 = u1;
+			u1 = temp;
+			temp = v0;
+			v0 = v1;
+			v1 = temp;
+		}
+		// Rows with centers in the half-open interval [v0, v1) cross the edge
+		int rowStart = Math.max(0, (int)Math.ceil(v0 - 0.5));
+		int rowEnd = Math.min(height, (int)Math.ceil(v1 - 0.5));
+		if (rowStart >= rowEnd)
+			return;
+
+		if (nEdges == edgeX.length) {
+			int n = nEdges * 2;
+			edgeX = Arrays.copyOf(edgeX, n);
+			edgeYMin = Arrays.copyOf(edgeYMin, n);
+			edgeSlope = Arrays.copyOf(edgeSlope, n);
+			edgeRowStart = Arrays.copyOf(edgeRowStart, n);
+			edgeRowEnd = Arrays.copyOf(edgeRowEnd, n);
+			edgeNext = Arrays.copyOf(edgeNext, n);
+			active = Arrays.copyOf(active, n);
+			crossings = Arrays.copyOf(crossings, n);
+		}
+		edgeX[nEdges] = u0;
+		edgeYMin[nEdges] = v0;
+		edgeSlope[nEdges] = (u1 - u0) / (v1 - v0);
+		edgeRowStart[nEdges] = rowStart;
+		edgeRowEnd[nEdges] = rowEnd;
+		nEdges++;
+		minRow = Math.min(minRow, rowStart);
+		maxRow = Math.max(maxRow, rowEnd);
+	}
+
+	/**
+	 * Fill the polygon defined by the current edges, using an active edge list.
+	 */
+	private void scanEdges() {
+		if (nEdges < 2)
+			return;
+
+		// Bucket edges according to the first row they cross
+		Arrays.fill(rowHeads, minRow, maxRow, -1);
+		for (int e = 0; e < nEdges; e++) {
+			int row = edgeRowStart[e];
+			edgeNext[e] = rowHeads[row];
+			rowHeads[row] = e;
+		}
+
+		int nActive = 0;
+		for (int row = minRow; row < maxRow; row++) {
+			for (int e = rowHeads[row]; e >= 0; e = edgeNext[e])
+				active[nActive++] = e;
+
+			// Compute crossings & discard edges that are no longer needed
+			double yc = row + 0.5;
+			int nCrossings = 0;
+			for (int i = 0; i < nActive; i++) {
+				int e = active[i];
+				if (edgeRowEnd[e] <= row)
+					continue;
+				active[nCrossings] = e;
+				crossings[nCrossings++] = edgeX[e] + (yc - edgeYMin[e]) * edgeSlope[e];
+			}
+			nActive = nCrossings;
+
+			sortCrossings(nCrossings);
+
+			// Fill pixels with centers in [x0, x1)
+			for (int i = 0; i + 1 < nCrossings; i += 2)
+				fillPixels(row, (int)Math.ceil(crossings[i] - 0.5), (int)Math.ceil(crossings[i+1] - 0.5));
+		}
+	}
+
+	private void sortCrossings(int n) {
+		if (n > 32) {
+			Arrays.sort(crossings, 0, n);
+			return;
+		}
+		// Insertion sort is faster for the small number of crossings we usually have
+		for (int i = 1; i < n; i++) {
+			double val = crossings[i];
+			int j = i - 1;
+			while (j >= 0 && crossings[j] > val) {
+				crossings[j+1] = crossings[j];
+				j--;
+			}
+			crossings[j+1] = val;
+		}
+	}
+
+
+	private void drawLines(ROI roi, double lineThickness) {
+		double radius = Math.max(0.5, lineThickness / 2.0);
+		if (!intersectsImage(roi, radius + 1))
+			return;
+
+		if (roi instanceof LineROI) {
+			var line = (LineROI)roi;
+			drawSegment(line.getX1(), line.getY1(), line.getX2(), line.getY2(), radius);
+		} else if (roi instanceof RectangleROI) {
+			double x0 = roi.getBoundsX();
+			double y0 = roi.getBoundsY();
+			double x1 = x0 + roi.getBoundsWidth();
+			double y1 = y0 + roi.getBoundsHeight();
+			drawSegment(x0, y0, x1, y0, radius);
+			drawSegment(x1, y0, x1, y1, radius);
+			drawSegment(x1, y1, x0, y1, radius);
+			drawSegment(x0, y1, x0, y0, radius);
+		} else if (roi instanceof PolygonROI) {
+			drawVertices(((PolygonROI)roi).getVertices(), true, radius);
+		} else if (roi instanceof PolylineROI) {
+			drawVertices(((PolylineROI)roi).getVertices(), false, radius);
+		} else
+			drawGeometry(roi.getGeometry(), radius);
+	}
+
+	private void drawVertices(Vertices vertices, boolean closed, double radius) {
+		int n = vertices.size();
+		if (n == 1)
+			drawSegment(vertices.getX(0), vertices.getY(0), vertices.getX(0), vertices.getY(0), radius);
+		for (int i = 0; i < n - 1; i++)
+			drawSegment(vertices.getX(i), vertices.getY(i), vertices.getX(i+1), vertices.getY(i+1), radius);
+		if (closed && n > 2)
+			drawSegment(vertices.getX(n-1), vertices.getY(n-1), vertices.getX(0), vertices.getY(0), radius);
+	}
+
+	private void drawGeometry(Geometry geometry, double radius) {
+		if (geometry instanceof LineString) {
+			var coords = ((LineString)geometry).getCoordinateSequence();
+			for (int i = 0; i < coords.size() - 1; i++)
+				drawSegment(coords.getX(i), coords.getY(i), coords.getX(i+1), coords.getY(i+1), radius);
+		} else if (geometry instanceof Polygon) {
+			var polygon = (Polygon)geometry;
+			drawGeometry(polygon.getExteriorRing(), radius);
+			for (int i = 0; i < polygon.getNumInteriorRing(); i++)
+				drawGeometry(polygon.getInteriorRingN(i), radius);
+		} else if (geometry instanceof GeometryCollection) {
+			for (int i = 0; i < geometry.getNumGeometries(); i++)
+				drawGeometry(geometry.getGeometryN(i), radius);
+		}
+	}
+
+	/**
+	 * Fill all pixels with centers within a specified distance of a line segment.
+	 * For each row, the pixels to fill form a single interval - since the region is convex - which is the union
+	 * of the intervals for the disks at each end and the band along the segment.
+	 */
+	private void drawSegment(double x0, double y0, double x1, double y1, double radius) {
+		double u0 = toPixelX(x0);
+		double v0 = toPixelY(y0);
+		double u1 = toPixelX(x1);
+		double v1 = toPixelY(y1);
+		if (Math.max(u0, u1) + radius < 0 || Math.min(u0, u1) - radius >= width)
+			return;
+
+		int rowStart = Math.max(0, (int)Math.ceil(Math.min(v0, v1) - radius - 0.5));
+		int rowEnd = Math.min(height - 1, (int)Math.floor(Math.max(v0, v1) + radius - 0.5));
+
+		double dx = u1 - u0;
+		double dy = v1 - v0;
+		double length = Math.sqrt(dx*dx + dy*dy);
+		double ux = length == 0 ? 0 : dx / length;
+		double uy = length == 0 ? 0 : dy / length;
+		double r2 = radius * radius;
+
+		for (int row = rowStart; row <= rowEnd; row++) {
+			double yc = row + 0.5;
+			double lo = Double.POSITIVE_INFINITY;
+			double hi = Double.NEGATIVE_INFINITY;
+
+			// Disks at each end
+			double d = yc - v0;
+			if (d*d <= r2) {
+				double half = Math.sqrt(r2 - d*d);
+				lo = Math.min(lo, u0 - half);
+				hi = Math.max(hi, u0 + half);
+			}
+			d = yc - v1;
+			if (d*d <= r2) {
+				double half = Math.sqrt(r2 - d*d);
+				lo = Math.min(lo, u1 - half);
+				hi = Math.max(hi, u1 + half);
+			}
+
+			// Band along the segment, where 0 <= along <= length and -radius <= across <= radius
+			if (length > 0) {
+				double along0 = -u0 * ux + (yc - v0) * uy;
+				double across0 = u0 * uy + (yc - v0) * ux;
+				double bandLo = Double.NEGATIVE_INFINITY;
+				double bandHi = Double.POSITIVE_INFINITY;
+				if (ux != 0) {
+					double a = -along0 / ux;
+					double b = (length - along0) / ux;
+					bandLo = Math.min(a, b);
+					bandHi = Math.max(a, b);
+				} else if (along0 < 0 || along0 > length)
+					bandLo = Double.POSITIVE_INFINITY;
+				if (uy != 0) {
+					double a = (across0 + radius) / uy;
+					double b = (across0 - radius) / uy;
+					bandLo = Math.max(bandLo, Math.min(a, b));
+					bandHi = Math.min(bandHi, Math.max(a, b));
+				} else if (across0 < -radius || across0 > radius)
+					bandLo = Double.POSITIVE_INFINITY;
+				if (bandLo <= bandHi) {
+					lo = Math.min(lo, bandLo);
+					hi = Math.max(hi, bandHi);
+				}
+			}
+
+			if (lo <= hi)
+				fillPixels(row, (int)Math.ceil(lo - 0.5), (int)Math.floor(hi - 0.5) + 1);
+		}
+	}
+
+
+	private void drawPoints(ROI roi) {
+		for (var p : roi.getAllPoints()) {
+			int x = (int)toPixelX(p.getX());
+			int y = (int)toPixelY(p.getY());
+			if (x >= 0 && x < width && y >= 0 && y < height)
+				fillPixels(y, x, x + 1);
+		}
+	}
+
+}
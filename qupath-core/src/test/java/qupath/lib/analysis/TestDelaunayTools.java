@@ -0,0 +1,178 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.triangulate.quadedge.QuadEdge;
+import org.locationtech.jts.triangulate.quadedge.QuadEdgeSubdivision;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestDelaunayTools {
+	
+	@Test
+	public void test_coordinateMap() {
+		var map = new CoordinateMap<String>(2);
+		assertNull(map.put(1.0, 2.0, "a"));
+		assertNull(map.put(2.0, 1.0, "b"));
+		assertEquals("a", map.put(new Coordinate(1.0, 2.0), "c"));
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1.0, 2.0));
+		assertEquals("b", map.get(new Coordinate(2.0, 1.0)));
+		assertNull(map.get(2.0, 2.0));
+		
+		// Zero should match regardless of sign
+		map.put(0.0, -0.0, "d");
+		assertEquals("d", map.get(-0.0, 0.0));
+		
+		// Check resizing, and that coordinates retain their order
+		for (int i = 0; i < 1000; i++)
+			map.put(i + 0.5, -i, Integer.toString(i));
+		assertEquals(1003, map.size());
+		for (int i = 0; i < 1000; i++)
+			assertEquals(Integer.toString(i), map.get(i + 0.5, -i));
+		var coords = map.getCoordinates();
+		assertEquals(new Coordinate(1.0, 2.0), coords.get(0));
+		assertEquals(new Coordinate(999.5, -999), coords.get(coords.size()-1));
+	}
+	
+	@Test
+	public void test_divideAndConquerDelaunay() {
+		var rand = new Random(100L);
+		for (boolean grid : new boolean[] {false, true}) {
+			var points = new TreeSet<Coordinate>();
+			while (points.size() < 200) {
+				if (grid)
+					points.add(new Coordinate(rand.nextInt(20), rand.nextInt(20)));
+				else
+					points.add(new Coordinate(rand.nextDouble() * 100, rand.nextDouble() * 100));
+			}
+			double[] x = points.stream().mapToDouble(c -> c.x).toArray();
+			double[] y = points.stream().mapToDouble(c -> c.y).toArray();
+			var delaunay = DivideAndConquerDelaunay.triangulate(x, y, true);
+			
+			// Every triangle should have an empty circumcircle
+			int nTriangles = 0;
+			for (int v = 0; v < x.length; v++) {
+				int first = delaunay.vertexEdge(v);
+				int e = first;
+				do {
+					int next = delaunay.onext(e);
+					int b = delaunay.dest(e);
+					int c = delaunay.dest(next);
+					if (DivideAndConquerDelaunay.orientation(x[v], y[v], x[b], y[b], x[c], y[c]) > 0) {
+						nTriangles++;
+						for (int i = 0; i < x.length; i++)
+							assertTrue(DivideAndConquerDelaunay.inCircle(x[v], y[v], x[b], y[b], x[c], y[c], x[i], y[i]) <= 0);
+					}
+					e = next;
+				} while (e != first);
+			}
+			// Each triangle is found from each of its 3 vertices
+			assertTrue(nTriangles > 0);
+			assertEquals(0, nTriangles % 3);
+		}
+		
+		assertThrows(IllegalArgumentException.class, () -> DivideAndConquerDelaunay.triangulate(new double[] {1, 0, 2}, new double[] {0, 0, 0}, false));
+	}
+	
+	@Test
+	public void test_subdivisionNeighbors() {
+		var rand = new Random(200L);
+		var coords = new ArrayList<Coordinate>();
+		for (int i = 0; i < 5000; i++)
+			coords.add(new Coordinate(rand.nextDouble() * 1000, rand.nextDouble() * 1000));
+		
+		// Random coordinates should give the same triangulation with either method
+		var incremental = DelaunayTools.createSubdivision(coords, 0.001, false);
+		var divideAndConquer = DelaunayTools.createSubdivision(coords, 0.001, true);
+		var expected = getNeighbors(incremental);
+		assertEquals(coords.size(), expected.size());
+		assertEquals(expected, getNeighbors(divideAndConquer));
+		
+		// Check the Voronoi faces can be computed
+		assertEquals(incremental.getVoronoiCellPolygons(GeometryTools.getDefaultFactory()).size(), 
+				divideAndConquer.getVoronoiCellPolygons(GeometryTools.getDefaultFactory()).size());
+	}
+	
+	@Test
+	public void test_subdivisionFromCentroids() {
+		var rand = new Random(300L);
+		var plane = ImagePlane.getDefaultPlane();
+		List<PathObject> pathObjects = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			pathObjects.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(rand.nextDouble() * 1000, rand.nextDouble() * 1000, 5, 5, plane)));
+		
+		var subdivision = DelaunayTools.createFromCentroids(pathObjects, false);
+		var neighbors = subdivision.getAllNeighbors();
+		assertEquals(pathObjects.size(), neighbors.size());
+		for (var pathObject : pathObjects) {
+			var list = neighbors.get(pathObject);
+			assertFalse(list.isEmpty());
+			// Neighbors should be sorted by distance (allowing for centroids being rounded)
+			for (int i = 1; i < list.size(); i++)
+				assertTrue(distance(pathObject, list.get(i-1)) <= distance(pathObject, list.get(i)) + 0.1);
+			// Neighbor relationships should be symmetric
+			for (var neighbor : list)
+				assertTrue(neighbors.get(neighbor).contains(pathObject));
+		}
+	}
+	
+	private static double distance(PathObject p1, PathObject p2) {
+		var r1 = p1.getROI();
+		var r2 = p2.getROI();
+		return Math.hypot(r1.getCentroidX() - r2.getCentroidX(), r1.getCentroidY() - r2.getCentroidY());
+	}
+	
+	private static Map<Coordinate, Set<Coordinate>> getNeighbors(QuadEdgeSubdivision subdivision) {
+		var map = new HashMap<Coordinate, Set<Coordinate>>();
+		@SuppressWarnings("unchecked")
+		var edges = (List<QuadEdge>)subdivision.getVertexUniqueEdges(false);
+		for (var edge : edges) {
+			var neighbors = new ArrayList<Coordinate>();
+			var next = edge;
+			do {
+				neighbors.add(next.dest().getCoordinate());
+			} while ((next = next.oNext()) != edge);
+			map.put(edge.orig().getCoordinate(), neighbors.stream().collect(Collectors.toSet()));
+		}
+		return map;
+	}
+
+}
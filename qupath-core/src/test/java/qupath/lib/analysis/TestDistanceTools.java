@@ -25,14 +25,22 @@ package qupath.lib.analysis;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 
 import qupath.lib.geom.Point2;
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.classes.PathClassFactory;
 import qupath.lib.objects.classes.PathClassFactory.StandardPathClasses;
 import qupath.lib.regions.ImagePlane;
@@ -154,4 +162,110 @@ public class TestDistanceTools {
 
 	}
 	
+	@Test
+	public void test_distanceEngine() {
+		var imageData = new ImageData<>(new WrappedBufferedImageServer("Empty", new BufferedImage(500, 500, BufferedImage.TYPE_BYTE_GRAY)));
+		var hierarchy = imageData.getHierarchy();
+		var tumor = PathClassFactory.getPathClass(StandardPathClasses.TUMOR);
+		var stroma = PathClassFactory.getPathClass(StandardPathClasses.STROMA);
+		
+		var planes = Arrays.asList(ImagePlane.getDefaultPlane(), ImagePlane.getPlane(1, 0));
+		List<PathObject> annotations = new ArrayList<>();
+		for (var plane : planes) {
+			annotations.add(PathObjects.createAnnotationObject(ROIs.createRectangleROI(50, 50, 100, 100, plane), tumor));
+			annotations.add(PathObjects.createAnnotationObject(ROIs.createEllipseROI(300, 200, 100, 150, plane), stroma));
+			annotations.add(PathObjects.createAnnotationObject(ROIs.createRectangleROI(200, 400, 50, 50, plane), stroma));
+		}
+		hierarchy.addPathObjects(annotations);
+		
+		var rand = new Random(100L);
+		List<PathObject> detections = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			var plane = planes.get(rand.nextInt(planes.size()));
+			detections.add(PathObjects.createDetectionObject(
+					ROIs.createEllipseROI(rand.nextInt(490), rand.nextInt(490), 10, 10, plane),
+					rand.nextBoolean() ? tumor : stroma));
+		}
+		hierarchy.addPathObjects(detections);
+		
+		var engine = new DistanceEngine();
+		engine.detectionToAnnotationDistances(imageData, false);
+		engine.detectionCentroidDistances(imageData, false);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getAnnotationObjects(), false, tumor);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getAnnotationObjects(), false, stroma);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getDetectionObjects(), true, tumor);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getDetectionObjects(), true, stroma);
+		
+		// Reclassify some objects
+		var changed = new ArrayList<PathObject>();
+		changed.add(annotations.get(2));
+		for (int i = 0; i < detections.size(); i += 7)
+			changed.add(detections.get(i));
+		for (var pathObject : changed)
+			pathObject.setPathClass(pathObject.getPathClass() == tumor ? stroma : tumor);
+		hierarchy.fireObjectClassificationsChangedEvent(this, changed);
+		
+		// Replace some detections
+		var removed = detections.subList(0, 20);
+		var added = new ArrayList<PathObject>();
+		for (var detection : removed) {
+			added.add(PathObjects.createDetectionObject(
+					ROIs.createEllipseROI(rand.nextInt(490), rand.nextInt(490), 10, 10, detection.getROI().getImagePlane()),
+					detection.getPathClass()));
+		}
+		hierarchy.removeObjects(new ArrayList<>(removed), false);
+		hierarchy.addPathObjects(added);
+		
+		engine.detectionToAnnotationDistances(imageData, false);
+		engine.detectionCentroidDistances(imageData, false);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getAnnotationObjects(), false, tumor);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getAnnotationObjects(), false, stroma);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getDetectionObjects(), true, tumor);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getDetectionObjects(), true, stroma);
+		
+		// The static helpers should give the same results
+		hierarchy.getDetectionObjects().forEach(p -> p.getMeasurementList().clear());
+		DistanceTools.detectionToAnnotationDistances(imageData, false);
+		DistanceTools.detectionCentroidDistances(imageData, false);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getAnnotationObjects(), false, tumor);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getDetectionObjects(), true, stroma);
+		
+		// Reclassifications should be found even without an event
+		for (int i = 1; i < detections.size(); i += 5) {
+			var detection = detections.get(i);
+			detection.setPathClass(detection.getPathClass() == tumor ? stroma : tumor);
+		}
+		DistanceTools.detectionCentroidDistances(imageData, false);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getDetectionObjects(), true, tumor);
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getDetectionObjects(), true, stroma);
+		
+		// Measurements should be removed if there are no longer any targets on the plane
+		var plane = planes.get(1);
+		var stromaAnnotations = annotations.stream()
+				.filter(p -> p.getPathClass() == stroma && p.getROI().getImagePlane().equals(plane))
+				.collect(Collectors.toList());
+		hierarchy.removeObjects(stromaAnnotations, false);
+		DistanceTools.detectionToAnnotationDistances(imageData, false);
+		String name = "Distance to annotation " + stroma + " px";
+		for (var detection : hierarchy.getDetectionObjects()) {
+			boolean hasTargets = !detection.getROI().getImagePlane().equals(plane);
+			assertEquals(hasTargets, detection.getMeasurementList().containsNamedMeasurement(name));
+		}
+		checkDistances(hierarchy.getDetectionObjects(), hierarchy.getAnnotationObjects(), false, tumor);
+	}
+	
+	private static void checkDistances(Collection<PathObject> detections, Collection<PathObject> targets, boolean centroids, PathClass pathClass) {
+		var filtered = targets.stream().filter(p -> p.getPathClass() == pathClass).collect(Collectors.toList());
+		if (centroids)
+			DistanceTools.centroidToCentroidDistance2D(detections, filtered, 1.0, 1.0, "Expected");
+		else
+			DistanceTools.centroidToBoundsDistance2D(detections, filtered, 1.0, 1.0, "Expected");
+		String name = "Distance to " + (centroids ? "detection " : "annotation ") + pathClass + " px";
+		for (var detection : detections) {
+			var ml = detection.getMeasurementList();
+			assertTrue(ml.containsNamedMeasurement(name));
+			assertEquals(ml.getMeasurementValue("Expected"), ml.getMeasurementValue(name), 1e-6);
+		}
+	}
+	
 }
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.classifiers.pixel;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+@SuppressWarnings("javadoc")
+public class TestPixelClassificationTileCache {
+
+	private static TileRequest getFirstTile() {
+		var server = new WrappedBufferedImageServer("Test", new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_GRAY));
+		return server.getTileRequestManager().getAllTileRequests().iterator().next();
+	}
+
+	@Test
+	public void test_computeOnce() throws Exception {
+		var cache = new PixelClassificationTileCache(10 * 1024 * 1024);
+		var tile = getFirstTile();
+		var counter = new AtomicInteger();
+		var latch = new CountDownLatch(1);
+		Callable<BufferedImage> loader = () -> {
+			counter.incrementAndGet();
+			latch.await();
+			return new BufferedImage(tile.getTileWidth(), tile.getTileHeight(), BufferedImage.TYPE_BYTE_GRAY);
+		};
+
+		int nThreads = 8;
+		var pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			var futures = new ArrayList<Future<BufferedImage>>();
+			for (int i = 0; i < nThreads; i++)
+				futures.add(pool.submit(() -> cache.get("classifier", tile, loader)));
+			latch.countDown();
+			var first = futures.get(0).get();
+			for (var future : futures)
+				assertSame(first, future.get());
+			assertEquals(1, counter.get());
+			assertSame(first, cache.getIfPresent("classifier", tile));
+		} finally {
+			pool.shutdown();
+		}
+
+		// Tiles for different classifiers must be kept separate
+		assertNull(cache.getIfPresent("other", tile));
+		cache.invalidate("classifier");
+		assertNull(cache.getIfPresent("classifier", tile));
+	}
+
+	@Test
+	public void test_loaderFailures() {
+		var cache = new PixelClassificationTileCache(10 * 1024 * 1024);
+		var tile = getFirstTile();
+		assertThrows(IOException.class, () -> cache.get("classifier", tile, () -> {
+			throw new IOException("Test exception");
+		}));
+		assertEquals(0, cache.size());
+		// A null tile is returned, but not cached
+		assertNull(assertDoesNotThrow(() -> cache.get("classifier", tile, () -> null)));
+		assertEquals(0, cache.size());
+	}
+
+}
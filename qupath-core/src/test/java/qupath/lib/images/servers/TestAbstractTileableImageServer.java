@@ -0,0 +1,230 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.color.ColorModelFactory;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestAbstractTileableImageServer {
+	
+	private static final RegionRequest[] REQUESTS = {
+			RegionRequest.createInstance("test", 1.0, 100, 200, 700, 500),
+			RegionRequest.createInstance("test", 1.0, 0, 0, 1024, 1024),
+			RegionRequest.createInstance("test", 4.0, 300, 100, 2000, 1700),
+			RegionRequest.createInstance("test", 3.0, 50, 70, 1500, 1200)
+	};
+
+	@Test
+	public void test_rgbMatchesJava2D() throws IOException {
+		var server = new TestServer(true, 4);
+		var serverSequential = new TestServer(true, 1);
+		for (var request : REQUESTS) {
+			var expected = readWithJava2D(server, request);
+			assertSamplesEqual(expected, server.readBufferedImage(request));
+			assertSamplesEqual(expected, serverSequential.readBufferedImage(request));
+		}
+	}
+	
+	@Test
+	public void test_nonRGB() throws IOException {
+		var server = new TestServer(false, 4);
+		var serverSequential = new TestServer(false, 1);
+		for (var request : REQUESTS) {
+			assertSamplesEqual(serverSequential.readBufferedImage(request), server.readBufferedImage(request));
+		}
+	}
+	
+	@Test
+	public void test_parallelism() throws IOException {
+		var server = new TestServer(true, 3);
+		server.delayMillis = 20;
+		server.readBufferedImage(REQUESTS[1]);
+		int maxReads = server.maxConcurrentReads.get();
+		assertTrue(maxReads > 1, "Tiles should be read in parallel");
+		assertTrue(maxReads <= 3, "Too many tiles read in parallel: " + maxReads);
+		
+		var serverSequential = new TestServer(true, 1);
+		serverSequential.delayMillis = 5;
+		serverSequential.readBufferedImage(REQUESTS[1]);
+		assertEquals(1, serverSequential.maxConcurrentReads.get());
+	}
+	
+	@Test
+	public void test_exceptions() {
+		var server = new TestServer(true, 4);
+		server.failX = 256;
+		assertThrows(IOException.class, () -> server.readBufferedImage(REQUESTS[1]));
+	}
+	
+	
+	/**
+	 * Read a region by drawing every tile with Java2D.
+	 */
+	private static BufferedImage readWithJava2D(TestServer server, RegionRequest request) throws IOException {
+		int width = (int)Math.max(1, Math.round(request.getWidth() / request.getDownsample()));
+		int height = (int)Math.max(1, Math.round(request.getHeight() / request.getDownsample()));
+		var img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		var g2d = img.createGraphics();
+		g2d.scale(1.0/request.getDownsample(), 1.0/request.getDownsample());
+		g2d.translate(-request.getX(), -request.getY());
+		if (request.getDownsample() > 1)
+			g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		for (var tile : server.getTileRequestManager().getTileRequests(request)) {
+			g2d.drawImage(server.readTile(tile), tile.getImageX(), tile.getImageY(), tile.getImageWidth(), tile.getImageHeight(), null);
+		}
+		g2d.dispose();
+		return img;
+	}
+	
+	private static void assertSamplesEqual(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		assertEquals(expected.getRaster().getNumBands(), actual.getRaster().getNumBands());
+		int w = expected.getWidth();
+		int h = expected.getHeight();
+		for (int b = 0; b < expected.getRaster().getNumBands(); b++) {
+			assertArrayEquals(
+					expected.getRaster().getSamples(0, 0, w, h, b, (double[])null),
+					actual.getRaster().getSamples(0, 0, w, h, b, (double[])null));
+		}
+	}
+	
+	
+	/**
+	 * Server that generates a simple pattern for each tile, and records how many tiles are read at the same time.
+	 */
+	static class TestServer extends AbstractTileableImageServer {
+		
+		private final ImageServerMetadata metadata;
+		private final int maxParallelTileReads;
+		
+		private int delayMillis = 0;
+		private int failX = -1;
+		
+		private final AtomicInteger concurrentReads = new AtomicInteger();
+		private final AtomicInteger maxConcurrentReads = new AtomicInteger();
+		
+		TestServer(boolean rgb, int maxParallelTileReads) {
+			this.maxParallelTileReads = maxParallelTileReads;
+			var builder = new ImageServerMetadata.Builder()
+					.width(5000)
+					.height(4000)
+					.name("test")
+					.preferredTileSize(256, 256)
+					.levelsFromDownsamples(1.0, 4.0, 16.0)
+					.rgb(rgb);
+			if (rgb)
+				builder.pixelType(PixelType.UINT8).channels(ImageChannel.getDefaultRGBChannels());
+			else
+				builder.pixelType(PixelType.FLOAT32).channels(ImageChannel.getDefaultChannelList(2));
+			metadata = builder.build();
+		}
+		
+		@Override
+		protected int getMaxParallelTileReads() {
+			return maxParallelTileReads;
+		}
+
+		@Override
+		protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+			int n = concurrentReads.incrementAndGet();
+			maxConcurrentReads.accumulateAndGet(n, Math::max);
+			try {
+				if (delayMillis > 0)
+					Thread.sleep(delayMillis);
+				if (tileRequest.getTileX() == failX)
+					throw new IOException("Unable to read " + tileRequest);
+				int w = tileRequest.getTileWidth();
+				int h = tileRequest.getTileHeight();
+				int x0 = tileRequest.getTileX();
+				int y0 = tileRequest.getTileY();
+				if (isRGB()) {
+					var img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+					for (int y = 0; y < h; y++) {
+						for (int x = 0; x < w; x++) {
+							int v = ((x0 + x) ^ (y0 + y)) & 0xFF;
+							img.setRGB(x, y, (v << 16) | ((255 - v) << 8) | tileRequest.getLevel());
+						}
+					}
+					return img;
+				}
+				var colorModel = ColorModelFactory.createColorModel(getPixelType(), getMetadata().getChannels());
+				var raster = colorModel.createCompatibleWritableRaster(w, h);
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						raster.setSample(x, y, 0, (x0 + x) * 0.5f);
+						raster.setSample(x, y, 1, (y0 + y) * 0.25f + tileRequest.getLevel());
+					}
+				}
+				return new BufferedImage(colorModel, raster, false, null);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} finally {
+				concurrentReads.decrementAndGet();
+			}
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public String getServerType() {
+			return "Test server";
+		}
+
+		@Override
+		public ImageServerMetadata getOriginalMetadata() {
+			return metadata;
+		}
+
+		@Override
+		protected ServerBuilder<BufferedImage> createServerBuilder() {
+			return null;
+		}
+
+		@Override
+		protected String createID() {
+			return "test";
+		}
+		
+	}
+
+}
@@ -0,0 +1,167 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import qupath.lib.color.ColorModelFactory;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestDiskTileCache {
+
+	private static BufferedImage createRGB(Random rand, int width, int height) {
+		var img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++)
+				img.setRGB(x, y, rand.nextInt());
+		}
+		return img;
+	}
+
+	private static void assertSamplesEqual(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		assertEquals(expected.getRaster().getNumBands(), actual.getRaster().getNumBands());
+		int w = expected.getWidth();
+		int h = expected.getHeight();
+		for (int b = 0; b < expected.getRaster().getNumBands(); b++) {
+			assertArrayEquals(
+					expected.getRaster().getSamples(0, 0, w, h, b, (double[])null),
+					actual.getRaster().getSamples(0, 0, w, h, b, (double[])null));
+		}
+	}
+
+	@Test
+	public void test_roundTrip(@TempDir Path dir) throws Exception {
+		var rand = new Random(100L);
+		var cache = DiskTileCache.create(dir, 10 * 1024 * 1024);
+
+		var request = RegionRequest.createInstance("rgb", 2.0, 0, 0, 128, 64);
+		assertNull(cache.get(request, null, null));
+		var imgRGB = createRGB(rand, 64, 32);
+		assertTrue(cache.put(request, null, imgRGB));
+		assertTrue(cache.containsKey(request, null));
+		var imgRead = cache.get(request, null, null);
+		assertEquals(BufferedImage.TYPE_INT_RGB, imgRead.getType());
+		assertSamplesEqual(imgRGB, imgRead);
+
+		// Requests for different servers must not be confused
+		assertNull(cache.get(RegionRequest.createInstance("other", 2.0, 0, 0, 128, 64), null, null));
+
+		// Custom images need a color model to be read
+		var colorModel = ColorModelFactory.createColorModel(PixelType.FLOAT32, ImageChannel.getDefaultChannelList(3));
+		var raster = colorModel.createCompatibleWritableRaster(20, 30);
+		for (int b = 0; b < 3; b++) {
+			for (int y = 0; y < raster.getHeight(); y++) {
+				for (int x = 0; x < raster.getWidth(); x++)
+					raster.setSample(x, y, b, rand.nextFloat() * 1000 - 500);
+			}
+		}
+		var imgFloat = new BufferedImage(colorModel, raster, false, null);
+		var requestFloat = RegionRequest.createInstance("float", 1.0, 10, 10, 20, 30);
+		assertTrue(cache.put(requestFloat, null, imgFloat));
+		assertNull(cache.get(requestFloat, null, null));
+		assertSamplesEqual(imgFloat, cache.get(requestFloat, null, colorModel));
+
+		// Tiles should persist for a new cache using the same directory
+		var cache2 = DiskTileCache.create(dir, 10 * 1024 * 1024);
+		assertEquals(cache.size(), cache2.size());
+		assertEquals(cache.getTotalBytes(), cache2.getTotalBytes());
+		assertSamplesEqual(imgRGB, cache2.get(request, null, null));
+
+		cache2.clear();
+		assertEquals(0, cache2.size());
+		assertNull(cache2.get(request, null, null));
+	}
+
+	@Test
+	public void test_eviction(@TempDir Path dir) throws Exception {
+		var rand = new Random(200L);
+		// Each RGB tile requires a little over 64*64*3 bytes
+		var cache = DiskTileCache.create(dir, 64 * 64 * 3 * 5 + 1000);
+		var requests = new RegionRequest[10];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = RegionRequest.createInstance("server", 1.0, i * 64, 0, 64, 64);
+			assertTrue(cache.put(requests[i], null, createRGB(rand, 64, 64)));
+			// Keep the first tile in use, so it should not be evicted
+			assertNotNull(cache.get(requests[0], null, null));
+			assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+		}
+		assertEquals(5, cache.size());
+		assertTrue(cache.containsKey(requests[0], null));
+		assertFalse(cache.containsKey(requests[1], null));
+		assertTrue(cache.containsKey(requests[requests.length-1], null));
+	}
+
+	@Test
+	public void test_changedSource(@TempDir Path dir) throws Exception {
+		var rand = new Random(300L);
+		var cache = DiskTileCache.create(dir.resolve("cache"), 10 * 1024 * 1024);
+		var file = dir.resolve("image.tif");
+		Files.write(file, new byte[100]);
+		var uris = List.of(file.toUri());
+		var metadata = new ImageServerMetadata.Builder()
+				.width(1000)
+				.height(1000)
+				.rgb(true)
+				.pixelType(PixelType.UINT8)
+				.channels(ImageChannel.getDefaultRGBChannels())
+				.build();
+		
+		var request = RegionRequest.createInstance(file.toUri().toString(), 1.0, 0, 0, 64, 64);
+		var fingerprint = DiskTileCache.createFingerprint(uris, metadata);
+		assertEquals(fingerprint, DiskTileCache.createFingerprint(uris, metadata));
+		var img = createRGB(rand, 64, 64);
+		assertTrue(cache.put(request, fingerprint, img));
+		assertSamplesEqual(img, cache.get(request, fingerprint, null));
+		
+		// Replacing the file at the same path should result in a cache miss
+		Files.write(file, new byte[200]);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10_000));
+		var fingerprintChanged = DiskTileCache.createFingerprint(uris, metadata);
+		assertNotEquals(fingerprint, fingerprintChanged);
+		assertNull(cache.get(request, fingerprintChanged, null));
+		assertFalse(cache.containsKey(request, fingerprintChanged));
+		
+		// Changes to the metadata should also result in a cache miss
+		var metadataChanged = new ImageServerMetadata.Builder(metadata).width(2000).build();
+		assertNull(cache.get(request, DiskTileCache.createFingerprint(uris, metadataChanged), null));
+	}
+
+}
@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestSparseImageServer {
+	
+	private static final int N = 10;
+	private static final int SIZE = 100;
+	
+	@Test
+	public void testRegionIndex() throws Exception {
+		var counter = new ServerCounter();
+		try (var server = createServer(counter, 1)) {
+			var manager = server.getManager();
+			var allRegions = new ArrayList<>(manager.getRegions());
+			
+			int[][] boxes = {
+					{0, 0, 1000, 1000},
+					{0, 0, 100, 100},
+					{99, 99, 2, 2},
+					{100, 100, 100, 100},
+					{250, 320, 333, 111},
+					{1000, 1000, 10, 10},
+					{-10, -10, 5, 5}
+			};
+			for (int[] box : boxes) {
+				List<ImageRegion> expected = new ArrayList<>();
+				for (var region : allRegions) {
+					if (region.intersects(box[0], box[1], box[2], box[3]))
+						expected.add(region);
+				}
+				assertEquals(expected, manager.getRegions(box[0], box[1], box[2], box[3], 0, 0));
+				assertTrue(manager.getRegions(box[0], box[1], box[2], box[3], 1, 0).isEmpty());
+				assertTrue(manager.getRegions(box[0], box[1], box[2], box[3], 0, 1).isEmpty());
+			}
+		}
+	}
+	
+	@Test
+	public void testBoundedServers() throws Exception {
+		int maxOpen = 4;
+		var counter = new ServerCounter();
+		try (var server = createServer(counter, maxOpen)) {
+			// All servers need to be opened once to determine the path & metadata
+			assertEquals(N * N, counter.nBuilt.get());
+			assertTrue(server.getManager().nOpenServers() <= SparseImageServer.SparseImageServerManager.DEFAULT_MAX_OPEN_SERVERS);
+			
+			var img = server.readBufferedImage(RegionRequest.createInstance(server.getPath(), 1, 0, 0, N*SIZE, N*SIZE));
+			assertEquals(N*SIZE, img.getWidth());
+			assertEquals(N*SIZE, img.getHeight());
+			for (int y = 0; y < N; y++) {
+				for (int x = 0; x < N; x++) {
+					int rgb = getRGB(x, y);
+					assertEquals(rgb, img.getRGB(x*SIZE, y*SIZE) & 0xFFFFFF);
+					assertEquals(rgb, img.getRGB(x*SIZE + SIZE - 1, y*SIZE + SIZE - 1) & 0xFFFFFF);
+				}
+			}
+			
+			// Servers should be closed when no longer needed, and reopened on demand
+			int nOpen = server.getManager().nOpenServers();
+			assertTrue(nOpen <= maxOpen);
+			assertEquals(nOpen, counter.nBuilt.get() - counter.nClosed.get());
+			assertTrue(counter.nBuilt.get() > N * N);
+		}
+		assertEquals(counter.nBuilt.get(), counter.nClosed.get());
+	}
+	
+	@Test
+	public void testRetainedServers() throws Exception {
+		var counter = new ServerCounter();
+		try (var server = createServer(counter, 1)) {
+			var manager = server.getManager();
+			var region = manager.getRegions().iterator().next();
+			var retained = manager.getServer(region, 1.0);
+			
+			// Servers returned by getServer may be retained by the caller, so must not be closed by the pool
+			server.readBufferedImage(RegionRequest.createInstance(server.getPath(), 1, 0, 0, N*SIZE, N*SIZE));
+			assertSame(retained, manager.getServer(region, 1.0));
+			assertTrue(manager.nOpenServers() <= 1);
+		}
+	}
+	
+	private static SparseImageServer createServer(ServerCounter counter, int maxOpenServers) throws Exception {
+		var builder = new SparseImageServer.Builder();
+		for (int y = 0; y < N; y++) {
+			for (int x = 0; x < N; x++) {
+				var region = ImageRegion.createInstance(x*SIZE, y*SIZE, SIZE, SIZE, 0, 0);
+				builder.jsonRegion(region, 1.0, new ColorServerBuilder(counter, getRGB(x, y)));
+			}
+		}
+		var server = builder.build();
+		server.getManager().setMaxOpenServers(maxOpenServers);
+		return server;
+	}
+	
+	private static int getRGB(int x, int y) {
+		return ((x * 25) << 16) | ((y * 25) << 8) | 128;
+	}
+	
+	static class ServerCounter {
+		
+		private final AtomicInteger nBuilt = new AtomicInteger();
+		private final AtomicInteger nClosed = new AtomicInteger();
+		
+	}
+	
+	static class ColorServerBuilder implements ServerBuilder<BufferedImage> {
+		
+		private final ServerCounter counter;
+		private final int rgb;
+		
+		ColorServerBuilder(ServerCounter counter, int rgb) {
+			this.counter = counter;
+			this.rgb = rgb;
+		}
+
+		@Override
+		public ImageServer<BufferedImage> build() throws Exception {
+			var img = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+			var g2d = img.createGraphics();
+			g2d.setColor(new java.awt.Color(rgb));
+			g2d.fillRect(0, 0, SIZE, SIZE);
+			g2d.dispose();
+			counter.nBuilt.incrementAndGet();
+			return new WrappedBufferedImageServer("Color " + rgb, img) {
+				
+				@Override
+				public void close() throws Exception {
+					counter.nClosed.incrementAndGet();
+					super.close();
+				}
+				
+			};
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public ServerBuilder<BufferedImage> updateURIs(Map<URI, URI> updateMap) {
+			return this;
+		}
+		
+		@Override
+		public int hashCode() {
+			return rgb;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ColorServerBuilder && ((ColorServerBuilder)obj).rgb == rgb;
+		}
+		
+	}
+
+}
@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import qupath.lib.common.GeneralTools;
+import qupath.lib.io.PathIO.GeoJsonExportOptions;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestGeoJsonStreams {
+
+	private static PathObjectHierarchy createHierarchy(int nAnnotations, int nDetectionsPerAnnotation) {
+		var rand = new Random(100L);
+		var hierarchy = new PathObjectHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		var pathClass = PathClassFactory.getPathClass("Tumor");
+		for (int a = 0; a < nAnnotations; a++) {
+			var annotation = PathObjects.createAnnotationObject(ROIs.createRectangleROI(a * 1000, 0, 1000, 1000, plane));
+			var detections = new ArrayList<PathObject>();
+			for (int d = 0; d < nDetectionsPerAnnotation; d++) {
+				double x = a * 1000 + rand.nextDouble() * 990;
+				double y = rand.nextDouble() * 990;
+				var detection = PathObjects.createDetectionObject(ROIs.createEllipseROI(x, y, 5.25, 7.125, plane), pathClass);
+				detection.getMeasurementList().putMeasurement("Value", rand.nextDouble());
+				detection.getMeasurementList().close();
+				detections.add(detection);
+			}
+			annotation.addPathObjects(detections);
+			hierarchy.addPathObjectWithoutUpdate(annotation);
+		}
+		return hierarchy;
+	}
+
+	private static void assertSameObjects(List<? extends PathObject> expected, List<? extends PathObject> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			var p1 = expected.get(i);
+			var p2 = actual.get(i);
+			assertEquals(p1.getClass(), p2.getClass());
+			assertEquals(p1.getPathClass(), p2.getPathClass());
+			assertEquals(p1.getROI().getBoundsX(), p2.getROI().getBoundsX(), 0.01);
+			assertEquals(p1.getROI().getBoundsY(), p2.getROI().getBoundsY(), 0.01);
+			assertEquals(p1.getROI().getArea(), p2.getROI().getArea(), p1.getROI().getArea() * 0.01);
+		}
+	}
+
+	@Test
+	public void test_roundTrip(@TempDir Path dir) throws IOException {
+		var hierarchy = createHierarchy(5, 200);
+		var expected = PathObjectTools.getFlattenedObjectList(hierarchy.getRootObject(), null, false);
+
+		for (var name : new String[] {"objects.geojson", "objects.geojson.gz", "objects.zip"}) {
+			var path = dir.resolve(name);
+			long count = PathIO.exportHierarchyAsGeoJSON(path, hierarchy, null, GeoJsonExportOptions.FEATURE_COLLECTION);
+			assertEquals(expected.size(), count);
+			assertSameObjects(expected, PathIO.readObjects(path));
+		}
+
+		// Check filtering, and that measurements can be excluded
+		var path = dir.resolve("detections.json.gz");
+		long count = PathIO.exportHierarchyAsGeoJSON(path, hierarchy, p -> p.isDetection(), GeoJsonExportOptions.EXCLUDE_MEASUREMENTS);
+		var detections = PathIO.readObjects(path);
+		assertEquals(5 * 200, count);
+		assertSameObjects(expected.stream().filter(p -> p.isDetection()).collect(Collectors.toList()), detections);
+		assertTrue(detections.stream().allMatch(p -> p.getMeasurementList().isEmpty()));
+	}
+
+	@Test
+	public void test_binaryRoundTrip(@TempDir Path dir) throws IOException {
+		var hierarchy = createHierarchy(5, 200);
+		var expected = PathObjectTools.getFlattenedObjectList(hierarchy.getRootObject(), null, false);
+
+		var path = dir.resolve("objects.qpobj");
+		PathIO.exportObjectsAsBinary(path, expected);
+		var actual = PathIO.readObjects(path);
+		assertSameObjects(expected, actual);
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(expected.get(i).getMeasurementList().getMeasurementValue("Value"), actual.get(i).getMeasurementList().getMeasurementValue("Value"), 1e-6);
+		assertTrue(actual.stream().allMatch(p -> p.getParent() == null));
+
+		// Check that other data is rejected
+		var bos = new ByteArrayOutputStream();
+		PathIO.exportObjectsAsGeoJSON(bos, expected);
+		assertThrows(IOException.class, () -> PathIO.readObjectsFromBinary(new ByteArrayInputStream(bos.toByteArray())));
+	}
+
+	@Test
+	public void test_streamingMatchesCollection() throws IOException {
+		var hierarchy = createHierarchy(2, 1000);
+		var pathObjects = PathObjectTools.getFlattenedObjectList(hierarchy.getRootObject(), null, false).stream()
+				.filter(p -> p.isDetection())
+				.collect(Collectors.toList());
+
+		// Streaming export should give identical JSON to the existing export
+		for (var option : GeoJsonExportOptions.values()) {
+			var bytesCollection = new ByteArrayOutputStream();
+			PathIO.exportObjectsAsGeoJSON(bytesCollection, pathObjects, option);
+			var bytesStreaming = new ByteArrayOutputStream();
+			PathIO.exportObjectsAsGeoJSON(bytesStreaming, pathObjects.iterator(), option);
+			assertEquals(bytesCollection.toString(), bytesStreaming.toString());
+		}
+
+		var bytes = new ByteArrayOutputStream();
+		PathIO.exportObjectsAsGeoJSON(bytes, pathObjects.iterator(), GeoJsonExportOptions.FEATURE_COLLECTION);
+		var list = PathIO.readObjectsFromGeoJSON(new ByteArrayInputStream(bytes.toByteArray()));
+		assertSameObjects(pathObjects, list);
+
+		try (var stream = PathIO.streamObjectsFromGeoJSON(new ByteArrayInputStream(bytes.toByteArray()))) {
+			assertSameObjects(pathObjects, stream.collect(Collectors.toList()));
+		}
+
+		var batches = new ArrayList<List<PathObject>>();
+		long count = PathIO.readObjectsFromGeoJSON(new ByteArrayInputStream(bytes.toByteArray()), 300, batches::add);
+		assertEquals(pathObjects.size(), count);
+		assertEquals(7, batches.size());
+		assertTrue(batches.stream().allMatch(b -> b.size() <= 300));
+		assertSameObjects(pathObjects, batches.stream().flatMap(List::stream).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void test_formatNumber() {
+		var rand = new Random(200L);
+		for (int nDecimals = 0; nDecimals <= 4; nDecimals++) {
+			for (int i = 0; i < 10_000; i++) {
+				double value = (rand.nextDouble() - 0.5) * Math.pow(10, rand.nextInt(7));
+				// Include values that fall exactly on (or very close to) a tie
+				if (i % 2 == 0)
+					value = Math.round(value * 1000) / 1000.0;
+				var sb = new StringBuilder();
+				ROITypeAdapters.appendNumber(sb, value, nDecimals);
+				assertEquals(GeneralTools.formatNumber(Locale.US, value, nDecimals), sb.toString());
+			}
+		}
+		for (double value : new double[] {0, -0.001, 1e12, -1e12, Double.NaN, Double.POSITIVE_INFINITY}) {
+			var sb = new StringBuilder();
+			ROITypeAdapters.appendNumber(sb, value, 2);
+			assertEquals(GeneralTools.formatNumber(Locale.US, value, 2), sb.toString());
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBWriter;
+
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.ROIs;
+import qupath.lib.roi.RoiTools;
+import qupath.lib.roi.interfaces.ROI;
+
+@SuppressWarnings("javadoc")
+public class TestGeometryCodec {
+
+	/**
+	 * Create a polygon resembling a nucleus, with float coordinates (as stored by polygon ROIs).
+	 */
+	private static ROI createNucleus(Random rand, ImagePlane plane) {
+		int n = 20 + rand.nextInt(20);
+		double cx = rand.nextDouble() * 50000;
+		double cy = rand.nextDouble() * 50000;
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			double theta = 2 * Math.PI * i / n;
+			double r = 5 + rand.nextDouble();
+			x[i] = (float)(cx + Math.cos(theta) * r);
+			y[i] = (float)(cy + Math.sin(theta) * r);
+		}
+		return ROIs.createPolygonROI(x, y, plane);
+	}
+
+	private static void assertSameROI(ROI expected, ROI actual) {
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getImagePlane(), actual.getImagePlane());
+		assertEquals(expected.getAllPoints(), actual.getAllPoints());
+		assertTrue(expected.getGeometry().equalsExact(actual.getGeometry()));
+	}
+
+	@Test
+	public void test_roiRoundTrip() throws IOException {
+		var rand = new Random(100L);
+		var plane = ImagePlane.getPlaneWithChannel(-1, 2, 3);
+		var rois = Arrays.asList(
+				ROIs.createRectangleROI(10, 20.5, 100.25, 200, plane),
+				ROIs.createRectangleROI(0.1, 0.2, 0.3, 0.4, ImagePlane.getDefaultPlane()),
+				ROIs.createEllipseROI(-5, -10, 30, 40, plane),
+				ROIs.createLineROI(1.5, 2.5, 1000.75, 4000, plane),
+				ROIs.createPolylineROI(new double[] {0, 10, 20.5}, new double[] {5, -5, 1e6}, plane),
+				ROIs.createPointsROI(new double[] {1, 2.5, Math.PI}, new double[] {4, 5, Math.E}, plane),
+				createNucleus(rand, plane),
+				RoiTools.combineROIs(
+						ROIs.createEllipseROI(0, 0, 100, 100, plane),
+						ROIs.createRectangleROI(25, 25, 50, 50, plane),
+						RoiTools.CombineOp.SUBTRACT)
+				);
+		for (var roi : rois)
+			assertSameROI(roi, GeometryCodec.decodeROI(GeometryCodec.encode(roi)));
+	}
+
+	@Test
+	public void test_geometryRoundTrip() throws IOException {
+		var factory = GeometryTools.getDefaultFactory();
+		var polygon1 = ROIs.createEllipseROI(0, 0, 100, 80, ImagePlane.getDefaultPlane()).getGeometry();
+		var polygon2 = ROIs.createRectangleROI(200.125, 300, 50, 50, ImagePlane.getDefaultPlane()).getGeometry();
+		var polygonWithHole = polygon1.difference(ROIs.createEllipseROI(40, 30, 10, 10, ImagePlane.getDefaultPlane()).getGeometry());
+		var geometries = new Geometry[] {
+				factory.createPoint(new Coordinate(1.25, -2)),
+				factory.createPoint(),
+				factory.createLineString(new Coordinate[] {new Coordinate(0, 0), new Coordinate(1.1, 2.2), new Coordinate(3.3, 4.4)}),
+				factory.createLinearRing(new Coordinate[] {new Coordinate(0, 0), new Coordinate(10, 0), new Coordinate(10, 10), new Coordinate(0, 0)}),
+				polygonWithHole,
+				factory.createPolygon(),
+				polygon1.union(polygon2),
+				factory.createMultiPointFromCoords(new Coordinate[] {new Coordinate(5, 5), new Coordinate(6, 7)}),
+				factory.createGeometryCollection(new Geometry[] {polygon2, factory.createPoint(new Coordinate(1, 1))})
+		};
+		for (var geometry : geometries) {
+			var decoded = GeometryCodec.decodeGeometry(GeometryCodec.encode(geometry));
+			assertEquals(geometry.getGeometryType(), decoded.getGeometryType());
+			assertTrue(geometry.equalsExact(decoded), "Round trip failed for " + geometry);
+		}
+	}
+
+	@Test
+	public void test_quantized() throws IOException {
+		var rand = new Random(200L);
+		var plane = ImagePlane.getDefaultPlane();
+		for (int i = 0; i < 100; i++) {
+			var roi = ROIs.createPolygonROI(
+					rand.doubles(20).map(d -> d * 1000).toArray(),
+					rand.doubles(20).map(d -> d * 1000).toArray(),
+					plane);
+			var decoded = GeometryCodec.decodeROI(GeometryCodec.encode(roi, 0.01));
+			var expected = roi.getAllPoints();
+			var actual = decoded.getAllPoints();
+			assertEquals(expected.size(), actual.size());
+			for (int j = 0; j < expected.size(); j++) {
+				assertEquals(expected.get(j).getX(), actual.get(j).getX(), 0.01);
+				assertEquals(expected.get(j).getY(), actual.get(j).getY(), 0.01);
+			}
+			assertTrue(GeometryCodec.encode(roi, 0.01).length < GeometryCodec.encode(roi).length);
+		}
+	}
+
+	@Test
+	public void test_concatenated() throws IOException {
+		var rand = new Random(300L);
+		var rois = new ROI[100];
+		var bytes = new ByteArrayOutputStream();
+		for (int i = 0; i < rois.length; i++) {
+			rois[i] = createNucleus(rand, ImagePlane.getDefaultPlane());
+			bytes.writeBytes(GeometryCodec.encode(rois[i]));
+		}
+		var buffer = ByteBuffer.wrap(bytes.toByteArray());
+		for (var roi : rois)
+			assertSameROI(roi, GeometryCodec.readROI(buffer));
+		assertEquals(0, buffer.remaining());
+	}
+
+	@Test
+	public void test_size() {
+		var rand = new Random(400L);
+		var plane = ImagePlane.getDefaultPlane();
+		long nBytesCodec = 0;
+		long nBytesWKB = 0;
+		long nBytesFloat = 0;
+		long nBytesGeoJSON = 0;
+		var gson = GsonTools.getInstance();
+		for (int i = 0; i < 1000; i++) {
+			var roi = createNucleus(rand, plane);
+			nBytesCodec += GeometryCodec.encode(roi).length;
+			nBytesWKB += new WKBWriter(2).write(roi.getGeometry()).length;
+			nBytesFloat += roi.getNumPoints() * 2 * Float.BYTES;
+			nBytesGeoJSON += gson.toJson(roi).length();
+		}
+		assertTrue(nBytesCodec < nBytesFloat, "Encoded size " + nBytesCodec + " not smaller than float size " + nBytesFloat);
+		assertTrue(nBytesCodec < nBytesWKB);
+		assertTrue(nBytesCodec < nBytesGeoJSON);
+	}
+
+	@Test
+	public void test_invalid() {
+		var bytes = GeometryCodec.encode(createNucleus(new Random(500L), ImagePlane.getDefaultPlane()));
+		assertThrows(IOException.class, () -> GeometryCodec.decodeROI(Arrays.copyOf(bytes, bytes.length / 2)));
+		var badVersion = bytes.clone();
+		badVersion[0] = 100;
+		assertThrows(IOException.class, () -> GeometryCodec.decodeROI(badVersion));
+		assertArrayEquals(bytes, GeometryCodec.encode(createNucleus(new Random(500L), ImagePlane.getDefaultPlane())));
+	}
+
+}
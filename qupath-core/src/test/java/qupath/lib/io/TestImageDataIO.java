@@ -0,0 +1,334 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.measurements.MeasurementList.MeasurementListType;
+import qupath.lib.measurements.MeasurementListFactory;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathCellObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.objects.classes.PathClassFactory;
+import qupath.lib.objects.hierarchy.DefaultTMAGrid;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestImageDataIO {
+
+	private static ImageData<BufferedImage> createImageData() {
+		var img = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+		var server = new WrappedBufferedImageServer("Test image", img);
+		var imageData = new ImageData<>(server);
+		imageData.setImageType(ImageData.ImageType.BRIGHTFIELD_H_E);
+		imageData.setProperty("Test property", "Test value");
+
+		var hierarchy = imageData.getHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+
+		var annotation = (PathAnnotationObject)PathObjects.createAnnotationObject(
+				ROIs.createRectangleROI(0, 0, 250, 200, plane),
+				PathClassFactory.getPathClass("Tumor"));
+		annotation.setName("My annotation");
+		annotation.setDescription("Some description");
+		annotation.setLocked(true);
+		annotation.getMeasurementList().putMeasurement("Annotation measurement", 1.5);
+		hierarchy.addPathObject(annotation);
+
+		var cls = PathClassFactory.getPathClass("Tumor", "Positive");
+		for (int i = 0; i < 200; i++) {
+			var ml = MeasurementListFactory.createMeasurementList(2, MeasurementListType.FLOAT);
+			ml.addMeasurement("Area", i);
+			ml.addMeasurement("Mean", i / 3.0);
+			ml.close();
+			var roiCell = ROIs.createPolygonROI(new double[] {i, i+5, i+5}, new double[] {20, 20, 30}, plane);
+			var roiNucleus = ROIs.createRectangleROI(i+1, 21, 2, 2, plane);
+			var cell = PathObjects.createCellObject(roiCell, roiNucleus, i % 2 == 0 ? cls : null, ml);
+			hierarchy.addPathObjectBelowParent(annotation, cell, false);
+		}
+
+		var cores = new ArrayList<TMACoreObject>();
+		for (int i = 0; i < 4; i++) {
+			var core = PathObjects.createTMACoreObject(i * 50, 220, 20, i == 2);
+			core.setName("Core " + i);
+			core.putMetadataValue("Key", "Value " + i);
+			cores.add(core);
+		}
+		hierarchy.setTMAGrid(DefaultTMAGrid.create(cores, 2));
+		var tile = PathObjects.createTileObject(ROIs.createRectangleROI(0, 220, 10, 10, plane));
+		hierarchy.addPathObjectBelowParent(cores.get(0), tile, false);
+
+		return imageData;
+	}
+
+	@Test
+	public void test_writeReadImageData() throws Exception {
+		var imageData = createImageData();
+		var bytes = new ByteArrayOutputStream();
+		PathIO.writeImageData(bytes, imageData);
+
+		var imageData2 = PathIO.readImageData(new ByteArrayInputStream(bytes.toByteArray()), null, imageData.getServer(), BufferedImage.class);
+		assertEquals(imageData.getImageType(), imageData2.getImageType());
+		assertEquals("Test value", imageData2.getProperty("Test property"));
+		assertSameHierarchy(imageData.getHierarchy(), imageData2.getHierarchy());
+
+		var hierarchy = PathIO.readHierarchy(new ByteArrayInputStream(bytes.toByteArray()));
+		assertSameHierarchy(imageData.getHierarchy(), hierarchy);
+	}
+
+	@Test
+	public void test_readImageDataLazily() throws Exception {
+		var imageData = createImageData();
+		var path = Files.createTempFile("test", ".qpdata");
+		try {
+			PathIO.writeImageData(path, imageData);
+			var lazyData = PathIO.readImageDataLazily(path, imageData.getServer(), BufferedImage.class);
+			// Annotations & TMA cores should be available immediately
+			var hierarchy = lazyData.getImageData().getHierarchy();
+			assertEquals(1, hierarchy.getAnnotationObjects().size());
+			assertNotNull(hierarchy.getTMAGrid());
+
+			lazyData.awaitComplete();
+			assertTrue(lazyData.isComplete());
+			assertSameHierarchy(imageData.getHierarchy(), hierarchy);
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+	
+	@Test
+	public void test_readImageDataLazilyEvents() throws Exception {
+		var imageData = createImageData();
+		var path = Files.createTempFile("test", ".qpdata");
+		try {
+			PathIO.writeImageData(path, imageData);
+			// Queue hierarchy updates without running them, as if the target thread were busy
+			var queued = new ConcurrentLinkedQueue<Runnable>();
+			var lazyData = PathIO.readImageDataLazily(path, imageData.getServer(), BufferedImage.class, queued::add);
+			var lazyImageData = lazyData.getImageData();
+			var hierarchy = lazyImageData.getHierarchy();
+			var events = new AtomicInteger();
+			hierarchy.addPathObjectListener(e -> {
+				if (e.isStructureChangeEvent())
+					events.incrementAndGet();
+			});
+			assertTrue(hierarchy.getDetectionObjects().isEmpty());
+			
+			// Waiting should add the remaining objects on the current thread, with events
+			lazyData.awaitComplete();
+			assertTrue(events.get() > 0);
+			assertFalse(lazyImageData.isChanged());
+			assertSameHierarchy(imageData.getHierarchy(), hierarchy);
+			
+			// Anything left in the queue should have nothing more to do
+			queued.forEach(Runnable::run);
+			assertSameHierarchy(imageData.getHierarchy(), hierarchy);
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	@Test
+	public void test_imageDataJournal() throws Exception {
+		var imageData = createImageData();
+		var dir = Files.createTempDirectory("journal");
+		var pathData = dir.resolve("data.qpdata");
+		var pathJournal = dir.resolve("data.qpjournal");
+		try {
+			// Nothing to append to before the data has been written in full
+			assertFalse(ImageDataJournal.appendChanges(pathData, pathJournal, imageData));
+			ImageDataJournal.writeImageData(pathData, pathJournal, imageData);
+			
+			var hierarchy = imageData.getHierarchy();
+			var annotation = (PathAnnotationObject)hierarchy.getAnnotationObjects().iterator().next();
+			var cells = new ArrayList<>(hierarchy.getCellObjects());
+			
+			// Change a classification
+			var cell = cells.get(0);
+			cell.setPathClass(PathClassFactory.getPathClass("Stroma"));
+			hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singleton(cell));
+			// Remove a detection
+			hierarchy.removeObject(cells.get(1), false);
+			// Insert an annotation that should take some existing detections as children
+			var annotation2 = PathObjects.createAnnotationObject(ROIs.createEllipseROI(40, 10, 10, 30, ImagePlane.getDefaultPlane()));
+			hierarchy.insertPathObject(annotation2, true);
+			annotation2.addPathObject(PathObjects.createDetectionObject(ROIs.createRectangleROI(45, 20, 2, 2, ImagePlane.getDefaultPlane())));
+			hierarchy.fireHierarchyChangedEvent(this, annotation2);
+			assertTrue(annotation2.hasChildren());
+			assertSame(annotation, annotation2.getParent());
+			// Change an annotation & the image properties
+			annotation.setName("Renamed");
+			hierarchy.fireObjectsChangedEvent(this, Collections.singleton(annotation));
+			imageData.setProperty("Test property", "Changed value");
+
+			assertTrue(ImageDataJournal.appendChanges(pathData, pathJournal, imageData));
+			assertTrue(Files.exists(pathJournal));
+			
+			var imageData2 = ImageDataJournal.readImageData(pathData, pathJournal, imageData.getServer(), BufferedImage.class);
+			assertEquals("Changed value", imageData2.getProperty("Test property"));
+			assertSameHierarchy(hierarchy, imageData2.getHierarchy());
+			assertSameHierarchy(hierarchy, ImageDataJournal.readHierarchy(pathData, pathJournal));
+			
+			// Changes to the reloaded data should be appended to the same journal
+			var hierarchy2 = imageData2.getHierarchy();
+			var detection = hierarchy2.getDetectionObjects().iterator().next();
+			hierarchy2.removeObject(detection, false);
+			assertTrue(ImageDataJournal.appendChanges(pathData, pathJournal, imageData2));
+			assertSameHierarchy(hierarchy2, ImageDataJournal.readHierarchy(pathData, pathJournal));
+			
+			// Structure changes for the root require the data to be written in full
+			hierarchy2.fireHierarchyChangedEvent(this);
+			assertFalse(ImageDataJournal.appendChanges(pathData, pathJournal, imageData2));
+			ImageDataJournal.writeImageData(pathData, pathJournal, imageData2);
+			assertFalse(Files.exists(pathJournal));
+			assertSameHierarchy(hierarchy2, ImageDataJournal.readHierarchy(pathData, pathJournal));
+		} finally {
+			Files.deleteIfExists(pathData);
+			Files.deleteIfExists(pathJournal);
+			Files.deleteIfExists(dir);
+		}
+	}
+
+
+	
+	@Test
+	public void test_imageDataJournalUntrackedChanges() throws Exception {
+		var imageData = createImageData();
+		var dir = Files.createTempDirectory("journal");
+		var pathData = dir.resolve("data.qpdata");
+		var pathJournal = dir.resolve("data.qpjournal");
+		try {
+			ImageDataJournal.writeImageData(pathData, pathJournal, imageData);
+			imageData.setChanged(false);
+			var hierarchy = imageData.getHierarchy();
+			
+			// Changes that are reported can be journaled
+			var cell = hierarchy.getCellObjects().iterator().next();
+			cell.setName("Reported");
+			hierarchy.fireObjectsChangedEvent(this, Collections.singleton(cell));
+			assertTrue(ImageDataJournal.appendChanges(pathData, pathJournal, imageData));
+			assertSameHierarchy(hierarchy, ImageDataJournal.readHierarchy(pathData, pathJournal));
+			
+			// Changes to the ImageData that haven't been tracked require everything to be written
+			imageData.setChanged(true);
+			assertFalse(ImageDataJournal.appendChanges(pathData, pathJournal, imageData));
+		} finally {
+			Files.deleteIfExists(pathData);
+			Files.deleteIfExists(pathJournal);
+			Files.deleteIfExists(dir);
+		}
+	}
+	
+	@Test
+	public void test_imageDataJournalLazy() throws Exception {
+		var imageData = createImageData();
+		var dir = Files.createTempDirectory("journal");
+		var pathData = dir.resolve("data.qpdata");
+		var pathJournal = dir.resolve("data.qpjournal");
+		try {
+			ImageDataJournal.writeImageData(pathData, pathJournal, imageData);
+			
+			// Changes made while objects are still being read should be tracked
+			var lazyData = ImageDataJournal.readImageDataLazily(pathData, pathJournal, imageData.getServer(), BufferedImage.class, Runnable::run);
+			var hierarchy = lazyData.getImageData().getHierarchy();
+			var annotation = hierarchy.getAnnotationObjects().iterator().next();
+			annotation.setName("Renamed while loading");
+			hierarchy.fireObjectsChangedEvent(this, Collections.singleton(annotation));
+			lazyData.awaitComplete();
+			assertTrue(ImageDataJournal.appendChanges(pathData, pathJournal, lazyData.getImageData()));
+			assertSameHierarchy(hierarchy, ImageDataJournal.readHierarchy(pathData, pathJournal));
+			
+			// If there is a journal, it needs to be applied before the data is accessible
+			var lazyData2 = ImageDataJournal.readImageDataLazily(pathData, pathJournal, imageData.getServer(), BufferedImage.class, Runnable::run);
+			assertTrue(lazyData2.isComplete());
+			assertSameHierarchy(hierarchy, lazyData2.getImageData().getHierarchy());
+		} finally {
+			Files.deleteIfExists(pathData);
+			Files.deleteIfExists(pathJournal);
+			Files.deleteIfExists(dir);
+		}
+	}
+
+
+	private static void assertSameHierarchy(PathObjectHierarchy expected, PathObjectHierarchy actual) {
+		var listExpected = expected.getFlattenedObjectList(null);
+		var listActual = actual.getFlattenedObjectList(null);
+		assertEquals(listExpected.size(), listActual.size());
+		assertEquals(expected.getTMAGrid().nCores(), actual.getTMAGrid().nCores());
+		assertEquals(expected.getTMAGrid().getGridWidth(), actual.getTMAGrid().getGridWidth());
+		assertSameObjects(expected.getRootObject().getChildObjects(), actual.getRootObject().getChildObjects());
+	}
+
+	private static void assertSameObjects(Collection<PathObject> expected, Collection<PathObject> actual) {
+		assertEquals(expected.size(), actual.size());
+		List<PathObject> sortedExpected = new ArrayList<>(expected);
+		List<PathObject> sortedActual = new ArrayList<>(actual);
+		sortedExpected.sort(PathObjectHierarchy.HIERARCHY_COMPARATOR);
+		sortedActual.sort(PathObjectHierarchy.HIERARCHY_COMPARATOR);
+		for (int i = 0; i < sortedExpected.size(); i++) {
+			var p1 = sortedExpected.get(i);
+			var p2 = sortedActual.get(i);
+			assertEquals(p1.getClass(), p2.getClass());
+			assertEquals(p1.getName(), p2.getName());
+			assertEquals(p1.getPathClass(), p2.getPathClass());
+			assertEquals(p1.isLocked(), p2.isLocked());
+			assertEquals(p1.getROI().getImagePlane(), p2.getROI().getImagePlane());
+			assertEquals(p1.getROI().getAllPoints(), p2.getROI().getAllPoints());
+			assertEquals(p1.getMeasurementList().getMeasurementNames(), p2.getMeasurementList().getMeasurementNames());
+			for (int m = 0; m < p1.getMeasurementList().size(); m++)
+				assertEquals(p1.getMeasurementList().getMeasurementValue(m), p2.getMeasurementList().getMeasurementValue(m), 1e-6);
+			if (p1 instanceof PathCellObject)
+				assertEquals(((PathCellObject)p1).getNucleusROI().getAllPoints(), ((PathCellObject)p2).getNucleusROI().getAllPoints());
+			if (p1 instanceof PathAnnotationObject)
+				assertEquals(((PathAnnotationObject)p1).getDescription(), ((PathAnnotationObject)p2).getDescription());
+			if (p1 instanceof TMACoreObject) {
+				assertEquals(((TMACoreObject)p1).isMissing(), ((TMACoreObject)p2).isMissing());
+				assertEquals(((TMACoreObject)p1).getMetadataMap(), ((TMACoreObject)p2).getMetadataMap());
+			}
+			assertSameObjects(p1.getChildObjects(), p2.getChildObjects());
+		}
+	}
+
+}
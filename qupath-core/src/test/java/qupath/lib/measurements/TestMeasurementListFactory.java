@@ -23,6 +23,10 @@ package qupath.lib.measurements;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -45,6 +49,68 @@ public class TestMeasurementListFactory {
 		testList(MeasurementListFactory.createMeasurementList(50, MeasurementListType.GENERAL));
 	}
 	
+	@Test
+	public void test_sharedStorage() throws Exception {
+		for (var type : new MeasurementStore.StorageType[] {MeasurementStore.StorageType.HEAP, MeasurementStore.StorageType.OFF_HEAP}) {
+			MeasurementStore.setDefaultStorageType(type);
+			try {
+				testList(MeasurementListFactory.createMeasurementList(50, MeasurementListType.DOUBLE));
+				testList(MeasurementListFactory.createMeasurementList(50, MeasurementListType.FLOAT));
+				
+				// Create enough lists to require several blocks in the store
+				int n = 5000;
+				var lists = new ArrayList<MeasurementList>();
+				for (int i = 0; i < n; i++) {
+					var list = MeasurementListFactory.createMeasurementList(3, i % 2 == 0 ? MeasurementListType.FLOAT : MeasurementListType.DOUBLE);
+					list.addMeasurement("A", i);
+					list.addMeasurement("B", -i);
+					list.addMeasurement("C", i * 0.5);
+					list.close();
+					lists.add(list);
+				}
+				// Closed lists should use a store of the requested type
+				for (int i = 0; i < 2; i++) {
+					var row = ((NumericMeasurementList.AbstractNumericMeasurementList)lists.get(i)).storeRow;
+					assertNotNull(row);
+					assertEquals(type, row.getStore().getStorageType());
+				}
+				
+				// Reopen one list by adding a measurement
+				lists.get(10).putMeasurement("D", 1.0);
+				assertNull(((NumericMeasurementList.AbstractNumericMeasurementList)lists.get(10)).storeRow);
+				assertEquals(10, lists.get(10).getMeasurementValue("A"));
+				assertEquals(1.0, lists.get(10).getMeasurementValue("D"));
+				
+				var valuesB = MeasurementStore.getMeasurementValues(lists, "B");
+				var valuesD = MeasurementStore.getMeasurementValues(lists, "D");
+				for (int i = 0; i < n; i++) {
+					assertEquals(-i, valuesB[i]);
+					assertEquals(-i, lists.get(i).getMeasurementValue("B"));
+					assertEquals(i * 0.5, lists.get(i).getMeasurementValue(2));
+					if (i == 10)
+						assertEquals(1.0, valuesD[i]);
+					else
+						assertTrue(Double.isNaN(valuesD[i]));
+				}
+				
+				// Values should be retained through serialization
+				var bytes = new ByteArrayOutputStream();
+				try (var stream = new ObjectOutputStream(bytes)) {
+					stream.writeObject(lists.get(100));
+				}
+				try (var stream = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+					var list = (MeasurementList)stream.readObject();
+					assertEquals(lists.get(100).getMeasurementNames(), list.getMeasurementNames());
+					assertEquals(100, list.getMeasurementValue("A"));
+					assertEquals(50, list.getMeasurementValue("C"));
+				}
+				assertEquals(-100, lists.get(100).getMeasurementValue("B"));
+			} finally {
+				MeasurementStore.setDefaultStorageType(MeasurementStore.StorageType.NONE);
+			}
+		}
+	}
+	
 	
 	static void testList(MeasurementList list) {
 		
@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonParser;
+
+import qupath.lib.metrics.DefaultMetricsRegistry.DefaultHistogram;
+
+@SuppressWarnings("javadoc")
+public class TestMetrics {
+	
+	@Test
+	public void testDisabled() {
+		Metrics.setEnabled(false);
+		assertFalse(Metrics.isEnabled());
+		assertNull(Metrics.getRegistry());
+		var counter = Metrics.counter("test.counter");
+		counter.increment(10);
+		assertEquals(0L, counter.getCount());
+		assertEquals("{}", Metrics.toJson());
+	}
+	
+	@Test
+	public void testEnabled() {
+		try {
+			Metrics.setEnabled(true);
+			assertTrue(Metrics.isEnabled());
+			Metrics.reset();
+			
+			// Update from multiple threads
+			IntStream.range(0, 10_000).parallel().forEach(i -> {
+				Metrics.counter("test.counter").increment();
+				Metrics.timer("test.timer").record(1_000_000L * (i % 10 + 1));
+			});
+			assertSame(Metrics.counter("test.counter"), Metrics.counter("test.counter"));
+			assertEquals(10_000L, Metrics.counter("test.counter").getCount());
+			assertEquals(10_000L, Metrics.timer("test.timer").getCount());
+			
+			var json = JsonParser.parseString(Metrics.toJson()).getAsJsonObject();
+			assertEquals(10_000L, json.getAsJsonObject("counters").get("test.counter").getAsLong());
+			var timer = json.getAsJsonObject("timers").getAsJsonObject("test.timer");
+			assertEquals("ms", timer.get("unit").getAsString());
+			assertEquals(1.0, timer.get("min").getAsDouble(), 1e-9);
+			assertEquals(10.0, timer.get("max").getAsDouble(), 1e-9);
+			assertEquals(5.5, timer.get("mean").getAsDouble(), 1e-9);
+		} finally {
+			Metrics.setEnabled(false);
+		}
+	}
+	
+	@Test
+	public void testCustomRegistry() {
+		var registry = MetricsRegistry.createDefault();
+		try {
+			Metrics.setRegistry(registry);
+			assertSame(registry, Metrics.getRegistry());
+			Metrics.histogram("test.histogram").update(2.0);
+			assertEquals(1L, registry.histogram("test.histogram").getCount());
+		} finally {
+			Metrics.setRegistry(null);
+		}
+		assertFalse(Metrics.isEnabled());
+	}
+	
+	@Test
+	public void testPercentiles() {
+		var histogram = new DefaultHistogram();
+		for (int i = 1; i <= 1000; i++)
+			histogram.update(i);
+		// Buckets are 1/8 of a power of 2 wide, so estimates should be within ~7%
+		assertEquals(500, histogram.getPercentile(50), 500 * 0.07);
+		assertEquals(900, histogram.getPercentile(90), 900 * 0.07);
+		assertEquals(990, histogram.getPercentile(99), 990 * 0.07);
+		assertEquals(1, histogram.getPercentile(0), 1e-9);
+		assertEquals(1000, histogram.getPercentile(100), 1e-9);
+		
+		Map<String, Object> snapshot = histogram.snapshot(null);
+		assertEquals(1000L, snapshot.get("count"));
+		assertFalse(snapshot.containsKey("unit"));
+	}
+	
+	@Test
+	public void testBucketBounds() {
+		for (double value : new double[] {1e-3, 0.5, 1.0, 1.3, 17.0, 1e6}) {
+			int ind = DefaultHistogram.bucketIndex(value);
+			assertTrue(DefaultHistogram.bucketLowerBound(ind) <= value);
+			assertTrue(DefaultHistogram.bucketLowerBound(ind + 1) > value);
+		}
+		assertEquals(0, DefaultHistogram.bucketIndex(0));
+		assertEquals(0, DefaultHistogram.bucketIndex(-1));
+	}
+
+}
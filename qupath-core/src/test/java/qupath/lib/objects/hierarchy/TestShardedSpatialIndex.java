@@ -0,0 +1,295 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.objects.hierarchy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Envelope;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestShardedSpatialIndex {
+
+	private static List<Envelope> createEnvelopes(Random rand, int n) {
+		var list = new ArrayList<Envelope>();
+		for (int i = 0; i < n; i++) {
+			double x = rand.nextDouble() * 10000 - 1000;
+			double y = rand.nextDouble() * 10000 - 1000;
+			// Include some envelopes larger than a tile
+			double size = i % 50 == 0 ? rand.nextDouble() * 3000 : rand.nextDouble() * 50;
+			list.add(new Envelope(x, x + size, y, y + size));
+		}
+		return list;
+	}
+
+	private static Set<Envelope> bruteForce(List<Envelope> envelopes, Envelope query) {
+		return envelopes.stream().filter(e -> e.intersects(query)).collect(Collectors.toSet());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Set<Envelope> query(ShardedSpatialIndex index, Envelope query) {
+		var set = new HashSet<Envelope>();
+		for (var item : (List<Envelope>)index.query(query)) {
+			if (item.intersects(query))
+				set.add(item);
+		}
+		return set;
+	}
+
+	@Test
+	public void test_query() {
+		var rand = new Random(100L);
+		var envelopes = createEnvelopes(rand, 5000);
+		var index = new ShardedSpatialIndex(256, 16);
+		for (var env : envelopes)
+			index.insert(env, env);
+		assertEquals(envelopes.size(), index.size());
+
+		for (int i = 0; i < 200; i++) {
+			double x = rand.nextDouble() * 10000 - 1000;
+			double y = rand.nextDouble() * 10000 - 1000;
+			double size = i % 10 == 0 ? 5000 : rand.nextDouble() * 500;
+			var query = new Envelope(x, x + size, y, y + size);
+			var expected = bruteForce(envelopes, query);
+			assertEquals(expected, query(index, query));
+			assertEquals(!expected.isEmpty(), index.anyMatch(query, item -> ((Envelope)item).intersects(query)));
+		}
+
+		// Remove half the items, sometimes using a different envelope
+		var removed = new ArrayList<Envelope>();
+		for (int i = 0; i < envelopes.size(); i += 2) {
+			var env = envelopes.get(i);
+			assertTrue(index.remove(i % 4 == 0 ? env : new Envelope(0, 1, 0, 1), env));
+			removed.add(env);
+		}
+		envelopes.removeAll(removed);
+		assertEquals(envelopes.size(), index.size());
+		assertFalse(index.remove(removed.get(0), removed.get(0)));
+
+		var all = new Envelope(-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE);
+		assertEquals(new HashSet<>(envelopes), query(index, all));
+	}
+
+	@Test
+	public void test_packedQuery() {
+		var rand = new Random(300L);
+		for (int n : new int[] {0, 1, 15, 16, 17, 1000, 10000}) {
+			var envelopes = createEnvelopes(rand, n);
+			var bounds = new double[n * 4];
+			for (int i = 0; i < n; i++) {
+				var env = envelopes.get(i);
+				bounds[i*4] = env.getMinX();
+				bounds[i*4+1] = env.getMinY();
+				bounds[i*4+2] = env.getMaxX();
+				bounds[i*4+3] = env.getMaxY();
+			}
+			var index = new PackedSpatialIndex(envelopes.toArray(), bounds);
+			assertEquals(n, index.size());
+			for (int i = 0; i < 100; i++) {
+				double x = rand.nextDouble() * 10000 - 1000;
+				double y = rand.nextDouble() * 10000 - 1000;
+				double size = i % 10 == 0 ? 5000 : rand.nextDouble() * 500;
+				var query = new Envelope(x, x + size, y, y + size);
+				var expected = bruteForce(envelopes, query);
+				// Packed index should only return items with intersecting bounds
+				assertEquals(expected, new HashSet<>(index.query(query)));
+				assertEquals(expected.size(), index.query(query).size());
+				assertEquals(!expected.isEmpty(), index.anyMatch(query, item -> true));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void test_frozenChanges() {
+		var rand = new Random(400L);
+		var envelopes = createEnvelopes(rand, 2000);
+		var bounds = new double[envelopes.size() * 4];
+		for (int i = 0; i < envelopes.size(); i++) {
+			var env = envelopes.get(i);
+			bounds[i*4] = env.getMinX();
+			bounds[i*4+1] = env.getMinY();
+			bounds[i*4+2] = env.getMaxX();
+			bounds[i*4+3] = env.getMaxY();
+		}
+		var index = new FrozenSpatialIndex(new PackedSpatialIndex(envelopes.toArray(), bounds), 256);
+		assertEquals(0, index.getChangeCount());
+		
+		// Remove some of the original items, and add some new ones
+		var current = new ArrayList<>(envelopes);
+		for (int i = 0; i < 500; i++) {
+			var env = current.remove(rand.nextInt(current.size()));
+			assertTrue(index.remove(env, env));
+		}
+		for (var env : createEnvelopes(rand, 500)) {
+			index.insert(env, env);
+			current.add(env);
+		}
+		// Reinsert some of the removed items, and remove some of the new ones
+		for (int i = 0; i < 100; i++) {
+			var env = envelopes.get(i);
+			if (!current.contains(env)) {
+				index.insert(env, env);
+				current.add(env);
+			}
+			var removed = current.remove(current.size() - 1 - i);
+			assertTrue(index.remove(removed, removed));
+		}
+		assertTrue(index.getChangeCount() > 0);
+		
+		for (int i = 0; i < 100; i++) {
+			double x = rand.nextDouble() * 10000 - 1000;
+			double y = rand.nextDouble() * 10000 - 1000;
+			double size = i % 10 == 0 ? 5000 : rand.nextDouble() * 500;
+			var query = new Envelope(x, x + size, y, y + size);
+			var expected = bruteForce(current, query);
+			var result = new HashSet<Envelope>();
+			for (var item : (List<Envelope>)index.query(query)) {
+				if (item.intersects(query))
+					result.add(item);
+			}
+			assertEquals(expected, result);
+			assertEquals(!expected.isEmpty(), index.anyMatch(query, item -> ((Envelope)item).intersects(query)));
+		}
+	}
+
+	@Test
+	public void test_concurrentAccess() throws Exception {
+		var index = new ShardedSpatialIndex(256);
+		var envelopes = createEnvelopes(new Random(200L), 20000);
+		int nThreads = 8;
+		var pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			var tasks = new ArrayList<Callable<Boolean>>();
+			for (int t = 0; t < nThreads; t++) {
+				int offset = t;
+				tasks.add(() -> {
+					var rand = new Random(offset);
+					for (int i = offset; i < envelopes.size(); i += nThreads) {
+						var env = envelopes.get(i);
+						index.insert(env, env);
+						// Every item inserted by this thread should immediately be found
+						if (!query(index, env).contains(env))
+							return false;
+						// Query elsewhere, to interleave with other threads
+						double x = rand.nextDouble() * 10000;
+						index.query(new Envelope(x, x + 100, x, x + 100));
+					}
+					return true;
+				});
+			}
+			for (var future : pool.invokeAll(tasks))
+				assertTrue(future.get());
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(envelopes.size(), index.size());
+	}
+
+	@Test
+	public void test_hierarchyQueries() {
+		var hierarchy = new PathObjectHierarchy();
+		var plane = ImagePlane.getDefaultPlane();
+		var detections = new ArrayList<PathObject>();
+		for (int i = 0; i < 100; i++) {
+			var detection = PathObjects.createDetectionObject(ROIs.createRectangleROI(i * 50, i * 30, 10, 10, plane));
+			detections.add(detection);
+		}
+		hierarchy.addPathObjects(detections);
+		var region = ImageRegion.createInstance(0, 0, 1000, 1000, 0, 0);
+
+		var expected = detections.stream()
+				.filter(d -> region.intersects(d.getROI().getBoundsX(), d.getROI().getBoundsY(), d.getROI().getBoundsWidth(), d.getROI().getBoundsHeight()))
+				.collect(Collectors.toSet());
+		assertEquals(expected, new HashSet<>(hierarchy.getObjectsForRegion(PathObject.class, region, null)));
+
+		// Incremental removal should be reflected in queries
+		var first = detections.get(0);
+		hierarchy.removeObject(first, false);
+		expected.remove(first);
+		assertEquals(expected, new HashSet<>(hierarchy.getObjectsForRegion(PathObject.class, region, null)));
+
+		var emptyRegion = ImageRegion.createInstance(-1000, -1000, 10, 10, 0, 0);
+		assertFalse(hierarchy.hasObjectsForRegion(PathObject.class, emptyRegion));
+		assertTrue(hierarchy.hasObjectsForRegion(PathObject.class, region));
+
+		// Frozen cache should give the same results, and reflect later changes
+		hierarchy.freezeSpatialCache();
+		assertEquals(expected, new HashSet<>(hierarchy.getObjectsForRegion(PathObject.class, region, null)));
+		assertFalse(hierarchy.hasObjectsForRegion(PathObject.class, emptyRegion));
+		assertTrue(hierarchy.hasObjectsForRegion(PathObject.class, region));
+		var second = detections.get(1);
+		hierarchy.removeObject(second, false);
+		expected.remove(second);
+		assertEquals(expected, new HashSet<>(hierarchy.getObjectsForRegion(PathObject.class, region, null)));
+		var added = PathObjects.createDetectionObject(ROIs.createRectangleROI(5, 5, 10, 10, plane));
+		hierarchy.addPathObject(added);
+		expected.add(added);
+		assertEquals(expected, new HashSet<>(hierarchy.getObjectsForRegion(PathObject.class, region, null)));
+		hierarchy.addPathObject(second);
+		expected.add(second);
+		assertEquals(expected, new HashSet<>(hierarchy.getObjectsForRegion(PathObject.class, region, null)));
+		
+		// Freezing again should incorporate the changes
+		hierarchy.freezeSpatialCache();
+		assertEquals(expected, new HashSet<>(hierarchy.getObjectsForRegion(PathObject.class, region, null)));
+		hierarchy.removeObject(added, false);
+		expected.remove(added);
+		assertEquals(expected, new HashSet<>(hierarchy.getObjectsForRegion(PathObject.class, region, null)));
+	}
+
+	@Test
+	public void test_frozenRemove() {
+		var items = new Object[] {"a", "b"};
+		var bounds = new double[] {0, 0, 10, 10, 20, 20, 30, 30};
+		var index = new FrozenSpatialIndex(new PackedSpatialIndex(items, bounds), 100);
+		
+		// Removing items that were never indexed shouldn't change anything
+		assertFalse(index.remove(new Envelope(0, 10, 0, 10), "c"));
+		assertFalse(index.remove(null, "c"));
+		assertEquals(0, index.getChangeCount());
+		
+		// Items should be found even if the envelope is out of date
+		assertTrue(index.remove(new Envelope(100, 110, 100, 110), "b"));
+		assertFalse(index.remove(new Envelope(20, 30, 20, 30), "b"));
+		assertEquals(1, index.getChangeCount());
+		assertEquals(List.of("a"), index.query(new Envelope(-100, 100, -100, 100)));
+	}
+
+}
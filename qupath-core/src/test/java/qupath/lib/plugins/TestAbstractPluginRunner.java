@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.regions.ImageRegion;
+
+@SuppressWarnings("javadoc")
+public class TestAbstractPluginRunner {
+
+	private static class RegionTask implements PathTask {
+
+		private final ImageRegion region;
+		private final AtomicInteger counter;
+		private boolean completed = false;
+
+		RegionTask(ImageRegion region, AtomicInteger counter) {
+			this.region = region;
+			this.counter = counter;
+		}
+
+		@Override
+		public void run() {
+			counter.incrementAndGet();
+		}
+
+		@Override
+		public void taskComplete(boolean wasCancelled) {
+			completed = !wasCancelled;
+		}
+
+		@Override
+		public ImageRegion getRegion() {
+			return region;
+		}
+
+	}
+
+	@Test
+	public void test_orderTasks() {
+		var counter = new AtomicInteger();
+		List<Runnable> tasks = new ArrayList<>();
+		Runnable noRegion = () -> counter.incrementAndGet();
+		tasks.add(noRegion);
+		for (int y = 3; y >= 0; y--) {
+			for (int x = 3; x >= 0; x--)
+				tasks.add(new RegionTask(ImageRegion.createInstance(x * 100, y * 100, 100, 100, 0, 0), counter));
+		}
+		var large = new RegionTask(ImageRegion.createInstance(0, 500, 1000, 1000, 0, 0), counter);
+		tasks.add(large);
+
+		var ordered = AbstractPluginRunner.orderTasks(tasks);
+		assertEquals(tasks.size(), ordered.size());
+		assertEquals(new HashSet<>(tasks), new HashSet<>(ordered));
+		// Largest task first, tasks without regions last, everything else in row order
+		assertSame(large, ordered.get(0));
+		assertSame(noRegion, ordered.get(ordered.size()-1));
+		for (int i = 2; i < ordered.size()-1; i++) {
+			var previous = ((PathTask)ordered.get(i-1)).getRegion();
+			var current = ((PathTask)ordered.get(i)).getRegion();
+			assertTrue(previous.getMinY() < current.getMinY() ||
+					(previous.getMinY() == current.getMinY() && previous.getMinX() < current.getMinX()));
+		}
+	}
+
+	@Test
+	public void test_runTasks() {
+		var imageData = new ImageData<>(new WrappedBufferedImageServer("Test", new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB)));
+		var runner = new CommandLinePluginRunner<>(imageData);
+		var counter = new AtomicInteger();
+		var tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < 100; i++)
+			tasks.add(new RegionTask(ImageRegion.createInstance(i, 0, 10, 10, 0, 0), counter));
+		// The pool should be reused across runs
+		for (int run = 1; run <= 3; run++) {
+			runner.runTasks(tasks, true);
+			assertEquals(100 * run, counter.get());
+			assertEquals(100, runner.getTaskTimeStatistics().size());
+		}
+		for (var task : tasks)
+			assertTrue(((RegionTask)task).completed);
+	}
+
+	@Test
+	public void test_nestedRunTasks() {
+		var imageData = new ImageData<>(new WrappedBufferedImageServer("Test", new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB)));
+		var counter = new AtomicInteger();
+		// Every pool thread runs a task that waits for more tasks on the same pool
+		int nOuter = AbstractPluginRunner.getNumThreads() * 2;
+		var outerTasks = new ArrayList<Runnable>();
+		for (int i = 0; i < nOuter; i++) {
+			outerTasks.add(() -> {
+				var innerTasks = new ArrayList<Runnable>();
+				for (int j = 0; j < 10; j++)
+					innerTasks.add(() -> counter.incrementAndGet());
+				new CommandLinePluginRunner<>(imageData).runTasks(innerTasks, false);
+			});
+		}
+		assertTimeoutPreemptively(Duration.ofSeconds(30), () -> new CommandLinePluginRunner<>(imageData).runTasks(outerTasks, false));
+		assertEquals(nOuter * 10, counter.get());
+	}
+
+}
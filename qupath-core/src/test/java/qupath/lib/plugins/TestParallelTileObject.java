@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.plugins.AbstractTileableDetectionPlugin.OverlapPolicy;
+import qupath.lib.plugins.AbstractTileableDetectionPlugin.ParallelDetectionTileManager;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestParallelTileObject {
+	
+	private static PathObject createDetection(double x, double y, double width, double height) {
+		return PathObjects.createDetectionObject(ROIs.createRectangleROI(x, y, width, height, ImagePlane.getDefaultPlane()));
+	}
+	
+	private static List<PathObject> resolvePair(OverlapPolicy policy) {
+		var parent = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 200, 100, ImagePlane.getDefaultPlane()));
+		var manager = new ParallelDetectionTileManager(parent, policy);
+		var tile1 = new ParallelTileObject(manager, ROIs.createRectangleROI(0, 0, 110, 100, ImagePlane.getDefaultPlane()));
+		var tile2 = new ParallelTileObject(manager, ROIs.createRectangleROI(90, 0, 110, 100, ImagePlane.getDefaultPlane()));
+		assertTrue(tile1.suggestNeighbor(tile2));
+		assertTrue(tile2.suggestNeighbor(tile1));
+		manager.setTiles(Arrays.asList(tile1, tile2));
+		
+		tile1.addPathObjects(Arrays.asList(
+				createDetection(10, 10, 10, 10),
+				createDetection(92, 10, 10, 10),
+				createDetection(95, 50, 8, 8)));
+		tile2.addPathObjects(Arrays.asList(
+				createDetection(170, 10, 10, 10),
+				createDetection(93, 10, 10, 10),
+				createDetection(94, 50, 12, 12)));
+		tile1.setComplete(false);
+		tile2.setComplete(false);
+		return new ArrayList<>(parent.getChildObjects());
+	}
+	
+	@Test
+	public void test_keepLargest() {
+		var pathObjects = resolvePair(OverlapPolicy.KEEP_LARGEST);
+		assertEquals(4, pathObjects.size());
+		assertTrue(pathObjects.stream().anyMatch(p -> p.getROI().getBoundsX() == 94 && p.getROI().getBoundsWidth() == 12));
+		assertFalse(pathObjects.stream().anyMatch(p -> p.getROI().getBoundsX() == 95));
+	}
+	
+	@Test
+	public void test_mergeByIoU() {
+		var pathObjects = resolvePair(OverlapPolicy.MERGE_BY_IOU);
+		assertEquals(4, pathObjects.size());
+		// Highly-overlapping objects should be merged
+		assertTrue(pathObjects.stream().anyMatch(p -> p.getROI().getBoundsX() == 92 && p.getROI().getBoundsWidth() == 11));
+		// Objects with a lower IoU should be resolved by keeping the largest
+		assertTrue(pathObjects.stream().anyMatch(p -> p.getROI().getBoundsX() == 94 && p.getROI().getBoundsWidth() == 12));
+		assertFalse(pathObjects.stream().anyMatch(p -> p.getROI().getBoundsX() == 95));
+	}
+	
+	@Test
+	public void test_parallelGrid() throws Exception {
+		for (var policy : OverlapPolicy.values())
+			testParallelGrid(policy);
+	}
+	
+	private static void testParallelGrid(OverlapPolicy policy) throws Exception {
+		int nTiles = 6;
+		int tileSize = 100;
+		int step = 80;
+		int objectSize = 8;
+		int imageSize = step * (nTiles - 1) + tileSize;
+		var parent = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, imageSize, imageSize, ImagePlane.getDefaultPlane()));
+		var manager = new ParallelDetectionTileManager(parent, policy);
+		
+		var tiles = new ArrayList<ParallelTileObject>();
+		for (int y = 0; y < nTiles; y++) {
+			for (int x = 0; x < nTiles; x++) {
+				var tile = new ParallelTileObject(manager, ROIs.createRectangleROI(x * step, y * step, tileSize, tileSize, ImagePlane.getDefaultPlane()));
+				for (var other : tiles) {
+					if (other.suggestNeighbor(tile))
+						tile.suggestNeighbor(other);
+				}
+				tiles.add(tile);
+			}
+		}
+		manager.setTiles(tiles);
+		
+		// Add the same grid of objects to every tile that fully contains them, creating duplicates in overlaps
+		var positions = new HashSet<List<Integer>>();
+		for (var tile : tiles) {
+			var roi = tile.getROI();
+			var detections = new ArrayList<PathObject>();
+			for (int y = 5; y + objectSize <= imageSize; y += 15) {
+				for (int x = 5; x + objectSize <= imageSize; x += 15) {
+					if (x >= roi.getBoundsX() && y >= roi.getBoundsY() && 
+							x + objectSize <= roi.getBoundsX() + roi.getBoundsWidth() && 
+							y + objectSize <= roi.getBoundsY() + roi.getBoundsHeight()) {
+						detections.add(createDetection(x, y, objectSize, objectSize));
+						positions.add(Arrays.asList(x, y));
+					}
+				}
+			}
+			tile.addPathObjects(detections);
+		}
+		
+		// Complete tiles in a random order from multiple threads
+		var shuffled = new ArrayList<>(tiles);
+		Collections.shuffle(shuffled, new Random(100L));
+		var pool = Executors.newFixedThreadPool(4);
+		try {
+			var futures = new ArrayList<Future<?>>();
+			for (var tile : shuffled)
+				futures.add(pool.submit(() -> tile.setComplete(false)));
+			for (var future : futures)
+				future.get();
+		} finally {
+			pool.shutdown();
+		}
+		
+		// Each object should be retained exactly once
+		var children = parent.getChildObjects();
+		var found = new HashSet<List<Integer>>();
+		for (var child : children)
+			found.add(Arrays.asList((int)Math.round(child.getROI().getBoundsX()), (int)Math.round(child.getROI().getBoundsY())));
+		assertEquals(positions.size(), children.size());
+		assertEquals(positions, found);
+	}
+
+}
@@ -0,0 +1,201 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.roi;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.interfaces.ROI;
+
+@SuppressWarnings("javadoc")
+public class TestScanlineRasterizer {
+
+	private static final int WIDTH = 200;
+	private static final int HEIGHT = 150;
+
+	/**
+	 * Paint a ROI with Java2D, in the same way as labeled images were created previously - 
+	 * except without normalizing strokes, since this shifts boundaries by a fraction of a pixel.
+	 */
+	private static byte[] paintJava2D(ROI roi, double x, double y, double downsample, boolean boundary) {
+		var img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+		var g2d = img.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		g2d.setClip(0, 0, WIDTH, HEIGHT);
+		g2d.scale(1.0/downsample, 1.0/downsample);
+		g2d.translate(-x, -y);
+		g2d.setColor(Color.WHITE);
+		g2d.setStroke(new BasicStroke((float)downsample));
+		if (boundary || roi.isLine())
+			g2d.draw(roi.getShape());
+		else
+			g2d.fill(roi.getShape());
+		g2d.dispose();
+		return ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+	}
+
+	private static byte[] paintScanline(ROI roi, double x, double y, double downsample, boolean boundary) {
+		var rasterizer = new ScanlineRasterizer(WIDTH, HEIGHT);
+		rasterizer.setRegion(x, y, downsample);
+		var pixels = new byte[WIDTH * HEIGHT];
+		if (boundary)
+			rasterizer.paintBoundary(roi, 1, pixels, 255);
+		else
+			rasterizer.paint(roi, 1, pixels, 255);
+		return pixels;
+	}
+
+	private static int countDifferences(byte[] expected, byte[] actual) {
+		int n = 0;
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != actual[i])
+				n++;
+		}
+		return n;
+	}
+
+	private static int countNonZero(byte[] pixels) {
+		int n = 0;
+		for (var p : pixels) {
+			if (p != 0)
+				n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Check that every non-zero pixel in one image has a non-zero pixel within its 3x3 neighborhood in another.
+	 */
+	private static boolean isNear(byte[] pixels, byte[] reference) {
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				if (pixels[y * WIDTH + x] == 0)
+					continue;
+				boolean found = false;
+				for (int yy = Math.max(0, y-1); yy <= Math.min(HEIGHT-1, y+1) && !found; yy++) {
+					for (int xx = Math.max(0, x-1); xx <= Math.min(WIDTH-1, x+1) && !found; xx++)
+						found = reference[yy * WIDTH + xx] != 0;
+				}
+				if (!found)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static ROI createStar(Random rand, double cx, double cy, double radius, int n) {
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			double theta = 2 * Math.PI * i / n;
+			double r = radius * (0.5 + 0.5 * rand.nextDouble());
+			x[i] = cx + Math.cos(theta) * r;
+			y[i] = cy + Math.sin(theta) * r;
+		}
+		return ROIs.createPolygonROI(x, y, ImagePlane.getDefaultPlane());
+	}
+
+	@Test
+	public void test_rectangle() {
+		var roi = ROIs.createRectangleROI(20, 30, 50, 40, ImagePlane.getDefaultPlane());
+		assertArrayEquals(paintJava2D(roi, 0, 0, 1, false), paintScanline(roi, 0, 0, 1, false));
+		assertEquals(50 * 40, countNonZero(paintScanline(roi, 0, 0, 1, false)));
+		// Rectangles partially outside the image should be clipped
+		var roiOutside = ROIs.createRectangleROI(-20, -30, 500, 40, ImagePlane.getDefaultPlane());
+		assertEquals(WIDTH * 10, countNonZero(paintScanline(roiOutside, 0, 0, 1, false)));
+	}
+
+	@Test
+	public void test_fill() {
+		var rand = new Random(100L);
+		var plane = ImagePlane.getDefaultPlane();
+		var rois = new ROI[] {
+				createStar(rand, 100, 75, 60, 50),
+				createStar(rand, 10, 10, 80, 200),
+				ROIs.createEllipseROI(30, 20, 120, 90, plane),
+				RoiTools.combineROIs(
+						ROIs.createEllipseROI(30, 20, 120, 90, plane),
+						ROIs.createEllipseROI(60, 40, 40, 30, plane),
+						RoiTools.CombineOp.SUBTRACT)
+		};
+		for (var roi : rois) {
+			for (double downsample : new double[] {1.0, 1.5, 4.0}) {
+				double x = 5.5;
+				double y = -3.0;
+				var expected = paintJava2D(roi, x, y, downsample, false);
+				var actual = paintScanline(roi, x, y, downsample, false);
+				int nDifferent = countDifferences(expected, actual);
+				// Differences should be limited to very few boundary pixels
+				assertTrue(nDifferent <= Math.max(20, countNonZero(expected) * 0.02),
+						"Too many different pixels for " + roi + " with downsample " + downsample + ": " + nDifferent);
+				assertTrue(isNear(actual, expected));
+				assertTrue(isNear(expected, actual));
+			}
+		}
+	}
+
+	@Test
+	public void test_boundaryAndLines() {
+		var rand = new Random(200L);
+		var plane = ImagePlane.getDefaultPlane();
+		var rois = new ROI[] {
+				ROIs.createRectangleROI(20.5, 30, 50, 40, plane),
+				createStar(rand, 100, 75, 60, 20),
+				ROIs.createLineROI(10, 10, 180, 140, plane),
+				ROIs.createPolylineROI(new double[] {5, 100, 150, 190}, new double[] {140, 10, 100, 20}, plane)
+		};
+		for (var roi : rois) {
+			boolean boundary = roi.isArea();
+			var expected = paintJava2D(roi, 0, 0, 1, boundary);
+			var actual = paintScanline(roi, 0, 0, 1, boundary);
+			assertTrue(countNonZero(actual) > 0);
+			assertTrue(isNear(actual, expected));
+			assertTrue(isNear(expected, actual));
+		}
+	}
+
+	@Test
+	public void test_labels() {
+		var plane = ImagePlane.getDefaultPlane();
+		var rasterizer = new ScanlineRasterizer(WIDTH, HEIGHT);
+		var labels = new int[WIDTH * HEIGHT];
+		rasterizer.paint(ROIs.createRectangleROI(0, 0, 100, 100, plane), 1, labels, 1000);
+		rasterizer.paint(ROIs.createRectangleROI(50, 50, 100, 100, plane), 1, labels, 70000);
+		rasterizer.paint(ROIs.createPointsROI(199.5, 0.5, plane), 1, labels, 5);
+		assertEquals(1000, labels[10 * WIDTH + 10]);
+		assertEquals(70000, labels[60 * WIDTH + 60]);
+		assertEquals(0, labels[120 * WIDTH + 10]);
+		assertEquals(5, labels[199]);
+	}
+
+}
@@ -121,12 +121,18 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 	private static final Logger logger = LoggerFactory.getLogger(BioFormatsImageServer.class);
 	
 	/**
-	 * Define a maximum memoization file size above which parallelization is disabled. 
+	 * Define a maximum memoization file size above which the number of readers is restricted. 
 	 * This is necessary to avoid creating multiple readers that are too large (e.g. sometimes 
 	 * a memoization file can be over 1GB...)
 	 */
 	private static long MAX_PARALLELIZATION_MEMO_SIZE = 1024L * 1024L * 16L;
 	
+	/**
+	 * Approximate total memoization file size permitted for all readers of a single image, 
+	 * used to limit the number of readers when the memoization file is large.
+	 */
+	private static long MAX_READER_POOL_MEMO_SIZE = MAX_PARALLELIZATION_MEMO_SIZE * 8L;
+	
 	/**
 	 * The original URI requested for this server.
 	 */
@@ -213,6 +219,16 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 	 */
 	private LocalReaderWrapper readerWrapper;
 	
+	/**
+	 * Pool of readers used to read tiles in parallel, or null if all tiles should be read with the primary reader.
+	 */
+	private BioFormatsReaderPool readerPool;
+	
+	/**
+	 * Helper to read tiles in advance, or null if read-ahead is not used.
+	 */
+	private TileReadAhead readAhead;
+	
 	/**
 	 * Primary metadata store.
 	 */
@@ -721,6 +737,15 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 		// Bioformats can use ImageIO for JPEG decoding, and permitting the disk-based cache can slow it down... so here we turn it off
 		// TODO: Document - or improve - the setting of ImageIO disk cache
 		ImageIO.setUseCache(false);
+		
+		// Create a pool if we can read tiles in parallel - readers are only created when needed
+		int maxReaders = getMaxReaders();
+		if (maxReaders > 1) {
+			readerPool = manager.createReaderPool(this, options, filePath, bfArgs, maxReaders);
+			int nReadAhead = options.getReadAheadTiles();
+			if (nReadAhead > 0)
+				readAhead = new TileReadAhead(this::getTileRequestManager, nReadAhead, this::prefetchTile);
+		}
 
 		long endTime = System.currentTimeMillis();
 		logger.debug(String.format("Initialization time: %d ms", endTime-startTime));
@@ -793,16 +818,46 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 	/**
 	 * Returns true if the reader accepts parallel tile requests, without synchronization.
 	 * <p>
-	 * This is true if parallelization is requested, and any memoization file is 'small enough'.
-	 * The idea is that larger memoization files indicate more heavyweight readers, and these need 
-	 * to be kept restricted to reduce the risk of memory errors.
+	 * This is true if parallelization is requested, and any memoization file is small enough that 
+	 * more than one reader can be created.
 	 * 
 	 * @return
 	 */
 	public boolean willParallelize() {
-		return options.requestParallelization() && (getWidth() > getPreferredTileWidth() || getHeight() > getPreferredTileHeight()) && manager.getMemoizationFileSize(filePath) <= MAX_PARALLELIZATION_MEMO_SIZE;
+		return getMaxReaders() > 1;
 	}
 	
+	/**
+	 * Get the maximum number of readers that should be used to read tiles in parallel.
+	 * <p>
+	 * This is determined by {@link BioFormatsServerOptions#getMaxReaders()}, but reduced if the memoization 
+	 * file is large. The idea is that larger memoization files indicate more heavyweight readers, and these 
+	 * need to be kept restricted to reduce the risk of memory errors.
+	 * 
+	 * @return the maximum number of readers, or 1 if only the primary reader should be used
+	 */
+	int getMaxReaders() {
+		if (!options.requestParallelization() || (getWidth() <= getPreferredTileWidth() && getHeight() <= getPreferredTileHeight()))
+			return 1;
+		int maxReaders = options.getMaxReaders();
+		if (maxReaders <= 0)
+			maxReaders = Runtime.getRuntime().availableProcessors();
+		long memoSize = manager.getMemoizationFileSize(filePath);
+		if (memoSize > MAX_PARALLELIZATION_MEMO_SIZE)
+			maxReaders = (int)Math.max(1L, Math.min(maxReaders, MAX_READER_POOL_MEMO_SIZE / memoSize));
+		return maxReaders;
+	}
+	
+	/**
+	 * Tiles are only read in parallel if there is a pool of readers to use.
+	 */
+	@Override
+	protected int getMaxParallelTileReads() {
+		if (readerPool == null)
+			return 1;
+		return Math.min(readerPool.getMaxReaders(), super.getMaxParallelTileReads());
+	}
+
 	int getPreferredTileWidth() {
 		return getMetadata().getPreferredTileWidth();
 	}
@@ -813,21 +868,47 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 
 	
 	/**
-	 * Get a IFormatReader for use by the current thread.
+	 * Get a IFormatReader for reading tiles, which must be returned with {@link #releaseReader(IFormatReader)}.
 	 * <p>
-	 * If willParallelize() returns false, then the global reader will be provided.
+	 * If a reader pool is available, this may wait until one of its readers is free. 
+	 * Otherwise, the primary reader will be provided.
 	 * 
 	 * @return
+	 * @throws IOException 
 	 */
-	private IFormatReader getReader() {
+	private IFormatReader borrowReader() throws IOException {
+		if (readerPool != null)
+			return readerPool.borrow();
+		return readerWrapper.getReader();
+	}
+	
+	private void releaseReader(IFormatReader reader) {
+		if (readerPool != null)
+			readerPool.release(reader);
+	}
+	
+	/**
+	 * Notify any read-ahead helper of the request, before getting the tile in the usual way.
+	 */
+	@Override
+	protected BufferedImage getTile(TileRequest tileRequest) throws IOException {
+		if (readAhead != null)
+			readAhead.tileRequested(tileRequest);
+		return super.getTile(tileRequest);
+	}
+	
+	/**
+	 * Read a tile in the background so that it is cached when needed.
+	 * This does nothing if there is no cache, or if there is no idle reader.
+	 * @param tileRequest
+	 */
+	private void prefetchTile(TileRequest tileRequest) {
+		if (getCache() == null || readerPool == null || !readerPool.hasIdleReader())
+			return;
 		try {
-			if (willParallelize())
-				return manager.getReaderForThread(options, filePath, bfArgs);
-			else
-				return readerWrapper.getReader();
+			super.getTile(tileRequest);
 		} catch (Exception e) {
-			logger.error("Error requesting image reader", e);
-			return null;
+			logger.debug("Unable to prefetch tile {}: {}", tileRequest, e.getLocalizedMessage());
 		}
 	}
 	
@@ -855,16 +936,16 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 		int z = tileRequest.getZ();
 		int t = tileRequest.getT();
 
-		IFormatReader ipReader = getReader();
-		if (ipReader == null) {
-			throw new IOException("Reader is null - was the image already closed? " + filePath);
-		}
-
 		// Check if this is non-zero
 		if (tileWidth <= 0 || tileHeight <= 0) {
 			throw new IOException("Unable to request pixels for region with downsampled size " + tileWidth + " x " + tileHeight);
 		}
 
+		IFormatReader ipReader = borrowReader();
+		if (ipReader == null) {
+			throw new IOException("Reader is null - was the image already closed? " + filePath);
+		}
+
 		byte[][] bytes = null;
 		int effectiveC;
 		int sizeC = nChannels();
@@ -874,37 +955,42 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 		int pixelType;
 		boolean normalizeFloats = false;
 
-		synchronized(ipReader) {
-			ipReader.setSeries(series);
-			ipReader.setResolution(level);
-			order = ipReader.isLittleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
-			interleaved = ipReader.isInterleaved();
-			pixelType = ipReader.getPixelType();
-			normalizeFloats = ipReader.isNormalized();
-
-			// Single-channel & RGB images are straightforward... nothing more to do
-			if ((ipReader.isRGB() && isRGB()) || nChannels() == 1) {
-				// Read the image - or at least the first channel
-				int ind = ipReader.getIndex(z, 0, t);
-				try {
-					byte[] bytesSimple = ipReader.openBytes(ind, tileX, tileY, tileWidth, tileHeight);
-					return AWTImageTools.openImage(bytesSimple, ipReader, tileWidth, tileHeight);
-				} catch (Exception e) {
-					logger.error("Error opening image " + ind + " for " + tileRequest.getRegionRequest(), e);
+		try {
+			synchronized(ipReader) {
+				ipReader.setSeries(series);
+				ipReader.setResolution(level);
+				order = ipReader.isLittleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+				interleaved = ipReader.isInterleaved();
+				pixelType = ipReader.getPixelType();
+				normalizeFloats = ipReader.isNormalized();
+
+				// Single-channel & RGB images are straightforward... nothing more to do
+				if ((ipReader.isRGB() && isRGB()) || nChannels() == 1) {
+					// Read the image - or at least the first channel
+					int ind = ipReader.getIndex(z, 0, t);
+					try {
+						byte[] bytesSimple = ipReader.openBytes(ind, tileX, tileY, tileWidth, tileHeight);
+						return AWTImageTools.openImage(bytesSimple, ipReader, tileWidth, tileHeight);
+					} catch (Exception e) {
+						logger.error("Error opening image " + ind + " for " + tileRequest.getRegionRequest(), e);
+					}
 				}
-			}
-			// Read bytes for all the required channels
-			effectiveC = ipReader.getEffectiveSizeC();
-			bytes = new byte[effectiveC][];
-			try {
-				for (int c = 0; c < effectiveC; c++) {
-					int ind = ipReader.getIndex(z, c, t);
-					bytes[c] = ipReader.openBytes(ind, tileX, tileY, tileWidth, tileHeight);
-					length = bytes[c].length;
+				// Read bytes for all the required channels
+				effectiveC = ipReader.getEffectiveSizeC();
+				bytes = new byte[effectiveC][];
+				try {
+					for (int c = 0; c < effectiveC; c++) {
+						int ind = ipReader.getIndex(z, c, t);
+						bytes[c] = ipReader.openBytes(ind, tileX, tileY, tileWidth, tileHeight);
+						length = bytes[c].length;
+					}
+				} catch (FormatException e) {
+					throw new IOException(e);
 				}
-			} catch (FormatException e) {
-				throw new IOException(e);
 			}
+		} finally {
+			// Return the reader as soon as possible; it isn't needed to convert the bytes
+			releaseReader(ipReader);
 		}
 
 		DataBuffer dataBuffer;
@@ -1006,6 +1092,8 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 	@Override
 	public synchronized void close() throws Exception {
 		super.close();
+		if (readerPool != null)
+			readerPool.close();
 	}
 
 	boolean containsSubImages() {
@@ -1128,28 +1216,20 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 	 * <ol>
 	 *   <li>To construct IFormatReaders in a standardized way (e.g. with/without memoization).</li>
 	 *   <li>To track the size of any memoization files for particular readers.</li>
-	 *   <li>To allow BioFormatsImageServers to request separate Bio-Formats image readers for different threads.</li>
+	 *   <li>To create pools of Bio-Formats image readers, which BioFormatsImageServers can use to read tiles in parallel.</li>
 	 * </ol> 
 	 * The memoization file size can be relevant because some readers are very memory-hungry, and may need to be created rarely.
 	 * On the other side, some readers are very lightweight - and having multiple such readers active at a time can help rapidly 
 	 * respond to tile requests.
 	 * <p>
-	 * It's up to any consumers to ensure that heavyweight readers aren't called for each thread. Additionally, each thread 
-	 * will have only one reader active at any time. This should be explicitly closed by the calling thread if it knows 
-	 * the reader will not be used again, but in practice this is often not the case and therefore a Cleaner is registered to 
-	 * provide some additional support for when a thread is no longer reachable.
-	 * <p>
-	 * Note that this does mean one should be sparing when creating threads, and not keep them around too long.
+	 * It's up to any consumers to choose a pool size that avoids creating too many heavyweight readers. 
+	 * Pools should be explicitly closed when the server is closed, but in practice this is often not the case 
+	 * and therefore a Cleaner is registered to close the readers when the server is no longer reachable.
 	 */
 	static class BioFormatsReaderManager {
 		
 		private static Cleaner cleaner = Cleaner.create();
 		
-		/**
-		 * Map of reads for each calling thread.  Care should be taking by the calling code to ensure requests are only made for 'lightweight' readers to avoid memory problems.
-		 */
-		private static ThreadLocal<LocalReaderWrapper> localReader = new ThreadLocal<>();
-		
 		/**
 		 * Map of memoization file sizes.
 		 */
@@ -1171,40 +1251,21 @@ public class BioFormatsImageServer extends AbstractTileableImageServer {
 		private static Set<File> tempMemoFiles = new HashSet<>();
 		
 		/**
-		 * Request a IFormatReader for a specified path that is unique for the calling thread.
+		 * Create a pool of readers for a specified path, which are created only when needed.
 		 * <p>
-		 * Note that the state of the reader is not specified; setSeries should be called before use.
+		 * The pool will be closed when the owner is no longer reachable, if it has not been closed already.
 		 * 
+		 * @param owner the object using the pool (usually an image server)
 		 * @param options
 		 * @param path
-		 * @param args 
+		 * @param args
+		 * @param maxReaders the maximum number of readers in the pool
 		 * @return
-		 * @throws DependencyException
-		 * @throws ServiceException
-		 * @throws FormatException
-		 * @throws IOException
 		 */
-		public synchronized IFormatReader getReaderForThread(final BioFormatsServerOptions options, final String path, BioFormatsArgs args) throws DependencyException, ServiceException, FormatException, IOException {
-			
-			LocalReaderWrapper wrapper = localReader.get();
-			
-			// Check if we already have the correct reader
-			IFormatReader reader = wrapper == null ? null : wrapper.getReader();
-			if (reader != null) {
-				if (path.equals(reader.getCurrentFile()) && wrapper.argsMatch(args))
-					return reader;		
-				else
-					reader.close(false);
-			}
-			
-			// Create a new reader
-			reader = createReader(options, path, null, args);
-			
-			// Store wrapped reference with associated cleaner
-			wrapper = wrapReader(reader, args);
-			localReader.set(wrapper);
-			
-			return reader;
+		BioFormatsReaderPool createReaderPool(final Object owner, final BioFormatsServerOptions options, final String path, final BioFormatsArgs args, final int maxReaders) {
+			var pool = new BioFormatsReaderPool(path, () -> createReader(options, path, null, args), maxReaders);
+			cleaner.register(owner, pool::close);
+			return pool;
 		}
 		
 		
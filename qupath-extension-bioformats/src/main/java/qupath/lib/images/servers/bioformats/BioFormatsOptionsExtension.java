@@ -85,6 +85,8 @@ public class BioFormatsOptionsExtension implements QuPathExtension {
 		BooleanProperty filesOnly = PathPrefs.createPersistentPreference("bfFilesOnly", options.getFilesOnly());
 		BooleanProperty useParallelization = PathPrefs.createPersistentPreference("bfUseParallelization", options.requestParallelization());
 		IntegerProperty memoizationTimeMillis = PathPrefs.createPersistentPreference("bfMemoizationTimeMS", options.getMemoizationTimeMillis());
+		IntegerProperty maxReaders = PathPrefs.createPersistentPreference("bfMaxReaders", options.getMaxReaders());
+		IntegerProperty readAheadTiles = PathPrefs.createPersistentPreference("bfReadAheadTiles", options.getReadAheadTiles());
 //		BooleanProperty parallelizeMultichannel = PathPrefs.createPersistentPreference("bfParallelizeMultichannel", options.requestParallelizeMultichannel());
 
 //		BooleanProperty requestChannelZCorrectionVSI = PathPrefs.createPersistentPreference("bfChannelZCorrectionVSI", options.requestChannelZCorrectionVSI());
@@ -99,6 +101,8 @@ public class BioFormatsOptionsExtension implements QuPathExtension {
 		options.setBioformatsEnabled(enableBioformats.get());
 		options.setRequestParallelization(useParallelization.get());
 		options.setMemoizationTimeMillis(memoizationTimeMillis.get());
+		options.setMaxReaders(maxReaders.get());
+		options.setReadAheadTiles(readAheadTiles.get());
 //		options.setRequestParallelizeMultichannel(parallelizeMultichannel.get());
 //		options.setRequestChannelZCorrectionVSI(requestChannelZCorrectionVSI.get());
 		fillCollectionWithTokens(useExtensions.get(), options.getUseAlwaysExtensions());
@@ -109,6 +113,8 @@ public class BioFormatsOptionsExtension implements QuPathExtension {
 		filesOnly.addListener((v, o, n) -> options.setFilesOnly(n));
 		useParallelization.addListener((v, o, n) -> options.setRequestParallelization(n));
 		memoizationTimeMillis.addListener((v, o, n) -> options.setMemoizationTimeMillis(n.intValue()));
+		maxReaders.addListener((v, o, n) -> options.setMaxReaders(n.intValue()));
+		readAheadTiles.addListener((v, o, n) -> options.setReadAheadTiles(n.intValue()));
 //		parallelizeMultichannel.addListener((v, o, n) -> options.setRequestParallelizeMultichannel(n));
 
 //		requestChannelZCorrectionVSI.addListener((v, o, n) -> options.setRequestChannelZCorrectionVSI(n));
@@ -123,6 +129,9 @@ public class BioFormatsOptionsExtension implements QuPathExtension {
 		prefs.addPropertyPreference(filesOnly, Boolean.class, "Local files only", "Bio-Formats", "Limit Bio-Formats to only opening local files, not other URLs.\n"
 				+ "Allowing Bio-Formats to open URLs can cause performance issues if this results in attempting to open URLs intended to be read using other image servers.");
 		prefs.addPropertyPreference(useParallelization, Boolean.class, "Enable Bio-Formats tile parallelization", "Bio-Formats", "Enable reading image tiles in parallel when using Bio-Formats");
+		prefs.addPropertyPreference(maxReaders, Integer.class, "Bio-Formats max readers per image", "Bio-Formats", "Maximum number of readers to create for each image when reading tiles in parallel.\n"
+				+ "More readers can improve performance, but require more memory (set <= 0 to use the number of processors)");
+		prefs.addPropertyPreference(readAheadTiles, Integer.class, "Bio-Formats read-ahead tiles", "Bio-Formats", "Number of tiles to read in advance when tiles are requested in sequence, e.g. during tiled export or detection (set 0 to turn off read-ahead)");
 //		prefs.addPropertyPreference(parallelizeMultichannel, Boolean.class, "Enable Bio-Formats channel parallelization (experimental)", "Bio-Formats", "Request multiple image channels in parallel, even if parallelization of tiles is turned off - "
 //				+ "only relevant for multichannel images, and may fail for some image formats");
 		prefs.addPropertyPreference(memoizationTimeMillis, Integer.class, "Bio-Formats memoization time (ms)", "Bio-Formats", "Specify how long a file requires to open before Bio-Formats will create a .bfmemo file to improve performance (set < 0 to never use memoization)");
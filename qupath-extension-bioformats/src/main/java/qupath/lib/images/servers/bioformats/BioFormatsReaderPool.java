@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers.bioformats;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import loci.formats.IFormatReader;
+
+/**
+ * A bounded pool of Bio-Formats readers for a single image, which threads borrow and return.
+ * <p>
+ * Readers are created lazily, up to a maximum number. If all readers are in use, threads wait 
+ * until one is returned. This limits memory use for heavyweight readers, while still allowing 
+ * tiles to be read in parallel.
+ * <p>
+ * The most recently returned reader is borrowed first, so that readers that are already 'warm' 
+ * are preferred.
+ */
+class BioFormatsReaderPool implements AutoCloseable {
+	
+	private static final Logger logger = LoggerFactory.getLogger(BioFormatsReaderPool.class);
+	
+	private final String name;
+	private final Callable<IFormatReader> factory;
+	private final int maxReaders;
+	
+	private final Deque<IFormatReader> available = new ArrayDeque<>();
+	private int nReaders = 0;
+	private boolean closed = false;
+	
+	/**
+	 * Create a new pool.
+	 * @param name name used for logging, usually the image path
+	 * @param factory creator for new readers; this should not capture a reference to the image server, 
+	 *                because the pool may be closed when the server is no longer reachable
+	 * @param maxReaders the maximum number of readers that may be created
+	 */
+	BioFormatsReaderPool(String name, Callable<IFormatReader> factory, int maxReaders) {
+		if (maxReaders < 1)
+			throw new IllegalArgumentException("Reader pool must support at least one reader!");
+		this.name = name;
+		this.factory = factory;
+		this.maxReaders = maxReaders;
+	}
+	
+	/**
+	 * Get the maximum number of readers that may be created for this pool.
+	 * @return
+	 */
+	int getMaxReaders() {
+		return maxReaders;
+	}
+	
+	/**
+	 * Returns true if a reader could be borrowed now without waiting, either because one is idle 
+	 * or because another one can be created.
+	 * @return
+	 */
+	synchronized boolean hasIdleReader() {
+		return !closed && (!available.isEmpty() || nReaders < maxReaders);
+	}
+	
+	/**
+	 * Borrow a reader, waiting until one is available if necessary.
+	 * The reader must be returned by calling {@link #release(IFormatReader)}.
+	 * @return
+	 * @throws IOException if the pool is closed, a reader cannot be created, or the thread is interrupted
+	 */
+	IFormatReader borrow() throws IOException {
+		synchronized (this) {
+			while (true) {
+				if (closed)
+					throw new IOException("Reader pool is closed for " + name);
+				var reader = available.pollFirst();
+				if (reader != null)
+					return reader;
+				if (nReaders < maxReaders) {
+					nReaders++;
+					break;
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for a reader for " + name, e);
+				}
+			}
+		}
+		// Create the reader outside the lock, since it can be slow
+		try {
+			var reader = factory.call();
+			logger.debug("Created pooled reader for {} (max {} readers)", name, maxReaders);
+			return reader;
+		} catch (Exception e) {
+			synchronized (this) {
+				nReaders--;
+				notifyAll();
+			}
+			throw e instanceof IOException ? (IOException)e : new IOException(e);
+		}
+	}
+	
+	/**
+	 * Return a reader to the pool.
+	 * If the pool has been closed, the reader will be closed instead.
+	 * @param reader
+	 */
+	void release(IFormatReader reader) {
+		synchronized (this) {
+			if (!closed) {
+				available.addFirst(reader);
+				notifyAll();
+				return;
+			}
+			nReaders--;
+		}
+		closeReader(reader);
+	}
+	
+	/**
+	 * Close the pool, and all readers that are not currently in use.
+	 * Readers that are in use are closed when they are returned.
+	 */
+	@Override
+	public void close() {
+		IFormatReader[] readers;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			readers = available.toArray(IFormatReader[]::new);
+			nReaders -= readers.length;
+			available.clear();
+			notifyAll();
+		}
+		if (readers.length > 0)
+			logger.debug("Closing {} pooled readers for {}", readers.length, name);
+		for (var reader : readers)
+			closeReader(reader);
+	}
+	
+	private void closeReader(IFormatReader reader) {
+		try {
+			reader.close(false);
+		} catch (IOException e) {
+			logger.warn("Error closing reader for " + name, e);
+		}
+	}
+
+}
@@ -56,6 +56,8 @@ public class BioFormatsServerOptions {
 	private Set<String> useExtensions = new TreeSet<>();
 	
 	private boolean requestParallelization = true;
+	private int maxReaders = -1;
+	private int readAheadTiles = 2;
 	private boolean filesOnly = true;
 	private int memoizationTimeMillis = 500;
 //	private boolean requestParallelizeMultichannel = false;
@@ -216,6 +218,52 @@ public class BioFormatsServerOptions {
 		this.requestParallelization = requestParallelization;
 	}
 	
+	/**
+	 * Get the maximum number of readers that may be created for each image when parallelization is requested.
+	 * @return the maximum number of readers, or a value &lt;= 0 if this is determined by the number of processors
+	 * @since 0.3
+	 * @see #setMaxReaders(int)
+	 */
+	public int getMaxReaders() {
+		return maxReaders;
+	}
+	
+	/**
+	 * Set the maximum number of readers that may be created for each image when parallelization is requested.
+	 * Threads share these readers, waiting for one to become available if necessary.
+	 * Fewer readers may be used if the readers are known to be memory-hungry.
+	 * <p>
+	 * This applies to servers created after the value is changed.
+	 * @param maxReaders the maximum number of readers, or a value &lt;= 0 to use the number of processors
+	 * @since 0.3
+	 */
+	public void setMaxReaders(final int maxReaders) {
+		this.maxReaders = maxReaders;
+	}
+	
+	/**
+	 * Get the number of tiles to read ahead when tiles appear to be requested sequentially.
+	 * @return
+	 * @since 0.3
+	 * @see #setReadAheadTiles(int)
+	 */
+	public int getReadAheadTiles() {
+		return readAheadTiles;
+	}
+	
+	/**
+	 * Set the number of tiles to read ahead when tiles appear to be requested sequentially 
+	 * (e.g. during tiled export or detection). Tiles are read in the background and added to the 
+	 * tile cache. This is only used if multiple readers are available for an image.
+	 * <p>
+	 * This applies to servers created after the value is changed.
+	 * @param readAheadTiles the number of tiles to read ahead, or 0 to turn off read-ahead
+	 * @since 0.3
+	 */
+	public void setReadAheadTiles(final int readAheadTiles) {
+		this.readAheadTiles = readAheadTiles;
+	}
+	
 	/**
 	 * Query the set of file extensions for which Bio-Formats should not be used.
 	 * @return
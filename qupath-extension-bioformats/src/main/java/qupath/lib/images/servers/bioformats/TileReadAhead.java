@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers.bioformats;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.images.servers.TileRequestManager;
+import qupath.lib.metrics.Metrics;
+
+/**
+ * Helper class to prefetch tiles when an image is being read sequentially.
+ * <p>
+ * Tiled export and object detection both tend to request tiles along rows. When a tile is requested 
+ * and its left neighbor was requested recently, the next few tiles to the right are read in the 
+ * background, so that they are already cached when they are needed.
+ * <p>
+ * Prefetching uses a small shared pool of low-priority threads with a bounded queue. If the queue is 
+ * full, further prefetch requests are dropped rather than delaying tiles that are actually needed.
+ */
+class TileReadAhead {
+	
+	private static final int MAX_HISTORY = 256;
+	
+	private static final int MAX_PREFETCH_THREADS = 2;
+	
+	private static final ExecutorService pool = createPool();
+	
+	private final Supplier<TileRequestManager> tileManagerSupplier;
+	private final int nTiles;
+	private final Consumer<TileRequest> reader;
+	
+	// Recently requested (or prefetched) tiles, used to detect sequential access
+	private final Set<TileRequest> history = Collections.newSetFromMap(new LinkedHashMap<>(MAX_HISTORY*2, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TileRequest, Boolean> eldest) {
+			return size() > MAX_HISTORY;
+		}
+	});
+	
+	private final Set<TileRequest> pending = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Constructor.
+	 * @param tileManagerSupplier supplier for the current tile request manager of the image
+	 * @param nTiles number of tiles to read ahead
+	 * @param reader consumer that reads a tile and adds it to the tile cache
+	 */
+	TileReadAhead(Supplier<TileRequestManager> tileManagerSupplier, int nTiles, Consumer<TileRequest> reader) {
+		this.tileManagerSupplier = tileManagerSupplier;
+		this.nTiles = nTiles;
+		this.reader = reader;
+	}
+	
+	private static ExecutorService createPool() {
+		var executor = new ThreadPoolExecutor(MAX_PREFETCH_THREADS, MAX_PREFETCH_THREADS, 10L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(MAX_PREFETCH_THREADS * 8),
+				ThreadTools.createThreadFactory("bioformats-read-ahead-", true, Thread.MIN_PRIORITY),
+				new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	/**
+	 * Notify that a tile has been requested, prefetching the next tiles if the request appears 
+	 * to be part of a sequential scan.
+	 * @param tile
+	 */
+	void tileRequested(TileRequest tile) {
+		var tileManager = tileManagerSupplier.get();
+		int level = tile.getLevel();
+		int z = tile.getZ();
+		int t = tile.getT();
+		synchronized (history) {
+			var left = tileManager.getTileRequest(level, tile.getImageX() - 1, tile.getImageY(), z, t);
+			boolean sequential = left != null && history.contains(left);
+			history.add(tile);
+			if (!sequential)
+				return;
+		}
+		var next = tile;
+		for (int i = 0; i < nTiles; i++) {
+			next = tileManager.getTileRequest(level, next.getImageX() + next.getImageWidth(), next.getImageY(), z, t);
+			if (next == null)
+				break;
+			// Skip tiles that have been requested or prefetched recently, since they are probably cached
+			synchronized (history) {
+				if (!history.add(next))
+					continue;
+			}
+			prefetch(next);
+		}
+	}
+	
+	private void prefetch(TileRequest tile) {
+		if (!pending.add(tile))
+			return;
+		try {
+			pool.execute(() -> {
+				try {
+					reader.accept(tile);
+				} finally {
+					pending.remove(tile);
+				}
+			});
+			Metrics.counter("bioformats.readahead.tiles").increment();
+		} catch (RejectedExecutionException e) {
+			pending.remove(tile);
+		}
+	}
+
+}
@@ -22,22 +22,30 @@
 package qupath.lib.images.writers.ome;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -59,6 +67,8 @@ import ome.xml.model.primitives.Color;
 import ome.xml.model.primitives.PositiveInteger;
 import qupath.lib.color.ColorModelFactory;
 import qupath.lib.common.ColorTools;
+import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageChannel;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerMetadata;
@@ -532,128 +542,136 @@ public class OMEPyramidWriter {
 			Map<Integer, IFD> map = new HashMap<>();
 	
 			writer.setSeries(series);
-			for (int level = 0; level < downsamples.length; level++) {
-				
-				writer.setResolution(level);
+			
+			// Tiles are read & converted to bytes in parallel (if requested), but always written in order
+			ExecutorService pool = null;
+			if (parallelExport) {
+				int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+				pool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("ome-pyramid-writer-", true));
+			}
+			
+			try {
+				// Images for the current resolution level, built from tiles of the previous level (one per z-slice and time point)
+				BufferedImage[] levelImages = null;
 				
-				// Preallocate any IFD
-				map.clear();
-				for (int i = 0; i < nPlanes; i++) {
-					IFD ifd = new IFD();
-					if (isTiled) {
-						ifd.put(IFD.TILE_WIDTH, tileWidth);
-						ifd.put(IFD.TILE_LENGTH, tileHeight);
+				for (int level = 0; level < downsamples.length; level++) {
+					
+					writer.setResolution(level);
+					
+					// Preallocate any IFD
+					map.clear();
+					for (int i = 0; i < nPlanes; i++) {
+						IFD ifd = new IFD();
+						if (isTiled) {
+							ifd.put(IFD.TILE_WIDTH, tileWidth);
+							ifd.put(IFD.TILE_LENGTH, tileHeight);
+						}
+						if (nSamples > 1 && !isRGB)
+							ifd.put(IFD.EXTRA_SAMPLES, new short[nSamples-1]);
+						map.put(Integer.valueOf(i), ifd);
 					}
-					if (nSamples > 1 && !isRGB)
-						ifd.put(IFD.EXTRA_SAMPLES, new short[nSamples-1]);
-					map.put(Integer.valueOf(i), ifd);
-				}
-	
-				double d = downsamples[level];
-								
-				int w = (int)(width * downsamples[0] / d);
-				int h = (int)(height * downsamples[0] / d);
-	
-				int tInc = tEnd >= tStart ? 1 : -1;
-				int zInc = zEnd >= zStart ? 1 : -1;
-				int effectiveSizeC = nChannels / nSamples;
-				
-				AtomicInteger count = new AtomicInteger(0);
-								
-				int ti = 0;
-				for (int t = tStart; t < tEnd; t += tInc) {
-					int zi = 0;
-					for (int z = zStart; z < zEnd; z += zInc) {
-						
-						/*
-						 *  It appears we can use parallelization for tile writing (thanks to synchronization in the writer),
-						 *  provided we write the (0,0) tile first.
-						 */
-						long planeStartTime = System.currentTimeMillis();
-						
-						// Create a list of all required requests, extracting the first
-						List<ImageRegion> regions = new ArrayList<>();
-						for (int yy = 0; yy < h; yy += tileHeight) {
-							int hh = Math.min(h - yy, tileHeight);
-							for (int xx = 0; xx < w; xx += tileWidth) {
-								int ww = Math.min(w - xx, tileWidth);
-								regions.add(ImageRegion.createInstance(xx, yy, ww, hh, z, t));
+		
+					double d = downsamples[level];
+									
+					int w = (int)(width * downsamples[0] / d);
+					int h = (int)(height * downsamples[0] / d);
+		
+					int tInc = tEnd >= tStart ? 1 : -1;
+					int zInc = zEnd >= zStart ? 1 : -1;
+					int effectiveSizeC = nChannels / nSamples;
+					
+					boolean smoothInterpolate = server.getMetadata().getChannelType() != ChannelType.CLASSIFICATION;
+					
+					// If memory permits, build the next resolution level from the tiles of this one - rather than reading again from the server
+					BufferedImage[] nextLevelImages = null;
+					if (level < downsamples.length - 1) {
+						double dNext = downsamples[level+1];
+						int wNext = (int)(width * downsamples[0] / dNext);
+						int hNext = (int)(height * downsamples[0] / dNext);
+						long nPixels = (long)wNext * hNext;
+						int nServerChannels = server.nChannels();
+						// Packed RGB images use an int per pixel
+						long bytesPerPixel = server.isRGB() ? Integer.BYTES : (long)nServerChannels * server.getPixelType().getBytesPerPixel();
+						long nBytes = nPixels * bytesPerPixel * sizeZ * sizeT;
+						// Area-averaging requires a sum per channel, for one plane at a time
+						if (smoothInterpolate)
+							nBytes += nPixels * nServerChannels * Double.BYTES;
+						// The tile cache may use a large (and growing) part of the heap, so only use part of what is available now
+						long maxMemory = Runtime.getRuntime().maxMemory();
+						long maxBytes = Math.min(maxMemory / 4, (maxMemory - GeneralTools.estimateUsedMemory()) / 2);
+						if (nPixels * nServerChannels <= Integer.MAX_VALUE - 8 && nBytes <= maxBytes)
+							nextLevelImages = new BufferedImage[sizeZ * sizeT];
+						else
+							logger.debug("Resolution {} is too large to build from resolution {} in memory - will read from server", level+2, level+1);
+					}
+					
+					AtomicInteger count = new AtomicInteger(0);
+									
+					int ti = 0;
+					for (int t = tStart; t < tEnd; t += tInc) {
+						int zi = 0;
+						for (int z = zStart; z < zEnd; z += zInc) {
+							
+							long planeStartTime = System.currentTimeMillis();
+							
+							// Create a list of all required requests, in the order they should be written
+							List<ImageRegion> regions = new ArrayList<>();
+							for (int yy = 0; yy < h; yy += tileHeight) {
+								int hh = Math.min(h - yy, tileHeight);
+								for (int xx = 0; xx < w; xx += tileWidth) {
+									int ww = Math.min(w - xx, tileWidth);
+									regions.add(ImageRegion.createInstance(xx, yy, ww, hh, z, t));
+								}
 							}
-						}
-						
-						int total = regions.size() * (tEnd - tStart) * (zEnd - zStart);
-						if (z == zStart && t == tStart)
-							logger.info("Writing resolution {} of {} (downsample={}, {} tiles)", level+1, downsamples.length, d, total);
-
-						ImageRegion firstRegion = regions.remove(0);
-						
-						// Show progress at key moments
-						int inc = total > 1000 ? 20 : 10;
-						Set<Integer> keyCounts = IntStream.range(1, inc).mapToObj(i -> (int)Math.round((double)total / inc * i)).collect(Collectors.toCollection(() -> new HashSet<>()));
-						keyCounts.add(total-1);
-						
-						// Loop through effective channels (which is 1 if we are writing interleaved)
-						for (int ci = 0; ci < effectiveSizeC; ci++) {
 							
-							int plane = ti * sizeZ * effectiveSizeC + zi * effectiveSizeC + ci;
-							IFD ifd = map.get(Integer.valueOf(plane));
-							int[] localChannels = effectiveSizeC == channels.length ? new int[] {channels[ci]} : channels;
-						
-							logger.info("Writing plane {}/{}", plane+1, nPlanes);
+							int total = regions.size() * (tEnd - tStart) * (zEnd - zStart);
+							if (z == zStart && t == tStart)
+								logger.info("Writing resolution {} of {} (downsample={}, {} tiles)", level+1, downsamples.length, d, total);
+	
+							// Show progress at key moments
+							int inc = total > 1000 ? 20 : 10;
+							Set<Integer> keyCounts = IntStream.range(1, inc).mapToObj(i -> (int)Math.round((double)total / inc * i)).collect(Collectors.toCollection(() -> new HashSet<>()));
+							keyCounts.add(total-1);
+							
+							int imageIndex = ti * sizeZ + zi;
+							BufferedImage source = levelImages == null ? null : levelImages[imageIndex];
+							LevelBuilder builder = null;
+							if (nextLevelImages != null)
+								builder = new LevelBuilder(
+										(int)(width * downsamples[0] / downsamples[level+1]),
+										(int)(height * downsamples[0] / downsamples[level+1]),
+										w, h, smoothInterpolate);
+							
+							// Loop through effective channels (which is 1 if we are writing interleaved)
+							for (int ci = 0; ci < effectiveSizeC; ci++) {
 								
-							// We *must* write the first region first
-							writeRegion(writer, plane, ifd, firstRegion, d, isRGB, localChannels);
-							if (!regions.isEmpty()) {
-								var tasks = regions.stream().map(region -> new Runnable() {
-									@Override
-									public void run() {
-										try {
-											if (Thread.currentThread().isInterrupted())
-												return;
-											writeRegion(writer, plane, ifd, region, d, isRGB, localChannels);
-										} catch (Exception e) {
-											logger.error(String.format(
-													"Error writing %s (downsample=%.2f)",
-													region.toString(), d),
-													e);
-										} finally {
-											int localCount = count.incrementAndGet();
-											if (total > 20 && keyCounts.size() > 1 && keyCounts.contains(localCount)) {
-												double percentage = localCount*100.0/total;
-												logger.info("Written {}% tiles", Math.round(percentage));
-											}
-										}
-									}
-								}).collect(Collectors.toList());
+								int plane = ti * sizeZ * effectiveSizeC + zi * effectiveSizeC + ci;
+								IFD ifd = map.get(Integer.valueOf(plane));
+								int[] localChannels = effectiveSizeC == channels.length ? new int[] {channels[ci]} : channels;
+							
+								logger.info("Writing plane {}/{}", plane+1, nPlanes);
 								
-								if (parallelExport) {
-									var pool = Executors.newWorkStealingPool(4);
-									for (var task : tasks) {
-										pool.submit(task);
-									}
-									pool.shutdown();
-									try {
-										pool.awaitTermination(regions.size(), TimeUnit.MINUTES);
-										logger.info("Plane written in {} ms", System.currentTimeMillis() - planeStartTime);
-									} catch (InterruptedException e) {
-										logger.warn("OME-TIFF export interrupted!");
-										pool.shutdownNow();
-										throw new IOException("Error writing regions", e);
-									}
-								} else {
-									for (var task : tasks) {
-										if (Thread.currentThread().isInterrupted()) {
-											throw new IOException("Interrupted writing regions!");
-										}
-										task.run();
+								// The next level only needs to be built once, since it contains all channels
+								writeRegions(writer, pool, plane, ifd, regions, d, isRGB, localChannels, source, ci == 0 ? builder : null, localCount -> {
+									if (total > 20 && keyCounts.size() > 1 && keyCounts.contains(localCount)) {
+										double percentage = localCount*100.0/total;
+										logger.info("Written {}% tiles", Math.round(percentage));
 									}
-								}
+								}, count);
 							}
+							// If the next level can't be built in memory, it will be read from the server instead
+							if (builder != null)
+								nextLevelImages[imageIndex] = builder.build();
+							logger.info("Plane written in {} ms", System.currentTimeMillis() - planeStartTime);
+							zi++;
 						}
-						zi++;
+						ti++;
 					}
-					ti++;
+					levelImages = nextLevelImages;
 				}
+			} finally {
+				if (pool != null)
+					pool.shutdownNow();
 			}
 			logger.trace("Image count: {}", meta.getImageCount());
 			logger.trace("Plane count: {}", writer.getPlaneCount());
@@ -680,16 +698,89 @@ public class OMEPyramidWriter {
 		}
 		
 		
-		private void writeRegion(PyramidOMETiffWriter writer, int plane, IFD ifd, ImageRegion region, double downsample, boolean isRGB, int[] channels) throws FormatException, IOException {
-			RegionRequest request = downsampledRegionToRequest(region, downsample);
-			BufferedImage img = server.readBufferedImage(request);
+		/**
+		 * Write regions for a single plane, in order.
+		 * <p>
+		 * Regions are read and converted to bytes using the pool (if available), with a bounded number in flight at any time, 
+		 * while the calling thread writes the bytes in the order of the list. This is important, since the first region 
+		 * must be written first - and writing in order keeps the tiles in order within the file.
+		 * 
+		 * @param writer the writer
+		 * @param pool optional pool for reading regions in parallel; if null, regions are read on the calling thread
+		 * @param plane the plane to write
+		 * @param ifd the IFD for the plane
+		 * @param regions the regions to write, in the export coordinate space
+		 * @param downsample the downsample for the current resolution level
+		 * @param isRGB true if writing packed RGB
+		 * @param channels the channels to write
+		 * @param source optional image for the current resolution level, from which regions should be extracted instead of reading from the server
+		 * @param builder optional builder for the next resolution level, to which each region is added
+		 * @param progress consumer notified of the total number of regions written
+		 * @param count counter for the total number of regions written
+		 * @throws FormatException
+		 * @throws IOException
+		 */
+		private void writeRegions(PyramidOMETiffWriter writer, ExecutorService pool, int plane, IFD ifd, List<ImageRegion> regions, double downsample,
+				boolean isRGB, int[] channels, BufferedImage source, LevelBuilder builder, IntConsumer progress, AtomicInteger count) throws FormatException, IOException {
+			
+			int maxInFlight = pool == null ? 1 : 2 * Runtime.getRuntime().availableProcessors() + 2;
+			Deque<Future<RegionBytes>> pending = new ArrayDeque<>();
+			var iter = regions.iterator();
+			try {
+				while (iter.hasNext() || !pending.isEmpty()) {
+					if (Thread.currentThread().isInterrupted())
+						throw new IOException("Interrupted writing regions!");
+					
+					while (iter.hasNext() && pending.size() < maxInFlight) {
+						var region = iter.next();
+						Callable<RegionBytes> task = () -> readRegionBytes(region, downsample, isRGB, channels, source, builder);
+						if (pool == null) {
+							var future = new FutureTask<>(task);
+							future.run();
+							pending.add(future);
+						} else
+							pending.add(pool.submit(task));
+					}
+					
+					var regionBytes = getRegionBytes(pending.poll());
+					if (regionBytes != null)
+						writer.saveBytes(plane, regionBytes.bytes, ifd, regionBytes.x, regionBytes.y, regionBytes.width, regionBytes.height);
+					progress.accept(count.incrementAndGet());
+				}
+			} finally {
+				for (var future : pending)
+					future.cancel(true);
+			}
+		}
+		
+		private static RegionBytes getRegionBytes(Future<RegionBytes> future) throws IOException {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				logger.warn("OME-TIFF export interrupted!");
+				Thread.currentThread().interrupt();
+				throw new IOException("Error writing regions", e);
+			} catch (ExecutionException e) {
+				// Log the error and continue with other regions, as if the region failed to write
+				logger.error("Error reading region: " + e.getCause().getLocalizedMessage(), e.getCause());
+				return null;
+			}
+		}
+		
+		private RegionBytes readRegionBytes(ImageRegion region, double downsample, boolean isRGB, int[] channels, BufferedImage source, LevelBuilder builder) throws IOException {
+			BufferedImage img;
+			if (source != null)
+				img = source.getSubimage(region.getX(), region.getY(), region.getWidth(), region.getHeight());
+			else
+				img = server.readBufferedImage(downsampledRegionToRequest(region, downsample));
+			if (builder != null && img != null)
+				builder.add(region, img);
 			
 			int bytesPerPixel = server.getPixelType().getBytesPerPixel();
 			int nChannels = channels.length;
 			if (img == null) {
 				byte[] zeros = new byte[region.getWidth() * region.getHeight() * bytesPerPixel * nChannels];
-				writer.saveBytes(plane, zeros, ifd, region.getX(), region.getY(), region.getWidth(), region.getHeight());
-				return;
+				return new RegionBytes(zeros, region.getX(), region.getY(), region.getWidth(), region.getHeight());
 			}
 			
 			int ww = img.getWidth();
@@ -707,17 +798,17 @@ public class OMEPyramidWriter {
 					buf.put((byte)ColorTools.green(val));
 					buf.put((byte)ColorTools.blue(val));
 				}
-				writer.saveBytes(plane, buf.array(), ifd, region.getX(), region.getY(), ww, hh);
 			} else {
 				for (int ci = 0; ci < channels.length; ci++) {
 					int c = channels[ci];
 					int ind = ci * bytesPerPixel;
 					channelToBuffer(img.getRaster(), c, buf, ind, channels.length * bytesPerPixel);
 				}
-				writer.saveBytes(plane, buf.array(), ifd, region.getX(), region.getY(), ww, hh);
 			}
+			return new RegionBytes(buf.array(), region.getX(), region.getY(), ww, hh);
 		}
 		
+		
 		/**
 		 * Extract pixels to a ByteBuffer.
 		 * 
@@ -818,6 +909,205 @@ public class OMEPyramidWriter {
 	}
 	
 	
+	/**
+	 * Pixels for a region, ready to be written.
+	 */
+	private static class RegionBytes {
+		
+		private final byte[] bytes;
+		private final int x, y, width, height;
+		
+		private RegionBytes(byte[] bytes, int x, int y, int width, int height) {
+			this.bytes = bytes;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+		
+	}
+	
+	/**
+	 * Helper class to build a lower resolution image from tiles at a higher resolution.
+	 * <p>
+	 * Each pixel of the current level contributes to the pixel of the new level that contains its center. 
+	 * With smooth interpolation, the new pixel is the average of all contributing pixels (i.e. area-averaging); 
+	 * otherwise, it is the value of the single pixel closest to its center (e.g. for classification images).
+	 * Because this is determined using the full level dimensions rather than per tile, there are no seams 
+	 * between tiles.
+	 */
+	static class LevelBuilder {
+		
+		private final int width, height;
+		private final int sourceWidth, sourceHeight;
+		private final boolean smoothInterpolate;
+		
+		private BufferedImage template;
+		private BufferedImage img;
+		private double[][] sums;
+		private boolean failed = false;
+		
+		/**
+		 * Constructor.
+		 * @param width the width of the level being built
+		 * @param height the height of the level being built
+		 * @param sourceWidth the width of the current level
+		 * @param sourceHeight the height of the current level
+		 * @param smoothInterpolate true if pixels may be averaged, false if the nearest pixel value should be used
+		 */
+		LevelBuilder(int width, int height, int sourceWidth, int sourceHeight, boolean smoothInterpolate) {
+			this.width = width;
+			this.height = height;
+			this.sourceWidth = sourceWidth;
+			this.sourceHeight = sourceHeight;
+			this.smoothInterpolate = smoothInterpolate;
+		}
+		
+		private static int toTarget(int source, int sourceLength, int targetLength) {
+			return Math.min(targetLength - 1, (int)((source + 0.5) * targetLength / sourceLength));
+		}
+
+		private static int toSource(int target, int sourceLength, int targetLength) {
+			return Math.min(sourceLength - 1, (int)((target + 0.5) * sourceLength / targetLength));
+		}
+		
+		/**
+		 * Add a tile from the current level. This may be called from multiple threads.
+		 * @param region the tile region, in the coordinate space of the current level
+		 * @param tile the tile
+		 */
+		void add(ImageRegion region, BufferedImage tile) {
+			var raster = tile.getRaster();
+			int ww = Math.min(raster.getWidth(), sourceWidth - region.getX());
+			int hh = Math.min(raster.getHeight(), sourceHeight - region.getY());
+			if (ww <= 0 || hh <= 0)
+				return;
+			synchronized (this) {
+				if (!ensureInitialized(tile))
+					return;
+				if (smoothInterpolate)
+					addSums(region, raster, ww, hh);
+				else
+					addNearest(region, raster, ww, hh);
+			}
+		}
+		
+		private void addSums(ImageRegion region, WritableRaster raster, int ww, int hh) {
+			int[] xx = new int[ww];
+			for (int x = 0; x < ww; x++)
+				xx[x] = toTarget(region.getX() + x, sourceWidth, width);
+			double[] samples = null;
+			for (int b = 0; b < sums.length; b++) {
+				samples = raster.getSamples(0, 0, ww, hh, b, samples);
+				double[] sum = sums[b];
+				int i = 0;
+				for (int y = 0; y < hh; y++) {
+					int offset = toTarget(region.getY() + y, sourceHeight, height) * width;
+					for (int x = 0; x < ww; x++)
+						sum[offset + xx[x]] += samples[i++];
+				}
+			}
+		}
+		
+		private void addNearest(ImageRegion region, WritableRaster raster, int ww, int hh) {
+			var target = img.getRaster();
+			double[] pixel = null;
+			int txStart = toTarget(region.getX(), sourceWidth, width);
+			int txEnd = toTarget(region.getX() + ww - 1, sourceWidth, width);
+			int tyStart = toTarget(region.getY(), sourceHeight, height);
+			int tyEnd = toTarget(region.getY() + hh - 1, sourceHeight, height);
+			for (int ty = tyStart; ty <= tyEnd; ty++) {
+				int y = toSource(ty, sourceHeight, height) - region.getY();
+				if (y < 0 || y >= hh)
+					continue;
+				for (int tx = txStart; tx <= txEnd; tx++) {
+					int x = toSource(tx, sourceWidth, width) - region.getX();
+					if (x < 0 || x >= ww)
+						continue;
+					pixel = raster.getPixel(x, y, pixel);
+					target.setPixel(tx, ty, pixel);
+				}
+			}
+		}
+		
+		/**
+		 * Create the arrays needed to build the level, based upon the first tile.
+		 * @return true if the level can be built, false if there is insufficient memory
+		 */
+		private boolean ensureInitialized(BufferedImage tile) {
+			if (failed)
+				return false;
+			if (template != null)
+				return true;
+			try {
+				if (smoothInterpolate) {
+					int nBands = tile.getRaster().getNumBands();
+					sums = new double[nBands][Math.multiplyExact(width, height)];
+				} else
+					img = createImage(tile);
+				template = tile;
+				return true;
+			} catch (ArithmeticException | IllegalArgumentException | NegativeArraySizeException | OutOfMemoryError e) {
+				// Allocation is attempted only after checking the memory requirements, but fail gracefully if it is still too large
+				logger.warn("Unable to build resolution level in memory: {}", e.getLocalizedMessage());
+				failed = true;
+				sums = null;
+				return false;
+			}
+		}
+		
+		private BufferedImage createImage(BufferedImage template) {
+			var raster = template.getRaster().createCompatibleWritableRaster(width, height);
+			return new BufferedImage(template.getColorModel(), raster, template.isAlphaPremultiplied(), null);
+		}
+		
+		/**
+		 * Get the image for the new level, after all tiles have been added.
+		 * @return the image, or null if it could not be built
+		 */
+		synchronized BufferedImage build() {
+			if (failed || template == null)
+				return null;
+			if (!smoothInterpolate)
+				return img;
+			
+			int[] countX = new int[width];
+			for (int x = 0; x < sourceWidth; x++)
+				countX[toTarget(x, sourceWidth, width)]++;
+			int[] countY = new int[height];
+			for (int y = 0; y < sourceHeight; y++)
+				countY[toTarget(y, sourceHeight, height)]++;
+			
+			var raster = template.getRaster();
+			boolean isInteger = raster.getTransferType() != DataBuffer.TYPE_FLOAT && raster.getTransferType() != DataBuffer.TYPE_DOUBLE;
+			BufferedImage output;
+			try {
+				output = createImage(template);
+			} catch (IllegalArgumentException | NegativeArraySizeException | OutOfMemoryError e) {
+				logger.warn("Unable to build resolution level in memory: {}", e.getLocalizedMessage());
+				sums = null;
+				failed = true;
+				return null;
+			}
+			for (int b = 0; b < sums.length; b++) {
+				double[] sum = sums[b];
+				int i = 0;
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						int n = countX[x] * countY[y];
+						double val = n == 0 ? 0 : sum[i] / n;
+						sum[i++] = isInteger ? Math.round(val) : val;
+					}
+				}
+				output.getRaster().setSamples(0, 0, width, height, b, sum);
+				sums[b] = null;
+			}
+			sums = null;
+			return output;
+		}
+		
+	}
+	
 	static int[] ensureIntArray(Object array, int length) {
 		if (!(array instanceof int[]) || ((int[])array).length != length)
 			return new int[length];
@@ -999,6 +1289,7 @@ public class OMEPyramidWriter {
 
 		/**
 		 * Specify if tile export should be parallelized if possible.
+		 * If so, tiles are read and converted in parallel, but still written in order.
 		 * 
 		 * @param doParallel
 		 * @return
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2021 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers.bioformats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import loci.formats.IFormatReader;
+
+@SuppressWarnings("javadoc")
+public class TestBioFormatsReaderPool {
+	
+	private final AtomicInteger nCreated = new AtomicInteger();
+	private final AtomicInteger nClosed = new AtomicInteger();
+	
+	/**
+	 * Create a placeholder reader that only counts calls to close.
+	 */
+	private IFormatReader createReader() {
+		nCreated.incrementAndGet();
+		return (IFormatReader)Proxy.newProxyInstance(IFormatReader.class.getClassLoader(), new Class<?>[] {IFormatReader.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+						nClosed.incrementAndGet();
+						return null;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "Test reader";
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+	
+	@Test
+	public void testBorrowAndRelease() throws Exception {
+		var pool = new BioFormatsReaderPool("test", this::createReader, 2);
+		assertTrue(pool.hasIdleReader());
+		
+		var reader1 = pool.borrow();
+		var reader2 = pool.borrow();
+		assertNotSame(reader1, reader2);
+		assertEquals(2, nCreated.get());
+		assertFalse(pool.hasIdleReader());
+		
+		// A third request should wait until a reader is returned
+		var future = CompletableFuture.supplyAsync(() -> {
+			try {
+				return pool.borrow();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		assertThrows(TimeoutException.class, () -> future.get(100, TimeUnit.MILLISECONDS));
+		pool.release(reader2);
+		assertSame(reader2, future.get(5, TimeUnit.SECONDS));
+		assertEquals(2, nCreated.get());
+		
+		// The most recently returned reader should be reused first
+		pool.release(reader2);
+		pool.release(reader1);
+		assertSame(reader1, pool.borrow());
+		pool.release(reader1);
+		
+		pool.close();
+		assertEquals(2, nClosed.get());
+	}
+	
+	@Test
+	public void testClose() throws Exception {
+		var pool = new BioFormatsReaderPool("test", this::createReader, 4);
+		var reader1 = pool.borrow();
+		var reader2 = pool.borrow();
+		pool.release(reader1);
+		pool.close();
+		
+		// Idle readers are closed immediately, readers in use when they are returned
+		assertEquals(1, nClosed.get());
+		pool.release(reader2);
+		assertEquals(2, nClosed.get());
+		
+		assertFalse(pool.hasIdleReader());
+		assertThrows(IOException.class, () -> pool.borrow());
+	}
+	
+	@Test
+	public void testFailedCreation() throws Exception {
+		var pool = new BioFormatsReaderPool("test", () -> {
+			throw new IOException("Cannot create reader");
+		}, 1);
+		assertThrows(IOException.class, () -> pool.borrow());
+		// A failure shouldn't use up the capacity of the pool
+		assertTrue(pool.hasIdleReader());
+	}
+
+}
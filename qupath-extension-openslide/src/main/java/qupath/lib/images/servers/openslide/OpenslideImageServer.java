@@ -24,8 +24,8 @@
 package qupath.lib.images.servers.openslide;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
@@ -65,6 +65,14 @@ public class OpenslideImageServer extends AbstractTileableImageServer {
 
 	private static boolean useBoundingBoxes = true;
 	
+	private static boolean usePackedRGB = false;
+	
+	/**
+	 * Buffer for each thread to receive ARGB pixels from OpenSlide, reused between tiles.
+	 * This can be larger than the tile being read, because OpenSlide only fills the first width * height values.
+	 */
+	private static ThreadLocal<int[]> localBuffer = new ThreadLocal<>();
+	
 	private ImageServerMetadata originalMetadata;
 
 	private List<String> associatedImageList = null;
@@ -73,6 +81,12 @@ public class OpenslideImageServer extends AbstractTileableImageServer {
 	private OpenSlide osr;
 	private Color backgroundColor;
 	
+	/**
+	 * Background color value for each channel, scaled by (255 - alpha) for each possible alpha value.
+	 * Used to composite OpenSlide's premultiplied ARGB pixels over the background.
+	 */
+	private int[] backgroundRed, backgroundGreen, backgroundBlue;
+	
 	private int boundsX, boundsY, boundsWidth, boundsHeight;
 	
 	private URI uri;
@@ -231,6 +245,10 @@ public class OpenslideImageServer extends AbstractTileableImageServer {
 			backgroundColor = null;
 			logger.debug("Unable to find background color: {}", e.getLocalizedMessage());
 		}
+		int bgRGB = backgroundColor == null ? 0 : backgroundColor.getRGB();
+		backgroundRed = createBackgroundTable((bgRGB >> 16) & 0xff);
+		backgroundGreen = createBackgroundTable((bgRGB >> 8) & 0xff);
+		backgroundBlue = createBackgroundTable(bgRGB & 0xff);
 		
 		// Try reading a thumbnail... the point being that if this is going to fail,
 		// we want it to fail quickly so that it may yet be possible to try another server
@@ -243,6 +261,48 @@ public class OpenslideImageServer extends AbstractTileableImageServer {
 		}
 	}
 	
+	/**
+	 * Request that tiles are returned as {@code TYPE_3BYTE_BGR} images rather than {@code TYPE_INT_RGB}.
+	 * <p>
+	 * This uses 3 rather than 4 bytes per pixel, which reduces the memory needed to cache tiles, 
+	 * and the pixels can be passed directly to OpenCV (which uses BGR order). 
+	 * However, some Java2D operations are slower for these images.
+	 * <p>
+	 * This applies to all OpenSlide servers, but only to tiles read after the value is changed.
+	 * 
+	 * @param doPacked
+	 * @since 0.3
+	 */
+	public static void setUsePackedRGB(boolean doPacked) {
+		usePackedRGB = doPacked;
+	}
+	
+	/**
+	 * Returns true if tiles are returned as {@code TYPE_3BYTE_BGR} images.
+	 * @return
+	 * @since 0.3
+	 * @see #setUsePackedRGB(boolean)
+	 */
+	public static boolean getUsePackedRGB() {
+		return usePackedRGB;
+	}
+	
+	private static int[] createBackgroundTable(int value) {
+		int[] table = new int[256];
+		for (int a = 0; a < 256; a++)
+			table[a] = (value * (255 - a) + 127) / 255;
+		return table;
+	}
+	
+	private static int[] getBuffer(int length) {
+		int[] buffer = localBuffer.get();
+		if (buffer == null || buffer.length < length) {
+			buffer = new int[length];
+			localBuffer.set(buffer);
+		}
+		return buffer;
+	}
+	
 	@Override
 	public Collection<URI> getURIs() {
 		return Collections.singletonList(uri);
@@ -281,28 +341,46 @@ public class OpenslideImageServer extends AbstractTileableImageServer {
 		int tileWidth = tileRequest.getTileWidth();
 		int tileHeight = tileRequest.getTileHeight();
 
-//		double downsampleFactor = getPreferredDownsamplesArray()[downsampleInd];
-		BufferedImage img = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB_PRE);
-        int data[] = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
-        
-		// Create a thumbnail for the region
-//        	osr.paintRegionOfLevel(g, dx, dy, sx, sy, w, h, level);
+		// Read premultiplied ARGB pixels into a reusable buffer
+		int n = tileWidth * tileHeight;
+		int[] data = getBuffer(n);
 		osr.paintRegionARGB(data, tileX, tileY, tileRequest.getLevel(), tileWidth, tileHeight);
 		
+		// Composite over the background color (or black) while copying into the output image.
 		// Previously tried to take shortcut and only repaint if needed - 
 		// but transparent pixels happened too often, and it's really needed to repaint every time
-//			if (backgroundColor == null && GeneralTools.almostTheSame(downsample, downsampleFactor, 0.001))
-//				return img;
-		
-		BufferedImage img2 = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
-		Graphics2D g2d = img2.createGraphics();
-		if (backgroundColor != null) {
-			g2d.setColor(backgroundColor);
-			g2d.fillRect(0, 0, tileWidth, tileHeight);
+		if (usePackedRGB) {
+			var img = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_3BYTE_BGR);
+			byte[] bytes = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+			for (int i = 0, j = 0; i < n; i++, j += 3) {
+				int rgb = compositeOverBackground(data[i]);
+				bytes[j] = (byte)rgb;
+				bytes[j+1] = (byte)(rgb >> 8);
+				bytes[j+2] = (byte)(rgb >> 16);
+			}
+			return img;
+		} else {
+			var img = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+			for (int i = 0; i < n; i++)
+				pixels[i] = compositeOverBackground(data[i]);
+			return img;
 		}
-		g2d.drawImage(img, 0, 0, tileWidth, tileHeight, null);
-		g2d.dispose();
-		return img2;
+	}
+	
+	/**
+	 * Composite a premultiplied ARGB value over the background, returning an RGB value.
+	 * @param argb
+	 * @return
+	 */
+	private int compositeOverBackground(int argb) {
+		int a = argb >>> 24;
+		if (a == 255)
+			return argb & 0xffffff;
+		int r = ((argb >> 16) & 0xff) + backgroundRed[a];
+		int g = ((argb >> 8) & 0xff) + backgroundGreen[a];
+		int b = (argb & 0xff) + backgroundBlue[a];
+		return (Math.min(r, 255) << 16) | (Math.min(g, 255) << 8) | Math.min(b, 255);
 	}
 
 	@Override
@@ -161,6 +161,7 @@ import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import javafx.util.Duration;
 import jfxtras.scene.menu.CirclePopupMenu;
+import qupath.lib.classifiers.pixel.PixelClassificationTileCache;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.common.ThreadTools;
 import qupath.lib.gui.ActionTools.ActionAccelerator;
@@ -791,11 +792,17 @@ public class QuPathGUI {
 		
 		long startTime = System.currentTimeMillis();
 		
-		// Set up cache
-		imageRegionStore = ImageRegionStoreFactory.createImageRegionStore(QuPathGUI.getTileCacheSizeBytes());
+		// Set up cache, reserving part of it for classified tiles so that they aren't evicted by image tiles
+		long tileCacheSize = QuPathGUI.getTileCacheSizeBytes();
+		long classifierCacheSize = PixelClassificationTileCache.getDefaultMaxBytes(tileCacheSize);
+		imageRegionStore = ImageRegionStoreFactory.createImageRegionStore(tileCacheSize - classifierCacheSize);
+		PixelClassificationTileCache.setDefaultCache(new PixelClassificationTileCache(classifierCacheSize));
 		
 		PathPrefs.tileCachePercentageProperty().addListener((v, o, n) -> {
 			imageRegionStore.getCache().clear();
+			var classifierCache = PixelClassificationTileCache.getDefaultCache();
+			if (classifierCache != null)
+				classifierCache.invalidateAll();
 		});
 		
 		ImageServerProvider.setCache(imageRegionStore.getCache(), BufferedImage.class);
@@ -2734,7 +2741,14 @@ public class QuPathGUI {
 
 		// Check if we need to rotate the image
 		try {
-			imageData = entry.readImageData();
+			// Detections may be added in the background, on the application thread
+			var lazyData = entry.readImageDataLazily(Platform::runLater);
+			lazyData.getFuture().exceptionally(e -> {
+				logger.error("Error reading objects for " + entry.getImageName(), e);
+				Platform.runLater(() -> Dialogs.showErrorNotification("Load ImageData", "Not all objects could be read for " + entry.getImageName()));
+				return null;
+			});
+			imageData = lazyData.getImageData();
 			viewer.setImageData(imageData);
 //			setInitialLocationAndMagnification(viewer);
 			if (imageData != null && (imageData.getImageType() == null || imageData.getImageType() == ImageType.UNSET)) {
@@ -54,7 +54,6 @@ import java.awt.image.DataBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +66,9 @@ import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -85,7 +87,11 @@ public class PixelClassificationOverlay extends AbstractImageOverlay  {
     private ObjectProperty<ImageRenderer> renderer = new SimpleObjectProperty<>();
     private long rendererLastTimestamp = 0L;
 
-    private Map<RegionRequest, BufferedImage> cacheRGB = Collections.synchronizedMap(new HashMap<>());
+    /**
+     * Rendered RGB tiles, weakly keyed by the classified tile (using identity) - so that RGB tiles are released 
+     * whenever the classified tiles are evicted from their cache.
+     */
+    private Cache<BufferedImage, BufferedImage> cacheRGB = CacheBuilder.newBuilder().weakKeys().build();
     private Set<TileRequest> pendingRequests = Collections.synchronizedSet(new HashSet<>());
     private Set<TileRequest> currentRequests = Collections.synchronizedSet(new HashSet<>());
     
@@ -113,7 +119,7 @@ public class PixelClassificationOverlay extends AbstractImageOverlay  {
         		nThreads, ThreadTools.createThreadFactory(
         				"classifier-overlay", true, Thread.NORM_PRIORITY-2));
         
-        this.renderer.addListener((v, o, n) -> cacheRGB.clear());
+        this.renderer.addListener((v, o, n) -> cacheRGB.invalidateAll());
         
         this.fun = fun;
     }
@@ -433,32 +439,37 @@ public class PixelClassificationOverlay extends AbstractImageOverlay  {
      * @return
      */
      BufferedImage getCachedTileRGB(TileRequest request, ImageServer<BufferedImage> server) {
-    	var imgRGB = cacheRGB.get(request.getRegionRequest());
-    	if (imgRGB != null || server == null)
+    	if (server == null)
+    		return null;
+    	var img = server.getCachedTile(request);
+    	if (img == null)
+    		return null;
+    	if (img.getType() == BufferedImage.TYPE_INT_ARGB ||
+    			img.getType() == BufferedImage.TYPE_INT_RGB ||
+    			img.getType() == BufferedImage.TYPE_BYTE_INDEXED ||
+    			img.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+    		return img;
+    	}
+    	var imgRGB = cacheRGB.getIfPresent(img);
+    	if (imgRGB != null)
     		return imgRGB;
         // If we have a tile that isn't RGB, then create the RGB version we need
-    	var img = server.getCachedTile(request);
     	var renderer = this.renderer.get();
-        if (img != null) {
-            if (img.getType() == BufferedImage.TYPE_INT_ARGB ||
-            		img.getType() == BufferedImage.TYPE_INT_RGB ||
-            		img.getType() == BufferedImage.TYPE_BYTE_INDEXED ||
-            		img.getType() == BufferedImage.TYPE_BYTE_GRAY) {
-                imgRGB = img;
-            } else if (renderer == null) {
-                imgRGB = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g = imgRGB.createGraphics();
-                g.drawImage(img, 0, 0, null);
-                g.dispose();
-            } else {
-            	try {
-            		imgRGB = renderer.applyTransforms(img, null);
-            	} catch (Exception e) {
-            		logger.error("Exception rendering image", e);
-            	}
-            }
-            cacheRGB.put(request.getRegionRequest(), imgRGB);
+        if (renderer == null) {
+            imgRGB = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = imgRGB.createGraphics();
+            g.drawImage(img, 0, 0, null);
+            g.dispose();
+        } else {
+        	try {
+        		imgRGB = renderer.applyTransforms(img, null);
+        	} catch (Exception e) {
+        		logger.error("Exception rendering image", e);
+        	}
         }
+        // Don't cache the classified tile against itself, since then it could never be released
+        if (imgRGB != null && imgRGB != img)
+        	cacheRGB.put(img, imgRGB);
         return imgRGB;
     }
     
@@ -467,7 +478,7 @@ public class PixelClassificationOverlay extends AbstractImageOverlay  {
       * Clear any cached tiles.
       */
      public void clearCache() {
-    	 cacheRGB.clear();
+    	 cacheRGB.invalidateAll();
      }
 
     